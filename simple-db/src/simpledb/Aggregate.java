@@ -5,9 +5,10 @@ import java.util.*;
 /**
  * The Aggregation operator that computes an aggregate (e.g., sum, avg, max,
  * min). Note that we only support aggregates over a single column, grouped by a
- * single column.
+ * single column.  Over a child that runs a batch at a time, it merges whole
+ * batches into the aggregate ({@link Aggregator#mergeBatch}).
  */
-public class Aggregate extends Operator {
+public class Aggregate extends Operator implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
 
@@ -36,6 +37,7 @@ public class Aggregate extends Operator {
     private OpIterator[] opIterators;
     private Aggregator aggregator;
     private OpIterator opIterator;
+    private transient BatchIterator results;
     public Aggregate(OpIterator child, int afield, int gfield, Aggregator.Op aop) {
 	    // some code goes here
         this.child = child;
@@ -106,15 +108,25 @@ public class Aggregate extends Operator {
             aggregator = new StringAggregator(groupFieldNum, groupType, aggFieldNum, op);
 
         child.open();
-        while (child.hasNext())
+        if(Batches.isNative(child))
         {
-            Tuple tuple = child.next();
-            aggregator.mergeTupleIntoGroup(tuple);
+            BatchIterator input = (BatchIterator) child;
+            TupleBatch batch;
+            while ((batch = input.nextBatch()) != null)
+                aggregator.mergeBatch(batch);
+        }else
+        {
+            while (child.hasNext())
+            {
+                Tuple tuple = child.next();
+                aggregator.mergeTupleIntoGroup(tuple);
+            }
         }
         child.close();
         super.open();
         opIterator = aggregator.iterator();
         opIterator.open();
+        results = Batches.of(opIterator);
     }
 
     /**
@@ -132,6 +144,11 @@ public class Aggregate extends Operator {
 	    return null;
     }
 
+    /** Returns the next batch of results; the input is aggregated in open() */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        return results.nextBatch();
+    }
+
     public void rewind() throws DbException, TransactionAbortedException {
         close();
         open();
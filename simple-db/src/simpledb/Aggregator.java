@@ -76,6 +76,17 @@ public interface Aggregator extends Serializable {
      */
     public void mergeTupleIntoGroup(Tuple tup);
 
+    /**
+     * Merges the tuples of a batch into the aggregate, as
+     * mergeTupleIntoGroup would one by one.
+     *
+     * @param batch the tuples, with an aggregate field and a group-by field
+     */
+    public default void mergeBatch(TupleBatch batch) {
+        for (int i = 0; i < batch.size(); i++)
+            mergeTupleIntoGroup(batch.getTuple(i));
+    }
+
     /**
      * Create a OpIterator over group aggregate results.
      * @see simpledb.TupleIterator for a possible helper
@@ -24,6 +24,7 @@ public class BTreeFile implements DbFile {
 	private final TupleDesc td;
 	private final int tableid ;
 	private int keyField;
+	private final PageChannel channel;
 
 	/**
 	 * Constructs a B+ tree file backed by the specified file.
@@ -38,6 +39,7 @@ public class BTreeFile implements DbFile {
 		this.tableid = f.getAbsoluteFile().hashCode();
 		this.keyField = key;
 		this.td = td;
+		this.channel = new PageChannel(f);
 	}
 
 	/**
@@ -78,39 +80,18 @@ public class BTreeFile implements DbFile {
 	 */
 	public Page readPage(PageId pid) {
 		BTreePageId id = (BTreePageId) pid;
-		BufferedInputStream bis = null;
 
 		try {
-			bis = new BufferedInputStream(new FileInputStream(f));
 			if(id.pgcateg() == BTreePageId.ROOT_PTR) {
 				byte pageBuf[] = new byte[BTreeRootPtrPage.getPageSize()];
-				int retval = bis.read(pageBuf, 0, BTreeRootPtrPage.getPageSize());
-				if (retval == -1) {
-					throw new IllegalArgumentException("Read past end of table");
-				}
-				if (retval < BTreeRootPtrPage.getPageSize()) {
-					throw new IllegalArgumentException("Unable to read "
-							+ BTreeRootPtrPage.getPageSize() + " bytes from BTreeFile");
-				}
+				readFully(0, 0, pageBuf);
 				Debug.log(1, "BTreeFile.readPage: read page %d", id.getPageNumber());
 				BTreeRootPtrPage p = new BTreeRootPtrPage(id, pageBuf);
 				return p;
 			}
 			else {
 				byte pageBuf[] = new byte[BufferPool.getPageSize()];
-				if (bis.skip(BTreeRootPtrPage.getPageSize() + (id.getPageNumber()-1) * BufferPool.getPageSize()) !=
-						BTreeRootPtrPage.getPageSize() + (id.getPageNumber()-1) * BufferPool.getPageSize()) {
-					throw new IllegalArgumentException(
-							"Unable to seek to correct place in BTreeFile");
-				}
-				int retval = bis.read(pageBuf, 0, BufferPool.getPageSize());
-				if (retval == -1) {
-					throw new IllegalArgumentException("Read past end of table");
-				}
-				if (retval < BufferPool.getPageSize()) {
-					throw new IllegalArgumentException("Unable to read "
-							+ BufferPool.getPageSize() + " bytes from BTreeFile");
-				}
+				readFully(id.getPageNumber(), pageOffset(id.getPageNumber()), pageBuf);
 				Debug.log(1, "BTreeFile.readPage: read page %d", id.getPageNumber());
 				if(id.pgcateg() == BTreePageId.INTERNAL) {
 					BTreeInternalPage p = new BTreeInternalPage(id, pageBuf, keyField);
@@ -127,14 +108,24 @@ public class BTreeFile implements DbFile {
 			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
-		} finally {
-			// Close the file on success or error
-			try {
-				if (bis != null)
-					bis.close();
-			} catch (IOException ioe) {
-				// Ignore failures closing the file
-			}
+		}
+	}
+
+	/**
+	 * Returns the file offset of the given non-root-pointer page.
+	 */
+	private static long pageOffset(int pageNumber) {
+		return BTreeRootPtrPage.getPageSize() + (long) (pageNumber-1) * BufferPool.getPageSize();
+	}
+
+	private void readFully(int pgNo, long offset, byte[] pageBuf) throws IOException {
+		int retval = channel.readPage(pgNo, offset, pageBuf);
+		if (retval == -1) {
+			throw new IllegalArgumentException("Read past end of table");
+		}
+		if (retval < pageBuf.length) {
+			throw new IllegalArgumentException("Unable to read "
+					+ pageBuf.length + " bytes from BTreeFile");
 		}
 	}
 
@@ -148,18 +139,49 @@ public class BTreeFile implements DbFile {
 		BTreePageId id = (BTreePageId) page.getId();
 		
 		byte[] data = page.getPageData();
-		RandomAccessFile rf = new RandomAccessFile(f, "rw");
 		if(id.pgcateg() == BTreePageId.ROOT_PTR) {
-			rf.write(data);
-			rf.close();
+			channel.writePage(0, 0, data);
 		}
 		else {
-			rf.seek(BTreeRootPtrPage.getPageSize() + (page.getId().getPageNumber()-1) * BufferPool.getPageSize());
-			rf.write(data);
-			rf.close();
+			channel.writePage(id.getPageNumber(), pageOffset(id.getPageNumber()), data);
 		}
 	}
 	
+	/**
+	 * Serves page reads from a memory mapping of the file, for indexes
+	 * that are read much more often than they are written.  Writes are
+	 * unaffected.
+	 * 
+	 * @see PageChannel#setMapped
+	 */
+	public void setMapped(boolean mapped) {
+		channel.setMapped(mapped);
+	}
+
+	/**
+	 * Returns true if page reads are served from a memory mapping
+	 */
+	public boolean isMapped() {
+		return channel.isMapped();
+	}
+
+	/**
+	 * Turns CRC32C page checksums on or off for this index.  With them on,
+	 * every page read is verified, and readPage fails on a damaged page.
+	 * 
+	 * @see PageChecksums
+	 */
+	public void setChecksums(boolean on) throws IOException {
+		channel.setChecksums(on);
+	}
+
+	/**
+	 * Returns true if this index's pages are checksummed
+	 */
+	public boolean hasChecksums() {
+		return channel.getChecksums() != null;
+	}
+
 	/**
 	 * Returns the number of pages in this BTreeFile.
 	 */
@@ -848,13 +870,8 @@ public class BTreeFile implements DbFile {
 		synchronized(this) {
 			if(f.length() == 0) {
 				// create the root pointer page and the root page
-				BufferedOutputStream bw = new BufferedOutputStream(
-						new FileOutputStream(f, true));
-				byte[] emptyRootPtrData = BTreeRootPtrPage.createEmptyPageData();
-				byte[] emptyLeafData = BTreeLeafPage.createEmptyPageData();
-				bw.write(emptyRootPtrData);
-				bw.write(emptyLeafData);
-				bw.close();
+				channel.append(BTreeRootPtrPage.createEmptyPageData());
+				channel.append(BTreeLeafPage.createEmptyPageData());
 			}
 		}
 
@@ -910,11 +927,7 @@ public class BTreeFile implements DbFile {
 		if(headerId == null) {		
 			synchronized(this) {
 				// create the new page
-				BufferedOutputStream bw = new BufferedOutputStream(
-						new FileOutputStream(f, true));
-				byte[] emptyData = BTreeInternalPage.createEmptyPageData();
-				bw.write(emptyData);
-				bw.close();
+				channel.append(BTreeInternalPage.createEmptyPageData());
 				emptyPageNo = numPages();
 			}
 		}
@@ -945,10 +958,7 @@ public class BTreeFile implements DbFile {
 		BTreePageId newPageId = new BTreePageId(tableid, emptyPageNo, pgcateg);
 		
 		// write empty page to disk
-		RandomAccessFile rf = new RandomAccessFile(f, "rw");
-		rf.seek(BTreeRootPtrPage.getPageSize() + (emptyPageNo-1) * BufferPool.getPageSize());
-		rf.write(BTreePage.createEmptyPageData());
-		rf.close();
+		channel.writePage(emptyPageNo, pageOffset(emptyPageNo), BTreePage.createEmptyPageData());
 		
 		// make sure the page is not in the buffer pool	or in the local cache		
 		Database.getBufferPool().discardPage(newPageId);
@@ -1078,6 +1088,7 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 
 	Iterator<Tuple> it = null;
 	BTreeLeafPage curp = null;
+	ReadAhead readAhead = null;
 
 	TransactionId tid;
 	BTreeFile f;
@@ -1100,6 +1111,9 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 				tid, BTreeRootPtrPage.getId(f.getId()), Permissions.READ_ONLY);
 		BTreePageId root = rootPtr.getRootId();
 		curp = f.findLeafPage(tid, root, Permissions.READ_ONLY, null);
+		readAhead = Database.getBufferPool().readAhead(null, 0);
+		if (readAhead != null)
+			readAhead.accessed(curp);
 		it = curp.iterator();
 	}
 
@@ -1122,6 +1136,8 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 			else {
 				curp = (BTreeLeafPage) Database.getBufferPool().getPage(tid,
 						nextp, Permissions.READ_ONLY);
+				if (readAhead != null)
+					readAhead.accessed(curp);
 				it = curp.iterator();
 				if (!it.hasNext())
 					it = null;
@@ -1148,6 +1164,9 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 		super.close();
 		it = null;
 		curp = null;
+		if (readAhead != null)
+			readAhead.close();
+		readAhead = null;
 	}
 }
 
@@ -1159,6 +1178,7 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
 
 	Iterator<Tuple> it = null;
 	BTreeLeafPage curp = null;
+	ReadAhead readAhead = null;
 
 	TransactionId tid;
 	BTreeFile f;
@@ -1191,6 +1211,9 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
 		else {
 			curp = f.findLeafPage(tid, root, Permissions.READ_ONLY, null);
 		}
+		readAhead = Database.getBufferPool().readAhead(null, 0);
+		if (readAhead != null)
+			readAhead.accessed(curp);
 		it = curp.iterator();
 	}
 
@@ -1231,6 +1254,8 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
 			else {
 				curp = (BTreeLeafPage) Database.getBufferPool().getPage(tid,
 						nextp, Permissions.READ_ONLY);
+				if (readAhead != null)
+					readAhead.accessed(curp);
 				it = curp.iterator();
 			}
 		}
@@ -1252,5 +1277,8 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
 	public void close() {
 		super.close();
 		it = null;
+		if (readAhead != null)
+			readAhead.close();
+		readAhead = null;
 	}
 }
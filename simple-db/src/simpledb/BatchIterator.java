@@ -0,0 +1,22 @@
+package simpledb;
+
+/**
+ * BatchIterator is implemented by operators that can run a batch at a
+ * time: nextBatch returns up to {@link TupleBatch#CAPACITY} tuples in
+ * column form, which saves a call, and often a Tuple, per tuple.  Batch
+ * operators read their children through {@link Batches#of}, so a child
+ * that only runs a tuple at a time is batched for them, and they still
+ * return tuples from next(), so plans can mix the two.
+ * <p>
+ * Between open and close, a caller uses either nextBatch or
+ * hasNext/next, not both.
+ */
+public interface BatchIterator extends OpIterator {
+
+    /**
+     * Returns the next batch of tuples, which is never empty, or null if
+     * there are no more.  The batch belongs to the iterator and is only
+     * valid until the next call; the caller may narrow its selection.
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException;
+}
@@ -0,0 +1,103 @@
+package simpledb;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Adapters between tuple-at-a-time and batch-at-a-time iteration.
+ *
+ * @see BatchIterator
+ */
+public class Batches {
+
+    private Batches() {
+    }
+
+    /**
+     * Returns it if it runs a batch at a time, and otherwise an iterator
+     * that collects its tuples into batches.
+     */
+    public static BatchIterator of(OpIterator it) {
+        if (it instanceof BatchIterator)
+            return (BatchIterator) it;
+        return new Batcher(it);
+    }
+
+    /**
+     * Returns true if the given iterator runs a batch at a time itself,
+     * rather than through an adapter.
+     */
+    public static boolean isNative(OpIterator it) {
+        return it instanceof BatchIterator && !(it instanceof Batcher);
+    }
+
+    /** Collects the tuples of an OpIterator into batches */
+    private static class Batcher implements BatchIterator {
+
+        private static final long serialVersionUID = 1L;
+        private final OpIterator child;
+        private transient TupleBatch batch;
+
+        Batcher(OpIterator child) {
+            this.child = child;
+        }
+
+        public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+            if (batch == null)
+                batch = new TupleBatch(child.getTupleDesc());
+            batch.clear();
+            while (!batch.isFull() && child.hasNext())
+                batch.add(child.next());
+            return batch.size() == 0 ? null : batch;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            child.open();
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            return child.hasNext();
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+            return child.next();
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            child.rewind();
+        }
+
+        public TupleDesc getTupleDesc() {
+            return child.getTupleDesc();
+        }
+
+        public void close() {
+            child.close();
+        }
+    }
+
+    /**
+     * Cursor hands out the tuples of a BatchIterator's batches one at a
+     * time; batch operators use it to implement next().
+     */
+    static class Cursor {
+
+        private final BatchIterator source;
+        private TupleBatch batch;
+        private int pos;
+
+        Cursor(BatchIterator source) {
+            this.source = source;
+        }
+
+        /** Returns the next tuple, or null if there are no more */
+        Tuple next() throws DbException, TransactionAbortedException {
+            while (batch == null || pos == batch.size()) {
+                batch = source.nextBatch();
+                pos = 0;
+                if (batch == null)
+                    return null;
+            }
+            return batch.getTuple(pos++);
+        }
+    }
+}
@@ -3,7 +3,12 @@ package simpledb;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -13,6 +18,21 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
  * locks to read/write the page.
+ * <p>
+ * By default the pool is NO-STEAL/FORCE: pages dirtied by a running
+ * transaction are never evicted, and commit writes all of them out.  In
+ * STEAL/NO-FORCE mode (see {@link #setStealNoForce}) a dirty page may be
+ * evicted once its update is logged, and commit only logs the
+ * transaction's pages and forces the log; the pages are written later, by
+ * eviction, the page writer or flushAllPages.  Either way a page is only
+ * written once the log is forced past its pageLSN, the LSN of the newest
+ * logged update of the page.
+ * <p>
+ * Sequential scans can have pages read ahead of them by a few prefetch
+ * threads (see {@link #setReadAhead}).  Prefetching takes no locks; the
+ * scan still locks each page when it gets to it.  A prefetched page is
+ * only cached if no page was written out or discarded while it was being
+ * read, since the copy read from disk might then be stale.
  * 
  * @Threadsafe , all fields are final
  */
@@ -26,117 +46,58 @@ public class BufferPool {
     other classes. BufferPool should use the numPages argument to the
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
-    private int numPages;
-    private LockManager lockManager;
-    private  ConcurrentHashMap<PageId, Page> pages;
-
-    private class Lock
-    {
-        private int lockType;
-        private TransactionId tid;
 
-        public Lock(int lockType, TransactionId tid)
-        {
-            this.lockType = lockType;
-            this.tid = tid;
-        }
-    }
-
-    private class LockManager
-    {
-        private HashMap<PageId, ConcurrentLinkedQueue<Lock>> mapLock;
-        // private HashMap<TransactionId, LinkedList<PageId>> tidToPid;
-        LockManager()
-        {
-            mapLock = new HashMap<>();
-        }
+    /** Largest number of frames a bulk read ring may occupy. */
+    public static final int BULK_READ_RING_PAGES = 8;
 
-        public synchronized Boolean acquiredLock(TransactionId tid, PageId pid, int lockType)
-        {
-            if(mapLock.get(pid) == null || mapLock.get(pid).size()==0)
-            {
-                mapLock = new HashMap<>();
-                ConcurrentLinkedQueue<Lock> locks = new ConcurrentLinkedQueue<>();
-                Lock lock = new Lock(lockType, tid);
-                locks.add(lock);
-                mapLock.put(pid, locks);
-
-                return true;
-            } else
-            {
-                for(Lock lock: mapLock.get(pid))
-                {
-                    if(lock.tid == tid)
-                    {
-                        if(lock.lockType == lockType)
-                            return true;
-                        else
-                        {
-                            if(lockType == 0)
-                                return true;
-                            else
-                            {
-                                //exclusive lock can't coexist with other locks
-                                if(mapLock.get(pid).size()==1)
-                                {
-                                    lock.lockType=1;
-                                    return true;
-                                }
-                                else
-                                    return false;
-                            }
-                        }
-                    }
-                }
-                //now think tid doesn't have any lock
-                if(Objects.requireNonNull(mapLock.get(pid).peek()).lockType==1)
-                    return false;
-                if(lockType == 0)
-                {
-                    Lock lock = new Lock(0, tid);
-                    mapLock.get(pid).add(lock);
-                    return true;
-                }
-            }
-            return false;
-        }
-
-        public synchronized void releaseLock(PageId pid, TransactionId tid)
-        {
-            ConcurrentLinkedQueue<Lock> locks = mapLock.get(pid);
-            for(Lock lock: locks)
-                if(lock.tid == tid)
-                    locks.remove(lock);
-        }
+    /** Number of threads reading pages ahead of sequential scans. */
+    public static final int PREFETCH_THREADS = 2;
 
-        public synchronized Boolean holdsLock(TransactionId tid, PageId pid) {
-            ConcurrentLinkedQueue<Lock> locks= mapLock.get(pid);
-            for(Lock lock : locks) {
-                if(lock.tid == tid)
-                    return true;
-            }
-            return false;
-        }
-
-        public synchronized Set<PageId> getPid(TransactionId tid) {
-
-            return lockManager.mapLock.keySet();
-        }
+    private int numPages;
+    private LockManager lockManager;
+    private  ConcurrentHashMap<PageId, Page> pages;
+    private final ReplacementPolicy policy;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    /** Resident pages that were read through a ring and not requested otherwise since. */
+    private final ConcurrentHashMap<PageId, BufferRing> ringPages = new ConcurrentHashMap<>();
+    /** Background writer of logged pages; protected by this. */
+    private Thread pageWriter = null;
+    private volatile int pageWriterRate = 0;
+    private final AtomicLong pagesWrittenBack = new AtomicLong();
+    /** The pageLSNs of the cached pages whose logged updates may not be on disk yet. */
+    private final ConcurrentHashMap<PageId, Long> pageLsns = new ConcurrentHashMap<>();
+    private volatile boolean stealNoForce = false;
+    /** Largest read-ahead window, 0 if read-ahead is off; prefetchers protected by this. */
+    private volatile int readAheadPages = 0;
+    private ThreadPoolExecutor prefetchers = null;
+    /** Bumped after every page write or discard that may have changed a page on disk. */
+    private final AtomicLong writeEpoch = new AtomicLong();
+    /** Prefetched pages no scan has asked for yet, with the scan they were read for. */
+    private final ConcurrentHashMap<PageId, ReadAhead> prefetched = new ConcurrentHashMap<>();
+    private final AtomicLong prefetches = new AtomicLong();
+    private final AtomicLong prefetchHits = new AtomicLong();
+    private final AtomicLong prefetchWaste = new AtomicLong();
 
-        public synchronized void commitTransaction(TransactionId tid) {
-            Set<PageId> pageIds = getPid(tid);
-            for(PageId pid: pageIds) {
-                releasePage(tid, pid);
-            }
-        }
-    }
     /**
      * Creates a BufferPool that caches up to numPages pages.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
+        this(numPages, ReplacementPolicy.create(ReplacementPolicy.CLOCK, numPages));
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and picks
+     * eviction victims with the given replacement policy.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy the policy deciding which page to evict when the pool is full
+     */
+    public BufferPool(int numPages, ReplacementPolicy policy) {
         this.numPages = numPages;
+        this.policy = policy;
         lockManager = new LockManager();
         pages = new ConcurrentHashMap<>();
     }
@@ -144,6 +105,20 @@ public class BufferPool {
     public static int getPageSize() {
       return pageSize;
     }
+
+    /**
+     * Switches between NO-STEAL/FORCE (the default) and STEAL/NO-FORCE
+     * buffer management.  STEAL/NO-FORCE relies on the log for both undo
+     * and redo, so it needs recovery to be run after a crash.
+     */
+    public void setStealNoForce(boolean stealNoForce) {
+        this.stealNoForce = stealNoForce;
+    }
+
+    /** Return true if the pool is in STEAL/NO-FORCE mode */
+    public boolean isStealNoForce() {
+        return stealNoForce;
+    }
     
     // THIS FUNCTION SHOULD ONLY BE USED FOR TESTING!!
     public static void setPageSize(int pageSize) {
@@ -172,34 +147,264 @@ public class BufferPool {
      */
     public  Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException {
-        int lockType;
-        // only-read
-        if(perm == Permissions.READ_ONLY)
-            lockType = 0;
-        else
-            lockType = 1;
-        long start = System.currentTimeMillis();
-        long timeOut = new Random().nextInt(2000) + 1000;
-        boolean isSucc = false;
-        while (!isSucc) {
-            long now = System.currentTimeMillis();
-            if (now - start > timeOut)
-                throw new TransactionAbortedException();
-            isSucc = lockManager.acquiredLock(tid, pid, lockType);
+        return getPage(tid, pid, perm, null);
+    }
+
+    /**
+     * Retrieve the specified page with the associated permissions, as part
+     * of a bulk read.  Behaves like {@link #getPage(TransactionId, PageId, Permissions)},
+     * except that a page that has to be read from disk is placed in the given
+     * ring, recycling the frame of the oldest page in the ring once it is full.
+     * Hits through a ring do not count as references for the replacement policy.
+     *
+     * @param tid the ID of the transaction requesting the page
+     * @param pid the ID of the requested page
+     * @param perm the requested permissions on the page
+     * @param ring the scan's ring of frames, or null for a normal access
+     */
+    public  Page getPage(TransactionId tid, PageId pid, Permissions perm, BufferRing ring)
+        throws TransactionAbortedException, DbException {
+        lockManager.acquireLock(tid, pid, perm);
+        Page page = pages.get(pid);
+        if(page != null)
+        {
+            hits.incrementAndGet();
+            ReadAhead ra = prefetched.remove(pid);
+            if(ra != null)
+            {
+                prefetchHits.incrementAndGet();
+                ra.hit();
+            }
+            if(ring == null)
+            {
+                ringPages.remove(pid);
+                policy.pageAccessed(pid);
+            }
+            return page;
+        }
+        misses.incrementAndGet();
+        int tableId = pid.getTableId();
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+        Page newPage = file.readPage(pid);
+        synchronized (this) {
+            // another transaction may have read the page while we were reading it
+            page = pages.get(pid);
+            if(page != null)
+                return page;
+            if(ring != null)
+                recycle(ring, pid);
+            cachePage(newPage);
+            return newPage;
         }
-        if(pages.get(pid)!=null)
+    }
+
+    /**
+     * Returns a ring for a sequential scan over a table of the given size,
+     * or null if the table fits in the pool and should simply be cached.
+     *
+     * @param tablePages the number of pages the scan will read
+     */
+    public BufferRing bulkReadRing(int tablePages) {
+        if(tablePages <= numPages)
+            return null;
+        return new BufferRing(Math.min(BULK_READ_RING_PAGES, Math.max(1, numPages / 4)));
+    }
+
+    /**
+     * Adds pid to the ring and frees the frame of the page it replaces, if
+     * that page is still clean and owned by the ring.
+     */
+    private synchronized void recycle(BufferRing ring, PageId pid) {
+        PageId recycled = ring.add(pid);
+        if(recycled != null && ringPages.remove(recycled, ring))
         {
-            return pages.get(pid);
-        }else
+            Page old = pages.get(recycled);
+            if(old != null && old.isDirty() == null && !pageLsns.containsKey(recycled))
+                removePage(recycled);
+        }
+        ringPages.put(pid, ring);
+    }
+
+    /**
+     * Starts, resizes or (with 0 pages) turns off read-ahead for
+     * sequential scans.
+     *
+     * @param maxPages the largest number of pages read ahead of one scan
+     */
+    public synchronized void setReadAhead(int maxPages) {
+        readAheadPages = Math.max(0, maxPages);
+        if (readAheadPages == 0) {
+            if (prefetchers != null)
+                prefetchers.shutdown();
+            prefetchers = null;
+        } else if (prefetchers == null) {
+            final AtomicInteger threads = new AtomicInteger();
+            prefetchers = new ThreadPoolExecutor(PREFETCH_THREADS, PREFETCH_THREADS,
+                    1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+                        Thread t = new Thread(r, "prefetcher-" + threads.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            prefetchers.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /** Return the largest read-ahead window, or 0 if read-ahead is off */
+    public int getReadAhead() {
+        return readAheadPages;
+    }
+
+    /**
+     * Returns a read-ahead hint for a sequential scan, or null if
+     * read-ahead is off.  A scan through a ring never keeps more pages
+     * ahead than the ring can hold.
+     *
+     * @param ring the scan's ring, or null
+     * @param tablePages the number of pages in the table for a heap scan
+     */
+    public ReadAhead readAhead(BufferRing ring, int tablePages) {
+        int max = Math.min(readAheadPages, ring != null ? ring.size() - 1 : numPages / 2);
+        if (max < 1)
+            return null;
+        return new ReadAhead(this, ring, tablePages, max);
+    }
+
+    /**
+     * Has a prefetch thread read up to count pages for a scan, starting at
+     * start and following the scan order.
+     */
+    void prefetch(ReadAhead ra, PageId start, int count, int gen) {
+        ThreadPoolExecutor executor;
+        synchronized (this) {
+            executor = prefetchers;
+        }
+        try {
+            if (executor != null) {
+                executor.execute(() -> runPrefetch(ra, start, count, gen));
+                return;
+            }
+        } catch (RejectedExecutionException e) {
+            // read-ahead was turned off
+        }
+        ra.finished(gen, start, count);
+    }
+
+    private void runPrefetch(ReadAhead ra, PageId start, int count, int gen) {
+        PageId pid = start;
+        int read = 0;
+        try {
+            while (pid != null && read < count && ra.isCurrent(gen)) {
+                Page page = fetchAhead(ra, pid);
+                if (page == null)
+                    break;
+                read++;
+                pid = ra.successor(page);
+            }
+        } catch (RuntimeException e) {
+            // e.g. the table was dropped; the scan will see for itself
+        } finally {
+            ra.finished(gen, pid, count - read);
+        }
+    }
+
+    /**
+     * Reads a page into the pool without locking it.
+     *
+     * @return the cached page, or null if the copy read had to be dropped
+     */
+    private Page fetchAhead(ReadAhead ra, PageId pid) {
+        Page page = pages.get(pid);
+        if (page != null)
+            return page;
+        long epoch = writeEpoch.get();
+        Page newPage = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+        synchronized (this) {
+            page = pages.get(pid);
+            if (page != null) {
+                prefetchWaste.incrementAndGet(); // read twice
+                return page;
+            }
+            if (writeEpoch.get() != epoch) {
+                prefetchWaste.incrementAndGet(); // may be stale
+                ra.wasted();
+                return null;
+            }
+            try {
+                if (ra.ring() != null)
+                    recycle(ra.ring(), pid);
+                cachePage(newPage);
+            } catch (DbException e) {
+                prefetchWaste.incrementAndGet(); // no room
+                ra.wasted();
+                return null;
+            }
+            prefetched.put(pid, ra);
+            prefetches.incrementAndGet();
+            return newPage;
+        }
+    }
+
+    /** Return the number of pages read into the pool ahead of a scan */
+    public long getPrefetchCount() {
+        return prefetches.get();
+    }
+
+    /** Return the number of prefetched pages a scan found waiting for it */
+    public long getPrefetchHitCount() {
+        return prefetchHits.get();
+    }
+
+    /** Return the number of prefetch reads that were dropped or evicted unused */
+    public long getPrefetchWasteCount() {
+        return prefetchWaste.get();
+    }
+
+    /** Return the number of getPage calls that found the page resident */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /** Return the number of getPage calls that had to read the page from disk */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /** Return the number of deadlocks detected among transactions waiting for locks */
+    public long getDeadlockCount() {
+        return lockManager.getDeadlockCount();
+    }
+
+    /** Return how many deadlocks were broken by aborting the transaction that closed the cycle */
+    public long getRequesterVictimCount() {
+        return lockManager.getRequesterVictimCount();
+    }
+
+    /** Return how many deadlocks were broken by aborting a transaction that was already waiting */
+    public long getWaiterVictimCount() {
+        return lockManager.getWaiterVictimCount();
+    }
+
+    /** Return the replacement policy this buffer pool evicts pages with */
+    public ReplacementPolicy getReplacementPolicy() {
+        return policy;
+    }
+
+    /**
+     * Adds a page to the pool, or replaces the resident version of it,
+     * evicting another page first if the pool is full.
+     */
+    private synchronized void cachePage(Page page) throws DbException {
+        PageId pid = page.getId();
+        if(pages.containsKey(pid))
         {
-            int tableId = pid.getTableId();
-            DbFile file = Database.getCatalog().getDatabaseFile(tableId);
-            Page page = file.readPage(pid);
-            if(numPages==pages.size())
-                evictPage();
             pages.put(pid, page);
-            return page;
+            policy.pageAccessed(pid);
+            return;
         }
+        if(pages.size() >= numPages)
+            evictPage();
+        pages.put(pid, page);
+        policy.pageLoaded(pid);
     }
 
     /**
@@ -212,7 +417,7 @@ public class BufferPool {
      * @param pid the ID of the page to unlock
      */
     public  void releasePage(TransactionId tid, PageId pid) {
-        lockManager.releaseLock(pid, tid);
+        lockManager.releaseLock(tid, pid);
     }
 
     /**
@@ -229,6 +434,14 @@ public class BufferPool {
         return lockManager.holdsLock(tid, p);
     }
 
+    /**
+     * Return true if another transaction holds or waits for a lock on the
+     * specified page, so that fetching it READ_WRITE would block.
+     */
+    public boolean isLockedByOthers(TransactionId tid, PageId p) {
+        return lockManager.isLockedByOthers(tid, p);
+    }
+
     /**
      * Commit or abort a given transaction; release all locks associated to
      * the transaction.
@@ -238,22 +451,30 @@ public class BufferPool {
      */
     public void transactionComplete(TransactionId tid, boolean commit)
         throws IOException {
-        for(PageId pid: lockManager.getPid(tid)) {
+        for(PageId pid: lockManager.getPagesHeldBy(tid)) {
             if(pages.get(pid)==null)
                 continue;
             if(commit) {
-                flushPage(pid);
+                if(stealNoForce)
+                    logIfDirty(pid);
+                else
+                    flushPage(pid);
                 // use current page contents as the before-image
                 // for the next transaction that modifies this page
-                pages.get(pid).setBeforeImage();
+                Page page = pages.get(pid);
+                if(page != null)
+                    page.setBeforeImage();
             }else {
                 Page page = pages.get(pid);
                 if(page!=null && page.isDirty()==tid) {
-                    discardPage(pid);
+                    if(stealNoForce)
+                        restoreBeforeImage(page); // may hold committed updates not on disk
+                    else
+                        discardPage(pid);
                 }
             }
         }
-        lockManager.commitTransaction(tid);
+        lockManager.releaseAllLocks(tid);
     }
 
     /**
@@ -277,8 +498,10 @@ public class BufferPool {
         ArrayList<Page> ArrPages = file.insertTuple(tid, t);
         for(Page page: ArrPages)
         {
+            // a page the file just created was never fetched, so lock it here
+            lockManager.acquireLock(tid, page.getId(), Permissions.READ_WRITE);
             page.markDirty(true, tid);
-            pages.put(page.getId(), page);
+            cachePage(page);
         }
     }
 
@@ -302,8 +525,9 @@ public class BufferPool {
         ArrayList<Page> arrPages = file.deleteTuple(tid, t);
         for(Page p: arrPages)
         {
+            lockManager.acquireLock(tid, p.getId(), Permissions.READ_WRITE);
             p.markDirty(true, tid);
-            pages.put(p.getId(), p);
+            cachePage(p);
         }
         
     }
@@ -328,7 +552,22 @@ public class BufferPool {
         are removed from the cache so they can be reused safely
     */
     public synchronized void discardPage(PageId pid) {
-        pages.remove(pid);
+        removePage(pid);
+        // the caller may have changed the page on disk
+        writeEpoch.incrementAndGet();
+    }
+
+    /** Drops a page from the pool without writing it */
+    private synchronized void removePage(PageId pid) {
+        ringPages.remove(pid);
+        pageLsns.remove(pid);
+        if(pages.remove(pid) != null)
+            policy.pageRemoved(pid);
+        ReadAhead ra = prefetched.remove(pid);
+        if(ra != null) {
+            prefetchWaste.incrementAndGet();
+            ra.wasted();
+        }
     }
 
     /**
@@ -336,40 +575,170 @@ public class BufferPool {
      * @param pid an ID indicating the page to flush
      */
     private synchronized void flushPage(PageId pid) throws IOException {
-        if (!pages.containsKey(pid)) return;
         Page page = pages.get(pid);
-        if(page.isDirty()!=null) {
-            DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
-            // for undo
-            Database.getLogFile().logWrite(page.isDirty(), page.getBeforeImage(), page);
-            Database.getLogFile().force();
-            file.writePage(page);
-            page.markDirty(false, null);
+        if (page == null) return;
+        if (page.isDirty() != null)
+            logPage(page);
+        Long pageLsn = pageLsns.get(pid);
+        if (pageLsn != null)
+            writePage(page, pageLsn);
+    }
+
+    /**
+     * Logs the updates of a dirty page (for undo and redo) and marks it
+     * clean; it still has to be written.
+     */
+    private void logPage(Page page) throws IOException {
+        long lsn = Database.getLogFile().logWrite(page.isDirty(), page.getBeforeImage(), page);
+        pageLsns.put(page.getId(), lsn);
+        page.markDirty(false, null);
+    }
+
+    private synchronized void logIfDirty(PageId pid) throws IOException {
+        Page page = pages.get(pid);
+        if (page != null && page.isDirty() != null)
+            logPage(page);
+    }
+
+    /**
+     * Writes a logged page to its file, forcing the log up to the page's
+     * pageLSN first (write-ahead logging).
+     */
+    private void writePage(Page page, long pageLsn) throws IOException {
+        LogFile log = Database.getLogFile();
+        log.forceTo(pageLsn);
+        Database.getCatalog().getDatabaseFile(page.getId().getTableId()).writePage(page);
+        writeEpoch.incrementAndGet();
+        log.pageWritten(page.getId(), pageLsn);
+        pageLsns.remove(page.getId());
+    }
+
+    /**
+     * Puts back the version of a page from before the transaction that
+     * dirtied it.
+     */
+    private synchronized void restoreBeforeImage(Page page) {
+        PageId pid = page.getId();
+        Page before = page.getBeforeImage();
+        if (before == null) {
+            removePage(pid);
+            return;
         }
+        pages.put(pid, before);
     }
 
     /** Write all pages of the specified transaction to disk.
+     *  The update records of all the pages are logged first and forced
+     *  with a single force, rather than one force per page.  In
+     *  STEAL/NO-FORCE mode the pages are only logged; committing forces
+     *  the log and the pages are written later.
      */
     public synchronized  void flushPages(TransactionId tid) throws IOException {
-        Set<PageId> pageIds = lockManager.getPid(tid);
-        if(pageIds==null) return;
-        for(PageId pageId : pageIds) {
-            flushPage(pageId);
+        ArrayList<Page> logged = new ArrayList<>();
+        for(PageId pageId : lockManager.getPagesHeldBy(tid)) {
+            Page page = pages.get(pageId);
+            if(page != null && page.isDirty() != null) {
+                logPage(page);
+                logged.add(page);
+            }
         }
+        if(logged.isEmpty() || stealNoForce)
+            return;
+        Database.getLogFile().force();
+        for(Page page : logged)
+            writePage(page, pageLsns.get(page.getId()));
     }
 
     /**
      * Discards a page from the buffer pool.
-     * Flushes the page to disk to ensure dirty pages are updated on disk.
+     * The victim is chosen by the replacement policy, preferably among the
+     * clean pages that need not be written.  Dirty pages are never evicted
+     * in NO-STEAL mode; in STEAL mode the victim is flushed first.
      */
     private synchronized void evictPage() throws DbException {
-        for(PageId pid : pages.keySet()) {
-            //NO STEAL
-            if(pages.get(pid).isDirty()==null) {
-                discardPage(pid);
+        PageId victim = policy.chooseVictim(pid -> {
+            Page p = pages.get(pid);
+            return p != null && p.isDirty() == null && !pageLsns.containsKey(pid);
+        });
+        if(victim == null && stealNoForce)
+            victim = policy.chooseVictim(pages::containsKey);
+        if(victim == null)
+            throw new DbException("all pages marked dirty");
+        try {
+            flushPage(victim);
+        } catch (IOException e) {
+            throw new DbException("could not write evicted page: " + e.getMessage());
+        }
+        removePage(victim);
+    }
+
+    /**
+     * Starts, retunes or (with a rate of 0) stops the background page
+     * writer.  The writer trickles out pages in the log's dirty page table
+     * -- pages whose logged updates may not be on disk yet -- oldest
+     * recLSN first, so that checkpoints can move the start of redo
+     * forward without flushing anything themselves.
+     *
+     * @param pagesPerSecond how many pages the writer may write per second
+     */
+    public synchronized void setPageWriterRate(int pagesPerSecond) {
+        pageWriterRate = Math.max(0, pagesPerSecond);
+        if (pageWriterRate == 0) {
+            pageWriter = null;
+        } else if (pageWriter == null) {
+            pageWriter = new Thread(this::runPageWriter, "page-writer");
+            pageWriter.setDaemon(true);
+            pageWriter.start();
+        }
+    }
+
+    /** Return the number of pages the background page writer has written */
+    public long getPagesWrittenBack() {
+        return pagesWrittenBack.get();
+    }
+
+    private void runPageWriter() {
+        Thread self = Thread.currentThread();
+        while (true) {
+            synchronized (this) {
+                if (pageWriter != self)
+                    return;
+            }
+            int rate = pageWriterRate;
+            try {
+                Thread.sleep(Math.max(1, 1000 / Math.max(1, rate)));
+                if (!writeBackOldest()) // nothing to write, back off
+                    Thread.sleep(100);
+            } catch (InterruptedException e) {
                 return;
+            } catch (IOException e) {
+                System.out.println("ERROR IN PAGE WRITER -- IGNORING.");
+                e.printStackTrace();
             }
         }
-        throw new DbException("all pages marked dirty");
+    }
+
+    /**
+     * Writes out the logged page with the oldest recLSN in the log's dirty
+     * page table whose cached copy holds nothing but logged updates.
+     *
+     * @return true if a page was written
+     */
+    synchronized boolean writeBackOldest() throws IOException {
+        PageId oldest = null;
+        long oldestLsn = Long.MAX_VALUE;
+        for (Map.Entry<PageId, Long> e : Database.getLogFile().getDirtyPageTable().entrySet()) {
+            Page page = pages.get(e.getKey());
+            if (page == null || page.isDirty() != null || !pageLsns.containsKey(e.getKey())
+                    || e.getValue() >= oldestLsn)
+                continue;
+            oldest = e.getKey();
+            oldestLsn = e.getValue();
+        }
+        if (oldest == null)
+            return false;
+        writePage(pages.get(oldest), pageLsns.get(oldest));
+        pagesWrittenBack.incrementAndGet();
+        return true;
     }
 }
@@ -0,0 +1,48 @@
+package simpledb;
+
+/**
+ * BufferRing is a bulk-read access hint for the BufferPool.  A sequential
+ * scan over a large table passes its ring to
+ * {@link BufferPool#getPage(TransactionId, PageId, Permissions, BufferRing)};
+ * pages the scan has to read from disk are then confined to a small, private
+ * circle of frames.  Once the ring is full, each new page recycles the frame
+ * of the page read longest ago, so the scan never floods the pool and the
+ * pages that point lookups need stay resident.
+ * <p>
+ * A page read through a ring is adopted by the pool as a normal page as soon
+ * as someone requests it without a ring.
+ *
+ * @see BufferPool#bulkReadRing
+ */
+public class BufferRing {
+
+    private final PageId[] slots;
+    private int next;
+
+    /**
+     * @param size the number of frames the scan may occupy
+     */
+    public BufferRing(int size) {
+        slots = new PageId[Math.max(1, size)];
+        next = 0;
+    }
+
+    /** Return the number of frames in this ring */
+    public int size() {
+        return slots.length;
+    }
+
+    /**
+     * Records that the given page was read into the ring.  Called by the
+     * BufferPool while holding its lock.
+     *
+     * @return the page whose frame is being recycled, or null if the ring
+     *         was not full yet
+     */
+    PageId add(PageId pid) {
+        PageId recycled = slots[next];
+        slots[next] = pid;
+        next = (next + 1) % slots.length;
+        return recycled;
+    }
+}
@@ -0,0 +1,153 @@
+package simpledb;
+
+import java.util.Arrays;
+
+/**
+ * ByteKeyHashTable numbers distinct fixed-width byte string keys, such as
+ * fields in their page format, the way {@link IntHashTable} numbers int
+ * keys: each key added gets the next entry number, and callers keep what
+ * they need per key in arrays indexed by entry.  Keys are copied into one
+ * array, width bytes per entry, and found by open addressing with linear
+ * probing, comparing the bytes only of keys with the same hash.
+ * <p>
+ * Callers whose keys are mostly padding, such as STRING_TYPE fields, can
+ * pass in a hash of just the bytes that matter, computed by
+ * {@link #hash}; a table must then always be given such hashes.
+ *
+ * @see IntHashTable
+ */
+public class ByteKeyHashTable {
+
+    private final int width;
+    // keys by entry, width bytes each, and their hashes
+    private byte[] keys;
+    private int[] hashes;
+    // the slots of the hash table: entry + 1, or 0 if empty
+    private int[] slots;
+    private int mask;
+    private int size;
+
+    /** Creates an empty table for keys of the given number of bytes */
+    public ByteKeyHashTable(int width) {
+        this(width, 16);
+    }
+
+    /** Creates an empty table with room for the given number of keys */
+    public ByteKeyHashTable(int width, int expected) {
+        this.width = width;
+        int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) * 2;
+        slots = new int[capacity];
+        mask = capacity - 1;
+        keys = new byte[capacity / 2 * width];
+        hashes = new int[capacity / 2];
+    }
+
+    /** Returns a hash of the len bytes of key at off */
+    public static int hash(byte[] key, int off, int len) {
+        int h = len;
+        int i = 0;
+        for (; i + 4 <= len; i += 4)
+            h = h * 0x9E3779B1 + Type.readInt(key, off + i);
+        for (; i < len; i++)
+            h = h * 31 + key[off + i];
+        return IntHashTable.hash(h);
+    }
+
+    private boolean matches(int entry, byte[] key, int off) {
+        int base = entry * width;
+        for (int i = 0; i < width; i++)
+            if (keys[base + i] != key[off + i])
+                return false;
+        return true;
+    }
+
+    /** @return the number of bytes in a key */
+    public int width() {
+        return width;
+    }
+
+    /** @return the number of keys in the table */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the array that holds the key of the given entry, at offset
+     * entry * width().  It must not be changed.
+     */
+    public byte[] keys() {
+        return keys;
+    }
+
+    /**
+     * @return the entry of the key in the width bytes of key at off, or
+     *         -1 if it is not in the table
+     */
+    public int find(byte[] key, int off) {
+        return find(key, off, hash(key, off, width));
+    }
+
+    /**
+     * @return the entry of the key in the width bytes of key at off, whose
+     *         hash is h, or -1 if it is not in the table
+     */
+    public int find(byte[] key, int off, int h) {
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            int e = slots[i] - 1;
+            if (e < 0 || (hashes[e] == h && matches(e, key, off)))
+                return e;
+        }
+    }
+
+    /**
+     * Returns the entry of the key in the width bytes of key at off,
+     * adding it as entry size() if it is not in the table.
+     */
+    public int put(byte[] key, int off) {
+        return put(key, off, hash(key, off, width));
+    }
+
+    /**
+     * Returns the entry of the key in the width bytes of key at off, whose
+     * hash is h, adding it as entry size() if it is not in the table.
+     */
+    public int put(byte[] key, int off, int h) {
+        int i = h & mask;
+        for (; ; i = (i + 1) & mask) {
+            int e = slots[i] - 1;
+            if (e < 0)
+                break;
+            if (hashes[e] == h && matches(e, key, off))
+                return e;
+        }
+        if (size == hashes.length) {
+            grow();
+            return put(key, off, h);
+        }
+        System.arraycopy(key, off, keys, size * width, width);
+        hashes[size] = h;
+        slots[i] = ++size;
+        return size - 1;
+    }
+
+    /** Doubles the table, which is kept at most half full */
+    private void grow() {
+        int capacity = slots.length * 2;
+        slots = new int[capacity];
+        mask = capacity - 1;
+        keys = Arrays.copyOf(keys, capacity / 2 * width);
+        hashes = Arrays.copyOf(hashes, capacity / 2);
+        for (int e = 0; e < size; e++) {
+            int i = hashes[e] & mask;
+            while (slots[i] != 0)
+                i = (i + 1) & mask;
+            slots[i] = e + 1;
+        }
+    }
+
+    /** Removes all keys */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+}
@@ -159,6 +159,21 @@ public class Catalog {
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Each line has the form
+     * <pre>name (field type [pk], field type, ...) [option ...]</pre>
+     * where the options following the field list are:
+     * <ul>
+     * <li><tt>mmap</tt> - read the table's pages from a memory mapping
+     * ({@link HeapFile#setMapped})</li>
+     * <li><tt>slotted</tt> - the table's file is in the variable-length
+     * SlottedHeapPage format, as written by <tt>convert -slotted</tt></li>
+     * <li><tt>checksum</tt> - verify every page read against a CRC32C
+     * checksum ({@link HeapFile#setChecksums})</li>
+     * <li><tt>pax</tt> - the table's file is a {@link PaxHeapFile}, in the
+     * column-major PaxHeapPage format, as written by <tt>convert -pax</tt></li>
+     * <li><tt>compressed</tt> - the table's pages are compressed
+     * ({@link CompressedPageStore}), as written by <tt>convert -compressed</tt></li>
+     * </ul>
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -199,7 +214,33 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                String options = line.substring(line.indexOf(")") + 1).trim();
+                boolean mapped = false, slotted = false, pax = false, checksums = false, compressed = false;
+                for (String option : options.isEmpty() ? new String[0] : options.split("\\s+")) {
+                    if (option.toLowerCase().equals("mmap"))
+                        mapped = true;
+                    else if (option.toLowerCase().equals("slotted"))
+                        slotted = true;
+                    else if (option.toLowerCase().equals("pax"))
+                        pax = true;
+                    else if (option.toLowerCase().equals("checksum"))
+                        checksums = true;
+                    else if (option.toLowerCase().equals("compressed"))
+                        compressed = true;
+                    else {
+                        System.out.println("Unknown table option " + option);
+                        System.exit(0);
+                    }
+                }
+                if (slotted && pax) {
+                    System.out.println("Table " + name + " can't be both slotted and pax");
+                    System.exit(0);
+                }
+                File tabFile = new File(baseFolder+"/"+name + ".dat");
+                HeapFile tabHf = pax ? new PaxHeapFile(tabFile, t, compressed)
+                        : new HeapFile(tabFile, t, slotted, compressed);
+                tabHf.setMapped(mapped);
+                tabHf.setChecksums(checksums);
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
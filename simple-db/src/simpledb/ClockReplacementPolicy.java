@@ -0,0 +1,86 @@
+package simpledb;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * CLOCK (second chance) replacement.  Resident pages sit in a circular array
+ * of frames, each with a reference bit that is set on every access.  The
+ * clock hand sweeps the frames, clearing set bits and evicting the first
+ * evictable page whose bit is already clear.
+ *
+ * @see ReplacementPolicy
+ */
+public class ClockReplacementPolicy implements ReplacementPolicy {
+
+    private final ArrayList<PageId> frames;
+    private final ArrayList<Boolean> referenced;
+    private final HashMap<PageId, Integer> frameOf;
+    private final ArrayDeque<Integer> freeFrames;
+    private int hand;
+
+    /**
+     * @param numPages the expected number of frames; the clock grows if more
+     *                 pages are loaded
+     */
+    public ClockReplacementPolicy(int numPages) {
+        frames = new ArrayList<>(numPages);
+        referenced = new ArrayList<>(numPages);
+        frameOf = new HashMap<>();
+        freeFrames = new ArrayDeque<>();
+        hand = 0;
+    }
+
+    public synchronized void pageLoaded(PageId pid) {
+        if (frameOf.containsKey(pid)) {
+            pageAccessed(pid);
+            return;
+        }
+        int frame;
+        if (freeFrames.isEmpty()) {
+            frame = frames.size();
+            frames.add(pid);
+            referenced.add(true);
+        } else {
+            frame = freeFrames.pop();
+            frames.set(frame, pid);
+            referenced.set(frame, true);
+        }
+        frameOf.put(pid, frame);
+    }
+
+    public synchronized void pageAccessed(PageId pid) {
+        Integer frame = frameOf.get(pid);
+        if (frame != null)
+            referenced.set(frame, true);
+    }
+
+    public synchronized void pageRemoved(PageId pid) {
+        Integer frame = frameOf.remove(pid);
+        if (frame == null)
+            return;
+        frames.set(frame, null);
+        referenced.set(frame, false);
+        freeFrames.push(frame);
+    }
+
+    public synchronized PageId chooseVictim(Predicate<PageId> evictable) {
+        int n = frames.size();
+        // two full sweeps: the first may only clear reference bits
+        for (int i = 0; i < 2 * n; i++) {
+            if (hand >= n)
+                hand = 0;
+            int frame = hand++;
+            PageId pid = frames.get(frame);
+            if (pid == null)
+                continue;
+            if (referenced.get(frame)) {
+                referenced.set(frame, false);
+                continue;
+            }
+            if (evictable.test(pid))
+                return pid;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,298 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * CompressedPageStore keeps the pages of a compressed HeapFile.  Each page
+ * is Deflate-compressed and stored as a variable-size extent; a page-offset
+ * map, found through the file header, says where each page's extent is:
+ * <pre>
+ * header:  int magic, int page size, int number of pages,
+ *          int map capacity, long map offset
+ * map:     per page, long extent offset, int compressed length, int extent size
+ * extents: compressed page images
+ * </pre>
+ * A page that is all zeroes has no extent (length 0), and a page that does
+ * not compress is stored as is (length equal to the page size).
+ * <p>
+ * The format is meant for archival tables, where I/O volume dominates.  A
+ * rewritten page goes back into its extent if it still fits and to the
+ * end of the file otherwise, and a map that runs out of room is moved to
+ * the end of the file; the space they leave behind is only reclaimed by
+ * re-encoding the table.
+ * <p>
+ * Decompressed images of recently used pages are kept in a small cache
+ * (see {@link #setCacheSize}), so that a page evicted from the BufferPool
+ * and read again soon after costs neither I/O nor decompression.
+ *
+ * @see HeapFile#isCompressed
+ * @see HeapFileEncoder#compress
+ */
+public class CompressedPageStore {
+
+    static final int MAGIC = 0x43504731; // "CPG1"
+    static final int HEADER_SIZE = 24;
+    static final int ENTRY_SIZE = 16;
+    static final int DEFAULT_CACHE_PAGES = 64;
+
+    private final PageChannel channel;
+    private final int pageSize;
+
+    // protected by lock; reads of pages take the read lock, so that the map
+    // cannot change under them
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int numPages;
+    private int mapCapacity;
+    private long mapOffset;
+    private long[] offsets;
+    private int[] lengths;
+    private int[] spaces;
+
+    // decompressed page images, least recently used first; protected by
+    // itself.  Images are put in only under lock, so that a reader cannot
+    // cache an image that a write has replaced since it was read
+    private final LinkedHashMap<Integer, byte[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private int cacheSize = DEFAULT_CACHE_PAGES;
+
+    private CompressedPageStore(PageChannel channel, int pageSize) {
+        this.channel = channel;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Opens the compressed pages in the given channel's file, which must
+     * have been created by {@link #create}.
+     *
+     * @throws IOException if the file is not a compressed heap file for
+     *         the current page size
+     */
+    public static CompressedPageStore open(PageChannel channel) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        if (channel.read(0, header) != HEADER_SIZE)
+            throw new IOException(channel.getFile() + " is not a compressed heap file");
+        ByteBuffer buf = ByteBuffer.wrap(header);
+        if (buf.getInt() != MAGIC)
+            throw new IOException(channel.getFile() + " is not a compressed heap file");
+        int pageSize = buf.getInt();
+        if (pageSize != BufferPool.getPageSize())
+            throw new IOException(channel.getFile() + " has " + pageSize + " byte pages");
+        CompressedPageStore store = new CompressedPageStore(channel, pageSize);
+        store.numPages = buf.getInt();
+        store.mapCapacity = buf.getInt();
+        store.mapOffset = buf.getLong();
+
+        byte[] map = new byte[store.numPages * ENTRY_SIZE];
+        if (map.length > 0 && channel.read(store.mapOffset, map) != map.length)
+            throw new IOException(channel.getFile() + " has a truncated page map");
+        buf = ByteBuffer.wrap(map);
+        store.allocate(store.mapCapacity);
+        for (int i = 0; i < store.numPages; i++) {
+            store.offsets[i] = buf.getLong();
+            store.lengths[i] = buf.getInt();
+            store.spaces[i] = buf.getInt();
+        }
+        return store;
+    }
+
+    /**
+     * Creates an empty compressed heap file in the given channel's file,
+     * with room in the map for the given number of pages before it has to
+     * move.
+     */
+    public static CompressedPageStore create(PageChannel channel, int mapCapacity) throws IOException {
+        CompressedPageStore store = new CompressedPageStore(channel, BufferPool.getPageSize());
+        store.mapCapacity = Math.max(16, mapCapacity);
+        store.mapOffset = HEADER_SIZE;
+        store.allocate(store.mapCapacity);
+        channel.write(HEADER_SIZE, new byte[store.mapCapacity * ENTRY_SIZE]);
+        store.writeHeader();
+        return store;
+    }
+
+    private void allocate(int capacity) {
+        offsets = offsets == null ? new long[capacity] : Arrays.copyOf(offsets, capacity);
+        lengths = lengths == null ? new int[capacity] : Arrays.copyOf(lengths, capacity);
+        spaces = spaces == null ? new int[capacity] : Arrays.copyOf(spaces, capacity);
+    }
+
+    private void writeHeader() throws IOException {
+        channel.write(0, ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(pageSize)
+                .putInt(numPages).putInt(mapCapacity).putLong(mapOffset).array());
+    }
+
+    private void writeEntry(int pgNo) throws IOException {
+        channel.write(mapOffset + (long) pgNo * ENTRY_SIZE, ByteBuffer.allocate(ENTRY_SIZE)
+                .putLong(offsets[pgNo]).putInt(lengths[pgNo]).putInt(spaces[pgNo]).array());
+    }
+
+    /** Return the number of pages in the file */
+    public int numPages() {
+        lock.readLock().lock();
+        try {
+            return numPages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Return the number of bytes the compressed pages take, without the map */
+    public long storedBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (int i = 0; i < numPages; i++)
+                bytes += lengths[i];
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets how many decompressed page images are cached; 0 turns the cache
+     * off.
+     */
+    public void setCacheSize(int pages) {
+        synchronized (cache) {
+            cacheSize = pages;
+            trimCache();
+        }
+    }
+
+    private void trimCache() {
+        while (cache.size() > cacheSize)
+            cache.remove(cache.keySet().iterator().next());
+    }
+
+    private void cachePut(int pgNo, byte[] data) {
+        synchronized (cache) {
+            if (cacheSize == 0)
+                return;
+            cache.put(pgNo, data.clone());
+            trimCache();
+        }
+    }
+
+    /**
+     * Reads and decompresses page pgNo.  A page past the end of the file
+     * reads as zeroes, as from a raw heap file.
+     *
+     * @return a new array holding the page image
+     */
+    public byte[] read(int pgNo) throws IOException {
+        synchronized (cache) {
+            byte[] cached = cache.get(pgNo);
+            if (cached != null)
+                return cached.clone();
+        }
+        lock.readLock().lock();
+        try {
+            if (pgNo >= numPages || lengths[pgNo] == 0)
+                return new byte[pageSize];
+            byte[] stored = new byte[lengths[pgNo]];
+            if (channel.read(offsets[pgNo], stored) != stored.length)
+                throw new IOException("truncated extent for page " + pgNo + " of " + channel.getFile());
+            byte[] data = stored.length == pageSize ? stored : inflate(pgNo, stored);
+            cachePut(pgNo, data);
+            return data;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private byte[] inflate(int pgNo, byte[] stored) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            byte[] data = new byte[pageSize];
+            int n = inflater.inflate(data);
+            if (n != pageSize || !inflater.finished())
+                throw new IOException("corrupt extent for page " + pgNo + " of " + channel.getFile());
+            return data;
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt extent for page " + pgNo + " of " + channel.getFile(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Return the stored form of a page image, which is empty for a page of zeroes */
+    static byte[] deflate(byte[] data) {
+        boolean zero = true;
+        for (int i = 0; i < data.length && zero; i++)
+            zero = data[i] == 0;
+        if (zero)
+            return new byte[0];
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            // anything that does not fit in less than a page is stored raw
+            byte[] out = new byte[data.length - 1];
+            int n = deflater.deflate(out);
+            return deflater.finished() ? Arrays.copyOf(out, n) : data.clone();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Compresses and writes page pgNo, which may be the page just past the
+     * end of the file.
+     */
+    public void write(int pgNo, byte[] data) throws IOException {
+        byte[] stored = deflate(data);
+        lock.writeLock().lock();
+        try {
+            if (pgNo > numPages)
+                throw new IOException("page " + pgNo + " is past the end of " + channel.getFile());
+            if (pgNo == numPages) {
+                if (numPages == mapCapacity)
+                    moveMap();
+                offsets[pgNo] = 0;
+                spaces[pgNo] = 0;
+            }
+            if (stored.length > spaces[pgNo]) {
+                // doesn't fit where the page was; put it at the end
+                offsets[pgNo] = channel.size();
+                spaces[pgNo] = stored.length;
+            }
+            if (stored.length > 0)
+                channel.write(offsets[pgNo], stored);
+            lengths[pgNo] = stored.length;
+            writeEntry(pgNo);
+            if (pgNo == numPages) {
+                numPages++;
+                writeHeader();
+            }
+            synchronized (cache) {
+                if (cache.containsKey(pgNo))
+                    cache.put(pgNo, data.clone());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Moves the map to the end of the file with twice the room */
+    private void moveMap() throws IOException {
+        int capacity = mapCapacity * 2;
+        allocate(capacity);
+        ByteBuffer map = ByteBuffer.allocate(capacity * ENTRY_SIZE);
+        for (int i = 0; i < numPages; i++)
+            map.putLong(offsets[i]).putInt(lengths[i]).putInt(spaces[i]);
+        long offset = channel.size();
+        channel.write(offset, map.array());
+        mapOffset = offset;
+        mapCapacity = capacity;
+        writeHeader();
+    }
+}
@@ -21,12 +21,34 @@ public class Database {
     private final static String LOGFILENAME = "log";
     private final LogFile _logfile;
 
+    /** System property naming the buffer pool replacement policy, see ReplacementPolicy#create */
+    public final static String REPLACEMENT_POLICY_PROPERTY = "simpledb.replacementPolicy";
+    private final String _replacementPolicy;
+
+    /** System properties setting up group commit, see LogFile#setGroupCommit */
+    public final static String GROUP_COMMIT_MICROS_PROPERTY = "simpledb.groupCommitMicros";
+    public final static String GROUP_COMMIT_BYTES_PROPERTY = "simpledb.groupCommitBytes";
+    /** System properties setting up background checkpoints, see LogFile#setCheckpointInterval */
+    public final static String CHECKPOINT_MILLIS_PROPERTY = "simpledb.checkpointMillis";
+    public final static String CHECKPOINT_BYTES_PROPERTY = "simpledb.checkpointBytes";
+    /** System property setting the background page writer's rate, see BufferPool#setPageWriterRate */
+    public final static String PAGE_WRITER_RATE_PROPERTY = "simpledb.pageWriterRate";
+    /** System property switching the buffer pool to STEAL/NO-FORCE, see BufferPool#setStealNoForce */
+    public final static String STEAL_NO_FORCE_PROPERTY = "simpledb.stealNoForce";
+    /** System property setting the largest read-ahead window of scans, see BufferPool#setReadAhead */
+    public final static String READ_AHEAD_PROPERTY = "simpledb.readAhead";
+
     private Database() {
         _catalog = new Catalog();
-        _bufferpool = new BufferPool(BufferPool.DEFAULT_PAGES);
+        _replacementPolicy = System.getProperty(REPLACEMENT_POLICY_PROPERTY, ReplacementPolicy.CLOCK);
+        _bufferpool = newBufferPool(BufferPool.DEFAULT_PAGES, _replacementPolicy);
         LogFile tmp = null;
         try {
             tmp = new LogFile(new File(LOGFILENAME));
+            tmp.setGroupCommit(Long.getLong(GROUP_COMMIT_MICROS_PROPERTY, 0),
+                    Long.getLong(GROUP_COMMIT_BYTES_PROPERTY, 0));
+            tmp.setCheckpointInterval(Long.getLong(CHECKPOINT_MILLIS_PROPERTY, 0),
+                    Long.getLong(CHECKPOINT_BYTES_PROPERTY, 0));
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(1);
@@ -55,11 +77,19 @@ public class Database {
      * return it
      */
     public static BufferPool resetBufferPool(int pages) {
+        return resetBufferPool(pages, _instance.get()._replacementPolicy);
+    }
+
+    /**
+     * Method used for testing -- create a new instance of the buffer pool
+     * using the named replacement policy and return it
+     */
+    public static BufferPool resetBufferPool(int pages, String replacementPolicy) {
         java.lang.reflect.Field bufferPoolF=null;
         try {
             bufferPoolF = Database.class.getDeclaredField("_bufferpool");
             bufferPoolF.setAccessible(true);
-            bufferPoolF.set(_instance.get(), new BufferPool(pages));
+            bufferPoolF.set(_instance.get(), newBufferPool(pages, replacementPolicy));
         } catch (NoSuchFieldException e) {
             e.printStackTrace();
         } catch (SecurityException e) {
@@ -73,6 +103,14 @@ public class Database {
         return _instance.get()._bufferpool;
     }
 
+    private static BufferPool newBufferPool(int pages, String replacementPolicy) {
+        BufferPool bp = new BufferPool(pages, ReplacementPolicy.create(replacementPolicy, pages));
+        bp.setPageWriterRate(Integer.getInteger(PAGE_WRITER_RATE_PROPERTY, 0));
+        bp.setStealNoForce(Boolean.getBoolean(STEAL_NO_FORCE_PROPERTY));
+        bp.setReadAhead(Integer.getInteger(READ_AHEAD_PROPERTY, 0));
+        return bp;
+    }
+
     // reset the database, used for unit tests only.
     public static void reset() {
         _instance.set(new Database());
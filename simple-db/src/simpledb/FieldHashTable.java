@@ -0,0 +1,88 @@
+package simpledb;
+
+/**
+ * FieldHashTable numbers the distinct values of fields of one type, like
+ * {@link IntHashTable}: INT_TYPE values are kept in an IntHashTable, and
+ * STRING_TYPE values in a ByteKeyHashTable, in their page format and hashed
+ * by their length and characters only.  INT_TYPE values can be looked up
+ * as ints, without a Field.
+ *
+ * @see IntegerAggregator
+ * @see JoinHashTable
+ */
+class FieldHashTable {
+
+    private final Type type;
+    private final IntHashTable ints;
+    private final ByteKeyHashTable bytes;
+    // a STRING_TYPE key in page format
+    private final byte[] scratch;
+
+    FieldHashTable(Type type) {
+        this.type = type;
+        if (type == Type.INT_TYPE) {
+            ints = new IntHashTable();
+            bytes = null;
+            scratch = null;
+        } else {
+            ints = null;
+            bytes = new ByteKeyHashTable(type.getLen());
+            scratch = new byte[type.getLen()];
+        }
+    }
+
+    /** @return the type of the keys */
+    Type getType() {
+        return type;
+    }
+
+    /** @return the number of keys */
+    int size() {
+        return ints != null ? ints.size() : bytes.size();
+    }
+
+    /** Puts a STRING_TYPE key into scratch, and returns its hash */
+    private int serialize(Field key) {
+        type.serialize(key, scratch, 0);
+        return ByteKeyHashTable.hash(scratch, 0, 4 + Type.readInt(scratch, 0));
+    }
+
+    /** @return the entry of key, or -1 if it is not in the table */
+    int find(Field key) {
+        if (ints != null)
+            return ints.find(((IntField) key).getValue());
+        return bytes.find(scratch, 0, serialize(key));
+    }
+
+    /** @return the entry of the INT_TYPE key, or -1 if it is not in the table */
+    int find(int key) {
+        return ints.find(key);
+    }
+
+    /** Returns the entry of key, adding it as entry size() if it is not in the table */
+    int put(Field key) {
+        if (ints != null)
+            return ints.put(((IntField) key).getValue());
+        return bytes.put(scratch, 0, serialize(key));
+    }
+
+    /** Returns the entry of the INT_TYPE key, adding it if it is not in the table */
+    int put(int key) {
+        return ints.put(key);
+    }
+
+    /** @return the key of the given entry */
+    Field key(int entry) {
+        if (ints != null)
+            return new IntField(ints.key(entry));
+        return type.parse(bytes.keys(), entry * bytes.width());
+    }
+
+    /** Removes all keys */
+    void clear() {
+        if (ints != null)
+            ints.clear();
+        else
+            bytes.clear();
+    }
+}
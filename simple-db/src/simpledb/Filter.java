@@ -3,14 +3,19 @@ package simpledb;
 import java.util.*;
 
 /**
- * Filter is an operator that implements a relational select.
+ * Filter is an operator that implements a relational select.  Over a child
+ * that runs a batch at a time, it filters whole batches, comparing an int
+ * column with a constant in a tight loop over the column.
  */
-public class Filter extends Operator {
+public class Filter extends Operator implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
     private Predicate predicate;
     private OpIterator child;
     private OpIterator[] opIterators;
+    private transient BatchIterator input;
+    // next() goes through batches when the child produces them itself
+    private transient Batches.Cursor cursor;
     /**
      * Constructor accepts a predicate to apply and a child operator to read
      * tuples to filter from.
@@ -37,6 +42,8 @@ public class Filter extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child.open();
+        input = Batches.of(child);
+        cursor = Batches.isNative(child) ? new Batches.Cursor(this) : null;
         super.open();
     }
 
@@ -61,6 +68,8 @@ public class Filter extends Operator {
      */
     protected Tuple fetchNext() throws NoSuchElementException,
             TransactionAbortedException, DbException {
+        if (cursor != null)
+            return cursor.next();
         while (child.hasNext()){
             Tuple tuple = child.next();
             if(predicate.filter(tuple))
@@ -69,6 +78,67 @@ public class Filter extends Operator {
         return null;
     }
 
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        TupleBatch batch;
+        while ((batch = input.nextBatch()) != null) {
+            select(batch);
+            if (batch.size() > 0)
+                return batch;
+        }
+        return null;
+    }
+
+    /** Narrows the selection of the batch to the tuples that pass the predicate */
+    private void select(TupleBatch batch) {
+        int col = predicate.getField(), n = batch.size(), kept = 0;
+        int[] sel = batch.selection();
+        Field operand = predicate.getOperand();
+        if (batch.getTupleDesc().getFieldType(col) != Type.INT_TYPE || !(operand instanceof IntField)) {
+            for (int i = 0; i < n; i++) {
+                if (batch.getField(col, sel[i]).compare(predicate.getOp(), operand))
+                    sel[kept++] = sel[i];
+            }
+            batch.setSize(kept);
+            return;
+        }
+        int[] values = batch.getInts(col);
+        int v = ((IntField) operand).getValue();
+        switch (predicate.getOp()) {
+        case EQUALS:
+        case LIKE:
+            for (int i = 0; i < n; i++)
+                if (values[sel[i]] == v)
+                    sel[kept++] = sel[i];
+            break;
+        case NOT_EQUALS:
+            for (int i = 0; i < n; i++)
+                if (values[sel[i]] != v)
+                    sel[kept++] = sel[i];
+            break;
+        case GREATER_THAN:
+            for (int i = 0; i < n; i++)
+                if (values[sel[i]] > v)
+                    sel[kept++] = sel[i];
+            break;
+        case GREATER_THAN_OR_EQ:
+            for (int i = 0; i < n; i++)
+                if (values[sel[i]] >= v)
+                    sel[kept++] = sel[i];
+            break;
+        case LESS_THAN:
+            for (int i = 0; i < n; i++)
+                if (values[sel[i]] < v)
+                    sel[kept++] = sel[i];
+            break;
+        case LESS_THAN_OR_EQ:
+            for (int i = 0; i < n; i++)
+                if (values[sel[i]] <= v)
+                    sel[kept++] = sel[i];
+            break;
+        }
+        batch.setSize(kept);
+    }
+
     @Override
     public OpIterator[] getChildren() {
         opIterators[0] = child;
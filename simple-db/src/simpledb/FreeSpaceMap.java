@@ -0,0 +1,185 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap records which pages of a HeapFile have a free slot, so that
+ * inserts go straight to such a page instead of walking the file from page
+ * 0.  It is a bitmap with one bit per heap page, kept in memory and written
+ * through to a sidecar file next to the heap file (<tt>&lt;file&gt;.fsm</tt>):
+ * <pre>
+ * int magic, int number of heap pages, bitmap bytes
+ * </pre>
+ * The map is only a hint and is not logged.  An insert checks the page it
+ * was pointed at and clears its bit if the page turns out to be full.  A
+ * sidecar that does not match the heap file's length, after a crash or for
+ * a file written by other means, is rebuilt by reading the heap pages.
+ * The sidecar of a heap file in the temporary directory is deleted when
+ * the JVM exits.
+ * <p>
+ * Each transaction starts its search at its own place in the map, so that
+ * concurrent inserters end up on different pages.
+ */
+public class FreeSpaceMap {
+
+    static final int MAGIC = 0x46534d31; // "FSM1"
+    static final int HEADER_SIZE = 8;
+
+    private final HeapFile hf;
+    private final File file;
+    private final PageChannel channel;
+
+    // all protected by this
+    private final BitSet hasSpace = new BitSet();
+    private int pages;
+
+    /**
+     * Opens the free space map of the given heap file, rebuilding it if it
+     * is missing or out of date.
+     */
+    FreeSpaceMap(HeapFile hf) throws IOException {
+        this.hf = hf;
+        this.file = new File(hf.getFile().getPath() + ".fsm");
+        this.channel = new PageChannel(file);
+        // a scratch table, such as a test's, is deleted on exit; its map
+        // goes with it, since a missing map is just rebuilt
+        if (inTempDir(hf.getFile()))
+            file.deleteOnExit();
+        if (!load())
+            rebuild();
+    }
+
+    private static boolean inTempDir(File f) throws IOException {
+        File tmp = new File(System.getProperty("java.io.tmpdir")).getCanonicalFile();
+        return tmp.equals(f.getCanonicalFile().getParentFile());
+    }
+
+    /** Return the sidecar file the map is stored in */
+    public File getFile() {
+        return file;
+    }
+
+    private boolean load() throws IOException {
+        int heapPages = hf.numPages();
+        if (!file.exists() || file.length() != HEADER_SIZE + bitmapBytes(heapPages))
+            return false;
+        byte[] data = new byte[(int) file.length()];
+        if (channel.read(0, data) != data.length)
+            return false;
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        if (buf.getInt() != MAGIC || buf.getInt() != heapPages)
+            return false;
+        hasSpace.clear();
+        hasSpace.or(BitSet.valueOf(buf));
+        pages = heapPages;
+        return true;
+    }
+
+    private synchronized void rebuild() throws IOException {
+        channel.close();
+        file.delete();
+        hasSpace.clear();
+        pages = 0;
+        writePageCount();
+        sync();
+    }
+
+    private static int bitmapBytes(int pages) {
+        return (pages + 7) / 8;
+    }
+
+    /**
+     * Takes in heap pages added to the file behind the map's back, reading
+     * them to find out whether they have room.
+     */
+    synchronized void sync() throws IOException {
+        int heapPages = hf.numPages();
+        if (heapPages <= pages)
+            return;
+        for (int i = pages; i < heapPages; i++) {
+            HeapPage p = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), i));
+            hasSpace.set(i, p != null && p.getNumEmptySlots() > 0);
+        }
+        int old = pages;
+        pages = heapPages;
+        writePageCount();
+        for (int i = old; i < heapPages; i += 8)
+            writeBits(i);
+    }
+
+    /** Return the number of heap pages the map covers */
+    public synchronized int numPages() {
+        return pages;
+    }
+
+    /** Return true if the map believes the given page has a free slot */
+    public synchronized boolean hasSpace(int pgNo) {
+        return hasSpace.get(pgNo);
+    }
+
+    /**
+     * Returns where the given transaction starts looking for a page with
+     * room, spreading transactions over the pages that have it.
+     */
+    public synchronized int startFor(TransactionId tid) {
+        if (pages == 0)
+            return 0;
+        long h = tid.getId() * 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(h >>> 16, (long) pages);
+    }
+
+    /**
+     * Returns the first page at or after from that has a free slot, or -1
+     * if there is none.
+     */
+    public synchronized int nextWithSpace(int from) {
+        int next = hasSpace.nextSetBit(from);
+        return next >= 0 && next < pages ? next : -1;
+    }
+
+    /**
+     * Records whether the given page has a free slot.
+     */
+    public synchronized void setHasSpace(int pgNo, boolean space) throws IOException {
+        if (pgNo >= pages) {
+            sync();
+            if (pgNo >= pages)
+                return;
+        }
+        if (hasSpace.get(pgNo) == space)
+            return;
+        hasSpace.set(pgNo, space);
+        writeBits(pgNo);
+    }
+
+    /**
+     * Records that the heap file was extended by one empty page.
+     */
+    synchronized void pageAdded(int pgNo) throws IOException {
+        if (pgNo != pages) {
+            sync();
+            return;
+        }
+        pages++;
+        hasSpace.set(pgNo);
+        writePageCount();
+        writeBits(pgNo);
+    }
+
+    private void writePageCount() throws IOException {
+        channel.write(0, ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(pages).array());
+    }
+
+    /** Writes the bitmap byte holding the given page's bit */
+    private void writeBits(int pgNo) throws IOException {
+        int first = pgNo & ~7;
+        byte b = 0;
+        for (int i = 0; i < 8; i++) {
+            if (hasSpace.get(first + i))
+                b |= 1 << i;
+        }
+        channel.write(HEADER_SIZE + first / 8, new byte[] { b });
+    }
+}
@@ -1,11 +1,20 @@
 package simpledb;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
- * The Join operator implements the relational join operation.
+ * The HashEquiJoin operator implements an equality join as a hybrid hash
+ * join: it builds a hash table of child1 and probes it with child2.  If
+ * child1 has more tuples than the memory budget (see
+ * {@link #setMemoryBudget}), the join splits both inputs into partitions
+ * by the hash of their keys, keeps as many partitions of child1 in memory
+ * as fit, and spills the rest of both inputs to SpillFiles, which are then
+ * joined partition by partition, partitioning again if need be.  Each
+ * child is read once, and the tuples of spilled partitions are written
+ * and read once more per level of partitioning.
  */
-public class HashEquiJoin extends Operator {
+public class HashEquiJoin extends Operator implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
     private JoinPredicate pred;
@@ -50,51 +59,352 @@ public class HashEquiJoin extends Operator {
 	return this.child2.getTupleDesc().getFieldName(this.pred.getField2());
     }
     
-    HashMap<Object, ArrayList<Tuple>> map = new HashMap<Object, ArrayList<Tuple>>();
+    // the tuples of child1 in memory
+    private transient JoinHashTable table;
+
+    /** The default number of child1 tuples kept in memory */
     public final static int MAP_SIZE = 20000;
 
-    private boolean loadMap() throws DbException, TransactionAbortedException {
-        int cnt = 0;
-        map.clear();
-        while (child1.hasNext()) {
-            t1 = child1.next();
-            ArrayList<Tuple> list = map.get(t1.getField(pred.getField1()));
-            if (list == null) {
-                list = new ArrayList<Tuple>();
-                map.put(t1.getField(pred.getField1()), list);
+    // each level of partitioning splits a spilled partition PARTITIONS ways
+    // on the next PARTITION_BITS of the key's hash; a partition still too
+    // big after MAX_LEVELS is joined in chunks instead
+    static final int PARTITION_BITS = 4;
+    static final int PARTITIONS = 1 << PARTITION_BITS;
+    static final int MAX_LEVELS = 3;
+
+    private int budget = MAP_SIZE;
+
+    /**
+     * Sets the number of child1 tuples the join keeps in memory; if child1
+     * has more, partitions of both inputs are spilled to disk.
+     */
+    public void setMemoryBudget(int tuples) {
+        assert tuples > 0;
+        budget = tuples;
+    }
+
+    /** A build and a probe input to join, either the children or a spilled partition of them */
+    private static class Job {
+        final OpIterator build, probe;
+        final int level;
+        final SpillFile buildFile, probeFile;
+
+        Job(OpIterator build, OpIterator probe) {
+            this.build = build;
+            this.probe = probe;
+            this.level = 0;
+            this.buildFile = null;
+            this.probeFile = null;
+        }
+
+        Job(SpillFile buildFile, SpillFile probeFile, int level) {
+            this.build = buildFile.iterator();
+            this.probe = probeFile.iterator();
+            this.level = level;
+            this.buildFile = buildFile;
+            this.probeFile = probeFile;
+        }
+
+        void discard() {
+            if (buildFile != null) {
+                build.close();
+                probe.close();
+                buildFile.delete();
+                probeFile.delete();
             }
-            list.add(t1);
-            if (cnt++ == MAP_SIZE)
-                return true;
+        }
+    }
+
+    // the job being joined, or null when the join is done, and the spilled
+    // partitions still to join
+    private transient Job job;
+    private transient ArrayDeque<Job> jobs;
+    // the partitions of the job spilled to disk, null for those in table
+    private transient SpillFile[] buildSpills, probeSpills;
+    private transient int spilled;
+    // true if the job is too skewed to partition, and its build side is
+    // loaded into table a chunk at a time
+    private transient boolean chunked;
+    // the number of tuples written to spill files since open
+    transient long spilledTuples;
+
+    /** Returns the partition of a key, by its hashCode */
+    private static int partition(int hash, int level) {
+        int h = hash * 0x9E3779B9;
+        return (h >>> (32 - PARTITION_BITS * (level + 1))) & (PARTITIONS - 1);
+    }
+
+    private Type keyType() {
+        // comboTD starts with the fields of child1
+        return comboTD.getFieldType(pred.getField1());
+    }
+
+    private boolean intKeys() {
+        return keyType() == Type.INT_TYPE;
+    }
+
+    private void spill(SpillFile f, Tuple t) throws DbException {
+        try {
+            f.add(t);
+        } catch (IOException e) {
+            throw new DbException("could not spill join input: " + e.getMessage());
+        }
+        spilledTuples++;
+    }
+
+    /**
+     * Makes j the job being joined and loads its build side, spilling
+     * the partitions that do not fit in memory.
+     */
+    private void start(Job j) throws DbException, TransactionAbortedException {
+        job = j;
+        if (j.buildFile != null) {
+            j.build.open();
+            j.probe.open();
+        }
+        probes = Batches.of(j.probe);
+        probe = null;
+        match = -1;
+        buildSpills = new SpillFile[PARTITIONS];
+        probeSpills = new SpillFile[PARTITIONS];
+        spilled = 0;
+        chunked = j.level == MAX_LEVELS;
+        if (chunked) {
+            loadChunk();
+            return;
+        }
+
+        if (table == null)
+            table = new JoinHashTable(keyType());
+        table.clear();
+        int[] counts = new int[PARTITIONS];
+        int resident = 0;
+        while (j.build.hasNext()) {
+            Tuple t = j.build.next();
+            Field key = t.getField(pred.getField1());
+            int p = partition(key.hashCode(), j.level);
+            if (buildSpills[p] != null) {
+                spill(buildSpills[p], t);
+                continue;
+            }
+            table.add(key, t);
+            counts[p]++;
+            if (++resident > budget) {
+                // out of memory: spill the biggest partition still in it
+                int big = 0;
+                for (int i = 1; i < PARTITIONS; i++)
+                    if (counts[i] > counts[big])
+                        big = i;
+                spillPartition(big);
+                resident -= counts[big];
+                counts[big] = 0;
+            }
+        }
+    }
+
+    private void spillPartition(int p) throws DbException {
+        try {
+            buildSpills[p] = new SpillFile(child1.getTupleDesc());
+            probeSpills[p] = new SpillFile(child2.getTupleDesc());
+        } catch (IOException e) {
+            throw new DbException("could not spill join input: " + e.getMessage());
+        }
+        spilled++;
+        // the table cannot remove tuples, so keep the others in a new one
+        JoinHashTable kept = new JoinHashTable(keyType());
+        for (int i = 0; i < table.size(); i++) {
+            Tuple t = table.tuple(i);
+            Field key = t.getField(pred.getField1());
+            if (partition(key.hashCode(), job.level) == p)
+                spill(buildSpills[p], t);
+            else
+                kept.add(key, t);
+        }
+        table = kept;
+    }
+
+    /** Loads the next budget tuples of a chunked job's build side into table */
+    private boolean loadChunk() throws DbException, TransactionAbortedException {
+        if (table == null)
+            table = new JoinHashTable(keyType());
+        table.clear();
+        int cnt = 0;
+        while (cnt < budget && job.build.hasNext()) {
+            Tuple t = job.build.next();
+            table.add(t.getField(pred.getField1()), t);
+            cnt++;
         }
         return cnt > 0;
+    }
 
+    /**
+     * Returns the spilled partition a probe key, given by its hashCode,
+     * belongs to, or -1 if its matches are in table.
+     */
+    private int spilledPartition(int hash) {
+        if (spilled == 0)
+            return -1;
+        int p = partition(hash, job.level);
+        return probeSpills[p] != null ? p : -1;
+    }
+
+    /**
+     * Moves on once the probe side of the job is exhausted: to the next
+     * chunk of a chunked job, or else to the next spilled partition.
+     *
+     * @return false if the join is done
+     */
+    private boolean nextPass() throws DbException, TransactionAbortedException {
+        probe = null;
+        match = -1;
+        if (chunked && loadChunk()) {
+            job.probe.rewind();
+            return true;
+        }
+        for (int p = 0; p < PARTITIONS; p++) {
+            if (buildSpills[p] == null)
+                continue;
+            try {
+                buildSpills[p].finish();
+                probeSpills[p].finish();
+            } catch (IOException e) {
+                throw new DbException("could not spill join input: " + e.getMessage());
+            }
+            if (probeSpills[p].size() > 0) {
+                jobs.push(new Job(buildSpills[p], probeSpills[p], job.level + 1));
+            } else {
+                buildSpills[p].delete();
+                probeSpills[p].delete();
+            }
+            buildSpills[p] = probeSpills[p] = null;
+        }
+        job.discard();
+        job = null;
+        table.clear();
+        if (jobs.isEmpty())
+            return false;
+        start(jobs.pop());
+        return true;
+    }
+
+    /** Deletes all spill files */
+    private void discard() {
+        if (job != null) {
+            for (int p = 0; p < PARTITIONS; p++) {
+                if (buildSpills[p] != null) {
+                    buildSpills[p].delete();
+                    probeSpills[p].delete();
+                }
+            }
+            job.discard();
+            job = null;
+        }
+        if (jobs != null) {
+            for (Job j : jobs)
+                j.discard();
+            jobs.clear();
+        }
+        buildSpills = probeSpills = null;
+        table = null;
     }
 
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child1.open();
         child2.open();
-        loadMap();
+        jobs = new ArrayDeque<Job>();
+        spilledTuples = 0;
+        try {
+            start(new Job(child1, child2));
+        } catch (DbException | TransactionAbortedException | RuntimeException e) {
+            discard();
+            throw e;
+        }
         super.open();
     }
 
     public void close() {
         super.close();
+        discard();
         child2.close();
         child1.close();
         this.t1=null;
         this.t2=null;
-        this.listIt=null;
-        this.map.clear();
+        this.match=-1;
+        this.probes=null;
+        this.probe=null;
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
+        discard();
         child1.rewind();
         child2.rewind();
+        spilledTuples = 0;
+        try {
+            start(new Job(child1, child2));
+        } catch (DbException | TransactionAbortedException | RuntimeException e) {
+            discard();
+            throw e;
+        }
     }
 
-    transient Iterator<Tuple> listIt = null;
+    // the next match in table of the last tuple probed, or -1
+    private transient int match = -1;
+
+    // batch iteration: the batch of the probe side being probed, and the
+    // next tuple of it to probe
+    private transient BatchIterator probes;
+    private transient TupleBatch probe, out;
+    private transient int probePos;
+
+    /**
+     * Returns the next batch of joined tuples, probing the hash table with
+     * the probe side a batch at a time.
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (out == null)
+            out = new TupleBatch(comboTD);
+        out.clear();
+        boolean ints = intKeys();
+        try {
+            fillBatch(ints);
+        } catch (DbException | TransactionAbortedException | RuntimeException e) {
+            discard();
+            throw e;
+        }
+        return out.size() == 0 ? null : out;
+    }
+
+    private void fillBatch(boolean ints) throws DbException, TransactionAbortedException {
+        while (!out.isFull() && job != null) {
+            if (match >= 0) {
+                out.addJoined(table.tuple(match), probe, probe.row(probePos - 1));
+                match = table.next(match);
+            } else if (probe != null && probePos < probe.size()) {
+                int row = probe.row(probePos++);
+                if (ints) {
+                    int key = probe.getInt(pred.getField2(), row);
+                    int p = spilledPartition(key);
+                    if (p >= 0)
+                        spill(probeSpills[p], probe.getTuple(probePos - 1));
+                    else
+                        match = table.first(key);
+                } else {
+                    Field key = probe.getField(pred.getField2(), row);
+                    int p = spilledPartition(key.hashCode());
+                    if (p >= 0)
+                        spill(probeSpills[p], probe.getTuple(probePos - 1));
+                    else
+                        match = table.first(key);
+                }
+            } else {
+                probe = probes.nextBatch();
+                probePos = 0;
+                if (probe == null)
+                    nextPass();
+            }
+        }
+    }
 
     /**
      * Returns the next tuple generated by the join, or null if there are no
@@ -115,47 +425,42 @@ public class HashEquiJoin extends Operator {
      * @see JoinPredicate#filter
      */
     private Tuple processList() throws TransactionAbortedException, DbException {
-        t1 = listIt.next();
-
-        int td1n = t1.getTupleDesc().numFields();
-        int td2n = t2.getTupleDesc().numFields();
-
-        // set fields in combined tuple
-        Tuple t = new Tuple(comboTD);
-        for (int i = 0; i < td1n; i++)
-            t.setField(i, t1.getField(i));
-        for (int i = 0; i < td2n; i++)
-            t.setField(td1n + i, t2.getField(i));
-        return t;
+        t1 = table.tuple(match);
+        match = table.next(match);
+        return new JoinedTuple(comboTD, t1, t2);
 
     }
 
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-        if (listIt != null && listIt.hasNext()) {
-            return processList();
+        try {
+            return probeNext();
+        } catch (DbException | TransactionAbortedException | RuntimeException e) {
+            discard();
+            throw e;
         }
+    }
 
-        // loop around child2
-        while (child2.hasNext()) {
-            t2 = child2.next();
-
+    private Tuple probeNext() throws TransactionAbortedException, DbException {
+        boolean ints = intKeys();
+        while (job != null) {
+            if (match >= 0)
+                return processList();
+            if (!job.probe.hasNext()) {
+                nextPass();
+                continue;
+            }
+            t2 = job.probe.next();
+            int f2 = pred.getField2();
+            Field key = ints ? null : t2.getField(f2);
+            int p = spilledPartition(ints ? t2.getInt(f2) : key.hashCode());
+            if (p >= 0) {
+                spill(probeSpills[p], t2);
+                continue;
+            }
             // if match, create a combined tuple and fill it with the values
             // from both tuples
-            ArrayList<Tuple> l = map.get(t2.getField(pred.getField2()));
-            if (l == null)
-                continue;
-            listIt = l.iterator();
-
-            return processList();
-
+            match = ints ? table.first(t2.getInt(f2)) : table.first(key);
         }
-
-        // child2 is done: advance child1
-        child2.rewind();
-        if (loadMap()) {
-            return fetchNext();
-        }
-
         return null;
     }
 
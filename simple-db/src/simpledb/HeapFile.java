@@ -8,9 +8,12 @@ import java.util.*;
  * in no particular order. Tuples are stored on pages, each of which is a fixed
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
- * constructor.
+ * constructor. A HeapFile created as slotted stores its tuples in the
+ * variable-length SlottedHeapPage format instead, and one created as
+ * compressed keeps its pages in a CompressedPageStore.
  *
  * @see simpledb.HeapPage#HeapPage
+ * @see SlottedHeapPage
  */
 public class HeapFile implements DbFile {
 
@@ -23,9 +26,63 @@ public class HeapFile implements DbFile {
      */
     private File file;
     private TupleDesc tupleDesc;
+    private final PageChannel channel;
+    private FreeSpaceMap fsm;
+    private final boolean slotted;
+    private final boolean compressed;
+    private volatile CompressedPageStore store;
     public HeapFile(File f, TupleDesc td) {
+        this(f, td, false);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, whose pages are
+     * in the SlottedHeapPage format if slotted is true.
+     */
+    public HeapFile(File f, TupleDesc td, boolean slotted) {
+        this(f, td, slotted, false);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, whose pages are
+     * in the SlottedHeapPage format if slotted is true, and are compressed
+     * if compressed is true.  An empty or missing compressed file is
+     * initialized on first use.
+     */
+    public HeapFile(File f, TupleDesc td, boolean slotted, boolean compressed) {
         file = f;
         tupleDesc = td;
+        channel = new PageChannel(f);
+        this.slotted = slotted;
+        this.compressed = compressed;
+    }
+
+    /** Return true if this file's pages are compressed */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Returns the store holding this file's compressed pages, opening it
+     * on first use, or null if the file is not compressed.
+     */
+    public synchronized CompressedPageStore getCompressedStore() throws IOException {
+        if (compressed && store == null)
+            store = channel.size() == 0 ? CompressedPageStore.create(channel, 0) : CompressedPageStore.open(channel);
+        return store;
+    }
+
+    /** Return true if this file's pages are in the SlottedHeapPage format */
+    public boolean isSlotted() {
+        return slotted;
+    }
+
+    /**
+     * Returns a page of this file's format built from the given bytes,
+     * which are copied if copy is true.
+     */
+    HeapPage newPage(HeapPageId pid, byte[] data, boolean copy) throws IOException {
+        return slotted ? new SlottedHeapPage(pid, data, copy) : new HeapPage(pid, data, copy);
     }
 
     /**
@@ -62,66 +119,154 @@ public class HeapFile implements DbFile {
     // see DbFile.java for javadocs
     public Page readPage(PageId pid) {
         int pgSize = BufferPool.getPageSize();
-        int pgNum = pid.getPageNumber();
         byte[] data = new byte[pgSize];
         HeapPage page = null;
         try {
-            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
-            randomAccessFile.seek(pgNum* pgSize);
-            randomAccessFile.read(data);
-            page = new HeapPage((HeapPageId)pid, data);
-            randomAccessFile.close();
+            if (compressed) {
+                data = getCompressedStore().read(pid.getPageNumber());
+                PageChecksums sums = channel.getChecksums();
+                if (sums != null)
+                    sums.verify(pid.getPageNumber(), data);
+            } else {
+                channel.readPage(pid.getPageNumber(), (long) pid.getPageNumber() * pgSize, data);
+            }
+            page = newPage((HeapPageId)pid, data, false);
         } catch (IOException e) {
-            e.printStackTrace();
+            // a page failing its checksum must not pass for an empty one
+            throw new RuntimeException(e);
         }
         return page;
     }
 
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
-        PageId pageId = page.getId();
-        int pgSize = BufferPool.getPageSize();
-        int pgNum = pageId.getPageNumber();
-        byte[] data = page.getPageData();
-        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
-        randomAccessFile.seek(pgNum * pgSize);
-        randomAccessFile.write(data);
-        randomAccessFile.close();
+        int pgNo = page.getId().getPageNumber();
+        if (compressed) {
+            byte[] data = page.getPageData();
+            PageChecksums sums = channel.getChecksums();
+            if (sums != null)
+                sums.record(pgNo, data);
+            getCompressedStore().write(pgNo, data);
+            return;
+        }
+        channel.writePage(pgNo, (long) pgNo * BufferPool.getPageSize(), page.getPageData());
+    }
+
+    /**
+     * Serves page reads from a memory mapping of the file, for large tables
+     * that are read much more often than they are written.  Writes are
+     * unaffected.
+     *
+     * @see PageChannel#setMapped
+     */
+    public void setMapped(boolean mapped) {
+        channel.setMapped(mapped);
+    }
+
+    /** Return true if page reads are served from a memory mapping */
+    public boolean isMapped() {
+        return channel.isMapped();
+    }
+
+    /**
+     * Turns CRC32C page checksums on or off for this table.  With them on,
+     * every page read is verified, and readPage fails on a damaged page.
+     *
+     * @see PageChecksums
+     */
+    public void setChecksums(boolean on) throws IOException {
+        channel.setChecksums(on);
+    }
+
+    /** Return true if this table's pages are checksummed */
+    public boolean hasChecksums() {
+        return channel.getChecksums() != null;
     }
 
     /**
      * Returns the number of pages in this HeapFile.
      */
     public int numPages() {
+        if (compressed) {
+            if (store == null && file.length() == 0)
+                return 0; // don't create the file just to count its pages
+            try {
+                return getCompressedStore().numPages();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
         return (int) (file.length()/BufferPool.getPageSize());
     }
 
+    /**
+     * Returns this file's free space map, opening it on first use.
+     */
+    public synchronized FreeSpaceMap getFreeSpaceMap() throws IOException {
+        if (fsm == null)
+            fsm = new FreeSpaceMap(this);
+        return fsm;
+    }
+
     // see DbFile.java for javadocs
     public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
-        int numPages = numPages();
+        FreeSpaceMap fsm = getFreeSpaceMap();
+        fsm.sync();
         ArrayList<Page> arrPages = new ArrayList<>();
-        for(int i=0; i<numPages; i++)
-        {
-
-            HeapPageId heapPageId = new HeapPageId(getId(), i);   //getId() heapFile Table  because one file one table;
-            HeapPage heapPage = (HeapPage) Database.getBufferPool().getPage(tid, heapPageId, Permissions.READ_WRITE);
-            if(heapPage.getNumEmptySlots()>0)
-            {
-                heapPage.insertTuple(t);
-                arrPages.add(heapPage);
-                heapPage.markDirty(true, tid);
+        // go through the pages the map says have room, from this
+        // transaction's starting point round to the beginning
+        int start = fsm.startFor(tid);
+        for (int pass = 0; pass < 2; pass++) {
+            int pgNo = fsm.nextWithSpace(pass == 0 ? start : 0);
+            while (pgNo >= 0 && (pass == 0 || pgNo < start)) {
+                HeapPage page = insertInto(tid, t, pgNo, true);
+                if (page != null) {
+                    arrPages.add(page);
+                    return arrPages;
+                }
+                pgNo = fsm.nextWithSpace(pgNo + 1);
+            }
+        }
+        while (true) {
+            // extend the file with an empty page, and insert through the pool
+            // so the insert is undone like any other if the transaction aborts
+            int newPgNo;
+            synchronized (this) {
+                newPgNo = numPages();
+                writePage(new HeapPage(new HeapPageId(getId(), newPgNo), HeapPage.createEmptyPageData()));
+                fsm.pageAdded(newPgNo);
+            }
+            HeapPage page = insertInto(tid, t, newPgNo, false);
+            if (page != null) {
+                arrPages.add(page);
                 return arrPages;
             }
         }
-        HeapPageId newHeapPageId = new HeapPageId(getId(), numPages);
-        HeapPage newHeapPage = new HeapPage(newHeapPageId, HeapPage.createEmptyPageData());
-        newHeapPage.insertTuple(t);
-        arrPages.add(newHeapPage);
-        writePage(newHeapPage);
-
-        return arrPages;
+    }
 
+    /**
+     * Inserts t into the given page if it has a free slot, keeping the free
+     * space map up to date.
+     *
+     * @param skipLocked pass over the page if another transaction has it locked
+     * @return the page, or null if t was not inserted
+     */
+    private HeapPage insertInto(TransactionId tid, Tuple t, int pgNo, boolean skipLocked)
+            throws DbException, IOException, TransactionAbortedException {
+        HeapPageId pid = new HeapPageId(getId(), pgNo);
+        BufferPool bp = Database.getBufferPool();
+        if (skipLocked && !bp.holdsLock(tid, pid) && bp.isLockedByOthers(tid, pid))
+            return null; // someone else is filling it
+        HeapPage page = (HeapPage) bp.getPage(tid, pid, Permissions.READ_WRITE);
+        if (page.getNumEmptySlots() == 0) {
+            fsm.setHasSpace(pgNo, false);
+            return null;
+        }
+        page.insertTuple(t);
+        page.markDirty(true, tid);
+        fsm.setHasSpace(pgNo, page.getNumEmptySlots() > 0);
+        return page;
     }
 
     // see DbFile.java for javadocs
@@ -134,6 +279,11 @@ public class HeapFile implements DbFile {
         page.deleteTuple(t);
         page.markDirty(true, tid);
         arrPage.add(page);
+        try {
+            getFreeSpaceMap().setHasSpace(pageId.getPageNumber(), true);
+        } catch (IOException e) {
+            throw new DbException("could not update the free space map: " + e.getMessage());
+        }
         return arrPage;
     }
 
@@ -144,24 +294,72 @@ public class HeapFile implements DbFile {
         private int pageNum;
         private int pageIndex;
         private TransactionId transactionId;
+        private BufferRing ring;
+        private ReadAhead readAhead;
+        private final int[] columns;
+        private final TupleDesc projectedTd;
+        private HeapPage page;
         Iterator<Tuple> it;
 
         public MyDbFileIterator(TransactionId tid)
+        {
+            this(tid, null);
+        }
+
+        /**
+         * Creates an iterator over the given columns of the tuples of this
+         * file, or over whole tuples if columns is null.
+         */
+        public MyDbFileIterator(TransactionId tid, int[] columns)
         {
             transactionId = tid;
             tableId = getId();
             pageNum = numPages();
             it = null;
             pageIndex = -1;
+            this.columns = columns == null ? null : columns.clone();
+            projectedTd = columns == null ? tupleDesc : project(tupleDesc, columns);
+        }
+
+        /** Return the TupleDesc of the tuples this iterator returns */
+        public TupleDesc getTupleDesc() {
+            return projectedTd;
+        }
+
+        /** Return the columns of the file this iterator returns, or null for all of them */
+        int[] getColumns() {
+            return columns;
         }
 
         public Iterator<Tuple> getBeginIt(int pageIndex) throws TransactionAbortedException, DbException {
             PageId pageId = new HeapPageId(tableId, pageIndex);
-            return ((HeapPage)Database.getBufferPool().getPage(transactionId, pageId, Permissions.READ_ONLY)).iterator();
+            page = (HeapPage)Database.getBufferPool().getPage(transactionId, pageId, Permissions.READ_ONLY, ring);
+            if(readAhead != null)
+                readAhead.accessed(page);
+            return page.iterator(columns, projectedTd);
+        }
+
+        /**
+         * Returns the next page of the scan, or null at the end, for callers
+         * that read its column vectors instead of calling next().  The two
+         * can't be mixed between open or rewind and close.
+         */
+        HeapPage nextPage() throws DbException, TransactionAbortedException {
+            if (pageIndex == -1 || pageIndex >= pageNum)
+                return null;
+            if (it == null)
+                getBeginIt(pageIndex);
+            HeapPage p = page;
+            it = null;
+            pageIndex++;
+            return p;
         }
 
         @Override
         public void open() throws DbException, TransactionAbortedException {
+            // large scans read through a private ring so they don't flush the pool
+            ring = Database.getBufferPool().bulkReadRing(pageNum);
+            readAhead = Database.getBufferPool().readAhead(ring, pageNum);
             pageIndex = 0;
             it = getBeginIt(pageIndex);
         }
@@ -169,7 +367,7 @@ public class HeapFile implements DbFile {
         @Override
         public boolean hasNext() throws DbException, TransactionAbortedException {
             if(pageIndex==-1) return false;
-            if(!it.hasNext())
+            while(!it.hasNext())
             {
                 if(pageIndex>=pageNum-1) return false;
                 else
@@ -198,10 +396,35 @@ public class HeapFile implements DbFile {
         public void close() {
             pageIndex = -1;
             it = null;
+            page = null;
+            ring = null;
+            if(readAhead != null)
+                readAhead.close();
+            readAhead = null;
         }
     }
     public DbFileIterator iterator(TransactionId tid)  {
         return new MyDbFileIterator(tid);
     }
 
+    /**
+     * Returns an iterator over the given columns of the tuples in this
+     * file, whose tuples have only those fields, in the given order.  On a
+     * PaxHeapFile only the pages' minipages for those columns are read.
+     */
+    public MyDbFileIterator iterator(TransactionId tid, int[] columns) {
+        return new MyDbFileIterator(tid, columns);
+    }
+
+    /** Return the TupleDesc of the given columns of td */
+    static TupleDesc project(TupleDesc td, int[] columns) {
+        Type[] types = new Type[columns.length];
+        String[] names = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            types[i] = td.getFieldType(columns[i]);
+            names[i] = td.getFieldName(columns[i]);
+        }
+        return new TupleDesc(types, names);
+    }
+
 }
@@ -223,4 +223,117 @@ public class HeapFileEncoder {
     br.close();
     os.close();
   }
+
+  /** Convert the specified input text file into a binary page file in the
+   * SlottedHeapPage format, which stores strings at their actual length.
+   * The input file is in the format read by convert; lines with the wrong
+   * number of fields or a malformed integer are reported and skipped.
+   *
+   * @see SlottedHeapPage
+   * @param inFile The input file to read data from
+   * @param outFile The output file to write data to
+   * @param npagebytes The number of bytes per page in the output file
+   * @param numFields the number of fields in each input line/output tuple
+   * @param typeAr the types of the fields
+   * @param fieldSeparator the character between fields
+   * @throws IOException if the input/output file can't be opened
+   */
+  public static void convertSlotted(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, char fieldSeparator)
+      throws IOException {
+      TupleDesc td = new TupleDesc(typeAr);
+      BufferedReader br = new BufferedReader(new FileReader(inFile));
+      FileOutputStream os = new FileOutputStream(outFile);
+      byte[] page = new byte[npagebytes];
+      int recordcount = 0;
+      int npages = 0;
+
+      String line;
+      while ((line = br.readLine()) != null) {
+          if (line.trim().isEmpty())
+              continue;
+          String[] values = line.split(java.util.regex.Pattern.quote(String.valueOf(fieldSeparator)), -1);
+          if (values.length != numFields) {
+              System.out.println ("BAD LINE : " + line);
+              continue;
+          }
+          Tuple t = new Tuple(td);
+          try {
+              for (int i = 0; i < numFields; i++) {
+                  if (typeAr[i] == Type.INT_TYPE)
+                      t.setField(i, new IntField(Integer.parseInt(values[i].trim())));
+                  else
+                      t.setField(i, new StringField(values[i].trim(), Type.STRING_LEN));
+              }
+          } catch (NumberFormatException e) {
+              System.out.println ("BAD LINE : " + line);
+              continue;
+          }
+          if (!SlottedHeapPage.append(page, t)) {
+              os.write(page);
+              npages++;
+              page = new byte[npagebytes];
+              recordcount = 0;
+              if (!SlottedHeapPage.append(page, t))
+                  throw new IOException("tuple does not fit on a page: " + line);
+          }
+          recordcount++;
+      }
+      // flush the last page if it has records on it, or an empty page if
+      // the file would otherwise be empty
+      if (recordcount > 0 || npages == 0)
+          os.write(page);
+      br.close();
+      os.close();
+  }
+
+  /** Compress a heap file written by convert or convertSlotted into the
+   * CompressedPageStore format, for a HeapFile opened as compressed.
+   * Pages must be BufferPool.getPageSize() bytes.
+   *
+   * @see CompressedPageStore
+   * @param inFile The heap file to read pages from
+   * @param outFile The compressed file to write; it is replaced
+   * @throws IOException if the files can't be read or written
+   */
+  public static void compress(File inFile, File outFile) throws IOException {
+      int npagebytes = BufferPool.getPageSize();
+      int npages = (int) (inFile.length() / npagebytes);
+      outFile.delete();
+      PageChannel in = new PageChannel(inFile);
+      PageChannel out = new PageChannel(outFile);
+      CompressedPageStore store = CompressedPageStore.create(out, npages);
+      byte[] page = new byte[npagebytes];
+      for (int i = 0; i < npages; i++) {
+          in.read((long) i * npagebytes, page);
+          store.write(i, page);
+      }
+      in.close();
+      out.close();
+  }
+
+  /** Rewrite a heap file written by convert, whose tuples have the given
+   * field types, in the column-major PaxHeapPage format.  Pages must be
+   * BufferPool.getPageSize() bytes.
+   *
+   * @see PaxHeapFile
+   * @param inFile The heap file to read pages from
+   * @param outFile The PAX heap file to write
+   * @param typeAr The field types of the tuples
+   * @throws IOException if the files can't be read or written
+   */
+  public static void pax(File inFile, File outFile, Type[] typeAr) throws IOException {
+      TupleDesc td = new TupleDesc(typeAr);
+      int npagebytes = BufferPool.getPageSize();
+      int npages = (int) (inFile.length() / npagebytes);
+      PageChannel in = new PageChannel(inFile);
+      FileOutputStream out = new FileOutputStream(outFile);
+      byte[] page = new byte[npagebytes];
+      for (int i = 0; i < npages; i++) {
+          in.read((long) i * npagebytes, page);
+          out.write(PaxHeapPage.fromRowPage(page, td));
+      }
+      in.close();
+      out.close();
+  }
 }
@@ -1,24 +1,38 @@
 package simpledb;
 
 import java.io.*;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
  * implements the Page interface that is used by BufferPool.
+ * <p>
+ * A HeapPage keeps the page image it was read from and works on it in
+ * place: fields are decoded from the bytes only when asked for, through the
+ * iterator or the typed accessors such as {@link #getInt}, and inserts and
+ * deletes write the image directly, so getPageData is a copy.
+ * <p>
+ * Operators that only need a few INT_TYPE columns can read them a page at a
+ * time as column vectors, through {@link #getUsedSlots} and {@link #getInts},
+ * without materializing tuples.
  *
  * @see HeapFile
  * @see BufferPool
+ * @see SlottedHeapPage
+ * @see PaxHeapPage
  *
  */
 public class HeapPage implements Page {
 
     final HeapPageId pid;
     final TupleDesc td;
-    final byte header[];
-    final Tuple tuples[];
     final int numSlots;
+    final int headerSize;
+    final int tupleSize;
+    /** The page image: header bytes, then numSlots slots of tupleSize bytes */
+    final byte[] data;
     private boolean dirty;
     private TransactionId tid;
 
@@ -37,30 +51,35 @@ public class HeapPage implements Page {
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
+     * The bytes are copied; the caller may go on using the array.
+     *
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
      * @see BufferPool#getPageSize()
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, data, true);
+    }
+
+    /**
+     * Create a HeapPage from a set of bytes of data read from disk,
+     * taking over the array without copying it if copy is false.
+     */
+    HeapPage(HeapPageId id, byte[] data, boolean copy) throws IOException {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
-
-        // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
-        
-        tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++)
-                tuples[i] = readNextTuple(dis,i);
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
+        this.headerSize = getHeaderSize();
+        this.tupleSize = td.getSize();
+        int len = BufferPool.getPageSize();
+        if (data.length < headerSize + numSlots * tupleSize)
+            throw new IOException("page data too short: " + data.length + " bytes");
+        if (copy || data.length != len) {
+            this.data = new byte[len];
+            System.arraycopy(data, 0, this.data, 0, Math.min(len, data.length));
+        } else {
+            this.data = data;
         }
-        dis.close();
 
         setBeforeImage();
     }
@@ -93,7 +112,7 @@ public class HeapPage implements Page {
             {
                 oldDataRef = oldData;
             }
-            return new HeapPage(pid,oldDataRef);
+            return withData(oldDataRef);
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -101,11 +120,16 @@ public class HeapPage implements Page {
         }
         return null;
     }
+
+    /** Return a page of this page's format with a copy of the given bytes */
+    HeapPage withData(byte[] data) throws IOException {
+        return new HeapPage(pid, data);
+    }
     
     public void setBeforeImage() {
         synchronized(oldDataLock)
         {
-            oldData = getPageData().clone();
+            oldData = getPageData();
         }
     }
 
@@ -117,37 +141,118 @@ public class HeapPage implements Page {
         return pid;
     }
 
+    /** Return the offset in the page image of the given field of the given slot */
+    int offset(int slot, int col) {
+        return headerSize + slot * tupleSize + td.getOffset(col);
+    }
+
+    /** Return the distance in the page image between a field of consecutive slots */
+    int stride(int col) {
+        return tupleSize;
+    }
+
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= numSlots || !isSlotUsed(slot))
+            throw new NoSuchElementException("no tuple in slot " + slot);
+    }
+
     /**
-     * Suck up tuples from the source file.
+     * Returns the given field of the tuple in the given slot, decoded from
+     * the page without materializing the tuple.
+     * @throws NoSuchElementException if the slot is empty
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
-        }
+    public Field getField(int slot, int col) {
+        checkSlot(slot);
+        return td.getFieldType(col).parse(data, offset(slot, col));
+    }
 
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
-        try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
+    /**
+     * Returns the value of the given INT_TYPE field of the tuple in the
+     * given slot, without creating any objects.
+     * @throws NoSuchElementException if the slot is empty
+     */
+    public int getInt(int slot, int col) {
+        checkSlot(slot);
+        assert td.getFieldType(col) == Type.INT_TYPE;
+        return Type.readInt(data, offset(slot, col));
+    }
+
+    /**
+     * Returns the value of the given STRING_TYPE field of the tuple in the
+     * given slot.
+     * @throws NoSuchElementException if the slot is empty
+     */
+    public String getString(int slot, int col) {
+        checkSlot(slot);
+        assert td.getFieldType(col) == Type.STRING_TYPE;
+        return Type.readString(data, offset(slot, col));
+    }
+
+    /** Return the number of tuple slots on this page */
+    public int getNumSlots() {
+        return numSlots;
+    }
+
+    /**
+     * Stores the numbers of the slots in use, in ascending order, in slots,
+     * which must have room for getNumSlots() entries.
+     * @return the number of slots in use
+     */
+    public int getUsedSlots(int[] slots) {
+        int n = 0;
+        for (int i = 0; i < headerSize; i++) {
+            int bits = data[i] & 0xff;
+            while (bits != 0) {
+                slots[n++] = i * 8 + Integer.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
             }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
         }
+        return n;
+    }
 
+    /**
+     * Stores the values of the given INT_TYPE column of the first n slots
+     * listed in slots, which must be in use, in values.
+     */
+    public void getInts(int col, int[] slots, int n, int[] values) {
+        getInts(col, slots, 0, n, values, 0);
+    }
+
+    /**
+     * Stores the values of the given INT_TYPE column of the n slots listed
+     * in slots from index from on, which must be in use, in values from
+     * index at on.
+     */
+    public void getInts(int col, int[] slots, int from, int n, int[] values, int at) {
+        assert td.getFieldType(col) == Type.INT_TYPE;
+        int base = offset(0, col), stride = stride(col);
+        for (int i = 0; i < n; i++)
+            values[at + i] = Type.readInt(data, base + slots[from + i] * stride);
+    }
+
+    /**
+     * Returns the tuple in the given slot, which must be in use, backed by
+     * a copy of the slot's bytes.
+     */
+    Tuple readTuple(int slotId) {
+        int off = headerSize + slotId * tupleSize;
+        Tuple t = new Tuple(td, Arrays.copyOfRange(data, off, off + tupleSize));
+        t.setRecordId(new RecordId(pid, slotId));
+        return t;
+    }
+
+    /**
+     * Returns the given columns of the tuple in the given slot, which must
+     * be in use, as a tuple of ptd; all of them if columns is null.
+     */
+    Tuple readTuple(int slotId, int[] columns, TupleDesc ptd) {
+        if (columns == null)
+            return readTuple(slotId);
+        byte[] row = new byte[ptd.getSize()];
+        for (int i = 0; i < columns.length; i++)
+            System.arraycopy(data, offset(slotId, columns[i]), row, ptd.getOffset(i), ptd.getFieldType(i).getLen());
+        Tuple t = new Tuple(ptd, row);
+        t.setRecordId(new RecordId(pid, slotId));
         return t;
     }
 
@@ -163,64 +268,7 @@ public class HeapPage implements Page {
      * @return A byte array correspond to the bytes of this page.
      */
     public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (int i=0; i<header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-                
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return baos.toByteArray();
+        return data.clone();
     }
 
     /**
@@ -247,9 +295,27 @@ public class HeapPage implements Page {
     public void deleteTuple(Tuple t) throws DbException {
 
         RecordId rid = t.getRecordId();
-        if(rid.getPageId()!=pid)
+        if(rid == null || !pid.equals(rid.getPageId()))
             throw new DbException("this tuple is not on this page");
-        markSlotUsed(rid.getTupleNumber(), false);
+        int slot = rid.getTupleNumber();
+        if(slot < 0 || slot >= numSlots || !isSlotUsed(slot))
+            throw new DbException("tuple slot is already empty");
+        markSlotUsed(slot, false);
+        clearSlot(slot);
+    }
+
+    /** Zeroes the fields of an emptied slot, as they are on a freshly written page */
+    void clearSlot(int slot) {
+        int off = headerSize + slot * tupleSize;
+        Arrays.fill(data, off, off + tupleSize, (byte) 0);
+    }
+
+    /** Writes the fields of t into the given slot */
+    void writeTuple(int slot, Tuple t) {
+        if (!t.copyRow(data, headerSize + slot * tupleSize)) {
+            for (int j=0; j<td.numFields(); j++)
+                td.getFieldType(j).serialize(t.getField(j), data, offset(slot, j));
+        }
     }
 
     /**
@@ -262,16 +328,17 @@ public class HeapPage implements Page {
     public void insertTuple(Tuple t) throws DbException {
         if(!td.equals(t.getTupleDesc()))
             throw new DbException("TupleDesc not match");
-        for(int i=0; i<numSlots; i++)
+        for(int i=0; i<headerSize; i++)
         {
-            if(!isSlotUsed(i))
-            {
-                RecordId recordId = new RecordId(pid, i);
-                t.setRecordId(recordId);
-                markSlotUsed(i, true);
-                tuples[i] = t;
-                return;
-            }
+            if(data[i] == (byte) 0xff)
+                continue;
+            int slot = i * 8 + Integer.numberOfTrailingZeros(~data[i]);
+            if(slot >= numSlots)
+                break;
+            writeTuple(slot, t);
+            markSlotUsed(slot, true);
+            t.setRecordId(new RecordId(pid, slot));
+            return;
         }
         throw new DbException("no empty slot");
 
@@ -304,37 +371,12 @@ public class HeapPage implements Page {
      * Returns the number of empty slots on this page.
      */
     public int getNumEmptySlots() {
-        int cnt = 0;
-        int b = 1;
-        for(int i=0; i<header.length; i++)
-        {
-            byte bt = header[i];
-
-            //Attention! : the high-order bits of the last byte may not correspond to a slot that is actually in the file
-            if(i==header.length-1)
-            {
-                for(int j=0; j<getNumTuples()%8; j++)
-                    if((bt&(b<<j))==0)
-                        cnt++;
-            }
-            if((bt&b)==0)
-                cnt++;
-            if((bt&(b<<1))==0)
-                cnt++;
-            if((bt&(b<<2))==0)
-                cnt++;
-            if((bt&(b<<3))==0)
-                cnt++;
-            if((bt&(b<<4))==0)
-                cnt++;
-            if((bt&(b<<5))==0)
-                cnt++;
-            if((bt&(b<<6))==0)
-                cnt++;
-            if((bt&(b<<7))==0)
-                cnt++;
-        }
-        return cnt;
+        int used = 0;
+        for(int i=0; i<headerSize; i++)
+            used += Integer.bitCount(data[i] & 0xff);
+        //Attention! : the high-order bits of the last byte do not correspond to slots,
+        //and are never set
+        return numSlots - used;
     }
 
     /**
@@ -343,9 +385,8 @@ public class HeapPage implements Page {
     public boolean isSlotUsed(int i) {
         int index = i / 8;
         int shift = i % 8;
-        byte b = 1;
-        assert index<header.length : "Index out of bounds";
-        return (header[index] & (b << shift)) != 0;
+        assert index<headerSize : "Index out of bounds";
+        return (data[index] & (1 << shift)) != 0;
     }
 
     /**
@@ -355,9 +396,9 @@ public class HeapPage implements Page {
         int index = i / 8;
         int shift = i % 8;
         if(value)
-            header[index] |= (1 << shift);
+            data[index] |= (1 << shift);
         else
-            header[index] &= ~(1 << shift);
+            data[index] &= ~(1 << shift);
 
     }
 
@@ -368,17 +409,21 @@ public class HeapPage implements Page {
     public class HeapPageIterator implements Iterator<Tuple>
     {
         int index = 0;
+        int[] columns;
+        TupleDesc ptd;
         @Override
         public boolean hasNext()
         {
-            while (index<tuples.length && !isSlotUsed(index))
+            while (index<numSlots && !isSlotUsed(index))
                 index++;
-            return index<tuples.length;
+            return index<numSlots;
         }
 
         @Override
         public Tuple next() {
-            return tuples[index++];
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return readTuple(index++, columns, ptd);
         }
 
         @Override
@@ -391,5 +436,16 @@ public class HeapPage implements Page {
         return new HeapPageIterator();
     }
 
+    /**
+     * Returns an iterator over the given columns of the tuples on this page,
+     * as tuples of ptd; over whole tuples if columns is null.
+     */
+    Iterator<Tuple> iterator(int[] columns, TupleDesc ptd) {
+        HeapPageIterator it = new HeapPageIterator();
+        it.columns = columns;
+        it.ptd = ptd;
+        return it;
+    }
+
 }
 
@@ -0,0 +1,109 @@
+package simpledb;
+
+import java.util.Arrays;
+
+/**
+ * IntHashTable numbers distinct int keys: each key added gets the next
+ * entry number, 0, 1, 2, ..., and callers keep whatever they need per key
+ * in arrays indexed by entry.  Keys are found by open addressing with
+ * linear probing in an array of entry numbers, so the table holds no
+ * object per key and a lookup allocates nothing.  Entries cannot be
+ * removed, except all at once by {@link #clear}.
+ *
+ * @see ByteKeyHashTable
+ */
+public class IntHashTable {
+
+    // keys by entry
+    private int[] keys;
+    // the slots of the hash table: entry + 1, or 0 if empty
+    private int[] slots;
+    private int mask;
+    private int size;
+
+    /** Creates an empty table */
+    public IntHashTable() {
+        this(16);
+    }
+
+    /** Creates an empty table with room for the given number of keys */
+    public IntHashTable(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) * 2;
+        slots = new int[capacity];
+        mask = capacity - 1;
+        keys = new int[capacity / 2];
+    }
+
+    static int hash(int key) {
+        // the finalizer of MurmurHash3, so that keys that differ in any bit
+        // spread over the table
+        int h = key;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /** @return the number of keys in the table */
+    public int size() {
+        return size;
+    }
+
+    /** @return the key of the given entry */
+    public int key(int entry) {
+        return keys[entry];
+    }
+
+    /** @return the entry of key, or -1 if it is not in the table */
+    public int find(int key) {
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            int e = slots[i] - 1;
+            if (e < 0 || keys[e] == key)
+                return e;
+        }
+    }
+
+    /**
+     * Returns the entry of key, adding it as entry size() if it is not in
+     * the table.
+     */
+    public int put(int key) {
+        int i = hash(key) & mask;
+        for (; ; i = (i + 1) & mask) {
+            int e = slots[i] - 1;
+            if (e < 0)
+                break;
+            if (keys[e] == key)
+                return e;
+        }
+        if (size == keys.length) {
+            grow();
+            return put(key);
+        }
+        keys[size] = key;
+        slots[i] = ++size;
+        return size - 1;
+    }
+
+    /** Doubles the table, which is kept at most half full */
+    private void grow() {
+        int capacity = slots.length * 2;
+        slots = new int[capacity];
+        mask = capacity - 1;
+        keys = Arrays.copyOf(keys, capacity / 2);
+        for (int e = 0; e < size; e++) {
+            int i = hash(keys[e]) & mask;
+            while (slots[i] != 0)
+                i = (i + 1) & mask;
+            slots[i] = e + 1;
+        }
+    }
+
+    /** Removes all keys */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+}
@@ -1,10 +1,12 @@
 package simpledb;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 
 /**
- * Knows how to compute some aggregate over a set of IntFields.
+ * Knows how to compute some aggregate over a set of IntFields.  Groups are
+ * numbered by a FieldHashTable, and their counts and aggregates are kept in
+ * int arrays indexed by group number.
  */
 
 public class IntegerAggregator implements Aggregator {
@@ -32,16 +34,21 @@ public class IntegerAggregator implements Aggregator {
     private int aggFieldNum;
     private Op aggOp;
     private String groupFieldName;
-    private HashMap<Field, Integer> numGroupBy;
-    private HashMap<Field, Integer> valGroupBy;
+    // numbers the groups; null if there is no grouping, when the single
+    // group is number 0
+    private FieldHashTable groups;
+    private int numGroups;
+    // per group, the number of values merged and the aggregate so far
+    private int[] numGroupBy = new int[16];
+    private int[] valGroupBy = new int[16];
 
     public IntegerAggregator(int gbfield, Type gbfieldtype, int afield, Op what) {
         gbFieldNum = gbfield;
         gbFieldType = gbfieldtype;
         aggFieldNum = afield;
         aggOp = what;
-        numGroupBy = new HashMap<>();
-        valGroupBy = new HashMap<>();
+        if(gbfield != NO_GROUPING)
+            groups = new FieldHashTable(gbfieldtype);
     }
 
     /**
@@ -53,43 +60,48 @@ public class IntegerAggregator implements Aggregator {
      *            the Tuple containing an aggregate field and a group-by field
      */
     public void mergeTupleIntoGroup(Tuple tup) {
-        Field groupField;
+        int group;
         if(gbFieldNum == NO_GROUPING)
+            group = 0;
+        else
         {
-            //according to gbFieldType to initial groupField;
-            if(gbFieldType == Type.INT_TYPE) groupField = new IntField(0);
-            else
-                groupField = new StringField("", 100);
-        } else
-        {
-            groupField = tup.getField(gbFieldNum);
+            //initial groupField name to create TupleDesc
+            groupFieldName = tup.getTupleDesc().getFieldName(gbFieldNum);
+            group = gbFieldType == Type.INT_TYPE ? groups.put(tup.getInt(gbFieldNum))
+                    : groups.put(tup.getField(gbFieldNum));
         }
-        //finish initial groupField
-        //initial groupField name to create TupleDesc
-        groupFieldName = tup.getTupleDesc().getFieldName(gbFieldNum);
-        IntField aggField = (IntField) tup.getField(aggFieldNum); //initial aggField
-        if(!numGroupBy.containsKey(groupField)){
-            numGroupBy.put(groupField, 1);       //count a number of every kind of groupField
-            valGroupBy.put(groupField, aggField.getValue());
+        merge(group, tup.getInt(aggFieldNum));
+    }
+
+    /** Merges a value of the aggregate field into the given group */
+    private void merge(int group, int aggVal) {
+        if(group == numGroups){
+            if(group == numGroupBy.length)
+            {
+                numGroupBy = Arrays.copyOf(numGroupBy, group * 2);
+                valGroupBy = Arrays.copyOf(valGroupBy, group * 2);
+            }
+            numGroups++;
+            numGroupBy[group] = 1;       //count a number of every kind of groupField
+            valGroupBy[group] = aggOp == Op.COUNT ? 1 : aggVal;
         }else
         {
-            numGroupBy.put(groupField, numGroupBy.get(groupField)+1);
-            Integer value = valGroupBy.get(groupField);
-            Integer aggVal = aggField.getValue();
+            int value = valGroupBy[group];
+            numGroupBy[group]++;
             switch (aggOp)
             {
                 case MAX:
-                    valGroupBy.put(groupField, Math.max(value, aggVal));
+                    valGroupBy[group] = Math.max(value, aggVal);
                     break;
                 case AVG:  //careful
                 case SUM:
-                    valGroupBy.put(groupField, (value+aggVal));
+                    valGroupBy[group] = value + aggVal;
                     break;
                 case MIN:
-                    valGroupBy.put(groupField, Math.min(value, aggVal));
+                    valGroupBy[group] = Math.min(value, aggVal);
                     break;
                 case COUNT:
-                    valGroupBy.put(groupField, numGroupBy.get(groupField));
+                    valGroupBy[group] = numGroupBy[group];
                     break;
                 default:
                     break;
@@ -97,6 +109,70 @@ public class IntegerAggregator implements Aggregator {
         }
     }
 
+    /**
+     * Merges a batch; without grouping, MIN, MAX, SUM, AVG and COUNT are
+     * computed in a loop over the aggregate column.
+     */
+    @Override
+    public void mergeBatch(TupleBatch batch) {
+        int n = batch.size();
+        int[] sel = batch.selection();
+        int[] values = batch.getInts(aggFieldNum);
+        if(gbFieldNum != NO_GROUPING)
+        {
+            groupFieldName = batch.getTupleDesc().getFieldName(gbFieldNum);
+            if(gbFieldType == Type.INT_TYPE)
+            {
+                int[] keys = batch.getInts(gbFieldNum);
+                for(int i = 0; i < n; i++)
+                    merge(groups.put(keys[sel[i]]), values[sel[i]]);
+            }else
+            {
+                for(int i = 0; i < n; i++)
+                    merge(groups.put(batch.getField(gbFieldNum, sel[i])), values[sel[i]]);
+            }
+            return;
+        }
+        if(n == 0 || aggOp.compareTo(Op.COUNT) > 0)
+        {
+            for(int i = 0; i < n; i++)
+                merge(0, values[sel[i]]);
+            return;
+        }
+        int i = 0;
+        if(numGroups == 0)
+            merge(0, values[sel[i++]]);
+        int merged = n - i;
+        int value = valGroupBy[0];
+        switch (aggOp)
+        {
+            case MIN:
+                for(; i < n; i++)
+                    value = Math.min(value, values[sel[i]]);
+                break;
+            case MAX:
+                for(; i < n; i++)
+                    value = Math.max(value, values[sel[i]]);
+                break;
+            case AVG:
+            case SUM:
+                for(; i < n; i++)
+                    value += values[sel[i]];
+                break;
+            default:
+                value += merged;
+                break;
+        }
+        numGroupBy[0] += merged;
+        valGroupBy[0] = value;
+    }
+
+    private int result(int group) {
+        if(aggOp==Op.AVG)
+            return valGroupBy[group]/numGroupBy[group];
+        return valGroupBy[group];
+    }
+
     /**
      * Create a OpIterator over group aggregate results.
      *
@@ -112,14 +188,11 @@ public class IntegerAggregator implements Aggregator {
                     new Type[] {gbFieldType, Type.INT_TYPE},
                     new String[] {groupFieldName, aggOp.toString()});
             ArrayList<Tuple> tuples = new ArrayList<>();
-            for(Field group : numGroupBy.keySet())
+            for(int group = 0; group < numGroups; group++)
             {
                 Tuple tuple = new Tuple(tupleDesc);
-                tuple.setField(0, group);
-                if(aggOp==Op.AVG)
-                    tuple.setField(1, new IntField(valGroupBy.get(group)/numGroupBy.get(group)));
-                else
-                    tuple.setField(1, new IntField(valGroupBy.get(group)));
+                tuple.setField(0, groups.key(group));
+                tuple.setField(1, new IntField(result(group)));
                 tuples.add(tuple);
             }
             return new TupleIterator(tupleDesc, tuples);
@@ -130,10 +203,10 @@ public class IntegerAggregator implements Aggregator {
                     new String[] {aggOp.toString()}
             );
             ArrayList<Tuple> tuples = new ArrayList<>();
-            for(Field group : numGroupBy.keySet())
+            if(numGroups > 0)
             {
                 Tuple tuple = new Tuple(tupleDesc);
-                tuple.setField(0, new IntField(valGroupBy.get(group)));
+                tuple.setField(0, new IntField(result(0)));
                 tuples.add(tuple);
             }
             return new TupleIterator(tupleDesc, tuples);
@@ -13,6 +13,7 @@ public class Join extends Operator {
     private OpIterator child2;
     private OpIterator[] opIterators;
     private Tuple tuple1;
+    private final TupleDesc td;
 
     /**
      * Constructor. Accepts two children to join and the predicate to join them
@@ -31,6 +32,7 @@ public class Join extends Operator {
         this.child2 = child2;
         opIterators = new OpIterator[2];
         tuple1 = null;
+        td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
     }
 
     public JoinPredicate getJoinPredicate() {
@@ -60,7 +62,7 @@ public class Join extends Operator {
      *      implementation logic.
      */
     public TupleDesc getTupleDesc() {
-        return TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+        return td;
     }
 
     public void open() throws DbException, NoSuchElementException,
@@ -75,6 +77,7 @@ public class Join extends Operator {
         super.close();
         child2.close();
         child1.close();
+        tuple1 = null;
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
@@ -101,8 +104,7 @@ public class Join extends Operator {
      * @see JoinPredicate#filter
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-        //TDD !!!
-        while(child1.hasNext())
+        while(tuple1!=null || child1.hasNext())
         {
             if(tuple1==null)
                 tuple1 = child1.next();
@@ -110,26 +112,10 @@ public class Join extends Operator {
             {
                 Tuple tuple2 = child2.next();
                 if(predicate.filter(tuple1, tuple2))
-                {
-                    TupleDesc tupleDesc = TupleDesc.merge(tuple1.getTupleDesc(), tuple2.getTupleDesc());
-                    Tuple tuple = new Tuple(tupleDesc);
-                    int numFields1 = tuple1.getTupleDesc().numFields();
-                    for(int i=0; i<tupleDesc.numFields(); i++)
-                    {
-                        if(i<numFields1)
-                            tuple.setField(i, tuple1.getField(i));
-                        else
-                            tuple.setField(i, tuple2.getField(i-numFields1));
-                    }
-                    return tuple;
-                }else
-                    break;
-            }
-            if(!child2.hasNext()){
-                child2.rewind();
-                tuple1 = null;
+                    return new JoinedTuple(td, tuple1, tuple2);
             }
-
+            child2.rewind();
+            tuple1 = null;
         }
         return null;
     }
@@ -0,0 +1,89 @@
+package simpledb;
+
+import java.util.Arrays;
+
+/**
+ * JoinHashTable is the hash table of the build side of a hash join: the
+ * tuples added are numbered 0, 1, 2, ..., their keys are numbered by a
+ * FieldHashTable, and the tuples of each key are chained through an int
+ * array, so that there is no object per key or per tuple besides the
+ * tuples themselves.  The matches of a key are read as
+ * <pre>
+ * for (int i = table.first(key); i >= 0; i = table.next(i))
+ *     ... table.tuple(i) ...
+ * </pre>
+ * in the order they were added.
+ *
+ * @see HashEquiJoin
+ */
+class JoinHashTable {
+
+    private final FieldHashTable keys;
+    // per key, the first and last of its tuples
+    private int[] first = new int[16];
+    private int[] last = new int[16];
+    // per tuple, the next tuple with the same key or -1
+    private Tuple[] tuples = new Tuple[16];
+    private int[] next = new int[16];
+    private int size;
+
+    JoinHashTable(Type keyType) {
+        keys = new FieldHashTable(keyType);
+    }
+
+    /** @return the number of tuples in the table */
+    int size() {
+        return size;
+    }
+
+    /** @return tuple i */
+    Tuple tuple(int i) {
+        return tuples[i];
+    }
+
+    /** Adds a tuple with the given key */
+    void add(Field key, Tuple t) {
+        int n = keys.size();
+        int k = keys.put(key);
+        if (size == tuples.length) {
+            tuples = Arrays.copyOf(tuples, size * 2);
+            next = Arrays.copyOf(next, size * 2);
+        }
+        tuples[size] = t;
+        next[size] = -1;
+        if (k == n) {
+            if (k == first.length) {
+                first = Arrays.copyOf(first, k * 2);
+                last = Arrays.copyOf(last, k * 2);
+            }
+            first[k] = size;
+        } else {
+            next[last[k]] = size;
+        }
+        last[k] = size++;
+    }
+
+    /** @return the first tuple with the given key, or -1 if there is none */
+    int first(Field key) {
+        int k = keys.find(key);
+        return k < 0 ? -1 : first[k];
+    }
+
+    /** @return the first tuple with the given INT_TYPE key, or -1 if there is none */
+    int first(int key) {
+        int k = keys.find(key);
+        return k < 0 ? -1 : first[k];
+    }
+
+    /** @return the tuple after i with the same key, or -1 if there is none */
+    int next(int i) {
+        return next[i];
+    }
+
+    /** Removes all tuples */
+    void clear() {
+        keys.clear();
+        Arrays.fill(tuples, 0, size, null);
+        size = 0;
+    }
+}
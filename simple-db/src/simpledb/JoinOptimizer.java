@@ -240,7 +240,8 @@ public class JoinOptimizer {
             HashMap<String, TableStats> stats,
             HashMap<String, Double> filterSelectivities, boolean explain)
             throws ParsingException {
-        if(explain)
+        // a query on one table has no joins to order
+        if(explain || joins.isEmpty())
             return joins;
         CostCard bestCostCard = new CostCard();
         PlanCache planCache = new PlanCache();
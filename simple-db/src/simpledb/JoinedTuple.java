@@ -0,0 +1,48 @@
+package simpledb;
+
+/**
+ * JoinedTuple is the output of a join: a view of the concatenation of a
+ * tuple from the left relation and one from the right, which reads its
+ * fields from the two tuples instead of copying them.  Fields set on the
+ * view hide the joined values without changing the two tuples.
+ *
+ * @see Join
+ * @see HashEquiJoin
+ */
+public class JoinedTuple extends Tuple {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Tuple left;
+    private final Tuple right;
+    private final int split;
+
+    /**
+     * @param td the schema of the join output, the merge of the schemas
+     *           of left and right
+     * @param left the tuple from the left relation
+     * @param right the tuple from the right relation
+     */
+    public JoinedTuple(TupleDesc td, Tuple left, Tuple right) {
+        super(td, null);
+        this.left = left;
+        this.right = right;
+        this.split = left.getTupleDesc().numFields();
+        assert td.numFields() == split + right.getTupleDesc().numFields();
+    }
+
+    @Override
+    public Field getField(int i) {
+        Field f = super.getField(i);
+        if (f != null)
+            return f;
+        return i < split ? left.getField(i) : right.getField(i - split);
+    }
+
+    @Override
+    public int getInt(int i) {
+        if (super.getField(i) != null)
+            return super.getInt(i);
+        return i < split ? left.getInt(i) : right.getInt(i - split);
+    }
+}
@@ -0,0 +1,87 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * Limit is an operator that implements a relational LIMIT: it returns the
+ * first limit tuples of its child, and stops reading the child once it has
+ * returned them.
+ */
+public class Limit extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private OpIterator child;
+    private int limit;
+    private transient int returned;
+
+    /**
+     * Creates a new Limit node over the tuples from the iterator.
+     *
+     * @param limit
+     *            the number of tuples to return.
+     * @param child
+     *            the tuples to return the first of.
+     */
+    public Limit(int limit, OpIterator child) {
+        if (limit < 0)
+            throw new IllegalArgumentException("negative limit " + limit);
+        this.limit = limit;
+        this.child = child;
+    }
+
+    /** @return the number of tuples returned, at most */
+    public int getLimit() {
+        return limit;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        returned = 0;
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        // drop a tuple hasNext() may have fetched ahead
+        super.close();
+        child.rewind();
+        returned = 0;
+        super.open();
+    }
+
+    /**
+     * Operator.fetchNext implementation. Returns tuples from the child
+     * operator until limit of them have been returned
+     *
+     * @return The next tuple, or null if there are no more tuples
+     */
+    protected Tuple fetchNext() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (returned < limit && child.hasNext()) {
+            returned++;
+            return child.next();
+        }
+        return null;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { this.child };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child = children[0];
+    }
+
+}
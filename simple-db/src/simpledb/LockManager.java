@@ -0,0 +1,481 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * LockManager keeps the page-level shared/exclusive locks of the
+ * BufferPool's strict two-phase locking.
+ * <p>
+ * Every locked page has a queue of lock requests: the granted requests
+ * followed by the waiting ones in arrival order.  A transaction that cannot
+ * be granted its lock sleeps on its request until a release grants it and
+ * wakes it up, instead of spinning.  Waiters are granted in FIFO order,
+ * except that a run of shared requests at the head of the queue is granted
+ * together, and that a transaction upgrading its shared lock to an exclusive
+ * one is queued ahead of the other waiters.
+ * <p>
+ * The lock table is hash-partitioned into stripes, each guarded by its own
+ * latch, so transactions locking different pages rarely contend.  Each
+ * transaction's held pages are also indexed by transaction, so commit and
+ * abort only touch the transaction's own locks.
+ * <p>
+ * Deadlocks are detected with a waits-for graph.  A transaction waits for
+ * the holders of conflicting locks on the page it is blocked on, and for the
+ * conflicting requests queued ahead of it; the edges of the waiters on a
+ * page are recomputed whenever that page's queue changes.  Each time a
+ * transaction blocks, the graph is searched for a cycle through it, and the
+ * youngest transaction (the one with the largest id) in the cycle is
+ * aborted.  No transaction is aborted just for waiting long.
+ * <p>
+ * Latches are always taken in the order: one stripe latch, the graph latch,
+ * a request's monitor.  No thread ever holds two stripe latches.
+ *
+ * @Threadsafe
+ */
+class LockManager {
+
+    /** Default number of stripes: four per core, rounded up to a power of two. */
+    public static final int DEFAULT_STRIPES = Runtime.getRuntime().availableProcessors() * 4;
+
+    private static class LockRequest {
+        final TransactionId tid;
+        final PageId pid;
+        boolean exclusive;
+        /** Set under the stripe latch; polled by the waiter under this request's monitor. */
+        volatile boolean granted;
+        /** Set when a deadlock victim is chosen while this request waits. */
+        volatile boolean aborted;
+
+        LockRequest(TransactionId tid, PageId pid, boolean exclusive) {
+            this.tid = tid;
+            this.pid = pid;
+            this.exclusive = exclusive;
+            this.granted = false;
+            this.aborted = false;
+        }
+
+        synchronized void wakeUp() {
+            notifyAll();
+        }
+    }
+
+    /** The requests on one page: granted ones first, then waiters in FIFO order. */
+    private static class LockQueue {
+        final LinkedList<LockRequest> requests = new LinkedList<>();
+
+        LockRequest grantedTo(TransactionId tid) {
+            for (LockRequest r : requests) {
+                if (!r.granted)
+                    break;
+                if (r.tid.equals(tid))
+                    return r;
+            }
+            return null;
+        }
+
+        /** True if r is compatible with every lock granted to other transactions. */
+        boolean compatible(LockRequest r) {
+            for (LockRequest g : requests) {
+                if (!g.granted)
+                    break;
+                if (g.tid.equals(r.tid))
+                    continue;
+                if (r.exclusive || g.exclusive)
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * The transactions r waits for: those holding a conflicting lock and
+         * those with a conflicting request queued ahead of r.
+         */
+        List<TransactionId> blockers(LockRequest r) {
+            List<TransactionId> result = new ArrayList<>();
+            for (LockRequest other : requests) {
+                if (other == r)
+                    break;
+                if (other.tid.equals(r.tid) || other.aborted)
+                    continue;
+                if (r.exclusive || other.exclusive)
+                    result.add(other.tid);
+            }
+            return result;
+        }
+
+        boolean hasWaiters() {
+            return !requests.isEmpty() && !requests.getLast().granted;
+        }
+
+        /** Position of the first waiting request. */
+        int firstWaiter() {
+            int i = 0;
+            for (LockRequest r : requests) {
+                if (!r.granted)
+                    break;
+                i++;
+            }
+            return i;
+        }
+    }
+
+    /** One partition of the lock table. */
+    private static class Stripe {
+        final ReentrantLock latch = new ReentrantLock();
+        final HashMap<PageId, LockQueue> table = new HashMap<>();
+    }
+
+    private final Stripe[] stripes;
+    /** The pages on which each transaction holds a lock. */
+    private final ConcurrentHashMap<TransactionId, Set<PageId>> held = new ConcurrentHashMap<>();
+
+    private final ReentrantLock graphLatch = new ReentrantLock();
+    /** The request each blocked transaction waits on; guarded by graphLatch. */
+    private final HashMap<TransactionId, LockRequest> waiting = new HashMap<>();
+    /** The waits-for graph; guarded by graphLatch. */
+    private final HashMap<TransactionId, List<TransactionId>> waitsFor = new HashMap<>();
+
+    private final AtomicLong deadlocks = new AtomicLong();
+    private final AtomicLong requesterVictims = new AtomicLong();
+    private final AtomicLong waiterVictims = new AtomicLong();
+
+    public LockManager() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param numStripes the number of partitions of the lock table; rounded
+     *                   up to a power of two
+     */
+    public LockManager(int numStripes) {
+        int n = 1;
+        while (n < numStripes)
+            n <<= 1;
+        stripes = new Stripe[n];
+        for (int i = 0; i < n; i++)
+            stripes[i] = new Stripe();
+    }
+
+    /** Return the number of partitions of the lock table */
+    public int numStripes() {
+        return stripes.length;
+    }
+
+    private Stripe stripeOf(PageId pid) {
+        // page ids hash to small, regular values; spread them over the stripes
+        int h = pid.hashCode() * 0x9E3779B9;
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * Acquires a lock on the given page for the given transaction, blocking
+     * until it can be granted.  READ_ONLY asks for a shared lock and
+     * READ_WRITE for an exclusive one; a transaction holding a shared lock
+     * that asks for READ_WRITE upgrades it.
+     *
+     * @throws TransactionAbortedException if the transaction was chosen as
+     *         the victim of a deadlock while waiting
+     */
+    public void acquireLock(TransactionId tid, PageId pid, Permissions perm)
+            throws TransactionAbortedException {
+        boolean exclusive = perm == Permissions.READ_WRITE;
+        Stripe stripe = stripeOf(pid);
+        LockRequest request;
+        stripe.latch.lock();
+        try {
+            LockQueue q = stripe.table.get(pid);
+            if (q == null) {
+                q = new LockQueue();
+                stripe.table.put(pid, q);
+            }
+            LockRequest mine = q.grantedTo(tid);
+            if (mine != null && (mine.exclusive || !exclusive))
+                return;
+
+            request = new LockRequest(tid, pid, exclusive);
+            if (!q.hasWaiters() && q.compatible(request)) {
+                grant(q, request, mine);
+                return;
+            }
+            if (mine != null)
+                q.requests.add(q.firstWaiter(), request); // upgrades jump the queue
+            else
+                q.requests.add(request);
+
+            graphLatch.lock();
+            try {
+                waiting.put(tid, request);
+                refreshEdges(q);
+                if (breakDeadlocks(request)) {
+                    withdraw(stripe, q, request);
+                    throw new TransactionAbortedException();
+                }
+            } finally {
+                graphLatch.unlock();
+            }
+        } finally {
+            stripe.latch.unlock();
+        }
+
+        boolean interrupted = false;
+        synchronized (request) {
+            while (!request.granted && !request.aborted) {
+                try {
+                    request.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    break;
+                }
+            }
+        }
+        if (request.granted)
+            return;
+
+        stripe.latch.lock();
+        try {
+            // the lock may have been granted after we stopped waiting
+            if (request.granted)
+                return;
+            graphLatch.lock();
+            try {
+                withdraw(stripe, stripe.table.get(pid), request);
+            } finally {
+                graphLatch.unlock();
+            }
+        } finally {
+            stripe.latch.unlock();
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        throw new TransactionAbortedException();
+    }
+
+    /**
+     * Releases the lock the given transaction holds on the given page, and
+     * withdraws any request it has waiting there.
+     */
+    public void releaseLock(TransactionId tid, PageId pid) {
+        Stripe stripe = stripeOf(pid);
+        stripe.latch.lock();
+        try {
+            Set<PageId> pages = held.get(tid);
+            if (pages != null)
+                pages.remove(pid);
+            LockQueue q = stripe.table.get(pid);
+            if (q == null)
+                return;
+            Iterator<LockRequest> it = q.requests.iterator();
+            while (it.hasNext()) {
+                if (it.next().tid.equals(tid))
+                    it.remove();
+            }
+            if (q.requests.isEmpty())
+                stripe.table.remove(pid);
+            else
+                grantWaiters(q);
+        } finally {
+            stripe.latch.unlock();
+        }
+    }
+
+    /** Return true if the given transaction holds a lock on the given page */
+    public boolean holdsLock(TransactionId tid, PageId pid) {
+        Set<PageId> pages = held.get(tid);
+        return pages != null && pages.contains(pid);
+    }
+
+    /**
+     * Return true if a transaction other than the given one holds or waits
+     * for a lock on the given page, so that a write lock there would block.
+     */
+    public boolean isLockedByOthers(TransactionId tid, PageId pid) {
+        Stripe stripe = stripeOf(pid);
+        stripe.latch.lock();
+        try {
+            LockQueue q = stripe.table.get(pid);
+            if (q == null)
+                return false;
+            for (LockRequest r : q.requests) {
+                if (!r.tid.equals(tid))
+                    return true;
+            }
+            return false;
+        } finally {
+            stripe.latch.unlock();
+        }
+    }
+
+    /** Return the pages on which the given transaction holds a lock */
+    public Set<PageId> getPagesHeldBy(TransactionId tid) {
+        Set<PageId> pages = held.get(tid);
+        return pages == null ? new HashSet<PageId>() : new HashSet<>(pages);
+    }
+
+    /** Release every lock held by the given transaction */
+    public void releaseAllLocks(TransactionId tid) {
+        Set<PageId> pages = held.remove(tid);
+        if (pages == null)
+            return;
+        for (PageId pid : pages)
+            releaseLock(tid, pid);
+    }
+
+    /** Return the number of deadlocks detected so far */
+    public long getDeadlockCount() {
+        return deadlocks.get();
+    }
+
+    /**
+     * Return how many deadlocks were resolved by aborting the transaction
+     * whose request closed the cycle
+     */
+    public long getRequesterVictimCount() {
+        return requesterVictims.get();
+    }
+
+    /**
+     * Return how many deadlocks were resolved by aborting a transaction that
+     * was already waiting
+     */
+    public long getWaiterVictimCount() {
+        return waiterVictims.get();
+    }
+
+    /**
+     * Looks for cycles in the waits-for graph through the transaction that
+     * just queued request, and aborts the youngest transaction of each.  Only
+     * the new request added edges, so any new cycle must pass through it.
+     * A waiting victim is flagged and woken; it withdraws its own request.
+     * Must be called with graphLatch held.
+     *
+     * @return true if the requester itself is the victim
+     */
+    private boolean breakDeadlocks(LockRequest request) {
+        List<TransactionId> cycle;
+        while ((cycle = findCycle(request.tid)) != null) {
+            deadlocks.incrementAndGet();
+            TransactionId victim = cycle.get(0);
+            for (TransactionId t : cycle) {
+                if (t.getId() > victim.getId())
+                    victim = t;
+            }
+            if (victim.equals(request.tid)) {
+                requesterVictims.incrementAndGet();
+                return true;
+            }
+            waiterVictims.incrementAndGet();
+            LockRequest victimRequest = waiting.remove(victim);
+            waitsFor.remove(victim);
+            victimRequest.aborted = true;
+            victimRequest.wakeUp();
+        }
+        return false;
+    }
+
+    /**
+     * Returns the transactions on a cycle of the waits-for graph that starts
+     * and ends at start, or null if there is none.
+     */
+    private List<TransactionId> findCycle(TransactionId start) {
+        ArrayList<TransactionId> path = new ArrayList<>();
+        path.add(start);
+        if (findCycle(start, start, path, new HashSet<TransactionId>()))
+            return path;
+        return null;
+    }
+
+    private boolean findCycle(TransactionId start, TransactionId from,
+                              ArrayList<TransactionId> path, Set<TransactionId> visited) {
+        List<TransactionId> edges = waitsFor.get(from);
+        if (edges == null)
+            return false;
+        for (TransactionId next : edges) {
+            if (next.equals(start))
+                return true;
+            if (!visited.add(next))
+                continue;
+            path.add(next);
+            if (findCycle(start, next, path, visited))
+                return true;
+            path.remove(path.size() - 1);
+        }
+        return false;
+    }
+
+    /**
+     * Recomputes the waits-for edges of the waiters on the given queue.
+     * Must be called with the queue's stripe latch and graphLatch held.
+     */
+    private void refreshEdges(LockQueue q) {
+        for (LockRequest r : q.requests) {
+            if (!r.granted && !r.aborted && waiting.get(r.tid) == r)
+                waitsFor.put(r.tid, q.blockers(r));
+        }
+    }
+
+    /**
+     * Removes a request that will not be granted from its queue and from the
+     * waits-for graph.  Must be called with the stripe latch and graphLatch
+     * held.
+     */
+    private void withdraw(Stripe stripe, LockQueue q, LockRequest request) {
+        if (waiting.get(request.tid) == request) {
+            waiting.remove(request.tid);
+            waitsFor.remove(request.tid);
+        }
+        q.requests.remove(request);
+        if (q.requests.isEmpty())
+            stripe.table.remove(request.pid);
+        else
+            grantWaiters(q);
+    }
+
+    /**
+     * Grants request, merging it into the lock the transaction already holds
+     * if it is an upgrade.  Must be called with the stripe latch held.
+     */
+    private void grant(LockQueue q, LockRequest request, LockRequest mine) {
+        q.requests.remove(request);
+        if (mine != null) {
+            mine.exclusive = true;
+        } else {
+            q.requests.add(q.firstWaiter(), request);
+            held.computeIfAbsent(request.tid, t -> ConcurrentHashMap.newKeySet()).add(request.pid);
+        }
+        request.granted = true;
+    }
+
+    /**
+     * Grants waiters from the head of the queue for as long as they are
+     * compatible with the granted locks; consecutive shared requests are
+     * therefore granted as a batch.  Wakes the granted waiters and refreshes
+     * the edges of the others.  Must be called with the stripe latch held.
+     */
+    private void grantWaiters(LockQueue q) {
+        List<LockRequest> granted = new ArrayList<>();
+        while (q.hasWaiters()) {
+            LockRequest next = q.requests.get(q.firstWaiter());
+            if (!q.compatible(next))
+                break;
+            grant(q, next, q.grantedTo(next.tid));
+            granted.add(next);
+        }
+        graphLatch.lock();
+        try {
+            for (LockRequest r : granted) {
+                if (waiting.get(r.tid) == r) {
+                    waiting.remove(r.tid);
+                    waitsFor.remove(r.tid);
+                }
+            }
+            refreshEdges(q);
+        } finally {
+            graphLatch.unlock();
+        }
+        for (LockRequest r : granted)
+            r.wakeUp();
+    }
+}
@@ -2,8 +2,10 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
-import java.lang.reflect.*;
+import java.util.concurrent.*;
 
 /*
 LogFile implements the recovery subsystem of SimpleDb.  This class is
@@ -18,7 +20,7 @@ Many of the methods here are synchronized (to prevent concurrent log
 writes from happening); many of the methods in BufferPool are also
 synchronized (for similar reasons.)  Problem is that BufferPool writes
 log records (on page flushed) and the log file flushes BufferPool
-pages (on checkpoints and recovery.)  This can lead to deadlock.  For
+pages (on rollback and recovery.)  This can lead to deadlock.  For
 that reason, any LogFile operation that needs to access the BufferPool
 must not be declared synchronized and must begin with a block like:
 
@@ -39,17 +41,22 @@ must not be declared synchronized and must begin with a block like:
 
 <ul>
 
-<li> The first long integer of the file represents the offset of the
-last written checkpoint, or -1 if there are no checkpoints
+<li> Log records are addressed by log sequence numbers (LSNs).  The LSN
+of a record is its byte position in the log since the log was created;
+LSNs only ever grow, even when the head of the log is truncated away.
+
+<li> The file begins with a header: an integer magic number, the LSN
+of the last written checkpoint (or -1 if there are no checkpoints), and
+the LSN of the first byte after the header.
 
 <li> All additional data in the log consists of log records.  Log
 records are variable length.
 
-<li> Each log record begins with an integer type and a long integer
+<li> Each log record begins with a byte type and a long integer
 transaction id.
 
-<li> Each log record ends with a long integer file offset representing
-the position in the log file where the record began.
+<li> Each log record ends with a long integer LSN: the position in the
+log where the record began.
 
 <li> There are five record types: ABORT, COMMIT, UPDATE, BEGIN, and
 CHECKPOINT
@@ -57,41 +64,104 @@ CHECKPOINT
 <li> ABORT, COMMIT, and BEGIN records contain no additional data
 
 <li>UPDATE RECORDS consist of two entries, a before image and an
-after image.  These images are serialized Page objects, and can be
-accessed with the LogFile.readPageData() and LogFile.writePageData()
-methods.  See LogFile.print() for an example.
+after image.  An image is a byte page type tag, the table id and page
+number of the page, and the length and bytes of the page data.  They
+are written with LogFile.writePageData() and read back with
+LogFile.readPageData().
+
+<li> CLR (compensation log) records are written when an update is
+undone.  They consist of the restored page image, followed by the long
+integer LSN of the UPDATE record that was undone.
 
 <li> CHECKPOINT records consist of active transactions at the time
 the checkpoint was taken and their first log record on disk.  The format
 of the record is an integer count of the number of transactions, as well
-as a long integer transaction id and a long integer first record offset
+as a long integer transaction id and a long integer first record LSN
 for each active transaction.
 
 </ul>
 
+<p> Records are assembled in an in-memory log buffer and only written to
+the file when the log is forced, when the buffer fills, or when the log
+has to be read back.
+
 */
 
 public class LogFile {
 
     final File logFile;
     private RandomAccessFile raf;
+    private FileChannel channel;
     Boolean recoveryUndecided; // no call to recover() and no append to log
 
-    static final int ABORT_RECORD = 1;
-    static final int COMMIT_RECORD = 2;
-    static final int UPDATE_RECORD = 3;
-    static final int BEGIN_RECORD = 4;
-    static final int CHECKPOINT_RECORD = 5;
+    static final byte ABORT_RECORD = 1;
+    static final byte COMMIT_RECORD = 2;
+    static final byte UPDATE_RECORD = 3;
+    static final byte BEGIN_RECORD = 4;
+    static final byte CHECKPOINT_RECORD = 5;
+    static final byte CLR_RECORD = 6;
     static final long NO_CHECKPOINT_ID = -1;
 
+    // page type tags of logged page images
+    static final byte HEAP_PAGE = 1;
+    static final byte BTREE_ROOT_PTR_PAGE = 2;
+    static final byte BTREE_INTERNAL_PAGE = 3;
+    static final byte BTREE_LEAF_PAGE = 4;
+    static final byte BTREE_HEADER_PAGE = 5;
+
     final static int INT_SIZE = 4;
     final static int LONG_SIZE = 8;
 
-    long currentOffset = -1;//protected by this
+    static final int LOG_MAGIC = 0x53444c47;
+    static final int HEADER_SIZE = INT_SIZE + 2 * LONG_SIZE;
+    /** type, transaction id and trailing start LSN */
+    static final int RECORD_OVERHEAD = 1 + 2 * LONG_SIZE;
+    static final int IMAGE_OVERHEAD = 1 + 3 * INT_SIZE;
+    static final int BUFFER_SIZE = 1 << 20;
+    /** Number of threads that write pages out during redo */
+    static final int REDO_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long bufferLsn = HEADER_SIZE; // LSN of the first byte in buffer; protected by this
+    private long baseLsn = 0;             // LSN of file offset 0; protected by this
     int totalRecords = 0; // for PatchTest //protected by this
 
     HashMap<Long,Long> tidToFirstLogRecord = new HashMap<Long,Long>();
 
+    /** The dirty page table: the pages with logged updates that may not
+        be on disk yet, mapped to the LSNs of the oldest (recLSN) and
+        newest such update.  Protected by this. */
+    private final HashMap<PageId,long[]> dirtyPages = new HashMap<PageId,long[]>();
+    static final int PAGE_ID_SIZE = 1 + 2 * INT_SIZE;
+
+    // checkpointing, protected by this
+    private final Object truncateLatch = new Object(); // taken before this
+    private Thread checkpointer = null;
+    private long checkpointMillis = 0;
+    private long checkpointBytes = 0;
+    private long lastCheckpointLsn = HEADER_SIZE;
+    private long lastCheckpointMillis = System.currentTimeMillis();
+    private long checkpoints = 0;
+    private long truncations = 0;
+
+    // group commit state, all protected by this
+    private long groupCommitWindowNanos = 0; // 0 = force on every commit
+    private long groupCommitBytes = 0;
+    private Thread flusher = null;
+    private long durableLsn = HEADER_SIZE; // end of the log known to be on disk
+    private int pendingCommits = 0;        // committers waiting for a force
+    private long failedGroupForces = 0;    // forces that failed committers waiting for them
+    private IOException groupForceError = null; // why the last of them failed
+
+    // commit statistics, protected by this
+    private long forces = 0;
+    private long commits = 0;
+    private long commitLatencyNanos = 0;
+    private long maxCommitLatencyNanos = 0;
+    private long commitBatches = 0;
+    private long batchedCommits = 0;
+    private int maxCommitBatch = 0;
+
     /** Constructor.
         Initialize and back the log file with the specified file.
         We're not sure yet whether the caller is creating a brand new DB,
@@ -106,6 +176,7 @@ public class LogFile {
     public LogFile(File f) throws IOException {
 	    this.logFile = f;
         raf = new RandomAccessFile(f, "rw");
+        channel = raf.getChannel();
         recoveryUndecided = true;
 
         // install shutdown hook to force cleanup on close
@@ -121,19 +192,114 @@ public class LogFile {
 
     // we're about to append a log record. if we weren't sure whether the
     // DB wants to do recovery, we're sure now -- it didn't. So truncate
-    // the log.
+    // the log.  LSNs carry on from the end of the old log.
     void preAppend() throws IOException {
         totalRecords++;
         if(recoveryUndecided){
             recoveryUndecided = false;
-            raf.seek(0);
+            long oldEnd = readHeader() ? baseLsn + raf.length() : HEADER_SIZE;
             raf.setLength(0);
-            raf.writeLong(NO_CHECKPOINT_ID);
-            raf.seek(raf.length());
-            currentOffset = raf.getFilePointer();
+            baseLsn = oldEnd - HEADER_SIZE;
+            writeHeader(NO_CHECKPOINT_ID);
+            buffer.clear();
+            bufferLsn = oldEnd;
+            durableLsn = oldEnd;
+            lastCheckpointLsn = oldEnd;
         }
     }
 
+    /** Reads the header of the log file.
+        @return false if the file does not start with a valid header
+    */
+    private boolean readHeader() throws IOException {
+        if (raf.length() < HEADER_SIZE)
+            return false;
+        raf.seek(0);
+        if (raf.readInt() != LOG_MAGIC)
+            return false;
+        raf.readLong(); // checkpoint
+        baseLsn = raf.readLong() - HEADER_SIZE;
+        return true;
+    }
+
+    /** Return the LSN of the last checkpoint written to the log file */
+    private long readCheckpointLsn() throws IOException {
+        raf.seek(INT_SIZE);
+        return raf.readLong();
+    }
+
+    private void writeHeader(long checkpointLsn) throws IOException {
+        writeHeader(channel, checkpointLsn, baseLsn);
+    }
+
+    private static void writeHeader(FileChannel ch, long checkpointLsn, long base) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(LOG_MAGIC).putLong(checkpointLsn).putLong(base + HEADER_SIZE);
+        header.flip();
+        while (header.hasRemaining())
+            ch.write(header, header.position());
+    }
+
+    /** Return the LSN the next log record will be written at */
+    synchronized long currentLsn() {
+        return bufferLsn + buffer.position();
+    }
+
+    /** Returns a buffer with room for a record of the given size: the log
+        buffer itself, or a buffer of its own for a record larger than the
+        log buffer.  The caller fills it and passes it to endRecord.
+    */
+    private ByteBuffer beginRecord(int size) throws IOException {
+        if (buffer.remaining() < size)
+            writeBuffer();
+        if (size > buffer.capacity())
+            return ByteBuffer.allocate(size);
+        return buffer;
+    }
+
+    private void endRecord(ByteBuffer record) throws IOException {
+        if (record == buffer)
+            return;
+        record.flip();
+        writeFully(record, bufferLsn);
+        bufferLsn += record.limit();
+    }
+
+    /** Write out the contents of the log buffer (without forcing it). */
+    private void writeBuffer() throws IOException {
+        if (buffer.position() == 0)
+            return;
+        buffer.flip();
+        int length = buffer.limit();
+        writeFully(buffer, bufferLsn);
+        bufferLsn += length;
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer b, long lsn) throws IOException {
+        long pos = lsn - baseLsn;
+        while (b.hasRemaining())
+            pos += channel.write(b, pos);
+    }
+
+    /** Positions the log file at the given LSN for reading, after writing
+        out the log buffer so that the whole log can be read.
+        @return the log file, positioned at lsn
+    */
+    RandomAccessFile seekLsn(long lsn) throws IOException {
+        writeBuffer();
+        raf.seek(lsn - baseLsn);
+        return raf;
+    }
+
+    /** Appends a record with no content besides its type and tid. */
+    private void writeSimpleRecord(byte type, long tid) throws IOException {
+        long start = currentLsn();
+        ByteBuffer b = beginRecord(RECORD_OVERHEAD);
+        b.put(type).putLong(tid).putLong(start);
+        endRecord(b);
+    }
+
     public synchronized int getTotalRecords() {
         return totalRecords;
     }
@@ -157,10 +323,7 @@ public class LogFile {
                 // live transactions (needs tidToFirstLogRecord)
                 rollback(tid);
 
-                raf.writeInt(ABORT_RECORD);
-                raf.writeLong(tid.getId());
-                raf.writeLong(currentOffset);
-                currentOffset = raf.getFilePointer();
+                writeSimpleRecord(ABORT_RECORD, tid.getId());
                 force();
                 tidToFirstLogRecord.remove(tid.getId());
             }
@@ -168,21 +331,53 @@ public class LogFile {
     }
 
     /** Write a commit record to disk for the specified tid,
-        and force the log to disk.
+        and force the log to disk.  In group commit mode the record is
+        forced by the log flusher together with those of the other
+        transactions committing at about the same time; this method
+        returns once it is on disk.
 
         @param tid The committing transaction.
+        @see #setGroupCommit
     */
-    public synchronized void logCommit(TransactionId tid) throws IOException {
-        preAppend();
-        Debug.log("COMMIT " + tid.getId());
-        //should we verify that this is a live transaction?
+    public void logCommit(TransactionId tid) throws IOException {
+        long start = System.nanoTime();
+        synchronized (this) {
+            preAppend();
+            Debug.log("COMMIT " + tid.getId());
+            //should we verify that this is a live transaction?
 
-        raf.writeInt(COMMIT_RECORD);
-        raf.writeLong(tid.getId());
-        raf.writeLong(currentOffset);
-        currentOffset = raf.getFilePointer();
-        force();
-        tidToFirstLogRecord.remove(tid.getId());
+            writeSimpleRecord(COMMIT_RECORD, tid.getId());
+            tidToFirstLogRecord.remove(tid.getId());
+
+            if (flusher == null) {
+                force();
+            } else {
+                long commitLsn = currentLsn();
+                long failures = failedGroupForces;
+                pendingCommits++;
+                notifyAll(); // wake the flusher
+                try {
+                    while (durableLsn < commitLsn) {
+                        if (failedGroupForces != failures)
+                            throw new IOException("group commit force failed: "
+                                    + groupForceError.getMessage(), groupForceError);
+                        if (flusher == null) {
+                            // the flusher stopped without forcing this record
+                            force();
+                            break;
+                        }
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("interrupted waiting for group commit");
+                }
+            }
+
+            long latency = System.nanoTime() - start;
+            commits++;
+            commitLatencyNanos += latency;
+            maxCommitLatencyNanos = Math.max(maxCommitLatencyNanos, latency);
+        }
     }
 
     /** Write an UPDATE record to disk for the specified tid and page
@@ -191,12 +386,12 @@ public class LogFile {
         @param before The before image of the page
         @param after The after image of the page
 
+        @return the LSN of the record
         @see simpledb.Page#getBeforeImage
     */
-    public  synchronized void logWrite(TransactionId tid, Page before,
+    public  synchronized long logWrite(TransactionId tid, Page before,
                                        Page after)
         throws IOException  {
-        Debug.log("WRITE, offset = " + raf.getFilePointer());
         preAppend();
         /* update record conists of
 
@@ -204,94 +399,98 @@ public class LogFile {
            transaction id
            before page data (see writePageData)
            after page data
-           start offset
+           start LSN
         */
-        raf.writeInt(UPDATE_RECORD);
-        raf.writeLong(tid.getId());
+        long start = currentLsn();
+        byte[] beforeData = before.getPageData();
+        byte[] afterData = after.getPageData();
+        ByteBuffer b = beginRecord(RECORD_OVERHEAD + 2 * IMAGE_OVERHEAD
+                                   + beforeData.length + afterData.length);
+        b.put(UPDATE_RECORD);
+        b.putLong(tid.getId());
+        writePageData(b, before, beforeData);
+        writePageData(b, after, afterData);
+        b.putLong(start);
+        endRecord(b);
+        pageLogged(after.getId(), start);
+
+        Debug.log("WRITE LSN = " + start);
+        return start;
+    }
 
-        writePageData(raf,before);
-        writePageData(raf,after);
-        raf.writeLong(currentOffset);
-        currentOffset = raf.getFilePointer();
+    /** Enters a logged update of a page into the dirty page table. */
+    private void pageLogged(PageId pid, long lsn) {
+        long[] e = dirtyPages.get(pid);
+        if (e == null)
+            dirtyPages.put(pid, new long[] { lsn, lsn });
+        else
+            e[1] = lsn;
+    }
 
-        Debug.log("WRITE OFFSET = " + currentOffset);
+    /** Tells the log that a page has been written to disk as of the
+        update logged at the given LSN, so that it can leave the dirty
+        page table.  If the page was logged again since, only its recLSN
+        moves past the write.
+        @param pid the page written
+        @param lsn the LSN of the newest logged update in the image written
+    */
+    public synchronized void pageWritten(PageId pid, long lsn) {
+        long[] e = dirtyPages.get(pid);
+        if (e == null)
+            return;
+        if (e[1] <= lsn)
+            dirtyPages.remove(pid);
+        else
+            e[0] = lsn + 1;
     }
 
-    void writePageData(RandomAccessFile raf, Page p) throws IOException{
-        PageId pid = p.getId();
-        int pageInfo[] = pid.serialize();
+    /** Return a copy of the dirty page table: the pages with logged
+        updates that may not be on disk yet, mapped to their recLSN */
+    public synchronized Map<PageId,Long> getDirtyPageTable() {
+        HashMap<PageId,Long> copy = new HashMap<PageId,Long>();
+        for (Map.Entry<PageId,long[]> e : dirtyPages.entrySet())
+            copy.put(e.getKey(), e.getValue()[0]);
+        return copy;
+    }
 
+    void writePageData(ByteBuffer b, Page p, byte[] pageData) throws IOException {
         //page data is:
-        // page class name
-        // id class name
-        // id class bytes
-        // id class data
-        // page class bytes
-        // page class data
-
-        String pageClassName = p.getClass().getName();
-        String idClassName = pid.getClass().getName();
-
-        raf.writeUTF(pageClassName);
-        raf.writeUTF(idClassName);
-
-        raf.writeInt(pageInfo.length);
-        for (int i = 0; i < pageInfo.length; i++) {
-            raf.writeInt(pageInfo[i]);
-        }
-        byte[] pageData = p.getPageData();
-        raf.writeInt(pageData.length);
-        raf.write(pageData);
-        // Debug.log ("WROTE PAGE DATA, CLASS = " + pageClassName + ", table = " +  pid.getTableId() + ", page = " + pid.pageno());
+        // page type tag
+        // table id
+        // page number
+        // page data length
+        // page data
+        writePageId(b, p.getId());
+        b.putInt(pageData.length);
+        b.put(pageData);
     }
 
-    Page readPageData(RandomAccessFile raf) throws IOException {
-        PageId pid;
-        Page newPage = null;
-
-        String pageClassName = raf.readUTF();
-        String idClassName = raf.readUTF();
-
-        try {
-            Class<?> idClass = Class.forName(idClassName);
-            Class<?> pageClass = Class.forName(pageClassName);
-
-            Constructor<?>[] idConsts = idClass.getDeclaredConstructors();
-            int numIdArgs = raf.readInt();
-            Object idArgs[] = new Object[numIdArgs];
-            for (int i = 0; i<numIdArgs;i++) {
-                idArgs[i] = new Integer(raf.readInt());
-            }
-            pid = (PageId)idConsts[0].newInstance(idArgs);
-
-            Constructor<?>[] pageConsts = pageClass.getDeclaredConstructors();
-            int pageSize = raf.readInt();
-
-            byte[] pageData = new byte[pageSize];
-            raf.read(pageData); //read before image
-
-            Object[] pageArgs = new Object[2];
-            pageArgs[0] = pid;
-            pageArgs[1] = pageData;
-
-            newPage = (Page)pageConsts[0].newInstance(pageArgs);
+    Page readPageData(DataInput in) throws IOException {
+        PageId pid = readPageId(in);
+        byte[] pageData = new byte[in.readInt()];
+        in.readFully(pageData);
 
-            //            Debug.log("READ PAGE OF TYPE " + pageClassName + ", table = " + newPage.getId().getTableId() + ", page = " + newPage.getId().pageno());
-        } catch (ClassNotFoundException e){
-            e.printStackTrace();
-            throw new IOException();
-        } catch (InstantiationException e) {
-            e.printStackTrace();
-            throw new IOException();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-            throw new IOException();
-        } catch (InvocationTargetException e) {
-            e.printStackTrace();
-            throw new IOException();
+        if (pid instanceof HeapPageId) {
+            DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+            if (file instanceof HeapFile)
+                return ((HeapFile) file).newPage((HeapPageId) pid, pageData, false);
+            return new HeapPage((HeapPageId) pid, pageData, false);
         }
-        return newPage;
+        BTreePageId bpid = (BTreePageId) pid;
+        switch (bpid.pgcateg()) {
+        case BTreePageId.ROOT_PTR:
+            return new BTreeRootPtrPage(bpid, pageData);
+        case BTreePageId.INTERNAL:
+            return new BTreeInternalPage(bpid, pageData, keyField(pid.getTableId()));
+        case BTreePageId.LEAF:
+            return new BTreeLeafPage(bpid, pageData, keyField(pid.getTableId()));
+        default:
+            return new BTreeHeaderPage(bpid, pageData);
+        }
+    }
 
+    private static int keyField(int tableId) {
+        return ((BTreeFile) Database.getCatalog().getDatabaseFile(tableId)).keyField();
     }
 
     /** Write a BEGIN record for the specified transaction
@@ -306,150 +505,132 @@ public class LogFile {
             throw new IOException("double logXactionBegin()");
         }
         preAppend();
-        raf.writeInt(BEGIN_RECORD);
-        raf.writeLong(tid.getId());
-        raf.writeLong(currentOffset);
-        tidToFirstLogRecord.put(tid.getId(), currentOffset);
-        currentOffset = raf.getFilePointer();
+        tidToFirstLogRecord.put(tid.getId(), currentLsn());
+        writeSimpleRecord(BEGIN_RECORD, tid.getId());
 
-        Debug.log("BEGIN OFFSET = " + currentOffset);
+        Debug.log("BEGIN LSN = " + tidToFirstLogRecord.get(tid.getId()));
     }
 
-    /** Checkpoint the log and write a checkpoint record. */
+    /** Checkpoint the log and write a checkpoint record.  The checkpoint
+        is fuzzy: it records the active transactions and the dirty page
+        table, but does not flush any pages, so it does not need the
+        BufferPool and only holds the log for as long as it takes to
+        append the record.  Then truncates the log. */
     public void logCheckpoint() throws IOException {
-        //make sure we have buffer pool lock before proceeding
-        synchronized (Database.getBufferPool()) {
-            synchronized (this) {
-                //Debug.log("CHECKPOINT, offset = " + raf.getFilePointer());
-                preAppend();
-                long startCpOffset, endCpOffset;
-                Set<Long> keys = tidToFirstLogRecord.keySet();
-                Iterator<Long> els = keys.iterator();
-                force();
-                Database.getBufferPool().flushAllPages();
-                startCpOffset = raf.getFilePointer();
-                raf.writeInt(CHECKPOINT_RECORD);
-                raf.writeLong(-1); //no tid , but leave space for convenience
-
-                //write list of outstanding transactions
-                raf.writeInt(keys.size());
-                while (els.hasNext()) {
-                    Long key = els.next();
-                    Debug.log("WRITING CHECKPOINT TRANSACTION ID: " + key);
-                    raf.writeLong(key);
-                    //Debug.log("WRITING CHECKPOINT TRANSACTION OFFSET: " + tidToFirstLogRecord.get(key));
-                    raf.writeLong(tidToFirstLogRecord.get(key));
-                }
-
-                //once the CP is written, make sure the CP location at the
-                // beginning of the log file is updated
-                endCpOffset = raf.getFilePointer();
-                raf.seek(0);
-                raf.writeLong(startCpOffset);
-                raf.seek(endCpOffset);
-                raf.writeLong(currentOffset);
-                currentOffset = raf.getFilePointer();
-                //Debug.log("CP OFFSET = " + currentOffset);
+        synchronized (this) {
+            preAppend();
+            Set<Long> keys = tidToFirstLogRecord.keySet();
+
+            long startCp = currentLsn();
+            ByteBuffer b = beginRecord(RECORD_OVERHEAD + 2 * INT_SIZE
+                                       + keys.size() * 2 * LONG_SIZE
+                                       + dirtyPages.size() * (PAGE_ID_SIZE + LONG_SIZE));
+            b.put(CHECKPOINT_RECORD);
+            b.putLong(-1); //no tid , but leave space for convenience
+
+            //write list of outstanding transactions
+            b.putInt(keys.size());
+            for (Long key : keys) {
+                Debug.log("WRITING CHECKPOINT TRANSACTION ID: " + key);
+                b.putLong(key);
+                b.putLong(tidToFirstLogRecord.get(key));
+            }
+            //and the dirty page table
+            b.putInt(dirtyPages.size());
+            for (Map.Entry<PageId,long[]> e : dirtyPages.entrySet()) {
+                writePageId(b, e.getKey());
+                b.putLong(e.getValue()[0]);
             }
+            b.putLong(startCp);
+            endRecord(b);
+
+            //once the CP is on disk, make sure the CP location in
+            // the header of the log file is updated
+            force();
+            writeHeader(startCp);
+            force();
+            lastCheckpointLsn = startCp;
+            lastCheckpointMillis = System.currentTimeMillis();
+            checkpoints++;
         }
 
         logTruncate();
     }
 
     /** Truncate any unneeded portion of the log to reduce its space
-        consumption */
-    public synchronized void logTruncate() throws IOException {
-        preAppend();
-        raf.seek(0);
-        long cpLoc = raf.readLong();
-
-        long minLogRecord = cpLoc;
-
-        if (cpLoc != -1L) {
-            raf.seek(cpLoc);
-            int cpType = raf.readInt();
-            @SuppressWarnings("unused")
-            long cpTid = raf.readLong();
-
-            if (cpType != CHECKPOINT_RECORD) {
-                throw new RuntimeException("Checkpoint pointer does not point to checkpoint record");
-            }
-
-            int numOutstanding = raf.readInt();
-
-            for (int i = 0; i < numOutstanding; i++) {
-                @SuppressWarnings("unused")
-                long tid = raf.readLong();
-                long firstLogRecord = raf.readLong();
-                if (firstLogRecord < minLogRecord) {
-                    minLogRecord = firstLogRecord;
+        consumption.  Everything before the last checkpoint, the first
+        record of every transaction active at it, and the oldest update
+        of every page in its dirty page table can go.  Records keep
+        their LSNs, so the rest of the log is copied as is; the bulk of
+        the copy is made without holding the log, so appends go on
+        while the log is truncated. */
+    public void logTruncate() throws IOException {
+        synchronized (truncateLatch) {
+            long cpLsn, minLsn, copiedTo, oldBase;
+            FileChannel from;
+            synchronized (this) {
+                preAppend();
+                writeBuffer();
+                cpLsn = readCheckpointLsn();
+                if (cpLsn == NO_CHECKPOINT_ID)
+                    return;
+                LogRecord cp = readRecord(seekLsn(cpLsn));
+                if (cp == null || cp.type != CHECKPOINT_RECORD) {
+                    throw new RuntimeException("Checkpoint pointer does not point to checkpoint record");
                 }
+                minLsn = cpLsn;
+                for (long first : cp.active.values())
+                    minLsn = Math.min(minLsn, first);
+                for (long recLsn : cp.dirty.values())
+                    minLsn = Math.min(minLsn, recLsn);
+
+                // we can truncate everything before minLsn
+                if (minLsn <= baseLsn + HEADER_SIZE)
+                    return;
+                copiedTo = currentLsn();
+                from = channel;
+                oldBase = baseLsn;
             }
-        }
-
-        // we can truncate everything before minLogRecord
-        File newFile = new File("logtmp" + System.currentTimeMillis());
-        RandomAccessFile logNew = new RandomAccessFile(newFile, "rw");
-        logNew.seek(0);
-        logNew.writeLong((cpLoc - minLogRecord) + LONG_SIZE);
-
-        raf.seek(minLogRecord);
 
-        //have to rewrite log records since offsets are different after truncation
-        while (true) {
-            try {
-                int type = raf.readInt();
-                long record_tid = raf.readLong();
-                long newStart = logNew.getFilePointer();
-
-                Debug.log("NEW START = " + newStart);
-
-                logNew.writeInt(type);
-                logNew.writeLong(record_tid);
-
-                switch (type) {
-                case UPDATE_RECORD:
-                    Page before = readPageData(raf);
-                    Page after = readPageData(raf);
-
-                    writePageData(logNew, before);
-                    writePageData(logNew, after);
-                    break;
-                case CHECKPOINT_RECORD:
-                    int numXactions = raf.readInt();
-                    logNew.writeInt(numXactions);
-                    while (numXactions-- > 0) {
-                        long xid = raf.readLong();
-                        long xoffset = raf.readLong();
-                        logNew.writeLong(xid);
-                        logNew.writeLong((xoffset - minLogRecord) + LONG_SIZE);
-                    }
-                    break;
-                case BEGIN_RECORD:
-                    tidToFirstLogRecord.put(record_tid,newStart);
-                    break;
-                }
-
-                //all xactions finish with a pointer
-                logNew.writeLong(newStart);
-                raf.readLong();
+            long newBase = minLsn - HEADER_SIZE;
+            File newFile = new File("logtmp" + System.currentTimeMillis());
+            RandomAccessFile logNew = new RandomAccessFile(newFile, "rw");
+            FileChannel newChannel = logNew.getChannel();
+            copyLog(from, oldBase, minLsn, copiedTo, newChannel, newBase);
 
-            } catch (EOFException e) {
-                break;
+            synchronized (this) {
+                // catch up with what was appended meanwhile
+                writeBuffer();
+                long endLsn = currentLsn();
+                copyLog(channel, baseLsn, copiedTo, endLsn, newChannel, newBase);
+                writeHeader(newChannel, readCheckpointLsn(), newBase);
+                newChannel.force(true);
+                logNew.close();
+
+                Debug.log("TRUNCATING LOG;  WAS " + (endLsn - baseLsn) + " BYTES ; NEW START LSN : " + minLsn);
+
+                raf.close();
+                logFile.delete();
+                newFile.renameTo(logFile);
+                raf = new RandomAccessFile(logFile, "rw");
+                channel = raf.getChannel();
+                baseLsn = newBase;
+                newFile.delete();
+                truncations++;
             }
         }
+    }
 
-        Debug.log("TRUNCATING LOG;  WAS " + raf.length() + " BYTES ; NEW START : " + minLogRecord + " NEW LENGTH: " + (raf.length() - minLogRecord));
-
-        raf.close();
-        logFile.delete();
-        newFile.renameTo(logFile);
-        raf = new RandomAccessFile(logFile, "rw");
-        raf.seek(raf.length());
-        newFile.delete();
-
-        currentOffset = raf.getFilePointer();
-        //print();
+    /** Copies the log from LSN start up to LSN end into a new log file
+        whose LSNs are based at newBase. */
+    private static void copyLog(FileChannel src, long srcBase, long start, long end,
+                                FileChannel dest, long newBase) throws IOException {
+        long pos = start - srcBase, to = end - srcBase, destPos = start - newBase;
+        while (pos < to) {
+            long n = src.transferTo(pos, to - pos, dest.position(destPos));
+            pos += n;
+            destPos += n;
+        }
     }
 
     /** Rollback the specified transaction, setting the state of any
@@ -465,8 +646,211 @@ public class LogFile {
         synchronized (Database.getBufferPool()) {
             synchronized(this) {
                 preAppend();
-                
+                Long first = tidToFirstLogRecord.get(tid.getId());
+                if (first == null)
+                    throw new NoSuchElementException("transaction " + tid.getId() + " has no log records");
+                HashMap<Long,Long> tids = new HashMap<Long,Long>();
+                tids.put(tid.getId(), first);
+                undo(tids);
+            }
+        }
+    }
+
+    /** A log record as read back by recovery.  Page images are not
+        decoded; only their LSNs are kept. */
+    private static class LogRecord {
+        byte type;
+        long tid;
+        long lsn;
+        PageId pid;          // UPDATE and CLR
+        long beforeLsn;      // UPDATE
+        long afterLsn;       // UPDATE, and the restored image of a CLR
+        long undoneLsn;      // CLR
+        HashMap<Long,Long> active; // CHECKPOINT: tid -> first LSN
+        HashMap<PageId,Long> dirty; // CHECKPOINT: pid -> recLSN
+    }
+
+    /** Reads the log record at the current position of in.
+        @return the record, or null at the end of the log or at a record
+        that was torn by a crash
+    */
+    private LogRecord readRecord(RandomAccessFile in) throws IOException {
+        LogRecord r = new LogRecord();
+        r.lsn = baseLsn + in.getFilePointer();
+        try {
+            r.type = in.readByte();
+            r.tid = in.readLong();
+            switch (r.type) {
+            case UPDATE_RECORD:
+                r.beforeLsn = baseLsn + in.getFilePointer();
+                r.pid = skipPageData(in);
+                r.afterLsn = baseLsn + in.getFilePointer();
+                skipPageData(in);
+                break;
+            case CLR_RECORD:
+                r.afterLsn = baseLsn + in.getFilePointer();
+                r.pid = skipPageData(in);
+                r.undoneLsn = in.readLong();
+                break;
+            case CHECKPOINT_RECORD:
+                r.active = new HashMap<Long,Long>();
+                int n = in.readInt();
+                for (int i = 0; i < n; i++) {
+                    long tid = in.readLong();
+                    r.active.put(tid, in.readLong());
+                }
+                r.dirty = new HashMap<PageId,Long>();
+                n = in.readInt();
+                for (int i = 0; i < n; i++) {
+                    PageId pid = readPageId(in);
+                    r.dirty.put(pid, in.readLong());
+                }
+                break;
+            case ABORT_RECORD:
+            case COMMIT_RECORD:
+            case BEGIN_RECORD:
+                break;
+            default:
+                return null;
             }
+            if (in.readLong() != r.lsn)
+                return null;
+        } catch (EOFException e) {
+            return null;
+        }
+        return r;
+    }
+
+    /** Skips over a page image, returning the id of its page. */
+    private static PageId skipPageData(RandomAccessFile in) throws IOException {
+        PageId pid = readPageId(in);
+        int length = in.readInt();
+        if (in.getFilePointer() + length > in.length())
+            throw new EOFException();
+        in.seek(in.getFilePointer() + length);
+        return pid;
+    }
+
+    /** Writes a page id as its page type tag, table id and page number. */
+    static void writePageId(ByteBuffer b, PageId pid) throws IOException {
+        byte tag = HEAP_PAGE;
+        if (!(pid instanceof HeapPageId) && !(pid instanceof BTreePageId))
+            throw new IOException("cannot log pages of type " + pid.getClass().getName());
+        if (pid instanceof BTreePageId) {
+            switch (((BTreePageId) pid).pgcateg()) {
+            case BTreePageId.ROOT_PTR: tag = BTREE_ROOT_PTR_PAGE; break;
+            case BTreePageId.INTERNAL: tag = BTREE_INTERNAL_PAGE; break;
+            case BTreePageId.LEAF: tag = BTREE_LEAF_PAGE; break;
+            default: tag = BTREE_HEADER_PAGE; break;
+            }
+        }
+        b.put(tag);
+        b.putInt(pid.getTableId());
+        b.putInt(pid.getPageNumber());
+    }
+
+    static PageId readPageId(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        int tableId = in.readInt();
+        int pgNo = in.readInt();
+        switch (tag) {
+        case HEAP_PAGE:
+            return new HeapPageId(tableId, pgNo);
+        case BTREE_ROOT_PTR_PAGE:
+            return new BTreePageId(tableId, pgNo, BTreePageId.ROOT_PTR);
+        case BTREE_INTERNAL_PAGE:
+            return new BTreePageId(tableId, pgNo, BTreePageId.INTERNAL);
+        case BTREE_LEAF_PAGE:
+            return new BTreePageId(tableId, pgNo, BTreePageId.LEAF);
+        case BTREE_HEADER_PAGE:
+            return new BTreePageId(tableId, pgNo, BTreePageId.HEADER);
+        default:
+            throw new IOException("unknown page type tag " + tag + " in log");
+        }
+    }
+
+    /** Reads the page image at the given LSN.  Uses positional reads of
+        the log file, so it may be called from several threads at once as
+        long as the log buffer has been written out. */
+    private Page readImage(long lsn) throws IOException {
+        long pos = lsn - baseLsn;
+        ByteBuffer header = ByteBuffer.allocate(IMAGE_OVERHEAD);
+        readFully(header, pos);
+        ByteBuffer image = ByteBuffer.allocate(IMAGE_OVERHEAD + header.getInt(IMAGE_OVERHEAD - INT_SIZE));
+        readFully(image, pos);
+        return readPageData(new DataInputStream(new ByteArrayInputStream(image.array())));
+    }
+
+    private void readFully(ByteBuffer b, long pos) throws IOException {
+        while (b.hasRemaining()) {
+            int n = channel.read(b, pos + b.position());
+            if (n < 0)
+                throw new EOFException();
+        }
+        b.flip();
+    }
+
+    /** Appends a compensation record for the undo of an update. */
+    private long logClr(long tid, Page restored, long undoneLsn) throws IOException {
+        long start = currentLsn();
+        byte[] data = restored.getPageData();
+        ByteBuffer b = beginRecord(RECORD_OVERHEAD + IMAGE_OVERHEAD + data.length + LONG_SIZE);
+        b.put(CLR_RECORD);
+        b.putLong(tid);
+        writePageData(b, restored, data);
+        b.putLong(undoneLsn);
+        b.putLong(start);
+        endRecord(b);
+        pageLogged(restored.getId(), start);
+        return start;
+    }
+
+    /** Undoes the updates of the given transactions, newest first,
+        logging a CLR for each and installing the before images on disk.
+        Updates already compensated by an earlier, interrupted undo are
+        skipped.  Must be called with the BufferPool and this locked.
+
+        @param tids the transactions to undo, mapped to their first LSN
+    */
+    private void undo(Map<Long,Long> tids) throws IOException {
+        long from = Long.MAX_VALUE;
+        for (long lsn : tids.values())
+            from = Math.min(from, lsn);
+
+        ArrayList<LogRecord> updates = new ArrayList<LogRecord>();
+        HashMap<Long,Long> undoneFrom = new HashMap<Long,Long>();
+        RandomAccessFile in = seekLsn(from);
+        LogRecord r;
+        while ((r = readRecord(in)) != null) {
+            if (!tids.containsKey(r.tid))
+                continue;
+            if (r.type == UPDATE_RECORD) {
+                updates.add(r);
+            } else if (r.type == CLR_RECORD) {
+                Long prev = undoneFrom.get(r.tid);
+                undoneFrom.put(r.tid, prev == null ? r.undoneLsn : Math.min(prev, r.undoneLsn));
+            }
+        }
+
+        LinkedHashMap<PageId,Page> restored = new LinkedHashMap<PageId,Page>();
+        long lastClr = 0;
+        for (int i = updates.size() - 1; i >= 0; i--) {
+            LogRecord u = updates.get(i);
+            Long undone = undoneFrom.get(u.tid);
+            if (undone != null && u.lsn >= undone)
+                continue;
+            Page before = readImage(u.beforeLsn);
+            lastClr = logClr(u.tid, before, u.lsn);
+            restored.put(u.pid, before); // the oldest before image wins
+        }
+        if (restored.isEmpty())
+            return;
+        force();
+        BufferPool bp = Database.getBufferPool();
+        for (Page p : restored.values()) {
+            Database.getCatalog().getDatabaseFile(p.getId().getTableId()).writePage(p);
+            bp.discardPage(p.getId());
+            pageWritten(p.getId(), lastClr);
         }
     }
 
@@ -474,36 +858,379 @@ public class LogFile {
         is necessary so that start up can happen quickly (without
         extensive recovery.)
     */
-    public synchronized void shutdown() {
+    public void shutdown() {
+        stopFlusher();
+        stopCheckpointer();
         try {
             logCheckpoint();  //simple way to shutdown is to write a checkpoint record
-            raf.close();
+            synchronized (this) {
+                raf.close();
+            }
         } catch (IOException e) {
             System.out.println("ERROR SHUTTING DOWN -- IGNORING.");
             e.printStackTrace();
         }
     }
 
+    /** Start or stop taking checkpoints in the background.  A checkpointer
+        thread takes a checkpoint (and truncates the log) whenever millis
+        have passed or bytes of log have been written since the last one,
+        which bounds both the size of the log and the time recovery takes.
+        No checkpoint is taken before it is known whether the log is to be
+        recovered.
+
+        @param millis the time between checkpoints, or 0 for no limit
+        @param bytes the log written between checkpoints, or 0 for no limit
+    */
+    public void setCheckpointInterval(long millis, long bytes) {
+        synchronized (this) {
+            checkpointMillis = Math.max(0, millis);
+            checkpointBytes = Math.max(0, bytes);
+            if (checkpointer == null && (checkpointMillis > 0 || checkpointBytes > 0)) {
+                checkpointer = new Thread(this::runCheckpointer, "log-checkpointer");
+                checkpointer.setDaemon(true);
+                checkpointer.start();
+                return;
+            }
+            notifyAll();
+            if (checkpointMillis > 0 || checkpointBytes > 0)
+                return;
+        }
+        stopCheckpointer();
+    }
+
+    private void stopCheckpointer() {
+        Thread t;
+        synchronized (this) {
+            t = checkpointer;
+            checkpointer = null;
+            notifyAll();
+        }
+        if (t == null || t == Thread.currentThread())
+            return;
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized boolean checkpointDue() {
+        if (recoveryUndecided)
+            return false;
+        return (checkpointMillis > 0
+                && System.currentTimeMillis() - lastCheckpointMillis >= checkpointMillis)
+            || (checkpointBytes > 0 && currentLsn() - lastCheckpointLsn >= checkpointBytes);
+    }
+
+    private void runCheckpointer() {
+        Thread self = Thread.currentThread();
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (checkpointer == self && !checkpointDue())
+                        wait(checkpointMillis > 0 ? Math.min(checkpointMillis, 100) : 100);
+                    if (checkpointer != self)
+                        return;
+                }
+                logCheckpoint();
+            }
+        } catch (InterruptedException e) {
+            // exit
+        } catch (IOException e) {
+            System.out.println("ERROR IN LOG CHECKPOINTER -- BACKGROUND CHECKPOINTS DISABLED.");
+            e.printStackTrace();
+        }
+    }
+
+    /** Return the number of checkpoints taken */
+    public synchronized long getCheckpointCount() {
+        return checkpoints;
+    }
+
+    /** Return the number of times the log was truncated */
+    public synchronized long getTruncationCount() {
+        return truncations;
+    }
+
     /** Recover the database system by ensuring that the updates of
         committed transactions are installed and that the
         updates of uncommitted transactions are not installed.
+        <p>
+        Recovery runs in three passes.  Analysis scans the log from the
+        oldest recLSN in the dirty page table of the last checkpoint (or
+        from the checkpoint, if it is older), finding the transactions
+        that were still active at the crash and the newest image of every
+        page updated since.  Redo then repeats history by installing
+        those images, several pages at a time.  Finally undo rolls back the unfinished
+        transactions, logging CLRs, and writes an ABORT record for each.
     */
     public void recover() throws IOException {
         synchronized (Database.getBufferPool()) {
             synchronized (this) {
                 recoveryUndecided = false;
-                // some code goes here
+                if (!readHeader()) {
+                    baseLsn = 0;
+                    raf.setLength(0);
+                    writeHeader(NO_CHECKPOINT_ID);
+                }
+                buffer.clear();
+                bufferLsn = baseLsn + raf.length();
+                durableLsn = bufferLsn;
+
+                // analysis: the active transactions and dirty pages at the
+                // checkpoint tell where redo has to start
+                long cpLsn = readCheckpointLsn();
+                HashMap<Long,Long> active = new HashMap<Long,Long>();
+                long redoLsn = baseLsn + HEADER_SIZE;
+                if (cpLsn != NO_CHECKPOINT_ID) {
+                    LogRecord cp = readRecord(seekLsn(cpLsn));
+                    active.putAll(cp.active);
+                    redoLsn = cpLsn;
+                    for (long recLsn : cp.dirty.values())
+                        redoLsn = Math.min(redoLsn, recLsn);
+                }
+                LinkedHashMap<PageId,Long> newestImage = new LinkedHashMap<PageId,Long>();
+                RandomAccessFile in = seekLsn(redoLsn);
+                long end = baseLsn + in.getFilePointer();
+                LogRecord r;
+                while ((r = readRecord(in)) != null) {
+                    end = baseLsn + in.getFilePointer();
+                    switch (r.type) {
+                    case BEGIN_RECORD:
+                        if (r.lsn > cpLsn)
+                            active.put(r.tid, r.lsn);
+                        break;
+                    case COMMIT_RECORD:
+                    case ABORT_RECORD:
+                        if (r.lsn > cpLsn)
+                            active.remove(r.tid);
+                        break;
+                    case UPDATE_RECORD:
+                    case CLR_RECORD:
+                        newestImage.put(r.pid, r.afterLsn);
+                        break;
+                    }
+                }
+                // drop a record torn by the crash
+                raf.setLength(end - baseLsn);
+                bufferLsn = end;
+                durableLsn = end;
+                lastCheckpointLsn = Math.max(cpLsn, redoLsn);
+
+                redo(newestImage);
+
+                tidToFirstLogRecord.clear();
+                tidToFirstLogRecord.putAll(active);
+                if (!active.isEmpty()) {
+                    undo(active);
+                    for (long tid : active.keySet())
+                        writeSimpleRecord(ABORT_RECORD, tid);
+                    force();
+                }
+                tidToFirstLogRecord.clear();
             }
          }
     }
 
+    /** Installs the given page images, reading and writing several pages
+        in parallel.  Each image is the newest one of its page, so the
+        pages are independent of each other. */
+    private void redo(Map<PageId,Long> images) throws IOException {
+        if (images.isEmpty())
+            return;
+        final BufferPool bp = Database.getBufferPool();
+        int threads = Math.max(1, Math.min(REDO_THREADS, images.size()));
+        ExecutorService pool =
+                Executors.newFixedThreadPool(threads);
+        try {
+            ArrayList<Future<?>> done = new ArrayList<>();
+            for (final Map.Entry<PageId,Long> e : images.entrySet()) {
+                done.add(pool.submit(() -> {
+                    Page p = readImage(e.getValue());
+                    Database.getCatalog().getDatabaseFile(p.getId().getTableId()).writePage(p);
+                    return null;
+                }));
+            }
+            for (Future<?> f : done)
+                f.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("interrupted during redo");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        for (PageId pid : images.keySet())
+            bp.discardPage(pid);
+        dirtyPages.clear();
+    }
+
     /** Print out a human readable represenation of the log */
-    public void print() throws IOException {
-        // some code goes here
+    public synchronized void print() throws IOException {
+        long cpLsn = readCheckpointLsn();
+        System.out.println("LOG: last checkpoint at LSN " + cpLsn);
+        RandomAccessFile in = seekLsn(baseLsn + HEADER_SIZE);
+        LogRecord r;
+        while ((r = readRecord(in)) != null) {
+            String line = r.lsn + ": ";
+            switch (r.type) {
+            case ABORT_RECORD: line += "ABORT"; break;
+            case COMMIT_RECORD: line += "COMMIT"; break;
+            case BEGIN_RECORD: line += "BEGIN"; break;
+            case UPDATE_RECORD: line += "UPDATE " + r.pid; break;
+            case CLR_RECORD: line += "CLR " + r.pid + " undoes " + r.undoneLsn; break;
+            case CHECKPOINT_RECORD: line += "CHECKPOINT active " + r.active + " dirty " + r.dirty; break;
+            }
+            System.out.println(line + " tid " + r.tid);
+        }
     }
 
     public  synchronized void force() throws IOException {
-        raf.getChannel().force(true);
+        writeBuffer();
+        channel.force(true);
+        forces++;
+        durableLsn = bufferLsn;
+        if (pendingCommits > 0) {
+            commitBatches++;
+            batchedCommits += pendingCommits;
+            maxCommitBatch = Math.max(maxCommitBatch, pendingCommits);
+            pendingCommits = 0;
+            notifyAll(); // release the whole batch
+        }
+    }
+
+    /** Force the log to disk if the record at the given LSN is not
+        durable yet.
+        @param lsn the LSN of a record that must be on disk
+    */
+    public synchronized void forceTo(long lsn) throws IOException {
+        if (durableLsn <= lsn)
+            force();
+    }
+
+    /** Switch group commit on or off.  With group commit on, a log flusher
+        thread forces the log on behalf of committing transactions: once a
+        commit is waiting, the flusher lets further commit records
+        accumulate for up to windowMicros, or until windowBytes of log are
+        unforced, and then releases all waiting committers with a single
+        force.
+
+        @param windowMicros how long a commit may wait for others to join
+        its batch; 0 switches group commit off
+        @param windowBytes force early once this many log bytes are
+        unforced; 0 for no byte limit
+    */
+    public synchronized void setGroupCommit(long windowMicros, long windowBytes) {
+        groupCommitWindowNanos = Math.max(0, windowMicros) * 1000;
+        groupCommitBytes = Math.max(0, windowBytes);
+        if (groupCommitWindowNanos == 0) {
+            stopFlusher();
+        } else if (flusher == null) {
+            flusher = new Thread(this::runFlusher, "log-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+        notifyAll();
+    }
+
+    /** Return true if commits are forced in groups by the log flusher */
+    public synchronized boolean isGroupCommit() {
+        return flusher != null;
+    }
+
+    private synchronized void stopFlusher() {
+        Thread t = flusher;
+        if (t == null)
+            return;
+        flusher = null;
+        notifyAll();
+        // release the committers the flusher was gathering
+        if (pendingCommits > 0) {
+            try {
+                force();
+            } catch (IOException e) {
+                e.printStackTrace();
+                failGroupForce(e);
+            }
+        }
+    }
+
+    /** Report a failed force to the committers waiting for it */
+    private synchronized void failGroupForce(IOException e) {
+        failedGroupForces++;
+        groupForceError = e;
+        pendingCommits = 0;
+        notifyAll();
+    }
+
+    private synchronized void runFlusher() {
+        Thread self = Thread.currentThread();
+        try {
+            while (flusher == self) {
+                if (pendingCommits == 0) {
+                    wait();
+                    continue;
+                }
+                long deadline = System.nanoTime() + groupCommitWindowNanos;
+                long remaining;
+                while (flusher == self
+                        && (groupCommitBytes == 0 || currentLsn() - durableLsn < groupCommitBytes)
+                        && (remaining = deadline - System.nanoTime()) > 0) {
+                    wait(remaining / 1000000, (int) (remaining % 1000000));
+                }
+                if (pendingCommits > 0)
+                    force();
+            }
+        } catch (InterruptedException e) {
+            // exit; waiting committers force the log themselves
+            if (flusher == self)
+                flusher = null;
+            notifyAll();
+        } catch (IOException e) {
+            System.out.println("ERROR IN LOG FLUSHER -- GROUP COMMIT DISABLED.");
+            e.printStackTrace();
+            if (flusher == self)
+                flusher = null;
+            failGroupForce(e);
+        }
+    }
+
+    /** Return the number of times the log was forced to disk */
+    public synchronized long getForceCount() {
+        return forces;
+    }
+
+    /** Return the number of commit records written */
+    public synchronized long getCommitCount() {
+        return commits;
+    }
+
+    /** Return the mean time logCommit took, in microseconds */
+    public synchronized double getMeanCommitLatencyMicros() {
+        return commits == 0 ? 0 : commitLatencyNanos / 1000.0 / commits;
+    }
+
+    /** Return the longest time logCommit took, in microseconds */
+    public synchronized double getMaxCommitLatencyMicros() {
+        return maxCommitLatencyNanos / 1000.0;
+    }
+
+    /** Return the number of forces that released waiting committers */
+    public synchronized long getCommitBatchCount() {
+        return commitBatches;
+    }
+
+    /** Return the mean number of committers released by one force */
+    public synchronized double getMeanCommitBatchSize() {
+        return commitBatches == 0 ? 0 : (double) batchedCommits / commitBatches;
+    }
+
+    /** Return the largest number of committers released by one force */
+    public synchronized int getMaxCommitBatchSize() {
+        return maxCommitBatch;
     }
 
 }
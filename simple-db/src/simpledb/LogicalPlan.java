@@ -33,8 +33,10 @@ public class LogicalPlan {
     private boolean hasAgg = false;
     private String aggOp;
     private String aggField;
-    private boolean oByAsc, hasOrderBy = false;
-    private String oByField;
+    private boolean hasOrderBy = false;
+    private Vector<String> oByFields = new Vector<String>();
+    private Vector<Boolean> oByAsc = new Vector<Boolean>();
+    private int limit = -1;
     private String query;
 //    private Query owner;
 
@@ -203,19 +205,34 @@ public class LogicalPlan {
         hasAgg = true;
     }
 
-    /** Add an ORDER BY expression in the specified order on the specified field.  SimpleDb only supports
-        a single ORDER BY field.
+    /** Add an ORDER BY expression in the specified order on the specified field.  Fields added
+        later order tuples whose earlier fields are equal.
         @param field the field to order by
         @param asc true if should be ordered in ascending order, false for descending order
      * @throws ParsingException 
     */
     public void addOrderBy(String field, boolean asc) throws ParsingException {
         field=disambiguateName(field);
-        oByField = field;
-        oByAsc = asc;
+        oByFields.addElement(field);
+        oByAsc.addElement(asc);
         hasOrderBy = true;
     }
 
+    /** Add a LIMIT, so that only the first n tuples of the result are returned.
+        @param n the number of tuples to return
+     * @throws ParsingException if n is negative
+    */
+    public void addLimit(int n) throws ParsingException {
+        if (n < 0)
+            throw new ParsingException("Negative LIMIT " + n);
+        limit = n;
+    }
+
+    /** @return the number of tuples the query returns at most, or -1 if it has no LIMIT */
+    public int getLimit() {
+        return limit;
+    }
+
     /** Given a name of a field, try to figure out what table it belongs to by looking
      *   through all of the tables added via {@link #addScan}. 
      *  @return A fully qualified name of the form tableAlias.name.  If the name parameter is already qualified
@@ -290,11 +307,22 @@ public class LogicalPlan {
         HashMap<String,Double> filterSelectivities = new HashMap<String, Double>();
         HashMap<String,TableStats> statsMap = new HashMap<String,TableStats>();
 
+        boolean indexOrdered = false;
         while (tableIt.hasNext()) {
             LogicalScanNode table = tableIt.next();
-            SeqScan ss = null;
+            OpIterator ss = null;
             try {
-                 ss = new SeqScan(t, Database.getCatalog().getDatabaseFile(table.t).getId(), table.alias);
+                 DbFile f = Database.getCatalog().getDatabaseFile(table.t);
+                 // a SeqScan reads only heap files; a B+ tree is read in
+                 // key order
+                 if (f instanceof BTreeFile) {
+                     ss = new BTreeScan(t, f.getId(), table.alias, null);
+                     // the tuples come in the order asked for, so reading
+                     // can stop after the first limit of them
+                     indexOrdered = indexOrdersBy(ss, (BTreeFile) f);
+                 } else {
+                     ss = new SeqScan(t, f.getId(), table.alias);
+                 }
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown table " + table.t);
             }
@@ -474,13 +502,48 @@ public class LogicalPlan {
             node = aggNode;
         }
 
-        if (hasOrderBy) {
-            node = new OrderBy(node.getTupleDesc().fieldNameToIndex(oByField), oByAsc, node);
+        if (hasOrderBy && !indexOrdered) {
+            int[] fields = new int[oByFields.size()];
+            boolean[] asc = new boolean[oByFields.size()];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = node.getTupleDesc().fieldNameToIndex(oByFields.get(i));
+                asc[i] = oByAsc.get(i);
+            }
+            // a TopN keeps its limit of tuples in memory, so a limit bigger
+            // than a sort would keep in memory is left to an OrderBy, which
+            // can spill
+            if (limit >= 0 && limit <= OrderBy.SORT_SIZE)
+                node = new TopN(fields, asc, limit, node);
+            else
+                node = new OrderBy(fields, asc, node);
         }
+        if (limit >= 0 && !(node instanceof TopN))
+            node = new Limit(limit, node);
 
         return new Project(outFields, outTypes, node);
     }
 
+    /**
+     * Returns true if this query has a LIMIT and is ordered by the key of
+     * the B+ tree f, ascending, so that the tuples read from the tree in
+     * order need no sort.  Filters keep that order, but joins and
+     * aggregates do not.
+     *
+     * @param scan a scan of f
+     */
+    private boolean indexOrdersBy(OpIterator scan, BTreeFile f) {
+        if (limit < 0 || !hasOrderBy || hasAgg || tables.size() != 1 || !joins.isEmpty())
+            return false;
+        // a B+ tree is read only forwards
+        if (oByFields.size() != 1 || !oByAsc.get(0))
+            return false;
+        try {
+            return scan.getTupleDesc().fieldNameToIndex(oByFields.get(0)) == f.keyField();
+        } catch (NoSuchElementException e) {
+            return false;
+        }
+    }
+
     public static void main(String argv[]) {
         // construct a 3-column table schema
         Type types[] = new Type[]{ Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE };
@@ -0,0 +1,83 @@
+package simpledb;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * LoserTree merges k sorted inputs into one sorted stream with a tree of
+ * losers: each internal node remembers the input that lost the match
+ * played there, so that replacing the smallest tuple costs one match per
+ * level, log2(k) comparisons, on the path from its input to the root.
+ * Ties go to the input listed first, so that merging runs in the order
+ * they were cut keeps the sort stable.
+ *
+ * @see OrderBy
+ */
+class LoserTree {
+
+    private final OpIterator[] inputs;
+    private final Comparator<Tuple> cmp;
+    private final int k;
+    // the next tuple of each input, or null once it is exhausted
+    private final Tuple[] heads;
+    // tree[1 .. k-1] hold the loser of the match at each node, tree[0]
+    // the overall winner; input i plays from leaf k + i
+    private final int[] tree;
+
+    /**
+     * Creates a merge of the given inputs, which must be open and each
+     * sorted by cmp.
+     */
+    LoserTree(List<OpIterator> inputs, Comparator<Tuple> cmp)
+            throws DbException, TransactionAbortedException {
+        this.inputs = inputs.toArray(new OpIterator[0]);
+        this.cmp = cmp;
+        k = this.inputs.length;
+        heads = new Tuple[k];
+        tree = new int[Math.max(k, 1)];
+        for (int i = 0; i < k; i++)
+            heads[i] = this.inputs[i].hasNext() ? this.inputs[i].next() : null;
+        // input k stands for a tuple smaller than all others, which wins
+        // every match until every real input has played up the tree
+        java.util.Arrays.fill(tree, k);
+        for (int i = k - 1; i >= 0; i--)
+            replay(i);
+    }
+
+    /** @return true if input a's head comes before input b's */
+    private boolean beats(int a, int b) {
+        if (a == k || b == k)
+            return a == k;
+        if (heads[a] == null || heads[b] == null)
+            return heads[b] == null && heads[a] != null;
+        int c = cmp.compare(heads[a], heads[b]);
+        return c < 0 || (c == 0 && a < b);
+    }
+
+    /** Plays input s's new head up from its leaf to the root */
+    private void replay(int s) {
+        for (int t = (s + k) >> 1; t > 0; t >>= 1) {
+            if (beats(tree[t], s)) {
+                int winner = tree[t];
+                tree[t] = s;
+                s = winner;
+            }
+        }
+        tree[0] = s;
+    }
+
+    boolean hasNext() {
+        return k > 0 && heads[tree[0]] != null;
+    }
+
+    Tuple next() throws DbException, TransactionAbortedException {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        int w = tree[0];
+        Tuple t = heads[w];
+        heads[w] = inputs[w].hasNext() ? inputs[w].next() : null;
+        replay(w);
+        return t;
+    }
+}
@@ -0,0 +1,103 @@
+package simpledb;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * LRU-K replacement (O'Neil, O'Neil and Weikum).  Every page keeps the times
+ * of its last K references, and the victim is the page whose K-th most recent
+ * reference lies furthest in the past.  Pages referenced fewer than K times
+ * have an infinite backward K-distance and are evicted first, oldest first,
+ * so a page touched once by a scan never pushes out a page that is
+ * referenced repeatedly.
+ * <p>
+ * The reference history of evicted pages is retained for a while, so a page
+ * that is re-read soon after eviction is recognised as hot.
+ *
+ * @see ReplacementPolicy
+ */
+public class LruKReplacementPolicy implements ReplacementPolicy {
+
+    public static final int DEFAULT_K = 2;
+
+    private final int k;
+    private final int retainedHistory;
+    private long clock;
+
+    /** Last k reference times of each resident page, most recent first. */
+    private final HashMap<PageId, long[]> resident;
+    /** Histories of recently evicted pages, oldest eviction first. */
+    private final LinkedHashMap<PageId, long[]> evicted;
+
+    /**
+     * @param numPages the number of frames in the buffer pool; this many
+     *                 evicted histories are retained
+     * @param k how many references to remember per page
+     */
+    public LruKReplacementPolicy(int numPages, int k) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be at least 1");
+        this.k = k;
+        this.retainedHistory = numPages;
+        this.clock = 0;
+        resident = new HashMap<>();
+        evicted = new LinkedHashMap<>();
+    }
+
+    public synchronized void pageLoaded(PageId pid) {
+        long[] history = resident.get(pid);
+        if (history == null) {
+            history = evicted.remove(pid);
+            if (history == null) {
+                history = new long[k];
+                Arrays.fill(history, -1);
+            }
+            resident.put(pid, history);
+        }
+        reference(history);
+    }
+
+    public synchronized void pageAccessed(PageId pid) {
+        long[] history = resident.get(pid);
+        if (history != null)
+            reference(history);
+    }
+
+    public synchronized void pageRemoved(PageId pid) {
+        long[] history = resident.remove(pid);
+        if (history == null)
+            return;
+        evicted.put(pid, history);
+        if (evicted.size() > retainedHistory) {
+            Iterator<PageId> it = evicted.keySet().iterator();
+            it.next();
+            it.remove();
+        }
+    }
+
+    public synchronized PageId chooseVictim(Predicate<PageId> evictable) {
+        PageId victim = null;
+        long victimKth = Long.MAX_VALUE;
+        long victimLast = Long.MAX_VALUE;
+        for (Map.Entry<PageId, long[]> e : resident.entrySet()) {
+            long[] history = e.getValue();
+            long kth = history[k - 1];
+            long last = history[0];
+            // a smaller K-th reference time means a larger backward K-distance;
+            // -1 (fewer than K references) is the largest distance of all
+            if (kth < victimKth || (kth == victimKth && last < victimLast)) {
+                if (!evictable.test(e.getKey()))
+                    continue;
+                victim = e.getKey();
+                victimKth = kth;
+                victimLast = last;
+            }
+        }
+        return victim;
+    }
+
+    private void reference(long[] history) {
+        System.arraycopy(history, 0, history, 1, k - 1);
+        history[0] = clock++;
+    }
+}
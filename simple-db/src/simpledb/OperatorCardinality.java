@@ -47,6 +47,10 @@ public class OperatorCardinality {
                             .estimateTableCardinality(1.0);
                 }
             }
+            if (o instanceof TopN)
+                childC = Math.min(childC, ((TopN) o).getLimit());
+            else if (o instanceof Limit)
+                childC = Math.min(childC, ((Limit) o).getLimit());
             o.setEstimatedCardinality(childC);
             return hasJoinPK;
         }
@@ -1,20 +1,45 @@
 package simpledb;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
- * OrderBy is an operator that implements a relational ORDER BY.
+ * OrderBy is an operator that implements a relational ORDER BY, on one or
+ * more fields, each ascending or descending.
+ * <p>
+ * A child that fits in the memory budget (see {@link #setMemoryBudget}) is
+ * sorted in memory.  A bigger one is sorted externally: it is cut into
+ * runs, which are sorted by a pool of SORT_THREADS threads while the next
+ * runs are read and written to SpillFiles, and the runs are then merged
+ * through a LoserTree, MAX_FAN_IN at a time.  The sort is stable.
  */
 public class OrderBy extends Operator {
 
     private static final long serialVersionUID = 1L;
+
+    /** The default number of tuples sorted in memory */
+    public final static int SORT_SIZE = 100000;
+
+    static final int SORT_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    // the most runs merged at once, each with its own read buffer
+    static final int MAX_FAN_IN = 64;
+
     private OpIterator child;
     private TupleDesc td;
-    private ArrayList<Tuple> childTups = new ArrayList<Tuple>();
-    private int orderByField;
+    private int[] orderByFields;
+    private boolean[] ascending;
     private String orderByFieldName;
-    private Iterator<Tuple> it;
-    private boolean asc;
+    private int budget = SORT_SIZE;
+
+    // the sorted tuples, when they fit in memory, or else the last run,
+    // which is merged from memory
+    private transient ArrayList<Tuple> childTups;
+    // the sorted runs on disk
+    private transient ArrayList<SpillFile> runs;
+    private transient Iterator<Tuple> it;
+    private transient LoserTree merge;
+    private transient ArrayList<OpIterator> readers;
 
     /**
      * Creates a new OrderBy node over the tuples from the iterator.
@@ -27,21 +52,61 @@ public class OrderBy extends Operator {
      *            the tuples to sort.
      */
     public OrderBy(int orderbyField, boolean asc, OpIterator child) {
+        this(new int[] { orderbyField }, new boolean[] { asc }, child);
+    }
+
+    /**
+     * Creates a new OrderBy node that sorts the tuples from the iterator on
+     * several fields: by the first, then among equal values of the first by
+     * the second, and so on.
+     *
+     * @param orderbyFields
+     *            the fields to which the sort is applied, most significant
+     *            first.
+     * @param asc
+     *            for each field, true if the sort order is ascending.
+     * @param child
+     *            the tuples to sort.
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, OpIterator child) {
+        if (orderbyFields.length == 0 || orderbyFields.length != asc.length)
+            throw new IllegalArgumentException("need one sort order per field");
         this.child = child;
         td = child.getTupleDesc();
-        this.orderByField = orderbyField;
-        this.orderByFieldName = td.getFieldName(orderbyField);
-        this.asc = asc;
+        this.orderByFields = orderbyFields.clone();
+        this.ascending = asc.clone();
+        this.orderByFieldName = td.getFieldName(orderbyFields[0]);
     }
-    
+
+    /**
+     * Sets the number of tuples the sort keeps in memory; a bigger child
+     * is sorted externally.
+     */
+    public void setMemoryBudget(int tuples) {
+        assert tuples > 0;
+        budget = tuples;
+    }
+
     public boolean isASC()
     {
-	return this.asc;
+	return this.ascending[0];
     }
     
     public int getOrderByField()
     {
-        return this.orderByField;
+        return this.orderByFields[0];
+    }
+
+    /** @return the fields sorted on, most significant first */
+    public int[] getOrderByFields()
+    {
+        return this.orderByFields.clone();
+    }
+
+    /** @return for each of the fields sorted on, true if it is ascending */
+    public boolean[] getAscending()
+    {
+        return this.ascending.clone();
     }
     
     public String getOrderFieldName()
@@ -55,22 +120,208 @@ public class OrderBy extends Operator {
 
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
+        Comparator<Tuple> cmp = new TupleComparator(td, orderByFields, ascending);
+        runs = new ArrayList<SpillFile>();
         child.open();
-        // load all the tuples in a collection, and sort it
-        while (child.hasNext())
-            childTups.add((Tuple) child.next());
-        Collections.sort(childTups, new TupleComparator(orderByField, asc));
-        it = childTups.iterator();
+        try {
+            childTups = sortRuns(cmp);
+            // leave room in the final merge for the run in memory
+            while (runs.size() > MAX_FAN_IN - 1)
+                mergePass(cmp);
+        } catch (DbException | TransactionAbortedException | RuntimeException e) {
+            deleteRuns();
+            throw e;
+        }
+        startMerge(cmp);
         super.open();
     }
 
+    /**
+     * Reads the child, sorting and spilling runs of it while there is
+     * more than fits in memory.
+     *
+     * @return the last run, sorted, which is all of the child's tuples if
+     *         no run was spilled
+     */
+    private ArrayList<Tuple> sortRuns(Comparator<Tuple> cmp)
+            throws DbException, TransactionAbortedException {
+        // with several threads, as many runs as threads can be in memory
+        // at once, so each is a share of the budget
+        int runSize = Math.max(1, budget / SORT_THREADS);
+        ArrayList<Tuple> run = new ArrayList<Tuple>();
+        while (child.hasNext() && run.size() < budget)
+            run.add(child.next());
+        if (!child.hasNext()) {
+            Tuple[] all = run.toArray(new Tuple[0]);
+            Arrays.parallelSort(all, cmp);
+            return new ArrayList<Tuple>(Arrays.asList(all));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(SORT_THREADS, r -> {
+            Thread t = new Thread(r, "sorter");
+            t.setDaemon(true);
+            return t;
+        });
+        ArrayDeque<Future<SpillFile>> sorting = new ArrayDeque<Future<SpillFile>>();
+        try {
+            // the first budget tuples are cut into runs too
+            ArrayList<Tuple> first = run;
+            run = new ArrayList<Tuple>();
+            for (int i = 0; i < first.size(); i += runSize)
+                submit(pool, sorting, new ArrayList<Tuple>(first.subList(i, Math.min(first.size(), i + runSize))), cmp);
+            first = null;
+            while (child.hasNext()) {
+                run.add(child.next());
+                if (run.size() == runSize) {
+                    submit(pool, sorting, run, cmp);
+                    run = new ArrayList<Tuple>();
+                }
+            }
+            while (!sorting.isEmpty())
+                runs.add(await(sorting.poll()));
+        } finally {
+            // on failure, let the runs still queued finish so that each
+            // future completes and its file can be deleted; shutdownNow()
+            // would drop them and leave get() waiting forever
+            pool.shutdown();
+            for (Future<SpillFile> f : sorting) {
+                try {
+                    f.get().delete();
+                } catch (Exception e) {
+                    // failed, or never written
+                }
+            }
+        }
+        run.sort(cmp);
+        return run;
+    }
+
+    /**
+     * Has the pool sort and spill a run, first waiting for older runs so
+     * that no more than SORT_THREADS runs are in memory.
+     */
+    private void submit(ExecutorService pool, ArrayDeque<Future<SpillFile>> sorting,
+            ArrayList<Tuple> run, Comparator<Tuple> cmp) throws DbException {
+        while (sorting.size() >= SORT_THREADS - 1 && !sorting.isEmpty())
+            runs.add(await(sorting.poll()));
+        sorting.add(pool.submit(() -> {
+            run.sort(cmp);
+            SpillFile f = new SpillFile(td);
+            try {
+                for (Tuple t : run)
+                    f.add(t);
+                f.finish();
+            } catch (IOException e) {
+                f.delete();
+                throw e;
+            }
+            return f;
+        }));
+    }
+
+    private static SpillFile await(Future<SpillFile> f) throws DbException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            throw new DbException("interrupted while sorting");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new DbException("could not spill sorted run: " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Merges each MAX_FAN_IN consecutive runs into one, keeping the runs
+     * in order so that the sort stays stable.
+     */
+    private void mergePass(Comparator<Tuple> cmp) throws DbException, TransactionAbortedException {
+        int out = 0;
+        for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+            List<SpillFile> group = runs.subList(i, Math.min(runs.size(), i + MAX_FAN_IN));
+            runs.set(out++, group.size() == 1 ? group.get(0) : merge(group, cmp));
+        }
+        runs.subList(out, runs.size()).clear();
+    }
+
+    /** Merges a group of runs into a new one, and deletes them */
+    private SpillFile merge(List<SpillFile> group, Comparator<Tuple> cmp)
+            throws DbException, TransactionAbortedException {
+        ArrayList<OpIterator> inputs = new ArrayList<OpIterator>();
+        SpillFile merged = null;
+        try {
+            for (SpillFile run : group) {
+                OpIterator r = run.iterator();
+                r.open();
+                inputs.add(r);
+            }
+            merged = new SpillFile(td);
+            LoserTree tree = new LoserTree(inputs, cmp);
+            while (tree.hasNext())
+                merged.add(tree.next());
+            merged.finish();
+        } catch (IOException e) {
+            if (merged != null)
+                merged.delete();
+            throw new DbException("could not spill sorted run: " + e.getMessage());
+        } finally {
+            for (OpIterator r : inputs)
+                r.close();
+        }
+        for (SpillFile run : group)
+            run.delete();
+        return merged;
+    }
+
+    /** Starts returning tuples from memory, or from a merge of the runs */
+    private void startMerge(Comparator<Tuple> cmp) throws DbException, TransactionAbortedException {
+        closeReaders();
+        if (runs.isEmpty()) {
+            merge = null;
+            it = childTups.iterator();
+            return;
+        }
+        it = null;
+        readers = new ArrayList<OpIterator>();
+        for (SpillFile run : runs) {
+            OpIterator r = run.iterator();
+            r.open();
+            readers.add(r);
+        }
+        TupleIterator last = new TupleIterator(td, childTups);
+        last.open();
+        readers.add(last);
+        merge = new LoserTree(readers, cmp);
+    }
+
+    private void closeReaders() {
+        if (readers != null) {
+            for (OpIterator r : readers)
+                r.close();
+            readers = null;
+        }
+    }
+
+    private void deleteRuns() {
+        closeReaders();
+        if (runs != null) {
+            for (SpillFile run : runs)
+                run.delete();
+            runs = null;
+        }
+    }
+
     public void close() {
         super.close();
+        child.close();
+        deleteRuns();
         it = null;
+        merge = null;
+        childTups = null;
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        it = childTups.iterator();
+        startMerge(new TupleComparator(td, orderByFields, ascending));
     }
 
     /**
@@ -82,6 +333,8 @@ public class OrderBy extends Operator {
      */
     protected Tuple fetchNext() throws NoSuchElementException,
             TransactionAbortedException, DbException {
+        if (merge != null)
+            return merge.hasNext() ? merge.next() : null;
         if (it != null && it.hasNext()) {
             return it.next();
         } else
@@ -100,24 +353,31 @@ public class OrderBy extends Operator {
 
 }
 
+/** Orders tuples on several fields, each ascending or descending */
 class TupleComparator implements Comparator<Tuple> {
-    int field;
-    boolean asc;
+    private final int[] fields;
+    private final boolean[] asc;
+    private final boolean[] ints;
 
-    public TupleComparator(int field, boolean asc) {
-        this.field = field;
+    public TupleComparator(TupleDesc td, int[] fields, boolean[] asc) {
+        this.fields = fields;
         this.asc = asc;
+        this.ints = new boolean[fields.length];
+        for (int i = 0; i < fields.length; i++)
+            ints[i] = td.getFieldType(fields[i]) == Type.INT_TYPE;
     }
 
     public int compare(Tuple o1, Tuple o2) {
-        Field t1 = (o1).getField(field);
-        Field t2 = (o2).getField(field);
-        if (t1.compare(Predicate.Op.EQUALS, t2))
-            return 0;
-        if (t1.compare(Predicate.Op.GREATER_THAN, t2))
-            return asc ? 1 : -1;
-        else
-            return asc ? -1 : 1;
+        for (int i = 0; i < fields.length; i++) {
+            int c;
+            if (ints[i])
+                c = Integer.compare(o1.getInt(fields[i]), o2.getInt(fields[i]));
+            else
+                c = ((StringField) o1.getField(fields[i])).getValue()
+                        .compareTo(((StringField) o2.getField(fields[i])).getValue());
+            if (c != 0)
+                return asc[i] ? c : -c;
+        }
+        return 0;
     }
-    
 }
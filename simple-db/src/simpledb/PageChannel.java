@@ -0,0 +1,228 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+
+/**
+ * PageChannel is the page I/O path shared by HeapFile and BTreeFile.  It
+ * keeps one FileChannel open for the lifetime of the DbFile and reads and
+ * writes pages with positional calls, so a page access costs one pread or
+ * pwrite instead of an open, a seek and a close.  Positional reads do not
+ * move the channel's position, so any number of threads may read at once.
+ * <p>
+ * The channel is opened on first use.  A thread interrupted in the middle
+ * of I/O makes Java close the channel under every other user; the next
+ * call simply reopens it and retries.
+ * <p>
+ * In mapped mode (see {@link #setMapped}) reads are served from a read-only
+ * memory mapping of the file, a memory copy out of the page cache with no
+ * system call.  Writes still go through the channel; they land in the same
+ * page cache, so the mapping sees them.  The mapping is extended when a
+ * read reaches past it, which suits tables that rarely grow.  Files larger
+ * than 2GB are read through the channel beyond that point.
+ * <p>
+ * With checksums on (see {@link #setChecksums}), {@link #readPage} and
+ * {@link #writePage} verify and record a CRC32C of every page.
+ */
+public class PageChannel {
+
+    private final File file;
+    private volatile FileChannel channel;
+    private volatile boolean mapped;
+    private volatile MappedByteBuffer map;
+    private volatile PageChecksums checksums;
+
+    /**
+     * @param f the file to read and write pages from
+     */
+    public PageChannel(File f) {
+        file = f;
+    }
+
+    /** Return the file this channel reads and writes */
+    public File getFile() {
+        return file;
+    }
+
+    private FileChannel channel() throws IOException {
+        FileChannel ch = channel;
+        if (ch != null && ch.isOpen())
+            return ch;
+        synchronized (this) {
+            if (channel == null || !channel.isOpen()) {
+                // keep read-only files readable
+                String mode = file.exists() && !file.canWrite() ? "r" : "rw";
+                channel = new RandomAccessFile(file, mode).getChannel();
+            }
+            return channel;
+        }
+    }
+
+    /**
+     * Turns the memory mapped read path on or off.
+     */
+    public synchronized void setMapped(boolean mapped) {
+        this.mapped = mapped;
+        map = null;
+    }
+
+    /** Return true if reads are served from a memory mapping */
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * Turns page checksums on or off.  Turning them on opens, or creates,
+     * the sidecar file the checksums are kept in.
+     *
+     * @see PageChecksums
+     */
+    public synchronized void setChecksums(boolean on) throws IOException {
+        if (on == (checksums != null))
+            return;
+        if (on) {
+            checksums = new PageChecksums(file);
+        } else {
+            checksums.close();
+            checksums = null;
+        }
+    }
+
+    /** Return the page checksums, or null if they are off */
+    public PageChecksums getChecksums() {
+        return checksums;
+    }
+
+    /**
+     * Reads page pgNo, which starts at the given file offset, like read,
+     * verifying it against its checksum if checksums are on.  Short reads
+     * at the end of the file are not verified.
+     *
+     * @throws IOException if the page does not match its checksum
+     */
+    public int readPage(int pgNo, long offset, byte[] dst) throws IOException {
+        int n = read(offset, dst);
+        PageChecksums sums = checksums;
+        if (sums != null && n == dst.length)
+            sums.verify(pgNo, dst);
+        return n;
+    }
+
+    /**
+     * Writes page pgNo at the given file offset, like write, recording its
+     * checksum first if checksums are on.
+     */
+    public void writePage(int pgNo, long offset, byte[] src) throws IOException {
+        PageChecksums sums = checksums;
+        if (sums != null)
+            sums.record(pgNo, src);
+        write(offset, src);
+    }
+
+    /**
+     * Returns a mapping covering [0, end), or null if end is past the end
+     * of the file or beyond what one mapping can cover.
+     */
+    private MappedByteBuffer mapping(long end) throws IOException {
+        MappedByteBuffer m = map;
+        if (m != null && end <= m.capacity())
+            return m;
+        synchronized (this) {
+            if (!mapped)
+                return null;
+            long size = Math.min(channel().size(), Integer.MAX_VALUE);
+            if (end > size)
+                return null;
+            if (map == null || map.capacity() < end)
+                map = channel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return map;
+        }
+    }
+
+    /**
+     * Reads up to dst.length bytes starting at the given file offset.
+     *
+     * @return the number of bytes read, which is less than dst.length only
+     *         at the end of the file, or -1 if offset is past the end
+     */
+    public int read(long offset, byte[] dst) throws IOException {
+        if (mapped) {
+            MappedByteBuffer m = mapping(offset + dst.length);
+            if (m != null) {
+                ByteBuffer view = m.duplicate();
+                view.position((int) offset);
+                view.get(dst);
+                return dst.length;
+            }
+        }
+        ByteBuffer buf = ByteBuffer.wrap(dst);
+        while (true) {
+            try {
+                while (buf.hasRemaining()) {
+                    int n = channel().read(buf, offset + buf.position());
+                    if (n < 0)
+                        break;
+                }
+                return buf.position() == 0 && dst.length > 0 ? -1 : buf.position();
+            } catch (ClosedByInterruptException e) {
+                throw e;
+            } catch (AsynchronousCloseException e) {
+                // another thread was interrupted; reopen and retry
+            } catch (ClosedChannelException e) {
+                // closed between channel() and read; retry
+            }
+        }
+    }
+
+    /**
+     * Writes all of src at the given file offset, extending the file if
+     * necessary.
+     */
+    public void write(long offset, byte[] src) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(src);
+        while (true) {
+            try {
+                while (buf.hasRemaining())
+                    channel().write(buf, offset + buf.position());
+                return;
+            } catch (ClosedByInterruptException e) {
+                throw e;
+            } catch (AsynchronousCloseException e) {
+                // another thread was interrupted; reopen and retry
+            } catch (ClosedChannelException e) {
+                // closed between channel() and write; retry
+            }
+        }
+    }
+
+    /**
+     * Appends src to the end of the file.
+     *
+     * @return the offset src was written at
+     */
+    public synchronized long append(byte[] src) throws IOException {
+        long offset = size();
+        write(offset, src);
+        return offset;
+    }
+
+    /** Return the current length of the file in bytes */
+    public long size() {
+        return file.length();
+    }
+
+    /**
+     * Closes the underlying channel.  The next read or write reopens it.
+     */
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
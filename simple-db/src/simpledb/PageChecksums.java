@@ -0,0 +1,128 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * PageChecksums keeps a CRC32C checksum of every page of a DbFile, so that
+ * a page damaged on disk, or torn by a crash in the middle of writing it, is
+ * caught when it is read instead of showing up as odd query results.  The
+ * checksums are kept in memory and written through to a sidecar file next
+ * to the table (<tt>&lt;file&gt;.crc</tt>), two ints per page, indexed by
+ * page number: the checksum of the page's last image and of the one before.
+ * They live outside the pages so that the page formats and existing table
+ * files are unchanged, and checksums can be turned on for any table.
+ * <p>
+ * A page's checksum is recorded every time the page is written, just
+ * before the page itself.  A crash between the two leaves the page's old
+ * image on disk, so a page matching either of its two checksums is
+ * accepted, until its next write.  (A crash after the page but before the
+ * checksum reach the disk is repaired by recovery, whose redo writes the
+ * page, and its checksum, again.)  A page that has no checksum yet -- one
+ * written before checksums were turned on, or appended raw -- is trusted
+ * on its first read and its checksum recorded then.  A zero entry means
+ * "no checksum"; a page whose CRC is zero is recorded as 1.
+ *
+ * @see PageChannel#setChecksums
+ */
+public class PageChecksums {
+
+    static final int NONE = 0;
+    static final int ENTRY_SIZE = 8;
+
+    private final File dataFile;
+    private final File file;
+    private final PageChannel channel;
+
+    // the checksums of the last and the previous image of each page;
+    // protected by this
+    private int[] sums;
+    private int[] previous;
+
+    /**
+     * Opens the checksums of the given file, creating the sidecar if it does
+     * not exist.
+     */
+    PageChecksums(File dataFile) throws IOException {
+        this.dataFile = dataFile;
+        this.file = new File(dataFile.getPath() + ".crc");
+        this.channel = new PageChannel(file);
+        byte[] data = new byte[(int) file.length() / ENTRY_SIZE * ENTRY_SIZE];
+        if (data.length > 0 && channel.read(0, data) != data.length)
+            throw new IOException("could not read " + file);
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        sums = new int[Math.max(16, data.length / ENTRY_SIZE)];
+        previous = new int[sums.length];
+        for (int i = 0; i < data.length / ENTRY_SIZE; i++) {
+            sums[i] = buf.getInt();
+            previous[i] = buf.getInt();
+        }
+    }
+
+    /** Return the sidecar file the checksums are stored in */
+    public File getFile() {
+        return file;
+    }
+
+    /** Return the checksum of the given page image, never NONE */
+    public static int checksum(byte[] data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data, 0, data.length);
+        int sum = (int) crc.getValue();
+        return sum == NONE ? 1 : sum;
+    }
+
+    /**
+     * Checks a page just read against its recorded checksums, recording its
+     * checksum if there is none.
+     *
+     * @throws IOException if the page matches neither its last nor its
+     *         previous checksum
+     */
+    void verify(int pgNo, byte[] data) throws IOException {
+        int sum = checksum(data);
+        int expected, before;
+        synchronized (this) {
+            expected = pgNo < sums.length ? sums[pgNo] : NONE;
+            before = pgNo < sums.length ? previous[pgNo] : NONE;
+            if (expected == NONE) {
+                set(pgNo, sum);
+                return;
+            }
+        }
+        if (expected != sum && before != sum)
+            throw new IOException("checksum mismatch on page " + pgNo + " of " + dataFile
+                    + ": torn write or corruption");
+    }
+
+    /**
+     * Records the checksum of a page about to be written, keeping the one
+     * of the image it replaces
+     */
+    void record(int pgNo, byte[] data) throws IOException {
+        int sum = checksum(data);
+        synchronized (this) {
+            set(pgNo, sum);
+        }
+    }
+
+    private void set(int pgNo, int sum) throws IOException {
+        if (pgNo >= sums.length) {
+            sums = Arrays.copyOf(sums, Math.max(pgNo + 1, sums.length * 2));
+            previous = Arrays.copyOf(previous, sums.length);
+        }
+        if (sums[pgNo] == sum)
+            return;
+        previous[pgNo] = sums[pgNo];
+        sums[pgNo] = sum;
+        channel.write((long) ENTRY_SIZE * pgNo, ByteBuffer.allocate(ENTRY_SIZE)
+                .putInt(sum).putInt(previous[pgNo]).array());
+    }
+
+    /** Closes the sidecar file */
+    void close() throws IOException {
+        channel.close();
+    }
+}
@@ -8,6 +8,8 @@ import jline.SimpleCompletor;
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class Parser {
     static boolean explain = false;
@@ -138,6 +140,11 @@ public class Parser {
         Vector<ZFromItem> from = q.getFrom();
         LogicalPlan lp = new LogicalPlan();
         lp.setQuery(q.toString());
+        // the LIMIT belongs to the outermost query, not to any subquery
+        if (limit >= 0) {
+            lp.addLimit(limit);
+            limit = -1;
+        }
         // walk through tables in the FROM clause
         for (int i = 0; i < from.size(); i++) {
             ZFromItem fromIt = from.elementAt(i);
@@ -253,18 +260,15 @@ public class Parser {
         if (q.getOrderBy() != null) {
             @SuppressWarnings("unchecked")
             Vector<ZOrderBy> obys = q.getOrderBy();
-            if (obys.size() > 1) {
-                throw new simpledb.ParsingException(
-                        "Multi-attribute ORDER BY is not supported.");
-            }
-            ZOrderBy oby = obys.elementAt(0);
-            if (!(oby.getExpression() instanceof ZConstant)) {
-                throw new simpledb.ParsingException(
-                        "Complex ORDER BY's are not supported");
-            }
-            ZConstant f = (ZConstant) oby.getExpression();
+            for (ZOrderBy oby : obys) {
+                if (!(oby.getExpression() instanceof ZConstant)) {
+                    throw new simpledb.ParsingException(
+                            "Complex ORDER BY's are not supported");
+                }
+                ZConstant f = (ZConstant) oby.getExpression();
 
-            lp.addOrderBy(f.getValue(), oby.getAscOrder());
+                lp.addOrderBy(f.getValue(), oby.getAscOrder());
+            }
 
         }
         return lp;
@@ -273,6 +277,43 @@ public class Parser {
     private Transaction curtrans = null;
     private boolean inUserTrans = false;
 
+    // ZQL does not know LIMIT, so a LIMIT n ending a statement is cut off
+    // before ZQL parses the statement, and n kept here for the query
+    private static final Pattern LIMIT = Pattern.compile(
+            "(?is)^([^;]*?)\\s+LIMIT\\s+(\\d+)\\s*(;.*)?$");
+    private int limit = -1;
+
+    /**
+     * Cuts a LIMIT n off the end of the first statement in s, and sets
+     * limit to n, or to -1 if the statement has no LIMIT.
+     *
+     * @return s without the LIMIT
+     */
+    String stripLimit(String s) throws simpledb.ParsingException {
+        limit = -1;
+        Matcher m = LIMIT.matcher(s);
+        if (!m.matches())
+            return s;
+        try {
+            limit = Integer.parseInt(m.group(2));
+        } catch (NumberFormatException e) {
+            throw new simpledb.ParsingException("LIMIT too large: " + m.group(2));
+        }
+        return m.group(1) + (m.group(3) == null ? "" : m.group(3));
+    }
+
+    /**
+     * Throws a ParsingException if the statement being handled had a LIMIT,
+     * which only a SELECT, or an INSERT of one, can have.
+     */
+    private void rejectLimit(String statement) throws simpledb.ParsingException {
+        if (limit >= 0) {
+            limit = -1;
+            throw new simpledb.ParsingException("LIMIT is not supported in "
+                    + statement + " statements");
+        }
+    }
+
     public Query handleQueryStatement(ZQuery s, TransactionId tId)
             throws TransactionAbortedException, DbException, IOException,
             simpledb.ParsingException, Zql.ParseException {
@@ -343,6 +384,7 @@ public class Parser {
         OpIterator newTups;
 
         if (s.getValues() != null) {
+            rejectLimit("INSERT ... VALUES");
             @SuppressWarnings("unchecked")
             Vector<ZExp> values = (Vector<ZExp>) s.getValues();
             if (td.numFields() != values.size()) {
@@ -397,6 +439,8 @@ public class Parser {
     public Query handleDeleteStatement(ZDelete s, TransactionId tid)
             throws TransactionAbortedException, DbException, IOException,
             simpledb.ParsingException, Zql.ParseException {
+        // checked before a subquery in the WHERE clause takes the LIMIT
+        rejectLimit("DELETE");
         int id;
         try {
             id = Database.getCatalog().getTableId(s.getTable()); // will fall
@@ -430,6 +474,7 @@ public class Parser {
     public void handleTransactStatement(ZTransactStmt s)
             throws TransactionAbortedException, DbException, IOException,
             simpledb.ParsingException, Zql.ParseException {
+        rejectLimit(s.getStmtType());
         if (s.getStmtType().equals("COMMIT")) {
             if (curtrans == null)
                 throw new simpledb.ParsingException(
@@ -465,7 +510,7 @@ public class Parser {
 
     public LogicalPlan generateLogicalPlan(TransactionId tid, String s)
             throws simpledb.ParsingException {
-        ByteArrayInputStream bis = new ByteArrayInputStream(s.getBytes());
+        ByteArrayInputStream bis = new ByteArrayInputStream(stripLimit(s).getBytes());
         ZqlParser p = new ZqlParser(bis);
         try {
             ZStatement stmt = p.readStatement();
@@ -503,7 +548,12 @@ public class Parser {
 
     public void processNextStatement(InputStream is) {
         try {
-            ZqlParser p = new ZqlParser(is);
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            for (int n; (n = is.read(buf)) > 0; )
+                text.write(buf, 0, n);
+            String statement = stripLimit(text.toString("UTF-8"));
+            ZqlParser p = new ZqlParser(new ByteArrayInputStream(statement.getBytes("UTF-8")));
             ZStatement s = p.readStatement();
 
             Query query = null;
@@ -581,7 +631,7 @@ public class Parser {
     // Basic SQL completions
     public static final String[] SQL_COMMANDS = { "select", "from", "where",
             "group by", "max(", "min(", "avg(", "count", "rollback", "commit",
-            "insert", "delete", "values", "into" };
+            "insert", "delete", "values", "into", "limit" };
 
     public static void main(String argv[]) throws IOException {
 
@@ -0,0 +1,32 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * PaxHeapFile is a HeapFile whose pages are in the column-major
+ * PaxHeapPage format, for tables that are mostly scanned for a few of
+ * their columns.  It is written by <tt>convert -pax</tt> or by
+ * {@link HeapFileEncoder#pax}, and otherwise behaves like any HeapFile:
+ * inserts, deletes, recovery, compression and checksums work unchanged.
+ *
+ * @see PaxHeapPage
+ */
+public class PaxHeapFile extends HeapFile {
+
+    public PaxHeapFile(File f, TupleDesc td) {
+        this(f, td, false);
+    }
+
+    /**
+     * Constructs a PAX heap file backed by the specified file, whose pages
+     * are compressed if compressed is true.
+     */
+    public PaxHeapFile(File f, TupleDesc td, boolean compressed) {
+        super(f, td, false, compressed);
+    }
+
+    @Override
+    HeapPage newPage(HeapPageId pid, byte[] data, boolean copy) throws IOException {
+        return new PaxHeapPage(pid, data, copy);
+    }
+}
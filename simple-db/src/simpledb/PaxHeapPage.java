@@ -0,0 +1,107 @@
+package simpledb;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * PaxHeapPage is the column-major (PAX) page format for HeapFiles.  It has
+ * the same header and number of slots as HeapPage, but the page body is
+ * split into one minipage per column, holding that column's value for
+ * every slot:
+ * <pre>
+ * header bitmap, as for HeapPage
+ * column 0 of slots 0 .. numSlots-1
+ * column 1 of slots 0 .. numSlots-1
+ * ...
+ * </pre>
+ * A scan that reads a few columns of a wide table, through
+ * {@link #getInts} or a SeqScan of a column subset, touches only their
+ * minipages.  Reading whole tuples costs one copy per field instead of one
+ * per tuple.
+ *
+ * @see PaxHeapFile
+ */
+public class PaxHeapPage extends HeapPage {
+
+    // offset of each column's minipage
+    private final int[] columnStart;
+    // 0 .. numFields-1, the columns of a whole tuple
+    private final int[] allColumns;
+
+    /**
+     * Create a PaxHeapPage from a set of bytes of data read from disk, in
+     * the format described above.  The bytes are copied.
+     */
+    public PaxHeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, data, true);
+    }
+
+    PaxHeapPage(HeapPageId id, byte[] data, boolean copy) throws IOException {
+        super(id, data, copy);
+        columnStart = columnStarts(td, headerSize, numSlots);
+        allColumns = new int[td.numFields()];
+        for (int i = 0; i < allColumns.length; i++)
+            allColumns[i] = i;
+    }
+
+    private static int[] columnStarts(TupleDesc td, int headerSize, int numSlots) {
+        int[] starts = new int[td.numFields()];
+        for (int i = 0; i < starts.length; i++)
+            starts[i] = headerSize + numSlots * td.getOffset(i);
+        return starts;
+    }
+
+    @Override
+    HeapPage withData(byte[] data) throws IOException {
+        return new PaxHeapPage(pid, data);
+    }
+
+    @Override
+    int offset(int slot, int col) {
+        return columnStart[col] + slot * td.getFieldType(col).getLen();
+    }
+
+    @Override
+    int stride(int col) {
+        return td.getFieldType(col).getLen();
+    }
+
+    @Override
+    Tuple readTuple(int slotId) {
+        return readTuple(slotId, allColumns, td);
+    }
+
+    @Override
+    void clearSlot(int slot) {
+        for (int j = 0; j < td.numFields(); j++) {
+            int off = offset(slot, j);
+            Arrays.fill(data, off, off + td.getFieldType(j).getLen(), (byte) 0);
+        }
+    }
+
+    @Override
+    void writeTuple(int slot, Tuple t) {
+        for (int j = 0; j < td.numFields(); j++)
+            td.getFieldType(j).serialize(t.getField(j), data, offset(slot, j));
+    }
+
+    /**
+     * Returns the PAX image of a page image in the row-major HeapPage
+     * format, for tuples of td.
+     */
+    static byte[] fromRowPage(byte[] rowPage, TupleDesc td) {
+        int tupleSize = td.getSize();
+        int numSlots = (rowPage.length * 8) / (tupleSize * 8 + 1);
+        int headerSize = (numSlots + 7) / 8;
+        int[] starts = columnStarts(td, headerSize, numSlots);
+        byte[] page = new byte[rowPage.length];
+        System.arraycopy(rowPage, 0, page, 0, headerSize);
+        for (int j = 0; j < td.numFields(); j++) {
+            int len = td.getFieldType(j).getLen();
+            for (int slot = 0; slot < numSlots; slot++)
+                System.arraycopy(rowPage, headerSize + slot * tupleSize + td.getOffset(j),
+                        page, starts[j] + slot * len, len);
+        }
+        return page;
+    }
+}
@@ -5,12 +5,16 @@ import java.util.*;
 /**
  * Project is an operator that implements a relational projection.
  */
-public class Project extends Operator {
+public class Project extends Operator implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
     private OpIterator child;
     private TupleDesc td;
     private ArrayList<Integer> outFieldIds;
+    private int[] outFields;
+    private transient BatchIterator input;
+    // next() goes through batches when the child produces them itself
+    private transient Batches.Cursor cursor;
 
     /**
      * Constructor accepts a child operator to read tuples to apply projection
@@ -39,6 +43,9 @@ public class Project extends Operator {
             fieldAr[i] = childtd.getFieldName(fieldList.get(i));
         }
         td = new TupleDesc(types, fieldAr);
+        outFields = new int[fieldList.size()];
+        for (int i = 0; i < outFields.length; i++)
+            outFields[i] = fieldList.get(i);
     }
 
     public TupleDesc getTupleDesc() {
@@ -48,6 +55,8 @@ public class Project extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child.open();
+        input = Batches.of(child);
+        cursor = Batches.isNative(child) ? new Batches.Cursor(this) : null;
         super.open();
     }
 
@@ -58,6 +67,8 @@ public class Project extends Operator {
 
     public void rewind() throws DbException, TransactionAbortedException {
         child.rewind();
+        if (cursor != null)
+            cursor = new Batches.Cursor(this);
     }
 
     /**
@@ -68,6 +79,8 @@ public class Project extends Operator {
      */
     protected Tuple fetchNext() throws NoSuchElementException,
             TransactionAbortedException, DbException {
+        if (cursor != null)
+            return cursor.next();
         while (child.hasNext()) {
             Tuple t = child.next();
             Tuple newTuple = new Tuple(td);
@@ -80,6 +93,12 @@ public class Project extends Operator {
         return null;
     }
 
+    /** Returns the child's next batch, with only the projected columns */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        TupleBatch batch = input.nextBatch();
+        return batch == null ? null : batch.project(td, outFields);
+    }
+
     @Override
     public OpIterator[] getChildren() {
         return new OpIterator[] { this.child };
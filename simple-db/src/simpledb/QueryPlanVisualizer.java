@@ -13,6 +13,8 @@ public class QueryPlanVisualizer {
     static final String PROJECT = "π";
     static final String RENAME = "ρ";
     static final String SCAN = "scan";
+    static final String INDEX_SCAN = "index scan";
+    static final String LIMIT = "limit";
     static final String ORDERBY = "o";
     static final String GROUPBY = "g";
     static final String SPACE = "  ";
@@ -65,24 +67,33 @@ public class QueryPlanVisualizer {
         int adjustDepth = currentDepth == 0 ? -1 : 0;
         SubTreeDescriptor thisNode = new SubTreeDescriptor(null, null);
 
-        if (queryPlan instanceof SeqScan) {
-            SeqScan s = (SeqScan) queryPlan;
-            String tableName = s.getTableName();
-            String alias = s.getAlias();
+        if (queryPlan instanceof SeqScan || queryPlan instanceof BTreeScan) {
+            String tableName, alias, scan;
+            if (queryPlan instanceof SeqScan) {
+                SeqScan s = (SeqScan) queryPlan;
+                tableName = s.getTableName();
+                alias = s.getAlias();
+                scan = SCAN;
+            } else {
+                BTreeScan s = (BTreeScan) queryPlan;
+                tableName = s.getTableName();
+                alias = s.getAlias();
+                scan = INDEX_SCAN;
+            }
 //            TupleDesc td = s.getTupleDesc();
             if (!tableName.equals(alias))
                 alias = " " + alias;
             else
                 alias = "";
             thisNode.text = String
-                    .format("%1$s(%2$s)", SCAN, tableName + alias);
-            if (SCAN.length() / 2 < parentUpperBarStartShift) {
+                    .format("%1$s(%2$s)", scan, tableName + alias);
+            if (scan.length() / 2 < parentUpperBarStartShift) {
                 thisNode.upBarPosition = currentStartPosition
                         + parentUpperBarStartShift;
                 thisNode.textStartPosition = thisNode.upBarPosition
-                        - SCAN.length() / 2;
+                        - scan.length() / 2;
             } else {
-                thisNode.upBarPosition = currentStartPosition + SCAN.length()
+                thisNode.upBarPosition = currentStartPosition + scan.length()
                         / 2;
                 thisNode.textStartPosition = currentStartPosition;
             }
@@ -217,13 +228,21 @@ public class QueryPlanVisualizer {
                                 - currentStartPosition);
                 thisNode.leftChild = child;
                 thisNode.height = currentDepth;
-            } else if (plan instanceof OrderBy) {
-                OrderBy o = (OrderBy) plan;
+            } else if (plan instanceof OrderBy || plan instanceof TopN) {
+                int[] orderBy = plan instanceof OrderBy ? ((OrderBy) plan).getOrderByFields()
+                        : ((TopN) plan).getOrderByFields();
+                StringBuilder fields = new StringBuilder();
+                for (int f : orderBy) {
+                    if (fields.length() > 0)
+                        fields.append(",");
+                    fields.append(children[0].getTupleDesc().getFieldName(f));
+                }
+                if (plan instanceof TopN)
+                    fields.append(" " + LIMIT + " " + ((TopN) plan).getLimit());
                 thisNode.text = String.format(
                         "%1$s(%2$s),card:%3$d",
                         ORDERBY,
-                        children[0].getTupleDesc().getFieldName(
-                                o.getOrderByField()),o.getEstimatedCardinality());
+                        fields,plan.getEstimatedCardinality());
                 int upBarShift = parentUpperBarStartShift;
                 if (ORDERBY.length() / 2 > parentUpperBarStartShift)
                     upBarShift = ORDERBY.length() / 2;
@@ -238,6 +257,23 @@ public class QueryPlanVisualizer {
                                 - currentStartPosition);
                 thisNode.leftChild = child;
                 thisNode.height = currentDepth;
+            } else if (plan instanceof Limit) {
+                thisNode.text = String.format("%1$s(%2$d),card:%3$d", LIMIT,
+                        ((Limit) plan).getLimit(), plan.getEstimatedCardinality());
+                int upBarShift = parentUpperBarStartShift;
+                if (LIMIT.length() / 2 > parentUpperBarStartShift)
+                    upBarShift = LIMIT.length() / 2;
+                SubTreeDescriptor child = this.buildTree(queryPlanDepth,
+                        currentDepth + 2 + adjustDepth, children[0],
+                        currentStartPosition, upBarShift);
+                thisNode.upBarPosition = child.upBarPosition;
+                thisNode.textStartPosition = thisNode.upBarPosition
+                        - LIMIT.length() / 2;
+                thisNode.width = Math.max(child.width,
+                        thisNode.textStartPosition + thisNode.text.length()
+                                - currentStartPosition);
+                thisNode.leftChild = child;
+                thisNode.height = currentDepth;
             } else if (plan instanceof Project) {
                 Project p = (Project) plan;
                 String fields = "";
@@ -0,0 +1,157 @@
+package simpledb;
+
+/**
+ * ReadAhead is a sequential-scan hint for the BufferPool, like BufferRing.
+ * A scan reports every page it moves to with {@link #accessed}; once two
+ * pages in a row follow each other -- consecutive pages of a HeapFile, or
+ * a B+ tree leaf and its right sibling -- the pool's prefetch threads start
+ * reading the next pages into the pool ahead of the scan, so that they are
+ * resident by the time the scan asks for them.
+ * <p>
+ * The window of pages kept ahead of the scan adapts.  It starts at
+ * {@link #MIN_DEPTH}, grows by one every time the scan finds a prefetched
+ * page waiting for it, and halves every time a prefetched page is evicted
+ * before the scan got to it.
+ *
+ * @see BufferPool#readAhead
+ */
+public class ReadAhead {
+
+    /** Size of the read-ahead window when a sequential run starts */
+    public static final int MIN_DEPTH = 2;
+
+    private final BufferPool pool;
+    private final BufferRing ring;
+    private final int tablePages;
+    private final int maxDepth;
+
+    // all protected by this
+    private int depth;
+    private PageId expected;   // the page a sequential scan reads next
+    private PageId frontier;   // the next page to prefetch, if known
+    private int ahead;         // pages issued to the prefetcher and not yet read by the scan
+    private boolean sequential;
+    private boolean running;   // a prefetch task is in flight
+    private int generation;    // bumped whenever the run is broken
+
+    /**
+     * @param pool the pool to prefetch into
+     * @param ring the scan's ring, or null
+     * @param tablePages the number of pages in the table, bounding heap read-ahead
+     * @param maxDepth the largest window this scan may use
+     */
+    ReadAhead(BufferPool pool, BufferRing ring, int tablePages, int maxDepth) {
+        this.pool = pool;
+        this.ring = ring;
+        this.tablePages = tablePages;
+        this.maxDepth = maxDepth;
+        depth = Math.min(MIN_DEPTH, maxDepth);
+    }
+
+    /** Return the ring prefetched pages are placed in, or null */
+    BufferRing ring() {
+        return ring;
+    }
+
+    /** Return the current size of the read-ahead window */
+    public synchronized int depth() {
+        return depth;
+    }
+
+    /**
+     * Returns the page a scan reads after the given one, or null if there
+     * is none or it cannot be known from the page.
+     */
+    PageId successor(Page page) {
+        PageId pid = page.getId();
+        if (page instanceof HeapPage) {
+            int next = pid.getPageNumber() + 1;
+            return next < tablePages ? new HeapPageId(pid.getTableId(), next) : null;
+        }
+        if (page instanceof BTreeLeafPage)
+            return ((BTreeLeafPage) page).getRightSiblingId();
+        return null;
+    }
+
+    /**
+     * Called by the scan with each page it moves to.  Detects sequential
+     * runs and keeps the prefetcher at most a window ahead of the scan.
+     */
+    public void accessed(Page page) {
+        PageId start;
+        int count, gen;
+        synchronized (this) {
+            PageId pid = page.getId();
+            PageId next = successor(page);
+            if (pid.equals(expected)) {
+                if (!sequential) {
+                    sequential = true;
+                    frontier = next;
+                    ahead = 0;
+                } else if (ahead > 0) {
+                    ahead--;
+                }
+            } else {
+                // the first page of a scan, or a jump
+                breakRun();
+            }
+            expected = next;
+            if (!sequential || running)
+                return;
+            if (ahead == 0)
+                frontier = next; // the scan caught up with the prefetcher
+            if (frontier == null || ahead > depth / 2)
+                return;
+            start = frontier;
+            count = depth - ahead;
+            gen = generation;
+            ahead += count;
+            running = true;
+        }
+        pool.prefetch(this, start, count, gen);
+    }
+
+    /**
+     * Stops read-ahead for this scan; prefetches in flight finish their
+     * current page and stop.
+     */
+    public synchronized void close() {
+        breakRun();
+        expected = null;
+    }
+
+    private void breakRun() {
+        sequential = false;
+        frontier = null;
+        ahead = 0;
+        depth = Math.min(MIN_DEPTH, maxDepth);
+        generation++;
+    }
+
+    /** Return true if a prefetch task issued in the given generation should go on */
+    synchronized boolean isCurrent(int gen) {
+        return gen == generation;
+    }
+
+    /**
+     * Called by the prefetch task when it stops, with the next page it did
+     * not read and the number of pages it was asked for but did not read.
+     */
+    synchronized void finished(int gen, PageId next, int unread) {
+        running = false;
+        if (gen != generation)
+            return;
+        frontier = next;
+        ahead = Math.max(0, ahead - unread);
+    }
+
+    /** The scan found a prefetched page waiting for it */
+    synchronized void hit() {
+        depth = Math.min(maxDepth, depth + 1);
+    }
+
+    /** A prefetched page was thrown out before the scan read it */
+    synchronized void wasted() {
+        depth = Math.max(Math.min(MIN_DEPTH, maxDepth), depth / 2);
+    }
+}
@@ -0,0 +1,66 @@
+package simpledb;
+
+import java.util.function.Predicate;
+
+/**
+ * ReplacementPolicy decides which resident page the BufferPool gives up when
+ * it needs a free frame.  The BufferPool reports every load, hit and removal
+ * to the policy, and asks it for a victim when the pool is full.
+ * <p>
+ * Implementations only track page ids; they never touch the pages themselves.
+ * Whether a page may actually be evicted (for instance, it is not dirty under
+ * NO STEAL) is decided by the BufferPool and passed in to
+ * {@link #chooseVictim}.
+ *
+ * @Threadsafe
+ */
+public interface ReplacementPolicy {
+
+    /** Names accepted by {@link #create}. */
+    public static final String CLOCK = "clock";
+    public static final String LRU_K = "lru-k";
+    public static final String TWO_Q = "2q";
+
+    /**
+     * Called after the page with the given id has been read into the pool.
+     */
+    public void pageLoaded(PageId pid);
+
+    /**
+     * Called on every buffer pool hit on the page with the given id.
+     */
+    public void pageAccessed(PageId pid);
+
+    /**
+     * Called after the page with the given id has left the pool, either
+     * because it was evicted or because it was discarded.
+     */
+    public void pageRemoved(PageId pid);
+
+    /**
+     * Picks the page that should be evicted next.  The page is not removed
+     * from the policy's bookkeeping until {@link #pageRemoved} is called.
+     *
+     * @param evictable returns true for the resident pages that may be evicted
+     * @return the id of the page to evict, or null if no resident page is
+     *         evictable
+     */
+    public PageId chooseVictim(Predicate<PageId> evictable);
+
+    /**
+     * Returns a new replacement policy.
+     *
+     * @param name one of {@link #CLOCK}, {@link #LRU_K} or {@link #TWO_Q}
+     * @param numPages the number of frames in the buffer pool
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static ReplacementPolicy create(String name, int numPages) {
+        if (name == null || name.equalsIgnoreCase(CLOCK))
+            return new ClockReplacementPolicy(numPages);
+        if (name.equalsIgnoreCase(LRU_K))
+            return new LruKReplacementPolicy(numPages, LruKReplacementPolicy.DEFAULT_K);
+        if (name.equalsIgnoreCase(TWO_Q))
+            return new TwoQReplacementPolicy(numPages);
+        throw new IllegalArgumentException("unknown replacement policy " + name);
+    }
+}
@@ -5,9 +5,10 @@ import java.util.*;
 /**
  * SeqScan is an implementation of a sequential scan access method that reads
  * each tuple of a table in no particular order (e.g., as they are laid out on
- * disk).
+ * disk).  As a {@link BatchIterator}, it fills batches a page at a time from
+ * the pages' column vectors.
  */
-public class SeqScan implements OpIterator {
+public class SeqScan implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
 
@@ -30,14 +31,38 @@ public class SeqScan implements OpIterator {
     private TransactionId tid;
     private int tableid;
     private String tableAlias;
+    private int[] columns;
     private HeapFile.MyDbFileIterator myDbFileIterator;
+    // batch iteration: the page being read and its slots still to go
+    private transient TupleBatch batch;
+    private transient HeapPage page;
+    private transient int[] pageSlots;
+    private transient int numPageSlots, pagePos;
     public SeqScan(TransactionId tid, int tableid, String tableAlias) {
+        this(tid, tableid, tableAlias, null);
+    }
+
+    /**
+     * Creates a sequential scan that returns only the given columns of the
+     * table, in the given order; tuples have just those fields.  Scanning a
+     * column subset of a {@link PaxHeapFile} reads only those columns.
+     *
+     * @param columns
+     *            the indexes of the columns to return, or null for all of them
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, int[] columns) {
         this.tid = tid;
         this.tableid = tableid;
         this.tableAlias = tableAlias;
-        myDbFileIterator = (HeapFile.MyDbFileIterator) Database.getCatalog().getDatabaseFile(tableid).iterator(tid);
+        this.columns = columns == null ? null : columns.clone();
+        myDbFileIterator = openFile();
+    }
+
+    private HeapFile.MyDbFileIterator openFile() {
+        return ((HeapFile) Database.getCatalog().getDatabaseFile(tableid)).iterator(tid, columns);
     }
 
+
     /**
      * @return
      *       return the table name of the table the operator scans. This should
@@ -70,7 +95,8 @@ public class SeqScan implements OpIterator {
     public void reset(int tableid, String tableAlias) {
         this.tableid = tableid;
         this.tableAlias = tableAlias;
-        myDbFileIterator = (HeapFile.MyDbFileIterator) Database.getCatalog().getDatabaseFile(tableid).iterator(tid);
+        this.columns = null;
+        myDbFileIterator = openFile();
     }
 
     public SeqScan(TransactionId tid, int tableId) {
@@ -79,6 +105,8 @@ public class SeqScan implements OpIterator {
 
     public void open() throws DbException, TransactionAbortedException {
         myDbFileIterator.open();
+        page = null;
+        numPageSlots = pagePos = 0;
     }
 
     /**
@@ -92,7 +120,7 @@ public class SeqScan implements OpIterator {
      *         prefixed with the tableAlias string from the constructor.
      */
     public TupleDesc getTupleDesc() {
-        TupleDesc tupleDesc = Database.getCatalog().getTupleDesc(tableid);
+        TupleDesc tupleDesc = myDbFileIterator.getTupleDesc();
         Type []typeArr = new Type[tupleDesc.numFields()];
         String []fieldName = new String[tupleDesc.numFields()];
         for(int i=0; i<tupleDesc.numFields(); i++)
@@ -135,12 +163,36 @@ public class SeqScan implements OpIterator {
         return myDbFileIterator.next();
     }
 
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (batch == null || batch.getTupleDesc() != myDbFileIterator.getTupleDesc())
+            batch = new TupleBatch(myDbFileIterator.getTupleDesc());
+        batch.clear();
+        while (!batch.isFull()) {
+            if (pagePos == numPageSlots) {
+                page = myDbFileIterator.nextPage();
+                if (page == null)
+                    break;
+                if (pageSlots == null || pageSlots.length < page.getNumSlots())
+                    pageSlots = new int[page.getNumSlots()];
+                numPageSlots = page.getUsedSlots(pageSlots);
+                pagePos = 0;
+            }
+            int n = Math.min(numPageSlots - pagePos, TupleBatch.CAPACITY - batch.size());
+            batch.addRows(page, pageSlots, pagePos, n, myDbFileIterator.getColumns());
+            pagePos += n;
+        }
+        return batch.size() == 0 ? null : batch;
+    }
+
     public void close() {
         myDbFileIterator.close();
+        page = null;
     }
 
     public void rewind() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         myDbFileIterator.rewind();
+        page = null;
+        numPageSlots = pagePos = 0;
     }
 }
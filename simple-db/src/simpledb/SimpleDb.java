@@ -7,6 +7,26 @@ public class SimpleDb {
         // convert a file
         if(args[0].equals("convert")) {
         try {
+            // convert -slotted ... writes the variable-length page format,
+            // convert -pax ... the column-major page format,
+            // convert -compressed ... compressed pages
+            boolean slotted = false, pax = false, compressed = false;
+            while (args.length > 1 && args[1].startsWith("-")) {
+                if (args[1].equals("-slotted"))
+                    slotted = true;
+                else if (args[1].equals("-pax"))
+                    pax = true;
+                else if (args[1].equals("-compressed"))
+                    compressed = true;
+                else {
+                    System.err.println("Unknown option " + args[1]);
+                    return;
+                }
+                String[] rest = new String[args.length - 1];
+                rest[0] = args[0];
+                System.arraycopy(args, 2, rest, 1, args.length - 2);
+                args = rest;
+            }
             if (args.length<3 || args.length>5){
                 System.err.println("Unexpected number of arguments to convert ");
                 return;
@@ -43,8 +63,36 @@ public class SimpleDb {
                     fieldSeparator=args[4].charAt(0);
             }
 
-            HeapFileEncoder.convert(sourceTxtFile,targetDatFile,
+            if (slotted && pax) {
+                System.err.println("-slotted and -pax can't be combined");
+                return;
+            }
+            // each step after the first converts the previous one's output
+            File rawDatFile = targetDatFile;
+            if (compressed || pax) {
+                rawDatFile = File.createTempFile("convert", ".dat");
+                rawDatFile.deleteOnExit();
+            }
+            if (slotted)
+                HeapFileEncoder.convertSlotted(sourceTxtFile,rawDatFile,
                         BufferPool.getPageSize(),numOfAttributes,ts,fieldSeparator);
+            else
+                HeapFileEncoder.convert(sourceTxtFile,rawDatFile,
+                        BufferPool.getPageSize(),numOfAttributes,ts,fieldSeparator);
+            if (pax) {
+                File paxDatFile = targetDatFile;
+                if (compressed) {
+                    paxDatFile = File.createTempFile("convert", ".dat");
+                    paxDatFile.deleteOnExit();
+                }
+                HeapFileEncoder.pax(rawDatFile, paxDatFile, ts);
+                rawDatFile.delete();
+                rawDatFile = paxDatFile;
+            }
+            if (compressed) {
+                HeapFileEncoder.compress(rawDatFile, targetDatFile);
+                rawDatFile.delete();
+            }
 
         } catch (IOException e) {
                 throw new RuntimeException(e);
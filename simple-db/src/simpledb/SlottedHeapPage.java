@@ -0,0 +1,380 @@
+package simpledb;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * SlottedHeapPage is the slotted page format for HeapFiles.  Unlike the
+ * fixed-slot HeapPage format, which gives every STRING_TYPE field
+ * STRING_LEN + 4 bytes, it stores strings at their actual length, so a
+ * table with short strings fits many more tuples on a page.  The page is
+ * laid out as
+ * <pre>
+ * int number of slots, int offset of the tuple data (0 on an empty page)
+ * slot directory: per slot, unsigned short offset of the tuple (0 for an
+ *   empty slot), unsigned short length of the tuple
+ * free space
+ * tuple data, growing down from the end of the page
+ * </pre>
+ * A tuple is stored field by field: an INT_TYPE field as 4 bytes, a
+ * STRING_TYPE field as an unsigned short length followed by that many
+ * bytes.  An all-zero page is an empty page, as for HeapPage.
+ * <p>
+ * Deleting a tuple frees its slot; the space it took is reclaimed by
+ * compacting the tuple data when an insert needs it.  Slots never move, so
+ * RecordIds stay valid.  Pages may be at most 64KB.
+ *
+ * @see HeapFile#isSlotted
+ */
+public class SlottedHeapPage extends HeapPage {
+
+    static final int HEADER_SIZE = 8;
+    static final int SLOT_SIZE = 4;
+
+    private final int pageSize;
+    // encoded size of the largest tuple of td
+    private final int maxTupleSize;
+
+    /**
+     * Create a SlottedHeapPage from a set of bytes of data read from disk,
+     * in the format described above.  The bytes are copied.
+     */
+    public SlottedHeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, data, true);
+    }
+
+    SlottedHeapPage(HeapPageId id, byte[] data, boolean copy) throws IOException {
+        super(id, data, copy);
+        pageSize = this.data.length;
+        if (pageSize > 65536)
+            throw new IOException("slotted pages must be at most 64KB");
+        maxTupleSize = maxEncodedSize(td);
+        int slots = slotCount();
+        int end = dataStart();
+        if (slots < 0 || end < HEADER_SIZE + slots * SLOT_SIZE || end > pageSize)
+            throw new IOException("corrupt slotted page " + id.getPageNumber());
+    }
+
+    @Override
+    HeapPage withData(byte[] data) throws IOException {
+        return new SlottedHeapPage(pid, data);
+    }
+
+    /** Return the encoded size of the largest tuple of the given schema */
+    static int maxEncodedSize(TupleDesc td) {
+        int size = 0;
+        for (int i = 0; i < td.numFields(); i++)
+            size += td.getFieldType(i) == Type.STRING_TYPE ? 2 + Type.STRING_LEN : td.getFieldType(i).getLen();
+        return size;
+    }
+
+    /** Return the encoded size of the given tuple */
+    static int encodedSize(Tuple t) {
+        TupleDesc td = t.getTupleDesc();
+        int size = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.STRING_TYPE)
+                size += 2 + Math.min(((StringField) t.getField(i)).getValue().length(), Type.STRING_LEN);
+            else
+                size += td.getFieldType(i).getLen();
+        }
+        return size;
+    }
+
+    /** Encodes the given tuple into dst at the given offset */
+    private static void encode(Tuple t, byte[] dst, int offset) {
+        TupleDesc td = t.getTupleDesc();
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.STRING_TYPE) {
+                String s = ((StringField) t.getField(i)).getValue();
+                int len = Math.min(s.length(), Type.STRING_LEN);
+                writeShort(len, dst, offset);
+                offset += 2;
+                // like DataOutputStream.writeBytes, keep the low byte of each char
+                for (int j = 0; j < len; j++)
+                    dst[offset++] = (byte) s.charAt(j);
+            } else {
+                Type.writeInt(((IntField) t.getField(i)).getValue(), dst, offset);
+                offset += 4;
+            }
+        }
+    }
+
+    /**
+     * Appends the given tuple to an empty or partly filled page image
+     * whose slots are all in use, as HeapFileEncoder builds pages.
+     *
+     * @return false if the tuple does not fit
+     */
+    static boolean append(byte[] page, Tuple t) {
+        int slots = Type.readInt(page, 0);
+        int end = Type.readInt(page, 4);
+        if (end == 0)
+            end = page.length;
+        int len = encodedSize(t);
+        if (end - len < HEADER_SIZE + (slots + 1) * SLOT_SIZE)
+            return false;
+        end -= len;
+        encode(t, page, end);
+        writeShort(end, page, HEADER_SIZE + slots * SLOT_SIZE);
+        writeShort(len, page, HEADER_SIZE + slots * SLOT_SIZE + 2);
+        Type.writeInt(slots + 1, page, 0);
+        Type.writeInt(end, page, 4);
+        return true;
+    }
+
+    private static int readShort(byte[] b, int offset) {
+        return ((b[offset] & 0xff) << 8) | (b[offset + 1] & 0xff);
+    }
+
+    private static void writeShort(int v, byte[] b, int offset) {
+        b[offset] = (byte) (v >>> 8);
+        b[offset + 1] = (byte) v;
+    }
+
+    /** Return the number of slots in the slot directory */
+    public int slotCount() {
+        return Type.readInt(data, 0);
+    }
+
+    private int dataStart() {
+        int end = Type.readInt(data, 4);
+        return end == 0 ? pageSize : end;
+    }
+
+    private int slotOffset(int slot) {
+        return readShort(data, HEADER_SIZE + slot * SLOT_SIZE);
+    }
+
+    private int slotLength(int slot) {
+        return readShort(data, HEADER_SIZE + slot * SLOT_SIZE + 2);
+    }
+
+    private void setSlot(int slot, int offset, int length) {
+        writeShort(offset, data, HEADER_SIZE + slot * SLOT_SIZE);
+        writeShort(length, data, HEADER_SIZE + slot * SLOT_SIZE + 2);
+    }
+
+    /** Return the bytes not taken by the header, the slot directory or tuples */
+    private int freeBytes() {
+        int slots = slotCount();
+        int used = 0;
+        for (int i = 0; i < slots; i++)
+            used += slotLength(i);
+        return pageSize - HEADER_SIZE - slots * SLOT_SIZE - used;
+    }
+
+    /**
+     * Returns the number of tuples of the largest possible size that still
+     * fit on this page; any tuple fits if this is not zero.
+     */
+    @Override
+    public int getNumEmptySlots() {
+        int free = freeBytes();
+        int emptySlots = 0;
+        for (int i = slotCount() - 1; i >= 0; i--) {
+            if (slotOffset(i) == 0)
+                emptySlots++;
+        }
+        int n = Math.min(emptySlots, free / maxTupleSize);
+        if (n < emptySlots)
+            return n;
+        return n + (free - n * maxTupleSize) / (maxTupleSize + SLOT_SIZE);
+    }
+
+    @Override
+    public boolean isSlotUsed(int i) {
+        return i >= 0 && i < slotCount() && slotOffset(i) != 0;
+    }
+
+    /**
+     * Adds the specified tuple to the page, compacting the tuple data if the
+     * free space is fragmented.
+     * @throws DbException if the tuple does not fit or tupledesc is mismatch.
+     */
+    @Override
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc()))
+            throw new DbException("TupleDesc not match");
+        int slots = slotCount();
+        int slot = 0;
+        while (slot < slots && slotOffset(slot) != 0)
+            slot++;
+        int len = encodedSize(t);
+        int need = len + (slot == slots ? SLOT_SIZE : 0);
+        if (freeBytes() < need)
+            throw new DbException("no empty slot");
+        if (dataStart() - (HEADER_SIZE + slots * SLOT_SIZE) < need)
+            compact();
+        int end = dataStart() - len;
+        encode(t, data, end);
+        setSlot(slot, end, len);
+        if (slot == slots)
+            Type.writeInt(slots + 1, data, 0);
+        Type.writeInt(end, data, 4);
+        t.setRecordId(new RecordId(pid, slot));
+    }
+
+    /**
+     * Moves the tuple data together at the end of the page, so that all
+     * free space is between the slot directory and the tuple data.
+     */
+    private void compact() {
+        int slots = slotCount();
+        byte[] packed = new byte[pageSize];
+        int end = pageSize;
+        for (int i = 0; i < slots; i++) {
+            int off = slotOffset(i);
+            if (off == 0)
+                continue;
+            int len = slotLength(i);
+            end -= len;
+            System.arraycopy(data, off, packed, end, len);
+            setSlot(i, end, len);
+        }
+        int dirEnd = HEADER_SIZE + slots * SLOT_SIZE;
+        Arrays.fill(data, dirEnd, end, (byte) 0);
+        System.arraycopy(packed, end, data, end, pageSize - end);
+        Type.writeInt(end, data, 4);
+    }
+
+    @Override
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId()))
+            throw new DbException("this tuple is not on this page");
+        int slot = rid.getTupleNumber();
+        if (!isSlotUsed(slot))
+            throw new DbException("tuple slot is already empty");
+        int off = slotOffset(slot), len = slotLength(slot);
+        Arrays.fill(data, off, off + len, (byte) 0);
+        setSlot(slot, 0, 0);
+        if (off == dataStart())
+            Type.writeInt(off + len == pageSize ? 0 : off + len, data, 4);
+        // drop empty slots from the end of the directory
+        int slots = slotCount();
+        while (slots > 0 && slotOffset(slots - 1) == 0)
+            slots--;
+        Type.writeInt(slots, data, 0);
+        if (slots == 0)
+            Type.writeInt(0, data, 4);
+    }
+
+    /** Return the offset of the given field of the tuple at off */
+    private int fieldOffset(int off, int col) {
+        for (int i = 0; i < col; i++)
+            off += td.getFieldType(i) == Type.STRING_TYPE ? 2 + readShort(data, off) : td.getFieldType(i).getLen();
+        return off;
+    }
+
+    private Field readField(int off, Type type) {
+        if (type == Type.STRING_TYPE)
+            return new StringField(new String(data, off + 2, readShort(data, off)), Type.STRING_LEN);
+        return type.parse(data, off);
+    }
+
+    private int checkSlot(int slot) {
+        if (!isSlotUsed(slot))
+            throw new NoSuchElementException("no tuple in slot " + slot);
+        return slotOffset(slot);
+    }
+
+    @Override
+    public Field getField(int slot, int col) {
+        return readField(fieldOffset(checkSlot(slot), col), td.getFieldType(col));
+    }
+
+    @Override
+    public int getInt(int slot, int col) {
+        assert td.getFieldType(col) == Type.INT_TYPE;
+        return Type.readInt(data, fieldOffset(checkSlot(slot), col));
+    }
+
+    @Override
+    public String getString(int slot, int col) {
+        assert td.getFieldType(col) == Type.STRING_TYPE;
+        int off = fieldOffset(checkSlot(slot), col);
+        return new String(data, off + 2, readShort(data, off));
+    }
+
+    @Override
+    public int getNumSlots() {
+        return slotCount();
+    }
+
+    @Override
+    public int getUsedSlots(int[] slots) {
+        int n = 0;
+        for (int i = 0, count = slotCount(); i < count; i++) {
+            if (slotOffset(i) != 0)
+                slots[n++] = i;
+        }
+        return n;
+    }
+
+    @Override
+    public void getInts(int col, int[] slots, int from, int n, int[] values, int at) {
+        assert td.getFieldType(col) == Type.INT_TYPE;
+        for (int i = 0; i < n; i++)
+            values[at + i] = Type.readInt(data, fieldOffset(slotOffset(slots[from + i]), col));
+    }
+
+    @Override
+    Tuple readTuple(int slot) {
+        Tuple t = new Tuple(td);
+        int off = slotOffset(slot);
+        for (int i = 0; i < td.numFields(); i++) {
+            Type type = td.getFieldType(i);
+            t.setField(i, readField(off, type));
+            off += type == Type.STRING_TYPE ? 2 + readShort(data, off) : type.getLen();
+        }
+        t.setRecordId(new RecordId(pid, slot));
+        return t;
+    }
+
+    @Override
+    Tuple readTuple(int slot, int[] columns, TupleDesc ptd) {
+        if (columns == null)
+            return readTuple(slot);
+        Tuple t = new Tuple(ptd);
+        int off = slotOffset(slot);
+        for (int i = 0; i < columns.length; i++)
+            t.setField(i, readField(fieldOffset(off, columns[i]), td.getFieldType(columns[i])));
+        t.setRecordId(new RecordId(pid, slot));
+        return t;
+    }
+
+    @Override
+    public Iterator<Tuple> iterator() {
+        return iterator(null, null);
+    }
+
+    @Override
+    Iterator<Tuple> iterator(final int[] columns, final TupleDesc ptd) {
+        return new Iterator<Tuple>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                int slots = slotCount();
+                while (index < slots && slotOffset(index) == 0)
+                    index++;
+                return index < slots;
+            }
+
+            @Override
+            public Tuple next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return readTuple(index++, columns, ptd);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,156 @@
+package simpledb;
+
+import java.io.*;
+import java.util.NoSuchElementException;
+
+/**
+ * SpillFile is a temporary file of tuples, for operators whose state does
+ * not fit in memory.  Tuples are appended with {@link #add} and, once
+ * {@link #finish} is called, read back in the same order through
+ * {@link #iterator}, as often as needed.
+ * <p>
+ * The format is compact: an INT_TYPE field takes 4 bytes and a STRING_TYPE
+ * field a 2-byte length and its characters, rather than the fixed
+ * STRING_LEN bytes of a page.  Tuples read back are backed by page-format
+ * rows, like tuples read from a HeapPage.
+ * <p>
+ * The file is removed by {@link #delete}, which the operator using it calls
+ * when it is closed or fails.  It is not marked deleteOnExit, since that
+ * holds on to every path registered until the JVM exits.
+ */
+public class SpillFile {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final TupleDesc td;
+    private final File file;
+    private DataOutputStream out;
+    private int size;
+
+    /** Creates an empty spill file for tuples of the given schema */
+    public SpillFile(TupleDesc td) throws IOException {
+        this.td = td;
+        file = File.createTempFile("spill", ".tmp");
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+    }
+
+    /** @return the schema of the tuples in this file */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /** @return the number of tuples added */
+    public int size() {
+        return size;
+    }
+
+    /** @return the number of bytes written */
+    public long bytes() {
+        return out != null ? out.size() : file.length();
+    }
+
+    /** Appends a tuple of this file's schema */
+    public void add(Tuple t) throws IOException {
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.INT_TYPE) {
+                out.writeInt(t.getInt(i));
+            } else {
+                String s = ((StringField) t.getField(i)).getValue();
+                int len = Math.min(s.length(), Type.STRING_LEN);
+                out.writeShort(len);
+                // keeps the low byte of each char, as a page does
+                out.writeBytes(len == s.length() ? s : s.substring(0, len));
+            }
+        }
+        size++;
+    }
+
+    /** Flushes and closes the file for writing; no tuples may be added after */
+    public void finish() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /** Deletes the file */
+    public void delete() {
+        try {
+            finish();
+        } catch (IOException e) {
+            // the file is going away anyway
+        }
+        file.delete();
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file, which must be
+     * finished.  Each iterator reads the file independently.
+     */
+    public OpIterator iterator() {
+        assert out == null : "spill file read before it was finished";
+        return new Reader();
+    }
+
+    private class Reader implements OpIterator {
+
+        private static final long serialVersionUID = 1L;
+        private transient DataInputStream in;
+        private transient int left;
+
+        public void open() throws DbException {
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            } catch (IOException e) {
+                throw new DbException("could not read spill file: " + e.getMessage());
+            }
+            left = size;
+        }
+
+        public boolean hasNext() {
+            return in != null && left > 0;
+        }
+
+        public Tuple next() throws DbException {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            byte[] row = new byte[td.getSize()];
+            try {
+                for (int i = 0; i < td.numFields(); i++) {
+                    int off = td.getOffset(i);
+                    if (td.getFieldType(i) == Type.INT_TYPE) {
+                        in.readFully(row, off, 4);
+                    } else {
+                        int len = in.readUnsignedShort();
+                        Type.writeInt(len, row, off);
+                        in.readFully(row, off + 4, len);
+                    }
+                }
+            } catch (IOException e) {
+                throw new DbException("could not read spill file: " + e.getMessage());
+            }
+            left--;
+            return new Tuple(td, row);
+        }
+
+        public void rewind() throws DbException {
+            close();
+            open();
+        }
+
+        public TupleDesc getTupleDesc() {
+            return td;
+        }
+
+        public void close() {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // nothing was written
+                }
+                in = null;
+            }
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package simpledb;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 
 /**
  * Knows how to compute some aggregate over a set of StringFields.
@@ -23,13 +23,19 @@ public class StringAggregator implements Aggregator {
     private int aggFieldNum;
     private Op aggOp;
     private String groupFieldName;
-    private HashMap<Field, Integer> numGroupBy;
+    // numbers the groups; null if there is no grouping, when the single
+    // group is number 0
+    private FieldHashTable groups;
+    private int numGroups;
+    // per group, the number of values merged
+    private int[] numGroupBy = new int[16];
     public StringAggregator(int gbfield, Type gbfieldtype, int afield, Op what) {
         gbFieldNum = gbfield;
         gbFieldType = gbfieldtype;
         aggFieldNum = afield;
         aggOp = what;
-        numGroupBy = new HashMap<>();
+        if(gbfield != NO_GROUPING)
+            groups = new FieldHashTable(gbfieldtype);
     }
 
     /**
@@ -37,23 +43,41 @@ public class StringAggregator implements Aggregator {
      * @param tup the Tuple containing an aggregate field and a group-by field
      */
     public void mergeTupleIntoGroup(Tuple tup) {
-        Field groupField;
-        if(gbFieldNum==NO_GROUPING)
+        int group = 0;
+        if(gbFieldNum != NO_GROUPING)
         {
-            if(gbFieldType==Type.INT_TYPE) groupField = new IntField(0);
-            else
-                groupField = new StringField("", 100);
-        }else
-            groupField = tup.getField(gbFieldNum);
-        groupFieldName = tup.getTupleDesc().getFieldName(gbFieldNum);
-        if(!numGroupBy.containsKey(groupField))
+            groupFieldName = tup.getTupleDesc().getFieldName(gbFieldNum);
+            group = gbFieldType == Type.INT_TYPE ? groups.put(tup.getInt(gbFieldNum))
+                    : groups.put(tup.getField(gbFieldNum));
+        }
+        count(group, 1);
+        // only need to support count
+    }
+
+    private void count(int group, int n) {
+        if(group == numGroups)
         {
-            numGroupBy.put(groupField, 1);
-        }else
+            if(group == numGroupBy.length)
+                numGroupBy = Arrays.copyOf(numGroupBy, group * 2);
+            numGroups++;
+            numGroupBy[group] = 0;
+        }
+        numGroupBy[group] += n;
+    }
+
+    /**
+     * Merges a batch, counting its tuples at once when there is no
+     * grouping.
+     */
+    @Override
+    public void mergeBatch(TupleBatch batch) {
+        if(gbFieldNum != NO_GROUPING)
         {
-            numGroupBy.put(groupField, numGroupBy.get(groupField)+1);
-            // only need to support count
+            Aggregator.super.mergeBatch(batch);
+            return;
         }
+        if(batch.size() > 0)
+            count(0, batch.size());
     }
 
     /**
@@ -72,11 +96,11 @@ public class StringAggregator implements Aggregator {
                     new String[] {groupFieldName, aggOp.toString()}
             );
             ArrayList<Tuple> tuples = new ArrayList<>();
-            for(Field group: numGroupBy.keySet())
+            for(int group = 0; group < numGroups; group++)
             {
                 Tuple tuple = new Tuple(tupleDesc);
-                tuple.setField(0, group);
-                tuple.setField(1, new IntField(numGroupBy.get(group)));
+                tuple.setField(0, groups.key(group));
+                tuple.setField(1, new IntField(numGroupBy[group]));
                 tuples.add(tuple);
             }
             return new TupleIterator(tupleDesc, tuples);
@@ -87,10 +111,10 @@ public class StringAggregator implements Aggregator {
                     new String[] {aggOp.toString()}
             );
             ArrayList<Tuple> tuples = new ArrayList<>();
-            for(Field group : numGroupBy.keySet())
+            if(numGroups > 0)
             {
                 Tuple tuple = new Tuple(tupleDesc);
-                tuple.setField(0, new IntField(numGroupBy.get(group)));
+                tuple.setField(0, new IntField(numGroupBy[0]));
                 tuples.add(tuple);
             }
             return new TupleIterator(tupleDesc, tuples);
@@ -94,6 +94,8 @@ public class TableStats {
         ntups = 0;
         HeapFile file = (HeapFile)Database.getCatalog().getDatabaseFile(tableid);
         this.td = file.getTupleDesc();
+        // the file's real length, which for slotted files depends on the data
+        this.npages = file.numPages();
 
 
         // for estimateSelectivity()
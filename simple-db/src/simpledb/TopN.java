@@ -0,0 +1,186 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * TopN is an operator that implements ORDER BY ... LIMIT n: it returns the
+ * first n tuples of its child in the order an {@link OrderBy} on the same
+ * fields would, but keeps only n tuples in memory, in a heap whose root is
+ * the last of them, so that most tuples of a big child are turned away
+ * after one comparison with the root.  Like OrderBy, it is stable: of equal
+ * tuples, those read first come first.
+ */
+public class TopN extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private OpIterator child;
+    private TupleDesc td;
+    private int[] orderByFields;
+    private boolean[] ascending;
+    private int limit;
+
+    // the result, in order, and the next tuple of it to return
+    private transient Tuple[] top;
+    private transient int pos;
+
+    /**
+     * Creates a new TopN node that returns the first limit tuples from the
+     * iterator, sorted on several fields as by {@link OrderBy}.
+     *
+     * @param orderbyFields
+     *            the fields to which the sort is applied, most significant
+     *            first.
+     * @param asc
+     *            for each field, true if the sort order is ascending.
+     * @param limit
+     *            the number of tuples to return.
+     * @param child
+     *            the tuples to sort.
+     */
+    public TopN(int[] orderbyFields, boolean[] asc, int limit, OpIterator child) {
+        if (orderbyFields.length == 0 || orderbyFields.length != asc.length)
+            throw new IllegalArgumentException("need one sort order per field");
+        if (limit < 0)
+            throw new IllegalArgumentException("negative limit " + limit);
+        this.child = child;
+        td = child.getTupleDesc();
+        this.orderByFields = orderbyFields.clone();
+        this.ascending = asc.clone();
+        this.limit = limit;
+    }
+
+    /** @return the fields sorted on, most significant first */
+    public int[] getOrderByFields() {
+        return this.orderByFields.clone();
+    }
+
+    /** @return for each of the fields sorted on, true if it is ascending */
+    public boolean[] getAscending() {
+        return this.ascending.clone();
+    }
+
+    /** @return the number of tuples returned, at most */
+    public int getLimit() {
+        return limit;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        Comparator<Tuple> cmp = new TupleComparator(td, orderByFields, ascending);
+        child.open();
+        // a max-heap of the first tuples so far, by cmp and then by the
+        // order they were read in
+        Tuple[] heap = new Tuple[Math.min(limit, 1024)];
+        int[] seq = new int[heap.length];
+        int size = 0;
+        for (int n = 0; limit > 0 && child.hasNext(); n++) {
+            Tuple t = child.next();
+            if (size < limit) {
+                if (size == heap.length) {
+                    heap = Arrays.copyOf(heap, (int) Math.min(limit, 2L * size));
+                    seq = Arrays.copyOf(seq, heap.length);
+                }
+                siftUp(heap, seq, size++, t, n, cmp);
+            } else if (cmp.compare(t, heap[0]) < 0) {
+                // t was read after every tuple in the heap, so it only
+                // displaces the root if it sorts strictly before it
+                siftDown(heap, seq, size, t, n, cmp);
+            }
+        }
+        // popping the root off repeatedly leaves the heap in order
+        for (int end = size - 1; end > 0; end--) {
+            Tuple last = heap[end];
+            int lastSeq = seq[end];
+            heap[end] = heap[0];
+            seq[end] = seq[0];
+            siftDown(heap, seq, end, last, lastSeq, cmp);
+        }
+        top = Arrays.copyOf(heap, size);
+        pos = 0;
+        super.open();
+    }
+
+    /** @return true if tuple a, read as number sa, comes after b, read as sb */
+    private static boolean after(Tuple a, int sa, Tuple b, int sb, Comparator<Tuple> cmp) {
+        int c = cmp.compare(a, b);
+        return c > 0 || (c == 0 && sa > sb);
+    }
+
+    /** Adds t, read as number n, at slot i of the heap and moves it up */
+    private static void siftUp(Tuple[] heap, int[] seq, int i, Tuple t, int n,
+            Comparator<Tuple> cmp) {
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (!after(t, n, heap[parent], seq[parent], cmp))
+                break;
+            heap[i] = heap[parent];
+            seq[i] = seq[parent];
+            i = parent;
+        }
+        heap[i] = t;
+        seq[i] = n;
+    }
+
+    /**
+     * Replaces the root of the first size slots of the heap with t, read as
+     * number n, and moves it down
+     */
+    private static void siftDown(Tuple[] heap, int[] seq, int size, Tuple t, int n,
+            Comparator<Tuple> cmp) {
+        int i = 0;
+        for (int c = 1; c < size; c = 2 * i + 1) {
+            if (c + 1 < size && after(heap[c + 1], seq[c + 1], heap[c], seq[c], cmp))
+                c++;
+            if (!after(heap[c], seq[c], t, n, cmp))
+                break;
+            heap[i] = heap[c];
+            seq[i] = seq[c];
+            i = c;
+        }
+        heap[i] = t;
+        seq[i] = n;
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+        top = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        // drop a tuple hasNext() may have fetched ahead
+        super.close();
+        pos = 0;
+        super.open();
+    }
+
+    /**
+     * Operator.fetchNext implementation. Returns the first tuples from the
+     * child operator in order
+     *
+     * @return The next tuple in the ordering, or null if there are no more
+     *         tuples
+     */
+    protected Tuple fetchNext() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (top != null && pos < top.length)
+            return top[pos++];
+        return null;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { this.child };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child = children[0];
+    }
+
+}
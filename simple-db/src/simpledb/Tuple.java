@@ -9,13 +9,24 @@ import java.util.Iterator;
  * Tuple maintains information about the contents of a tuple. Tuples have a
  * specified schema specified by a TupleDesc object and contain Field objects
  * with the data for each field.
+ * <p>
+ * Tuples read from a HeapPage are backed by a flat copy of their bytes in
+ * the page format, laid out by {@link TupleDesc#getOffset}; their Field
+ * objects are only created when asked for, and {@link #getInt} reads
+ * integers without creating any.  Fields set with setField take precedence
+ * over the bytes.
+ *
+ * @see JoinedTuple
  */
 public class Tuple implements Serializable {
 
     private static final long serialVersionUID = 1L;
     private TupleDesc td;
     private RecordId rid;
-    private ArrayList<Field> fields;
+    // fields set through setField, or null if none have been
+    private Field[] fields;
+    // the tuple's bytes in page format, or null
+    private final byte[] row;
     /**
      * Create a new tuple with the specified schema (type).
      *
@@ -26,9 +37,21 @@ public class Tuple implements Serializable {
     public Tuple(TupleDesc td) {
         assert td.numFields()>0 : "It must be a valid TupleDesc instance with at least one field";
         this.td = td;
-        fields = new ArrayList<>(td.numFields());
-        for(int i=0; i<td.numFields(); i++)
-            fields.add(null);
+        this.fields = new Field[td.numFields()];
+        this.row = null;
+    }
+
+    /**
+     * Create a new tuple with the specified schema whose field values are
+     * decoded from the given bytes, which the tuple takes over.
+     *
+     * @param row
+     *            the encoding of the tuple, td.getSize() bytes in the
+     *            format of a HeapPage slot, or null for a tuple with no values.
+     */
+    Tuple(TupleDesc td, byte[] row) {
+        this.td = td;
+        this.row = row;
     }
 
     /**
@@ -66,7 +89,9 @@ public class Tuple implements Serializable {
      */
     public void setField(int i, Field f) {
         assert i>=0 && i<td.numFields(): "invalid index";
-        fields.set(i, f);
+        if(fields==null)
+            fields = new Field[td.numFields()];
+        fields[i] = f;
     }
 
     /**
@@ -77,9 +102,38 @@ public class Tuple implements Serializable {
      */
     public Field getField(int i) {
         assert i>=0 && i<td.numFields(): "invalid index";
-        if(fields.get(i)==null)
-            return null;
-        return fields.get(i);
+        if(fields!=null && fields[i]!=null)
+            return fields[i];
+        if(row!=null)
+            return td.getFieldType(i).parse(row, td.getOffset(i));
+        return null;
+    }
+
+    /**
+     * @return the value of the ith field, which must be an INT_TYPE field
+     *         that has been set.
+     *
+     * @param i
+     *            field index to return. Must be a valid index.
+     */
+    public int getInt(int i) {
+        assert i>=0 && i<td.numFields(): "invalid index";
+        if(row!=null && (fields==null || fields[i]==null))
+            return Type.readInt(row, td.getOffset(i));
+        return ((IntField) getField(i)).getValue();
+    }
+
+    /**
+     * Copies the tuple's bytes to dst if it is backed by a row and no field
+     * has been set since.
+     *
+     * @return true if the bytes were copied
+     */
+    boolean copyRow(byte[] dst, int offset) {
+        if(row==null || fields!=null)
+            return false;
+        System.arraycopy(row, 0, dst, offset, row.length);
+        return true;
     }
 
     /**
@@ -93,9 +147,9 @@ public class Tuple implements Serializable {
     public String toString() {
         //throw new UnsupportedOperationException("Implement this");
         StringBuilder s = new StringBuilder();
-        for(Field f : fields)
+        for(int i=0; i<td.numFields(); i++)
         {
-            s.append(f).append(" ");
+            s.append(getField(i)).append(" ");
         }
         return s.toString();
     }
@@ -106,7 +160,10 @@ public class Tuple implements Serializable {
      * */
     public Iterator<Field> fields()
     {
-        return fields.listIterator();
+        ArrayList<Field> list = new ArrayList<>(td.numFields());
+        for(int i=0; i<td.numFields(); i++)
+            list.add(getField(i));
+        return list.iterator();
     }
 
     /**
@@ -0,0 +1,215 @@
+package simpledb;
+
+/**
+ * TupleBatch holds up to {@link #CAPACITY} tuples column by column, for
+ * batch-at-a-time execution: an INT_TYPE column is an int[], a STRING_TYPE
+ * column a String[], indexed by row.  A selection vector lists the rows of
+ * the batch that are in it, in order, so that a filter drops rows by
+ * shortening the selection instead of moving values.  Operators address
+ * the tuples of a batch as 0 .. size()-1 and translate through
+ * {@link #row} to get at the column arrays.
+ * <p>
+ * Rows read from a HeapFile remember their RecordId, so tuples taken out
+ * of a batch with {@link #getTuple} can be deleted or updated.
+ *
+ * @see BatchIterator
+ */
+public class TupleBatch {
+
+    /** The number of rows a batch holds */
+    public static final int CAPACITY = 1024;
+
+    private final TupleDesc td;
+    // per column, the values of the rows; null for columns of the other type
+    private final int[][] ints;
+    private final String[][] strings;
+    // where each row was read from, or null
+    private final PageId[] pageIds;
+    private final int[] slots;
+    private final int[] sel;
+    private int rows;
+    private int selected;
+
+    /** Creates an empty batch of tuples of the given schema */
+    public TupleBatch(TupleDesc td) {
+        this.td = td;
+        int n = td.numFields();
+        ints = new int[n][];
+        strings = new String[n][];
+        for (int i = 0; i < n; i++) {
+            if (td.getFieldType(i) == Type.INT_TYPE)
+                ints[i] = new int[CAPACITY];
+            else
+                strings[i] = new String[CAPACITY];
+        }
+        pageIds = new PageId[CAPACITY];
+        slots = new int[CAPACITY];
+        sel = new int[CAPACITY];
+    }
+
+    private TupleBatch(TupleDesc td, TupleBatch base, int[] columns) {
+        this.td = td;
+        ints = new int[columns.length][];
+        strings = new String[columns.length][];
+        for (int i = 0; i < columns.length; i++) {
+            ints[i] = base.ints[columns[i]];
+            strings[i] = base.strings[columns[i]];
+        }
+        pageIds = base.pageIds;
+        slots = base.slots;
+        sel = base.sel;
+        rows = base.rows;
+        selected = base.selected;
+    }
+
+    /**
+     * Returns a batch of the given columns of this one, with the given
+     * schema, that shares this batch's values and selection instead of
+     * copying them.  It is valid until this batch changes.
+     */
+    public TupleBatch project(TupleDesc td, int[] columns) {
+        return new TupleBatch(td, this, columns);
+    }
+
+    /** @return the schema of the tuples in this batch */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /** @return the number of tuples in this batch */
+    public int size() {
+        return selected;
+    }
+
+    /** @return true if no more rows can be added */
+    public boolean isFull() {
+        return rows == CAPACITY;
+    }
+
+    /** Empties the batch */
+    public void clear() {
+        rows = 0;
+        selected = 0;
+    }
+
+    /** @return the row of the column arrays that holds tuple i of the batch */
+    public int row(int i) {
+        return sel[i];
+    }
+
+    /**
+     * Returns the selection vector, which lists the rows in the batch in
+     * its first size() entries.  A filter may overwrite it with a subset of
+     * those rows, in order, and call {@link #setSize}.
+     */
+    public int[] selection() {
+        return sel;
+    }
+
+    /** Sets the number of entries of the selection vector in use */
+    public void setSize(int n) {
+        assert n <= selected;
+        selected = n;
+    }
+
+    /** @return the values of INT_TYPE column col, by row */
+    public int[] getInts(int col) {
+        return ints[col];
+    }
+
+    /** @return the values of STRING_TYPE column col, by row */
+    public String[] getStrings(int col) {
+        return strings[col];
+    }
+
+    /** @return the value of INT_TYPE column col in the given row */
+    public int getInt(int col, int row) {
+        return ints[col][row];
+    }
+
+    /** @return the value of column col in the given row */
+    public Field getField(int col, int row) {
+        if (ints[col] != null)
+            return new IntField(ints[col][row]);
+        return new StringField(strings[col][row], Type.STRING_LEN);
+    }
+
+    /** Returns tuple i of the batch as a Tuple */
+    public Tuple getTuple(int i) {
+        int r = sel[i];
+        byte[] row = new byte[td.getSize()];
+        for (int c = 0; c < ints.length; c++) {
+            if (ints[c] != null)
+                Type.writeInt(ints[c][r], row, td.getOffset(c));
+            else
+                Type.STRING_TYPE.serialize(new StringField(strings[c][r], Type.STRING_LEN), row, td.getOffset(c));
+        }
+        Tuple t = new Tuple(td, row);
+        if (pageIds[r] != null)
+            t.setRecordId(new RecordId(pageIds[r], slots[r]));
+        return t;
+    }
+
+    /** Starts a new row at the end of the batch, and returns it */
+    private int newRow(PageId pid, int slot) {
+        assert !isFull();
+        int r = rows++;
+        pageIds[r] = pid;
+        slots[r] = slot;
+        sel[selected++] = r;
+        return r;
+    }
+
+    private void set(int col, int r, Tuple t, int field) {
+        if (ints[col] != null)
+            ints[col][r] = t.getInt(field);
+        else
+            strings[col][r] = ((StringField) t.getField(field)).getValue();
+    }
+
+    /** Adds a tuple of this batch's schema, which must not be full */
+    public void add(Tuple t) {
+        RecordId rid = t.getRecordId();
+        int r = rid == null ? newRow(null, 0) : newRow(rid.getPageId(), rid.getTupleNumber());
+        for (int c = 0; c < ints.length; c++)
+            set(c, r, t, c);
+    }
+
+    /**
+     * Adds the concatenation of left and row r of right, for a batch whose
+     * schema is the merge of theirs.
+     */
+    void addJoined(Tuple left, TupleBatch right, int r) {
+        int split = left.getTupleDesc().numFields();
+        int row = newRow(null, 0);
+        for (int c = 0; c < split; c++)
+            set(c, row, left, c);
+        for (int c = split; c < ints.length; c++) {
+            if (ints[c] != null)
+                ints[c][row] = right.ints[c - split][r];
+            else
+                strings[c][row] = right.strings[c - split][r];
+        }
+    }
+
+    /**
+     * Adds n tuples read from the given page, from the slots listed in
+     * slots starting at index from; column c of the batch is column
+     * columns[c] of the page, or column c if columns is null.
+     */
+    void addRows(HeapPage page, int[] slots, int from, int n, int[] columns) {
+        assert rows + n <= CAPACITY;
+        int start = rows;
+        for (int i = 0; i < n; i++)
+            newRow(page.getId(), slots[from + i]);
+        for (int c = 0; c < ints.length; c++) {
+            int col = columns == null ? c : columns[c];
+            if (ints[c] != null) {
+                page.getInts(col, slots, from, n, ints[c], start);
+            } else {
+                for (int i = 0; i < n; i++)
+                    strings[c][start + i] = page.getString(slots[from + i], col);
+            }
+        }
+    }
+}
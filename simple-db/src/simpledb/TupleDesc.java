@@ -9,6 +9,8 @@ import java.util.*;
 public class TupleDesc implements Serializable {
 
     private ArrayList<TDItem> arrayList = new ArrayList<>();
+    // field offsets, filled in by getOffset
+    private transient int[] offsets;
 
     /**
      * A help class to facilitate organizing the information of each field
@@ -185,6 +187,28 @@ public class TupleDesc implements Serializable {
         return size;
     }
 
+    /**
+     * Returns the byte offset of the ith field in the encoding of a tuple
+     * of this schema, as stored on a HeapPage and in a row-backed Tuple.
+     * The offsets are computed once per TupleDesc.
+     *
+     * @param i
+     *            index of the field. It must be a valid index.
+     */
+    public int getOffset(int i) {
+        int[] off = offsets;
+        if (off == null) {
+            off = new int[arrayList.size()];
+            int size = 0;
+            for (int j = 0; j < off.length; j++) {
+                off[j] = size;
+                size += arrayList.get(j).fieldType.getLen();
+            }
+            offsets = off;
+        }
+        return off[i];
+    }
+
     /**
      * Merge two TupleDescs into one, with td1.numFields + td2.numFields fields,
      * with the first td1.numFields coming from td1 and the remaining from td2.
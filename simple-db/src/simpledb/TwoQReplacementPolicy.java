@@ -0,0 +1,90 @@
+package simpledb;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Full 2Q replacement (Johnson and Shasha).  Newly loaded pages enter the
+ * A1in FIFO.  A page evicted from A1in leaves its id in the A1out ghost
+ * queue; if it is read again while still remembered there, it is promoted
+ * to the Am LRU list.  Pages that are only touched once (scans) therefore
+ * cycle through A1in without disturbing the hot pages in Am.
+ *
+ * @see ReplacementPolicy
+ */
+public class TwoQReplacementPolicy implements ReplacementPolicy {
+
+    private final int kin;
+    private final int kout;
+
+    private final LinkedHashSet<PageId> a1in;
+    private final LinkedHashSet<PageId> a1out;
+    /** LRU order: least recently used first. */
+    private final LinkedHashSet<PageId> am;
+
+    /**
+     * Sizes A1in to a quarter of the pool and A1out to half of it, as
+     * suggested by the paper.
+     *
+     * @param numPages the number of frames in the buffer pool
+     */
+    public TwoQReplacementPolicy(int numPages) {
+        kin = Math.max(1, numPages / 4);
+        kout = Math.max(1, numPages / 2);
+        a1in = new LinkedHashSet<>();
+        a1out = new LinkedHashSet<>();
+        am = new LinkedHashSet<>();
+    }
+
+    public synchronized void pageLoaded(PageId pid) {
+        if (a1in.contains(pid) || am.contains(pid)) {
+            pageAccessed(pid);
+            return;
+        }
+        if (a1out.remove(pid))
+            am.add(pid);
+        else
+            a1in.add(pid);
+    }
+
+    public synchronized void pageAccessed(PageId pid) {
+        // hits in A1in are deliberately ignored: they are correlated references
+        if (am.remove(pid))
+            am.add(pid);
+    }
+
+    public synchronized void pageRemoved(PageId pid) {
+        if (a1in.remove(pid)) {
+            a1out.add(pid);
+            if (a1out.size() > kout) {
+                Iterator<PageId> it = a1out.iterator();
+                it.next();
+                it.remove();
+            }
+        } else {
+            am.remove(pid);
+        }
+    }
+
+    public synchronized PageId chooseVictim(Predicate<PageId> evictable) {
+        PageId victim;
+        if (a1in.size() > kin || am.isEmpty()) {
+            victim = firstEvictable(a1in, evictable);
+            if (victim == null)
+                victim = firstEvictable(am, evictable);
+        } else {
+            victim = firstEvictable(am, evictable);
+            if (victim == null)
+                victim = firstEvictable(a1in, evictable);
+        }
+        return victim;
+    }
+
+    private static PageId firstEvictable(Collection<PageId> queue, Predicate<PageId> evictable) {
+        for (PageId pid : queue) {
+            if (evictable.test(pid))
+                return pid;
+        }
+        return null;
+    }
+}
@@ -2,6 +2,7 @@ package simpledb;
 
 import java.text.ParseException;
 import java.io.*;
+import java.util.Arrays;
 
 /**
  * Class representing a type in SimpleDB.
@@ -24,6 +25,16 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(byte[] data, int offset) {
+            return new IntField(readInt(data, offset));
+        }
+
+        @Override
+        public void serialize(Field f, byte[] data, int offset) {
+            writeInt(((IntField) f).getValue(), data, offset);
+        }
+
     }, STRING_TYPE() {
         @Override
         public int getLen() {
@@ -42,6 +53,22 @@ public enum Type implements Serializable {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public Field parse(byte[] data, int offset) {
+            return new StringField(readString(data, offset), STRING_LEN);
+        }
+
+        @Override
+        public void serialize(Field f, byte[] data, int offset) {
+            String s = ((StringField) f).getValue();
+            int len = Math.min(s.length(), STRING_LEN);
+            writeInt(len, data, offset);
+            // like DataOutputStream.writeBytes, keep the low byte of each char
+            for (int i = 0; i < len; i++)
+                data[offset + 4 + i] = (byte) s.charAt(i);
+            Arrays.fill(data, offset + 4 + len, offset + 4 + STRING_LEN, (byte) 0);
+        }
     };
     
     public static final int STRING_LEN = 128;
@@ -60,4 +87,36 @@ public enum Type implements Serializable {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * @return a Field object of the same type as this object, decoded from
+   *   the bytes at the given offset, in the format written by serialize.
+   */
+    public abstract Field parse(byte[] data, int offset);
+
+  /**
+   * Encodes a field of this type into the given bytes at the given offset,
+   * in the same format as {@link Field#serialize}.
+   */
+    public abstract void serialize(Field f, byte[] data, int offset);
+
+  /** Decodes a big-endian int, as written by DataOutputStream */
+    static int readInt(byte[] data, int offset) {
+        return (data[offset] << 24) | ((data[offset + 1] & 0xff) << 16)
+                | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+    }
+
+  /** Encodes a big-endian int, as DataOutputStream does */
+    static void writeInt(int v, byte[] data, int offset) {
+        data[offset] = (byte) (v >>> 24);
+        data[offset + 1] = (byte) (v >>> 16);
+        data[offset + 2] = (byte) (v >>> 8);
+        data[offset + 3] = (byte) v;
+    }
+
+  /** Decodes the value of a STRING_TYPE field */
+    static String readString(byte[] data, int offset) {
+        int len = readInt(data, offset);
+        return new String(data, offset + 4, len);
+    }
+
 }
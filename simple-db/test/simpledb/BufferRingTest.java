@@ -0,0 +1,65 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferRingTest extends SimpleDbTestBase {
+
+    private static final int POOL_PAGES = 20;
+
+    /**
+     * Tables that fit in the pool are cached in full; only larger ones get a ring.
+     */
+    @Test public void ringOnlyForLargeTables() {
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+        assertNull(bp.bulkReadRing(POOL_PAGES));
+        BufferRing ring = bp.bulkReadRing(POOL_PAGES * 2);
+        assertNotNull(ring);
+        assertEquals(POOL_PAGES / 4, ring.size());
+    }
+
+    /**
+     * A sequential scan over a table twice the size of the pool must not
+     * evict the pages another transaction is using.
+     */
+    @Test public void scanDoesNotFloodPool() throws Exception {
+        HeapFile hot = SystemTestUtil.createRandomHeapFile(2, 504 * 3, null, null);
+        HeapFile big = SystemTestUtil.createRandomHeapFile(2, 504 * POOL_PAGES * 2, null, null);
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 3; i++)
+            bp.getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+        assertEquals(3, bp.getMissCount());
+
+        SeqScan scan = new SeqScan(tid, big.getId(), "");
+        scan.open();
+        int count = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            count++;
+        }
+        scan.close();
+        assertEquals(504 * POOL_PAGES * 2, count);
+
+        long missesAfterScan = bp.getMissCount();
+        for (int i = 0; i < 3; i++)
+            bp.getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+        assertEquals(missesAfterScan, bp.getMissCount());
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferRingTest.class);
+    }
+}
@@ -0,0 +1,49 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ByteKeyHashTableTest extends SimpleDbTestBase {
+
+    /**
+     * Unit test for ByteKeyHashTable.put() and find() with keys at an offset
+     */
+    @Test public void putFind() {
+        ByteKeyHashTable table = new ByteKeyHashTable(Type.STRING_TYPE.getLen());
+        HashMap<String, Integer> expected = new HashMap<String, Integer>();
+        byte[] buf = new byte[3 + Type.STRING_TYPE.getLen()];
+        for (int i = 0; i < 5000; i++) {
+            String s = "key" + (i * 7919 % 1000);
+            Type.STRING_TYPE.serialize(new StringField(s, Type.STRING_LEN), buf, 3);
+            int put = table.put(buf, 3);
+            Integer entry = expected.get(s);
+            if (entry == null)
+                expected.put(s, put);
+            else
+                assertEquals(entry.intValue(), put);
+        }
+        assertEquals(1000, table.size());
+        for (String s : expected.keySet()) {
+            Type.STRING_TYPE.serialize(new StringField(s, Type.STRING_LEN), buf, 3);
+            int e = table.find(buf, 3);
+            assertEquals(expected.get(s).intValue(), e);
+            assertEquals(new StringField(s, Type.STRING_LEN),
+                    Type.STRING_TYPE.parse(table.keys(), e * table.width()));
+        }
+        Type.STRING_TYPE.serialize(new StringField("key1000", Type.STRING_LEN), buf, 3);
+        assertEquals(-1, table.find(buf, 3));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ByteKeyHashTableTest.class);
+    }
+}
@@ -1,7 +1,11 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.util.NoSuchElementException;
 import java.util.Random;
 
@@ -93,6 +97,42 @@ public class CatalogTest extends SimpleDbTestBase {
     	assertEquals(f, Database.getCatalog().getDatabaseFile(id2));
     }
 
+    /**
+     * Check that table options after the field list are applied
+     */
+    @Test public void loadSchemaOptions() throws Exception {
+        File schema = File.createTempFile("catalog", ".txt");
+        schema.deleteOnExit();
+        FileWriter w = new FileWriter(schema);
+        w.write("plain" + nameThisTestRun + " (a int pk, b string)\n");
+        w.write("mapped" + nameThisTestRun + " (a int, b int) mmap\n");
+        w.write("compressed" + nameThisTestRun + " (a int, b int) compressed\n");
+        w.write("pax" + nameThisTestRun + " (a int, b int) pax\n");
+        w.write("slotted" + nameThisTestRun + " (a int, b string) slotted mmap checksum\n");
+        w.close();
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+
+        Catalog c = Database.getCatalog();
+        HeapFile plain = (HeapFile) c.getDatabaseFile(c.getTableId("plain" + nameThisTestRun));
+        HeapFile mapped = (HeapFile) c.getDatabaseFile(c.getTableId("mapped" + nameThisTestRun));
+        assertFalse(plain.isMapped());
+        assertEquals("a", c.getPrimaryKey(plain.getId()));
+        assertTrue(mapped.isMapped());
+        assertEquals(2, mapped.getTupleDesc().numFields());
+        assertFalse(mapped.isSlotted());
+        HeapFile slotted = (HeapFile) c.getDatabaseFile(c.getTableId("slotted" + nameThisTestRun));
+        assertTrue(slotted.isSlotted());
+        assertTrue(slotted.isMapped());
+        assertTrue(slotted.hasChecksums());
+        assertFalse(mapped.hasChecksums());
+        assertFalse(mapped.isCompressed());
+        HeapFile compressed = (HeapFile) c.getDatabaseFile(c.getTableId("compressed" + nameThisTestRun));
+        assertTrue(compressed.isCompressed());
+        assertEquals(0, compressed.numPages());
+        assertFalse(compressed instanceof PaxHeapFile);
+        assertTrue(c.getDatabaseFile(c.getTableId("pax" + nameThisTestRun)) instanceof PaxHeapFile);
+    }
+
     /**
      * JUnit suite target
      */
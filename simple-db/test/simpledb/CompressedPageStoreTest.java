@@ -0,0 +1,172 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class CompressedPageStoreTest extends SimpleDbTestBase {
+
+    private static File tempFile() throws Exception {
+        File f = File.createTempFile("compressed", ".dat");
+        f.deleteOnExit();
+        return f;
+    }
+
+    private static byte[] page(int seed, boolean random) {
+        byte[] data = new byte[BufferPool.getPageSize()];
+        Random r = new Random(seed);
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) (random ? r.nextInt() : i % 7 == 0 ? seed : 0);
+        return data;
+    }
+
+    /**
+     * Pages read back as written, whether they compress, don't compress or
+     * are empty, through rewrites, a map that has to move, and reopening.
+     */
+    @Test public void roundTrip() throws Exception {
+        File f = tempFile();
+        PageChannel ch = new PageChannel(f);
+        CompressedPageStore store = CompressedPageStore.create(ch, 1);
+        int pages = 40; // more than the map starts out with room for
+        for (int i = 0; i < pages; i++)
+            store.write(i, i % 10 == 3 ? new byte[BufferPool.getPageSize()] : page(i, i % 5 == 0));
+        assertEquals(pages, store.numPages());
+        assertTrue(store.storedBytes() < (long) pages * BufferPool.getPageSize() / 2);
+
+        // a page that grows moves; one that shrinks stays put
+        store.write(1, page(1, true));
+        store.write(5, page(5, false));
+        store.setCacheSize(0);
+        for (int i = 0; i < pages; i++) {
+            byte[] expected = i % 10 == 3 ? new byte[BufferPool.getPageSize()]
+                    : page(i, i == 1 || (i % 5 == 0 && i != 5));
+            assertArrayEquals(expected, store.read(i));
+        }
+        assertArrayEquals(new byte[BufferPool.getPageSize()], store.read(pages));
+        ch.close();
+
+        ch = new PageChannel(f);
+        CompressedPageStore reopened = CompressedPageStore.open(ch);
+        assertEquals(pages, reopened.numPages());
+        assertArrayEquals(page(1, true), reopened.read(1));
+        assertArrayEquals(page(5, false), reopened.read(5));
+        assertArrayEquals(page(39, false), reopened.read(39));
+        ch.close();
+    }
+
+    /**
+     * A reader racing with writes of a page never gets an image older than
+     * the last write that had finished, from the disk or from the cache.
+     */
+    @Test public void concurrentReadWrite() throws Exception {
+        CompressedPageStore store = CompressedPageStore.create(new PageChannel(tempFile()), 4);
+        for (int i = 0; i < 3; i++)
+            store.write(i, versioned(0));
+        // reading pages 1 and 2 pushes page 0 out, so that it is read from
+        // disk and then cached while the writer goes on
+        store.setCacheSize(2);
+        int versions = 20000;
+        AtomicInteger written = new AtomicInteger();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int v = 1; v <= versions; v++) {
+                    store.write(0, versioned(v));
+                    written.set(v);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+        try {
+            while (writer.isAlive()) {
+                store.read(1);
+                store.read(2);
+                for (int i = 0; i < 2; i++) {
+                    int done = written.get();
+                    int v = version(store.read(0));
+                    assertTrue("read version " + v + " after " + done + " was written", v >= done);
+                }
+            }
+        } finally {
+            writer.join();
+        }
+        assertEquals(versions, version(store.read(0)));
+    }
+
+    /** Returns a page image that compresses, stamped with version v */
+    private static byte[] versioned(int v) {
+        byte[] data = page(1, false);
+        data[0] = (byte) (v >> 24);
+        data[1] = (byte) (v >> 16);
+        data[2] = (byte) (v >> 8);
+        data[3] = (byte) v;
+        return data;
+    }
+
+    private static int version(byte[] data) {
+        return Type.readInt(data, 0);
+    }
+
+    /**
+     * A heap file compressed by HeapFileEncoder scans like the original,
+     * takes inserts and deletes, and is much smaller for repetitive data.
+     */
+    @Test public void compressedHeapFile() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<>();
+        HeapFile raw = SystemTestUtil.createRandomHeapFile(2, 5000, 10, null, tuples);
+        File f = tempFile();
+        HeapFileEncoder.compress(raw.getFile(), f);
+        assertTrue(f.length() < raw.getFile().length() / 2);
+
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2), false, true);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        assertTrue(hf.isCompressed());
+        assertEquals(raw.numPages(), hf.numPages());
+        SystemTestUtil.matchTuples(hf, tuples);
+
+        TransactionId tid = new TransactionId();
+        BufferPool bp = Database.getBufferPool();
+        Tuple t = Utility.getHeapTuple(new int[] { 42, 43 });
+        bp.insertTuple(tid, hf.getId(), t);
+        Tuple first = ((HeapPage) bp.getPage(tid, new HeapPageId(hf.getId(), 0), Permissions.READ_ONLY))
+                .iterator().next();
+        bp.deleteTuple(tid, first);
+        bp.transactionComplete(tid);
+        bp.flushAllPages();
+        ArrayList<Integer> removed = new ArrayList<>();
+        removed.add(((IntField) first.getField(0)).getValue());
+        removed.add(((IntField) first.getField(1)).getValue());
+        tuples.remove(removed);
+        ArrayList<Integer> added = new ArrayList<>();
+        added.add(42);
+        added.add(43);
+        tuples.add(added);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        HeapFile reopened = new HeapFile(f, Utility.getTupleDesc(2), false, true);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        SystemTestUtil.matchTuples(reopened, tuples);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompressedPageStoreTest.class);
+    }
+}
@@ -0,0 +1,144 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.RandomAccessFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+
+    private static final int TUPLES_PER_PAGE = 504;
+    private static final int FULL_PAGES = 10;
+
+    private HeapFile hf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        // ten full pages and a half-full one
+        hf = SystemTestUtil.createRandomHeapFile(2, TUPLES_PER_PAGE * FULL_PAGES + TUPLES_PER_PAGE / 2, null, null);
+        hf.getFreeSpaceMap().getFile().deleteOnExit();
+    }
+
+    private static Tuple tuple(int v) {
+        Tuple t = new Tuple(Utility.getTupleDesc(2));
+        t.setField(0, new IntField(v));
+        t.setField(1, new IntField(v));
+        return t;
+    }
+
+    /**
+     * An insert goes straight to the page with room, without locking the
+     * full pages before it.
+     */
+    @Test public void insertSkipsFullPages() throws Exception {
+        FreeSpaceMap fsm = hf.getFreeSpaceMap();
+        assertEquals(FULL_PAGES + 1, fsm.numPages());
+        for (int i = 0; i < FULL_PAGES; i++)
+            assertFalse(fsm.hasSpace(i));
+        assertTrue(fsm.hasSpace(FULL_PAGES));
+
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, hf.getId(), tuple(1));
+        for (int i = 0; i < FULL_PAGES; i++)
+            assertFalse(Database.getBufferPool().holdsLock(tid, new HeapPageId(hf.getId(), i)));
+        assertTrue(Database.getBufferPool().holdsLock(tid, new HeapPageId(hf.getId(), FULL_PAGES)));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Filling the last page clears its bit, the next insert extends the
+     * file, and a delete gives the page its bit back.
+     */
+    @Test public void fillExtendAndDelete() throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < TUPLES_PER_PAGE - TUPLES_PER_PAGE / 2; i++)
+            Database.getBufferPool().insertTuple(tid, hf.getId(), tuple(i));
+        FreeSpaceMap fsm = hf.getFreeSpaceMap();
+        assertFalse(fsm.hasSpace(FULL_PAGES));
+
+        Database.getBufferPool().insertTuple(tid, hf.getId(), tuple(-1));
+        assertEquals(FULL_PAGES + 2, hf.numPages());
+        assertEquals(FULL_PAGES + 2, fsm.numPages());
+        assertTrue(fsm.hasSpace(FULL_PAGES + 1));
+
+        Database.getBufferPool().deleteTuple(tid, firstTuple(tid));
+        assertTrue(fsm.hasSpace(0));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private Tuple firstTuple(TransactionId tid) throws Exception {
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        Tuple t = it.next();
+        it.close();
+        return t;
+    }
+
+    /**
+     * The map survives reopening the table, and a sidecar that does not
+     * match the heap file is rebuilt from the pages.
+     */
+    @Test public void persistentAndRebuilt() throws Exception {
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().deleteTuple(tid, firstTuple(tid));
+        Database.getBufferPool().transactionComplete(tid);
+
+        FreeSpaceMap reopened = Utility.openHeapFile(2, hf.getFile()).getFreeSpaceMap();
+        assertTrue(reopened.hasSpace(0));
+        assertFalse(reopened.hasSpace(1));
+        assertTrue(reopened.hasSpace(FULL_PAGES));
+
+        // a short sidecar, e.g. from a crash between extending the file and updating the map
+        RandomAccessFile raf = new RandomAccessFile(reopened.getFile(), "rw");
+        raf.setLength(FreeSpaceMap.HEADER_SIZE);
+        raf.close();
+        FreeSpaceMap rebuilt = Utility.openHeapFile(2, hf.getFile()).getFreeSpaceMap();
+        assertEquals(FULL_PAGES + 1, rebuilt.numPages());
+        assertTrue(rebuilt.hasSpace(0));
+        assertFalse(rebuilt.hasSpace(1));
+        assertTrue(rebuilt.hasSpace(FULL_PAGES));
+    }
+
+    /**
+     * Concurrent inserters are sent to different pages instead of queueing
+     * for the same one.
+     */
+    @Test public void insertersSpread() throws Exception {
+        // free a slot on every page
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (n++ % TUPLES_PER_PAGE == 0)
+                Database.getBufferPool().deleteTuple(tid, t);
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        TransactionId t1 = new TransactionId(), t2 = new TransactionId();
+        Tuple one = tuple(1), two = tuple(2);
+        Database.getBufferPool().insertTuple(t1, hf.getId(), one);
+        Database.getBufferPool().insertTuple(t2, hf.getId(), two); // would block on t1's page
+        assertFalse(one.getRecordId().getPageId().equals(two.getRecordId().getPageId()));
+        assertEquals(FULL_PAGES + 1, hf.numPages());
+        Database.getBufferPool().transactionComplete(t1);
+        Database.getBufferPool().transactionComplete(t2);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
@@ -0,0 +1,143 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class GroupCommitTest extends SimpleDbTestBase {
+
+    private static final int COMMITTERS = 16;
+
+    @After public void tearDown() {
+        Database.getLogFile().setGroupCommit(0, 0);
+    }
+
+    private void commitConcurrently(int n) throws Exception {
+        ArrayList<Thread> threads = new ArrayList<>();
+        final ArrayList<Throwable> errors = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            final Transaction t = new Transaction();
+            t.start();
+            threads.add(new Thread() {
+                public void run() {
+                    try {
+                        t.commit();
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            t.join();
+        assertTrue(errors.toString(), errors.isEmpty());
+    }
+
+    /**
+     * Without group commit, every commit forces the log.
+     */
+    @Test public void forcePerCommit() throws Exception {
+        LogFile log = Database.getLogFile();
+        assertFalse(log.isGroupCommit());
+        commitConcurrently(COMMITTERS);
+        assertEquals(COMMITTERS, log.getCommitCount());
+        assertEquals(COMMITTERS, log.getForceCount());
+        assertEquals(0, log.getCommitBatchCount());
+    }
+
+    /**
+     * Concurrent committers are released in batches by fewer forces.
+     */
+    @Test public void commitsShareForces() throws Exception {
+        LogFile log = Database.getLogFile();
+        log.setGroupCommit(50000, 0);
+        assertTrue(log.isGroupCommit());
+        commitConcurrently(COMMITTERS);
+        assertEquals(COMMITTERS, log.getCommitCount());
+        assertTrue(log.getForceCount() < COMMITTERS);
+        assertTrue(log.getMaxCommitBatchSize() > 1);
+        assertEquals(COMMITTERS, log.getMeanCommitBatchSize() * log.getCommitBatchCount(), 0.001);
+        assertTrue(log.getMaxCommitLatencyMicros() >= log.getMeanCommitLatencyMicros());
+    }
+
+    /**
+     * A byte window releases the batch without waiting for the time window.
+     */
+    @Test public void byteWindow() throws Exception {
+        LogFile log = Database.getLogFile();
+        log.setGroupCommit(60 * 1000 * 1000, 1);
+        long start = System.currentTimeMillis();
+        commitConcurrently(1);
+        assertTrue(System.currentTimeMillis() - start < 30 * 1000);
+        assertEquals(1, log.getCommitBatchCount());
+    }
+
+    /**
+     * When the flusher's force fails, the committers waiting for it fail
+     * too instead of waiting forever, and group commit is switched off.
+     */
+    @Test public void failedForce() throws Exception {
+        File f = File.createTempFile("grouplog", ".dat");
+        f.deleteOnExit();
+        final LogFile log = new LogFile(f);
+        log.logCommit(new TransactionId());
+        log.setGroupCommit(200 * 1000, 0);
+
+        ArrayList<Thread> threads = new ArrayList<>();
+        final ArrayList<Throwable> errors = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            threads.add(new Thread() {
+                public void run() {
+                    try {
+                        log.logCommit(new TransactionId());
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            while (t.getState() != Thread.State.WAITING)
+                Thread.sleep(1);
+        // the disk goes away while the flusher gathers the batch
+        Field raf = LogFile.class.getDeclaredField("raf");
+        raf.setAccessible(true);
+        ((RandomAccessFile) raf.get(log)).close();
+
+        for (Thread t : threads) {
+            t.join(30 * 1000);
+            assertFalse(t.isAlive());
+        }
+        assertEquals(2, errors.size());
+        for (Throwable e : errors)
+            assertTrue(e.toString(), e instanceof IOException);
+        assertFalse(log.isGroupCommit());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(GroupCommitTest.class);
+    }
+}
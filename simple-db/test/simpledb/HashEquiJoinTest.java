@@ -0,0 +1,181 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class HashEquiJoinTest extends SimpleDbTestBase {
+
+    private static final Comparator<ArrayList<Integer>> ORDER = (a, b) -> {
+        for (int i = 0; i < a.size(); i++) {
+            int c = a.get(i).compareTo(b.get(i));
+            if (c != 0)
+                return c;
+        }
+        return 0;
+    };
+
+    /** Counts the tuples read through it */
+    private static class Counting extends TupleIterator {
+        private static final long serialVersionUID = 1L;
+        int read;
+
+        Counting(TupleIterator it) {
+            super(it.getTupleDesc(), list(it));
+        }
+
+        private static ArrayList<Tuple> list(TupleIterator it) {
+            ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+            try {
+                it.open();
+                while (it.hasNext())
+                    tuples.add(it.next());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return tuples;
+        }
+
+        public Tuple next() {
+            read++;
+            return super.next();
+        }
+    }
+
+    /** Returns a two column input of rows tuples, whose keys are i % keys */
+    private static Counting input(int rows, int keys) {
+        int[] data = new int[rows * 2];
+        for (int i = 0; i < rows; i++) {
+            data[2 * i] = i % keys;
+            data[2 * i + 1] = i;
+        }
+        return new Counting(TestUtil.createTupleList(2, data));
+    }
+
+    private static ArrayList<ArrayList<Integer>> expected(int rows1, int keys1, int rows2, int keys2) {
+        ArrayList<ArrayList<Integer>> result = new ArrayList<>();
+        for (int i = 0; i < rows1; i++)
+            for (int j = 0; j < rows2; j++)
+                if (i % keys1 == j % keys2)
+                    result.add(new ArrayList<>(Arrays.asList(i % keys1, i, j % keys2, j)));
+        Collections.sort(result, ORDER);
+        return result;
+    }
+
+    private static ArrayList<ArrayList<Integer>> drain(HashEquiJoin join, boolean batches) throws Exception {
+        ArrayList<ArrayList<Integer>> result = batches ? TestUtil.drainBatches(join) : TestUtil.drain(join);
+        Collections.sort(result, ORDER);
+        return result;
+    }
+
+    private void checkSpilling(boolean batches) throws Exception {
+        Counting build = input(5000, 1000), probe = input(3000, 1500);
+        HashEquiJoin join = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0), build, probe);
+        join.setMemoryBudget(1000);
+        join.open();
+        assertEquals(expected(5000, 1000, 3000, 1500), drain(join, batches));
+        // each child is read once, and less than all of it is spilled and read again
+        assertEquals(5000, build.read);
+        assertEquals(3000, probe.read);
+        assertTrue(join.spilledTuples > 0);
+        assertTrue(join.spilledTuples < 5000 + 3000);
+        join.close();
+    }
+
+    /**
+     * Unit test for a join whose build side does not fit in memory
+     */
+    @Test public void spilling() throws Exception {
+        checkSpilling(false);
+    }
+
+    /**
+     * Unit test for a spilling join run a batch at a time
+     */
+    @Test public void spillingBatches() throws Exception {
+        checkSpilling(true);
+    }
+
+    /**
+     * Unit test for rewinding a spilling join
+     */
+    @Test public void rewind() throws Exception {
+        HashEquiJoin join = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                input(2000, 300), input(500, 400));
+        join.setMemoryBudget(100);
+        join.open();
+        ArrayList<ArrayList<Integer>> first = drain(join, false);
+        assertEquals(expected(2000, 300, 500, 400), first);
+        join.rewind();
+        assertEquals(first, drain(join, false));
+        join.close();
+    }
+
+    /**
+     * Unit test for a build side with more duplicates of a key than fit in
+     * memory, which no partitioning can split
+     */
+    @Test public void skewed() throws Exception {
+        HashEquiJoin join = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                input(500, 1), input(3, 1));
+        join.setMemoryBudget(100);
+        join.open();
+        assertEquals(expected(500, 1, 3, 1), drain(join, false));
+        join.close();
+    }
+
+    /**
+     * Returns the spill files in the temporary directory
+     */
+    private static HashSet<String> spillFiles() {
+        String[] names = new File(System.getProperty("java.io.tmpdir"))
+                .list((dir, name) -> name.startsWith("spill") && name.endsWith(".tmp"));
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    /**
+     * Unit test for a spilling join whose input aborts, building or
+     * probing: the spill files written so far are deleted
+     */
+    @Test public void abortDeletesSpills() throws Exception {
+        HashSet<String> before = spillFiles();
+        for (boolean probing : new boolean[] { false, true }) {
+            OpIterator build = input(2000, 300), probe = input(500, 400);
+            if (probing)
+                probe = new TestUtil.AbortingScan(probe, 200);
+            else
+                build = new TestUtil.AbortingScan(build, 1000);
+            build.open();
+            probe.open();
+            HashEquiJoin join = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0), build, probe);
+            join.setMemoryBudget(100);
+            try {
+                join.open();
+                TestUtil.drain(join);
+                fail("expected TransactionAbortedException");
+            } catch (TransactionAbortedException e) {
+                // expected
+            }
+            assertEquals(before, spillFiles());
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HashEquiJoinTest.class);
+    }
+}
@@ -101,6 +101,27 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         it.close();
     }
 
+    /**
+     * Unit test for HeapFile.readPage() with the memory mapped read path
+     */
+    @Test
+    public void readPageMapped() throws Exception {
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        byte[] expected = hf.readPage(pid).getPageData();
+        hf.setMapped(true);
+        assertTrue(hf.isMapped());
+        assertArrayEquals(expected, hf.readPage(pid).getPageData());
+
+        // writes and appended pages are visible through the mapping
+        HeapPage page = (HeapPage) hf.readPage(pid);
+        page.deleteTuple(page.iterator().next());
+        HeapPageId next = new HeapPageId(hf.getId(), 1);
+        hf.writePage(page);
+        hf.writePage(new HeapPage(next, HeapPage.createEmptyPageData()));
+        assertArrayEquals(page.getPageData(), hf.readPage(pid).getPageData());
+        assertEquals(504, ((HeapPage) hf.readPage(next)).getNumEmptySlots());
+    }
+
     @Test
     public void testIteratorClose() throws Exception {
         // make more than 1 page. Previous closed iterator would start fetching
@@ -120,6 +120,25 @@ public class HeapPageReadTest extends SimpleDbTestBase {
             assertFalse(page.isSlotUsed(i));
     }
 
+    /**
+     * Unit test for the typed accessors, which read fields straight from
+     * the page bytes.
+     */
+    @Test public void typedAccessors() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        for (int i = 0; i < EXAMPLE_VALUES.length; ++i) {
+            assertEquals(EXAMPLE_VALUES[i][0], page.getInt(i, 0));
+            assertEquals(EXAMPLE_VALUES[i][1], page.getInt(i, 1));
+            assertEquals(new IntField(EXAMPLE_VALUES[i][1]), page.getField(i, 1));
+        }
+        try {
+            page.getInt(EXAMPLE_VALUES.length, 0);
+            throw new Exception("slot should be empty; expected NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            // explicitly ignored
+        }
+    }
+
     /**
      * JUnit suite target
      */
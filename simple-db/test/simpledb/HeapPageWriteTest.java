@@ -1,6 +1,7 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -126,6 +127,32 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Tuples written into the page in place come back out of its bytes,
+     * strings included.
+     */
+    @Test public void insertInPlace() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+        Database.getCatalog().addTable(new SkeletonFile(-2, td), SystemTestUtil.getUUID());
+        HeapPageId spid = new HeapPageId(-2, 0);
+        HeapPage page = new HeapPage(spid, HeapPage.createEmptyPageData());
+        for (int i = 0; i < 3; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField("row " + i, Type.STRING_LEN));
+            page.insertTuple(t);
+        }
+        page.deleteTuple(page.iterator().next());
+
+        HeapPage copy = new HeapPage(spid, page.getPageData());
+        assertEquals(1, copy.getInt(1, 0));
+        assertEquals("row 2", copy.getString(2, 1));
+        Iterator<Tuple> it = copy.iterator();
+        assertEquals(new StringField("row 1", Type.STRING_LEN), it.next().getField(1));
+        assertEquals(new RecordId(spid, 2), it.next().getRecordId());
+        assertFalse(it.hasNext());
+    }
+
     /**
      * JUnit suite target
      */
@@ -0,0 +1,62 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class IntHashTableTest extends SimpleDbTestBase {
+
+    /**
+     * Unit test for IntHashTable.put() and find(), across several grows
+     */
+    @Test public void putFind() {
+        IntHashTable table = new IntHashTable();
+        HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        Random r = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            // collide in the low bits, and include 0 and negative keys
+            int key = (r.nextInt(5000) - 2500) << 12;
+            Integer entry = expected.get(key);
+            int put = table.put(key);
+            if (entry == null) {
+                assertEquals(expected.size(), put);
+                expected.put(key, put);
+            } else {
+                assertEquals(entry.intValue(), put);
+            }
+        }
+        assertEquals(expected.size(), table.size());
+        for (int key : expected.keySet()) {
+            assertEquals(expected.get(key).intValue(), table.find(key));
+            assertEquals(key, table.key(table.find(key)));
+        }
+        assertEquals(-1, table.find(1));
+    }
+
+    /**
+     * Unit test for IntHashTable.clear()
+     */
+    @Test public void clear() {
+        IntHashTable table = new IntHashTable(4);
+        for (int i = 0; i < 100; i++)
+            table.put(i);
+        table.clear();
+        assertEquals(0, table.size());
+        assertEquals(-1, table.find(5));
+        assertEquals(0, table.put(7));
+        assertEquals(0, table.find(7));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(IntHashTableTest.class);
+    }
+}
@@ -126,6 +126,36 @@ public class IntegerAggregatorTest extends SimpleDbTestBase {
     }
   }
 
+  /**
+   * Test IntegerAggregator.mergeBatch() without grouping, over several
+   * batches, against merging the same tuples one at a time
+   */
+  @Test public void mergeBatchNoGrouping() throws Exception {
+    for (Aggregator.Op op : new Aggregator.Op[] { Aggregator.Op.MIN, Aggregator.Op.MAX,
+        Aggregator.Op.SUM, Aggregator.Op.AVG, Aggregator.Op.COUNT }) {
+      IntegerAggregator tuples = new IntegerAggregator(Aggregator.NO_GROUPING, null, 1, op);
+      IntegerAggregator batches = new IntegerAggregator(Aggregator.NO_GROUPING, null, 1, op);
+      scan1.open();
+      TupleBatch batch = new TupleBatch(scan1.getTupleDesc());
+      while (scan1.hasNext()) {
+        Tuple t = scan1.next();
+        tuples.mergeTupleIntoGroup(t);
+        batch.add(t);
+        if (batch.size() == 3) {
+          batches.mergeBatch(batch);
+          batch.clear();
+        }
+      }
+      batches.mergeBatch(batch);
+      OpIterator expected = tuples.iterator();
+      expected.open();
+      OpIterator actual = batches.iterator();
+      actual.open();
+      TestUtil.matchAllTuples(expected, actual);
+      scan1.close();
+    }
+  }
+
   /**
    * Test IntegerAggregator.iterator() for OpIterator behaviour
    */
@@ -0,0 +1,56 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class LimitTest extends SimpleDbTestBase {
+
+    /**
+     * Unit test for Limit returning the first tuples of its child, before
+     * and after a rewind
+     */
+    @Test public void firstTuples() throws Exception {
+        OpIterator child = TestUtil.createTupleList(1, new int[] { 5, 4, 3, 2, 1 });
+        Limit op = new Limit(3, child);
+        op.open();
+        OpIterator expected = TestUtil.createTupleList(1, new int[] { 5, 4, 3 });
+        expected.open();
+        TestUtil.matchAllTuples(expected, op);
+        op.rewind();
+        expected.rewind();
+        TestUtil.matchAllTuples(expected, op);
+        op.close();
+    }
+
+    /**
+     * Unit test for Limit over fewer tuples than the limit, and a limit of 0
+     */
+    @Test public void limits() throws Exception {
+        Limit op = new Limit(10, TestUtil.createTupleList(1, new int[] { 1, 2 }));
+        op.open();
+        int n = 0;
+        while (op.hasNext()) {
+            op.next();
+            n++;
+        }
+        assertEquals(2, n);
+        op.close();
+
+        op = new Limit(0, TestUtil.createTupleList(1, new int[] { 1, 2 }));
+        op.open();
+        assertFalse(op.hasNext());
+        op.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LimitTest.class);
+    }
+}
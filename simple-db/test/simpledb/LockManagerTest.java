@@ -0,0 +1,197 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class LockManagerTest extends SimpleDbTestBase {
+
+    private static final int WAIT_INTERVAL = 200;
+
+    private LockManager lm;
+    private PageId p0, p1;
+
+    /**
+     * Acquires a lock in a separate thread and records when it was granted.
+     */
+    private class Requester extends Thread {
+        final TransactionId tid;
+        final PageId pid;
+        final Permissions perm;
+        volatile boolean acquired = false;
+        volatile boolean aborted = false;
+
+        Requester(TransactionId tid, Permissions perm) {
+            this(tid, p0, perm);
+        }
+
+        Requester(TransactionId tid, PageId pid, Permissions perm) {
+            this.tid = tid;
+            this.pid = pid;
+            this.perm = perm;
+            start();
+        }
+
+        public void run() {
+            try {
+                lm.acquireLock(tid, pid, perm);
+                acquired = true;
+            } catch (TransactionAbortedException e) {
+                aborted = true;
+            }
+        }
+    }
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        lm = new LockManager();
+        p0 = new HeapPageId(1, 0);
+        p1 = new HeapPageId(1, 1);
+    }
+
+    /**
+     * A sole shared holder upgrades immediately; with another reader it waits.
+     */
+    @Test public void upgrade() throws Exception {
+        TransactionId t1 = new TransactionId();
+        TransactionId t2 = new TransactionId();
+        lm.acquireLock(t1, p0, Permissions.READ_ONLY);
+        lm.acquireLock(t1, p0, Permissions.READ_WRITE);
+        lm.releaseLock(t1, p0);
+
+        lm.acquireLock(t1, p0, Permissions.READ_ONLY);
+        lm.acquireLock(t2, p0, Permissions.READ_ONLY);
+        Requester up = new Requester(t1, Permissions.READ_WRITE);
+        Thread.sleep(WAIT_INTERVAL);
+        assertFalse(up.acquired);
+        lm.releaseLock(t2, p0);
+        up.join();
+        assertTrue(up.acquired);
+    }
+
+    /**
+     * A reader arriving behind a waiting writer must not overtake it.
+     */
+    @Test public void fifo() throws Exception {
+        TransactionId t1 = new TransactionId();
+        lm.acquireLock(t1, p0, Permissions.READ_ONLY);
+        Requester writer = new Requester(new TransactionId(), Permissions.READ_WRITE);
+        Thread.sleep(WAIT_INTERVAL);
+        Requester reader = new Requester(new TransactionId(), Permissions.READ_ONLY);
+        Thread.sleep(WAIT_INTERVAL);
+        assertFalse(writer.acquired);
+        assertFalse(reader.acquired);
+
+        lm.releaseLock(t1, p0);
+        writer.join();
+        assertTrue(writer.acquired);
+        Thread.sleep(WAIT_INTERVAL);
+        assertFalse(reader.acquired);
+        lm.releaseLock(writer.tid, p0);
+        reader.join();
+        assertTrue(reader.acquired);
+    }
+
+    /**
+     * Readers queued behind a writer are granted together when it releases.
+     */
+    @Test public void sharedBatch() throws Exception {
+        TransactionId t1 = new TransactionId();
+        lm.acquireLock(t1, p0, Permissions.READ_WRITE);
+        Requester r1 = new Requester(new TransactionId(), Permissions.READ_ONLY);
+        Requester r2 = new Requester(new TransactionId(), Permissions.READ_ONLY);
+        Thread.sleep(WAIT_INTERVAL);
+        assertFalse(r1.acquired || r2.acquired);
+        lm.releaseLock(t1, p0);
+        r1.join();
+        r2.join();
+        assertTrue(r1.acquired && r2.acquired);
+        assertTrue(lm.holdsLock(r1.tid, p0) && lm.holdsLock(r2.tid, p0));
+    }
+
+    /**
+     * A write-write deadlock is found as soon as the cycle closes, and the
+     * younger transaction is aborted whichever one closed it.
+     */
+    @Test public void deadlockAbortsYoungest() throws Exception {
+        TransactionId older = new TransactionId();
+        TransactionId younger = new TransactionId();
+        lm.acquireLock(older, p0, Permissions.READ_WRITE);
+        lm.acquireLock(younger, p1, Permissions.READ_WRITE);
+
+        Requester youngWaits = new Requester(younger, p0, Permissions.READ_WRITE);
+        Thread.sleep(WAIT_INTERVAL);
+        Requester oldWaits = new Requester(older, p1, Permissions.READ_WRITE);
+        youngWaits.join();
+        assertTrue(youngWaits.aborted);
+        assertFalse(oldWaits.aborted);
+
+        lm.releaseAllLocks(younger);
+        oldWaits.join();
+        assertTrue(oldWaits.acquired);
+        assertEquals(1, lm.getDeadlockCount());
+        assertEquals(0, lm.getRequesterVictimCount());
+        assertEquals(1, lm.getWaiterVictimCount());
+    }
+
+    /**
+     * Two readers upgrading the same page deadlock; the younger one closes
+     * the cycle and aborts itself.
+     */
+    @Test public void upgradeDeadlock() throws Exception {
+        TransactionId older = new TransactionId();
+        TransactionId younger = new TransactionId();
+        lm.acquireLock(older, p0, Permissions.READ_ONLY);
+        lm.acquireLock(younger, p0, Permissions.READ_ONLY);
+
+        Requester oldUpgrades = new Requester(older, Permissions.READ_WRITE);
+        Thread.sleep(WAIT_INTERVAL);
+        Requester youngUpgrades = new Requester(younger, Permissions.READ_WRITE);
+        youngUpgrades.join();
+        assertTrue(youngUpgrades.aborted);
+
+        lm.releaseAllLocks(younger);
+        oldUpgrades.join();
+        assertTrue(oldUpgrades.acquired);
+        assertEquals(1, lm.getRequesterVictimCount());
+    }
+
+    /**
+     * Each transaction's held pages are tracked on their own, across stripes,
+     * and releasing them leaves other transactions' locks alone.
+     */
+    @Test public void heldPagesPerTransaction() throws Exception {
+        lm = new LockManager(4);
+        assertEquals(4, lm.numStripes());
+        TransactionId t1 = new TransactionId();
+        TransactionId t2 = new TransactionId();
+        for (int i = 0; i < 32; i++) {
+            lm.acquireLock(t1, new HeapPageId(1, i), Permissions.READ_ONLY);
+            if (i % 2 == 0)
+                lm.acquireLock(t2, new HeapPageId(1, i), Permissions.READ_ONLY);
+        }
+        assertEquals(32, lm.getPagesHeldBy(t1).size());
+        assertEquals(16, lm.getPagesHeldBy(t2).size());
+
+        lm.releaseAllLocks(t1);
+        assertTrue(lm.getPagesHeldBy(t1).isEmpty());
+        assertFalse(lm.holdsLock(t1, p0));
+        assertTrue(lm.holdsLock(t2, p0));
+        assertEquals(16, lm.getPagesHeldBy(t2).size());
+
+        lm.acquireLock(new TransactionId(), p1, Permissions.READ_WRITE);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LockManagerTest.class);
+    }
+}
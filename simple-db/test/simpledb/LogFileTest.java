@@ -0,0 +1,149 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class LogFileTest extends SimpleDbTestBase {
+
+    private File file;
+    private LogFile log;
+    private HeapFile hf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        hf = Utility.createEmptyHeapFile(File.createTempFile("logtable", ".dat").getAbsolutePath(), 2);
+        file = File.createTempFile("logfile", ".log");
+        file.deleteOnExit();
+        log = new LogFile(file);
+    }
+
+    private HeapPage page(int value) throws Exception {
+        HeapPage p = new HeapPage(new HeapPageId(hf.getId(), 0), HeapPage.createEmptyPageData());
+        Tuple t = new Tuple(Utility.getTupleDesc(2));
+        t.setField(0, new IntField(value));
+        t.setField(1, new IntField(value));
+        p.insertTuple(t);
+        return p;
+    }
+
+    /**
+     * An update record's images come back as the pages that were logged.
+     */
+    @Test public void updateRecordRoundTrip() throws Exception {
+        TransactionId tid = new TransactionId();
+        log.logXactionBegin(tid);
+        long lsn = log.currentLsn();
+        HeapPage before = page(1), after = page(2);
+        log.logWrite(tid, before, after);
+        assertTrue(log.currentLsn() > lsn);
+
+        RandomAccessFile in = log.seekLsn(lsn);
+        assertEquals(LogFile.UPDATE_RECORD, in.readByte());
+        assertEquals(tid.getId(), in.readLong());
+        Page b = log.readPageData(in);
+        Page a = log.readPageData(in);
+        assertEquals(before.getId(), b.getId());
+        assertArrayEquals(before.getPageData(), b.getPageData());
+        assertArrayEquals(after.getPageData(), a.getPageData());
+        assertEquals(lsn, in.readLong());
+    }
+
+    /**
+     * Truncating the log after a checkpoint drops finished transactions
+     * but leaves the LSNs of the remaining records unchanged.
+     */
+    @Test public void truncateKeepsLsns() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            TransactionId done = new TransactionId();
+            log.logXactionBegin(done);
+            long lsn = log.logWrite(done, page(i), page(i + 1));
+            log.pageWritten(new HeapPageId(hf.getId(), 0), lsn);
+            log.logCommit(done);
+        }
+        long lengthBefore = file.length();
+        TransactionId open = new TransactionId();
+        log.logXactionBegin(open);
+        long lsn = log.currentLsn();
+        log.logWrite(open, page(7), page(8));
+
+        log.logCheckpoint(); // truncates too
+        assertTrue(file.length() < lengthBefore);
+        RandomAccessFile in = log.seekLsn(lsn);
+        assertEquals(LogFile.UPDATE_RECORD, in.readByte());
+        assertEquals(open.getId(), in.readLong());
+        assertArrayEquals(page(7).getPageData(), log.readPageData(in).getPageData());
+
+        // LSNs keep growing after a restart
+        long end = log.currentLsn();
+        LogFile reopened = new LogFile(file);
+        reopened.logXactionBegin(new TransactionId());
+        assertTrue(reopened.currentLsn() > end);
+    }
+
+    /**
+     * A checkpoint records logged pages that are not on disk yet, and the
+     * log keeps their updates until they are written.
+     */
+    @Test public void checkpointKeepsUnwrittenPages() throws Exception {
+        TransactionId t1 = new TransactionId();
+        log.logXactionBegin(t1);
+        long lsn = log.logWrite(t1, page(1), page(2));
+        log.logCommit(t1);
+        assertEquals(Long.valueOf(lsn), log.getDirtyPageTable().get(new HeapPageId(hf.getId(), 0)));
+
+        for (int i = 0; i < 10; i++) {
+            TransactionId t = new TransactionId();
+            log.logXactionBegin(t);
+            log.logCommit(t);
+        }
+        log.logCheckpoint();
+        RandomAccessFile in = log.seekLsn(lsn);
+        assertEquals(LogFile.UPDATE_RECORD, in.readByte());
+
+        log.pageWritten(new HeapPageId(hf.getId(), 0), lsn);
+        assertTrue(log.getDirtyPageTable().isEmpty());
+        long truncations = log.getTruncationCount();
+        log.logCheckpoint();
+        assertEquals(truncations + 1, log.getTruncationCount());
+    }
+
+    /**
+     * The checkpointer takes checkpoints and truncates the log by itself
+     * once enough log has been written.
+     */
+    @Test public void backgroundCheckpoints() throws Exception {
+        log.setCheckpointInterval(0, 16 * 1024);
+        try {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (log.getTruncationCount() == 0 && System.currentTimeMillis() < deadline) {
+                TransactionId t = new TransactionId();
+                log.logXactionBegin(t);
+                log.logWrite(t, page(1), page(2));
+                log.pageWritten(new HeapPageId(hf.getId(), 0), Long.MAX_VALUE);
+                log.logCommit(t);
+            }
+        } finally {
+            log.setCheckpointInterval(0, 0);
+        }
+        assertTrue(log.getCheckpointCount() > 0);
+        assertTrue(log.getTruncationCount() > 0);
+        assertTrue(file.length() < 64 * 1024);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LogFileTest.class);
+    }
+}
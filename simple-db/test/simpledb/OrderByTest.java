@@ -0,0 +1,120 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class OrderByTest extends SimpleDbTestBase {
+
+    /**
+     * Sorts the tuples on column 0 ascending, then column 1 descending,
+     * with budget tuples in memory, and checks the result against a stable
+     * in-memory sort, before and after a rewind
+     */
+    private void checkSort(int rows, int budget) throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = TestUtil.randomTuples(rows, 50);
+        OrderBy op = new OrderBy(new int[] { 0, 1 }, new boolean[] { true, false }, TestUtil.createTupleList(3, tuples));
+        op.setMemoryBudget(budget);
+        op.open();
+        Collections.sort(tuples, (a, b) -> a.get(0).equals(b.get(0))
+                ? b.get(1).compareTo(a.get(1)) : a.get(0).compareTo(b.get(0)));
+        assertEquals(tuples, TestUtil.drain(op));
+        op.rewind();
+        assertEquals(tuples, TestUtil.drain(op));
+        op.close();
+    }
+
+    /**
+     * Unit test for OrderBy on a single field, as sorted in memory
+     */
+    @Test public void singleField() throws Exception {
+        OpIterator child = TestUtil.createTupleList(2, new int[] { 3, 1, 1, 2, 2, 3, 1, 4 });
+        OrderBy op = new OrderBy(0, false, child);
+        op.open();
+        OpIterator expected = TestUtil.createTupleList(2, new int[] { 3, 1, 2, 3, 1, 2, 1, 4 });
+        expected.open();
+        TestUtil.matchAllTuples(expected, op);
+        assertTrue(TestUtil.checkExhausted(op));
+    }
+
+    /**
+     * Unit test for a multi-field OrderBy that fits in memory
+     */
+    @Test public void inMemory() throws Exception {
+        checkSort(5000, OrderBy.SORT_SIZE);
+    }
+
+    /**
+     * Unit test for an OrderBy that spills sorted runs and merges them
+     */
+    @Test public void external() throws Exception {
+        checkSort(5000, 1000);
+    }
+
+    /**
+     * Unit test for an OrderBy with more runs than are merged at once
+     */
+    @Test public void multiPass() throws Exception {
+        checkSort(20000, 100);
+    }
+
+    /**
+     * Unit test for an OrderBy whose child aborts while runs are being
+     * spilled: open() must fail rather than wait for runs that never sort
+     */
+    @Test(timeout = 60000) public void childAbortsWhileSpilling() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            OpIterator child = new TestUtil.AbortingScan(TestUtil.createTupleList(3, TestUtil.randomTuples(100, 50)), 10);
+            child.open();
+            OrderBy op = new OrderBy(new int[] { 0 }, new boolean[] { true }, child);
+            op.setMemoryBudget(2);
+            try {
+                op.open();
+                fail("expected TransactionAbortedException");
+            } catch (TransactionAbortedException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Unit test for LoserTree, merging inputs of different lengths,
+     * including empty ones
+     */
+    @Test public void loserTree() throws Exception {
+        ArrayList<OpIterator> inputs = new ArrayList<>();
+        ArrayList<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            int[] data = new int[i * 3];
+            for (int j = 0; j < data.length; j++) {
+                data[j] = j * 7 + i;
+                expected.add(data[j]);
+            }
+            OpIterator input = TestUtil.createTupleList(1, data);
+            input.open();
+            inputs.add(input);
+        }
+        Collections.sort(expected);
+        LoserTree tree = new LoserTree(inputs,
+                new TupleComparator(Utility.getTupleDesc(1), new int[] { 0 }, new boolean[] { true }));
+        ArrayList<Integer> merged = new ArrayList<>();
+        while (tree.hasNext())
+            merged.add(tree.next().getInt(0));
+        assertEquals(expected, merged);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(OrderByTest.class);
+    }
+}
@@ -0,0 +1,164 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PageChecksumsTest extends SimpleDbTestBase {
+
+    private static final int TUPLES_PER_PAGE = 504;
+    private static final int PAGES = 4;
+
+    private HeapFile hf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        hf = SystemTestUtil.createRandomHeapFile(2, TUPLES_PER_PAGE * PAGES, null, null);
+        hf.setChecksums(true);
+        hf.getFreeSpaceMap().getFile().deleteOnExit();
+        new File(hf.getFile().getPath() + ".crc").deleteOnExit();
+    }
+
+    private void readAll() {
+        for (int i = 0; i < PAGES; i++)
+            hf.readPage(new HeapPageId(hf.getId(), i));
+    }
+
+    /** Overwrites len bytes of the given page on disk with 0x5a */
+    private void scribble(int pgNo, int offset, int len) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(hf.getFile(), "rw");
+        raf.seek((long) pgNo * BufferPool.getPageSize() + offset);
+        for (int i = 0; i < len; i++)
+            raf.write(0x5a);
+        raf.close();
+    }
+
+    private boolean readFails(int pgNo) {
+        try {
+            hf.readPage(new HeapPageId(hf.getId(), pgNo));
+            return false;
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("checksum mismatch on page " + pgNo));
+            return true;
+        }
+    }
+
+    /**
+     * Pages written before checksums were on are trusted on first read,
+     * and a page changed behind the table's back fails its next read.
+     */
+    @Test public void detectsCorruption() throws Exception {
+        assertTrue(hf.hasChecksums());
+        readAll();
+        scribble(2, 100, 1);
+        assertTrue(readFails(2));
+        assertFalse(readFails(1));
+    }
+
+    /**
+     * A write through the table records the new checksum, and a write cut
+     * short halfway through the page is caught.
+     */
+    @Test public void detectsTornWrite() throws Exception {
+        readAll();
+        TransactionId tid = new TransactionId();
+        Tuple t = new Tuple(Utility.getTupleDesc(2));
+        t.setField(0, new IntField(1));
+        t.setField(1, new IntField(2));
+        HeapPage page = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), PAGES - 1));
+        page.deleteTuple(page.iterator().next());
+        page.insertTuple(t);
+        hf.writePage(page);
+        assertFalse(readFails(PAGES - 1));
+
+        // the first half of another write reaches the disk, the rest does not
+        byte[] next = page.getPageData();
+        next[BufferPool.getPageSize() - 1] ^= 1;
+        RandomAccessFile raf = new RandomAccessFile(hf.getFile(), "rw");
+        raf.seek((long) (PAGES - 1) * BufferPool.getPageSize() + BufferPool.getPageSize() / 2);
+        raf.write(next, BufferPool.getPageSize() / 2, BufferPool.getPageSize() / 2);
+        raf.close();
+        assertTrue(readFails(PAGES - 1));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A crash after a page's new checksum is recorded but before the page
+     * is written leaves the old image, which still reads, also after
+     * reopening; the new image reads once it is written.
+     */
+    @Test public void crashBeforePageWrite() throws Exception {
+        File f = File.createTempFile("sums", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".crc").deleteOnExit();
+        byte[] old = new byte[BufferPool.getPageSize()];
+        old[0] = 1;
+        byte[] next = old.clone();
+        next[1] = 1;
+        byte[] page = new byte[old.length];
+
+        PageChannel ch = new PageChannel(f);
+        ch.setChecksums(true);
+        ch.writePage(0, 0, old);
+        ch.getChecksums().record(0, next);
+        ch.readPage(0, 0, page);
+        ch.setChecksums(false);
+        ch.close();
+
+        ch = new PageChannel(f);
+        ch.setChecksums(true);
+        ch.readPage(0, 0, page);
+        ch.write(0, next);
+        ch.readPage(0, 0, page);
+        // anything else is still caught
+        next[2] = 1;
+        ch.write(0, next);
+        try {
+            ch.readPage(0, 0, page);
+            throw new Exception("expected a checksum mismatch");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("checksum mismatch on page 0"));
+        }
+        ch.setChecksums(false);
+        ch.close();
+    }
+
+    /**
+     * Checksums survive reopening the table; with them off nothing is
+     * verified.
+     */
+    @Test public void persistentAndSwitchable() throws Exception {
+        readAll();
+        HeapFile reopened = Utility.openHeapFile(2, hf.getFile());
+        reopened.setChecksums(true);
+        scribble(0, 8, 4);
+        try {
+            reopened.readPage(new HeapPageId(reopened.getId(), 0));
+            throw new Exception("expected a checksum mismatch");
+        } catch (RuntimeException e) {
+            // explicitly ignored
+        }
+        reopened.setChecksums(false);
+        assertFalse(reopened.hasChecksums());
+        assertEquals(new HeapPageId(reopened.getId(), 0),
+                reopened.readPage(new HeapPageId(reopened.getId(), 0)).getId());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageChecksumsTest.class);
+    }
+}
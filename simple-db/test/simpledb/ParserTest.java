@@ -0,0 +1,104 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ParserTest extends SimpleDbTestBase {
+
+    private HeapFile t, u;
+
+    @Before public void setUp() throws Exception {
+        t = SystemTestUtil.createRandomHeapFile(2, 50, null, new ArrayList<ArrayList<Integer>>(), "c");
+        Database.getCatalog().addTable(t, "t");
+        u = SystemTestUtil.createRandomHeapFile(2, 0, null, new ArrayList<ArrayList<Integer>>(), "c");
+        Database.getCatalog().addTable(u, "u");
+        TableStats.computeStatistics();
+    }
+
+    private static int count(HeapFile f) throws Exception {
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, f.getId(), "");
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            n++;
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return n;
+    }
+
+    /** Checks that handling the statement s, after its LIMIT is cut off, fails */
+    private static void checkRejected(String s) throws Exception {
+        Parser p = new Parser();
+        Zql.ZStatement stmt = new Zql.ZqlParser(
+                new ByteArrayInputStream(p.stripLimit(s).getBytes())).readStatement();
+        try {
+            if (stmt instanceof Zql.ZDelete)
+                p.handleDeleteStatement((Zql.ZDelete) stmt, new TransactionId());
+            else
+                p.handleInsertStatement((Zql.ZInsert) stmt, new TransactionId());
+            fail("expected a ParsingException for " + s);
+        } catch (ParsingException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Unit test for LIMIT on an INSERT of a SELECT, which inserts only the
+     * first rows of the SELECT
+     */
+    @Test public void insertSelectLimit() throws Exception {
+        new Parser().processNextStatement("INSERT INTO u SELECT * FROM t LIMIT 7;");
+        assertEquals(7, count(u));
+        assertEquals(50, count(t));
+    }
+
+    /**
+     * Unit test for LIMIT on an INSERT of values, which is rejected
+     */
+    @Test public void insertValuesLimit() throws Exception {
+        checkRejected("INSERT INTO u VALUES (1, 2) LIMIT 1;");
+        new Parser().processNextStatement("INSERT INTO u VALUES (1, 2) LIMIT 1;");
+        assertEquals(0, count(u));
+    }
+
+    /**
+     * Unit test for LIMIT on a DELETE, which is rejected rather than
+     * deleting every matching row
+     */
+    @Test public void deleteLimit() throws Exception {
+        checkRejected("DELETE FROM t WHERE t.c1 < 70000 LIMIT 1;");
+        new Parser().processNextStatement("DELETE FROM t WHERE t.c1 < 70000 LIMIT 1;");
+        assertEquals(50, count(t));
+    }
+
+    /**
+     * Unit test for LIMIT on a DELETE with a subquery, which is rejected
+     * rather than taken by the subquery
+     */
+    @Test public void deleteSubqueryLimit() throws Exception {
+        String s = "DELETE FROM t WHERE t.c0 = (SELECT t2.c0 FROM t t2) LIMIT 1;";
+        checkRejected(s);
+        new Parser().processNextStatement(s);
+        assertEquals(50, count(t));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ParserTest.class);
+    }
+}
@@ -0,0 +1,163 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PaxHeapPageTest extends SimpleDbTestBase {
+
+    private static final int COLUMNS = 4;
+    private static final int ROWS = 2000;
+
+    private ArrayList<ArrayList<Integer>> tuples;
+    private HeapFile rows;
+    private PaxHeapFile pax;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        tuples = new ArrayList<>();
+        rows = SystemTestUtil.createRandomHeapFile(COLUMNS, ROWS, 100, null, tuples);
+        File f = File.createTempFile("pax", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        Type[] types = new Type[COLUMNS];
+        for (int i = 0; i < COLUMNS; i++)
+            types[i] = Type.INT_TYPE;
+        HeapFileEncoder.pax(rows.getFile(), f, types);
+        pax = new PaxHeapFile(f, Utility.getTupleDesc(COLUMNS));
+        Database.getCatalog().addTable(pax, SystemTestUtil.getUUID());
+    }
+
+    /**
+     * A file converted to PAX holds the same tuples in the same slots, and
+     * its pages return the same column vectors.
+     */
+    @Test public void convertedFile() throws Exception {
+        assertEquals(rows.numPages(), pax.numPages());
+        SystemTestUtil.matchTuples(pax, tuples);
+
+        HeapPage rowPage = (HeapPage) rows.readPage(new HeapPageId(rows.getId(), 1));
+        HeapPage paxPage = (HeapPage) pax.readPage(new HeapPageId(pax.getId(), 1));
+        assertTrue(paxPage instanceof PaxHeapPage);
+        int[] slots = new int[rowPage.getNumSlots()], paxSlots = new int[paxPage.getNumSlots()];
+        int n = rowPage.getUsedSlots(slots);
+        assertEquals(n, paxPage.getUsedSlots(paxSlots));
+        assertArrayEquals(slots, paxSlots);
+        for (int col = 0; col < COLUMNS; col++) {
+            int[] expected = new int[n], actual = new int[n];
+            rowPage.getInts(col, slots, n, expected);
+            paxPage.getInts(col, slots, n, actual);
+            assertArrayEquals(expected, actual);
+            assertEquals(rowPage.getInt(slots[n - 1], col), actual[n - 1]);
+        }
+    }
+
+    /**
+     * Inserts and deletes go to the right minipages.
+     */
+    @Test public void insertAndDelete() throws Exception {
+        TransactionId tid = new TransactionId();
+        BufferPool bp = Database.getBufferPool();
+        Tuple first = ((HeapPage) bp.getPage(tid, new HeapPageId(pax.getId(), 0), Permissions.READ_ONLY))
+                .iterator().next();
+        bp.deleteTuple(tid, first);
+        Tuple t = Utility.getHeapTuple(new int[] { 1000, 1001, 1002, 1003 });
+        bp.insertTuple(tid, pax.getId(), t);
+        bp.transactionComplete(tid);
+        bp.flushAllPages();
+
+        ArrayList<Integer> removed = new ArrayList<>();
+        for (int i = 0; i < COLUMNS; i++)
+            removed.add(((IntField) first.getField(i)).getValue());
+        assertTrue(tuples.remove(removed));
+        ArrayList<Integer> added = new ArrayList<>();
+        for (int i = 0; i < COLUMNS; i++)
+            added.add(1000 + i);
+        tuples.add(added);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(pax, tuples);
+    }
+
+    /**
+     * A SeqScan of a column subset returns tuples of just those columns,
+     * from row and PAX files alike.
+     */
+    @Test public void columnSubset() throws Exception {
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<>();
+        for (ArrayList<Integer> t : tuples) {
+            ArrayList<Integer> sub = new ArrayList<>();
+            sub.add(t.get(3));
+            sub.add(t.get(1));
+            expected.add(sub);
+        }
+        for (HeapFile f : new HeapFile[] { rows, pax }) {
+            SeqScan scan = new SeqScan(new TransactionId(), f.getId(), "t", new int[] { 3, 1 });
+            assertEquals(2, scan.getTupleDesc().numFields());
+            assertEquals("t." + f.getTupleDesc().getFieldName(3), scan.getTupleDesc().getFieldName(0));
+            SystemTestUtil.matchTuples(scan, expected);
+        }
+    }
+
+    private static int aggregate(OpIterator child, Aggregator.Op op) throws Exception {
+        Aggregate agg = new Aggregate(child, 0, Aggregator.NO_GROUPING, op);
+        agg.open();
+        int value = ((IntField) agg.next().getField(0)).getValue();
+        assertFalse(agg.hasNext());
+        agg.close();
+        return value;
+    }
+
+    /**
+     * Filters and an ungrouped aggregate over a scan work on the pages'
+     * column vectors, and get the same answers as tuple at a time.
+     */
+    @Test public void filterAndAggregate() throws Exception {
+        int sum = 0, count = 0, min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (ArrayList<Integer> t : tuples) {
+            if (t.get(0) >= 20 && t.get(2) != 7) {
+                sum += t.get(1);
+                count++;
+                min = Math.min(min, t.get(1));
+                max = Math.max(max, t.get(1));
+            }
+        }
+        for (HeapFile f : new HeapFile[] { rows, pax }) {
+            for (Aggregator.Op op : new Aggregator.Op[] { Aggregator.Op.SUM, Aggregator.Op.COUNT,
+                    Aggregator.Op.MIN, Aggregator.Op.MAX, Aggregator.Op.AVG }) {
+                OpIterator it = new SeqScan(new TransactionId(), f.getId(), "t", new int[] { 1, 0, 2 });
+                it = new Filter(new Predicate(1, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(20)), it);
+                it = new Filter(new Predicate(2, Predicate.Op.NOT_EQUALS, new IntField(7)), it);
+                int expected = op == Aggregator.Op.SUM ? sum : op == Aggregator.Op.COUNT ? count
+                        : op == Aggregator.Op.MIN ? min : op == Aggregator.Op.MAX ? max : sum / count;
+                assertEquals(op.toString(), expected, aggregate(it, op));
+            }
+        }
+
+        // the filter alone returns the qualifying tuples
+        OpIterator it = new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(3)),
+                new SeqScan(new TransactionId(), pax.getId()));
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<>();
+        for (ArrayList<Integer> t : tuples)
+            if (t.get(0) < 3)
+                expected.add(t);
+        SystemTestUtil.matchTuples(it, expected);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxHeapPageTest.class);
+    }
+}
@@ -0,0 +1,114 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ReadAheadTest extends SimpleDbTestBase {
+
+    private static final int POOL_PAGES = 100;
+    private static final int TABLE_PAGES = 40;
+    private static final int TUPLES_PER_PAGE = 504;
+
+    /** Waits for prefetches in flight to land */
+    private static void settle(BufferPool bp) throws InterruptedException {
+        long count = -1;
+        while (count != bp.getPrefetchCount()) {
+            count = bp.getPrefetchCount();
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * Scans get no read-ahead hint while read-ahead is off.
+     */
+    @Test public void turnOnAndOff() {
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+        bp.setReadAhead(0);
+        assertNull(bp.readAhead(null, TABLE_PAGES));
+        bp.setReadAhead(8);
+        assertNotNull(bp.readAhead(null, TABLE_PAGES));
+        bp.setReadAhead(0);
+        assertNull(bp.readAhead(null, TABLE_PAGES));
+    }
+
+    /**
+     * A sequential scan finds most pages already read for it.
+     */
+    @Test public void sequentialScanPrefetches() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, TUPLES_PER_PAGE * TABLE_PAGES, null, null);
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+        bp.setReadAhead(8);
+
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            if (++count % TUPLES_PER_PAGE == 0)
+                Thread.sleep(2); // leave the prefetcher time to get ahead
+        }
+        it.close();
+        settle(bp);
+        assertEquals(TUPLES_PER_PAGE * TABLE_PAGES, count);
+
+        assertTrue(bp.getPrefetchCount() > 0);
+        assertTrue(bp.getPrefetchHitCount() > 0);
+        assertEquals(TABLE_PAGES, bp.getMissCount() + bp.getPrefetchHitCount());
+        assertTrue(bp.getMissCount() < TABLE_PAGES / 2);
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Pages read out of order are not read ahead.
+     */
+    @Test public void randomAccessDoesNotPrefetch() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, TUPLES_PER_PAGE * TABLE_PAGES, null, null);
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+        bp.setReadAhead(8);
+
+        TransactionId tid = new TransactionId();
+        ReadAhead ra = bp.readAhead(null, TABLE_PAGES);
+        for (int pgNo : new int[] { 5, 2, 9, 30, 17, 1 })
+            ra.accessed(bp.getPage(tid, new HeapPageId(hf.getId(), pgNo), Permissions.READ_ONLY));
+        settle(bp);
+        assertEquals(0, bp.getPrefetchCount());
+        assertEquals(ReadAhead.MIN_DEPTH, ra.depth());
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * A scan through a ring never reads further ahead than the ring holds.
+     */
+    @Test public void ringBoundsWindow() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, TUPLES_PER_PAGE * TABLE_PAGES, null, null);
+        BufferPool bp = Database.resetBufferPool(TABLE_PAGES / 2);
+        bp.setReadAhead(64);
+        BufferRing ring = bp.bulkReadRing(TABLE_PAGES);
+        assertNotNull(ring);
+
+        TransactionId tid = new TransactionId();
+        ReadAhead ra = bp.readAhead(ring, TABLE_PAGES);
+        for (int i = 0; i < TABLE_PAGES; i++) {
+            ra.accessed(bp.getPage(tid, new HeapPageId(hf.getId(), i), Permissions.READ_ONLY, ring));
+            assertTrue(ra.depth() < ring.size());
+        }
+        ra.close();
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
@@ -0,0 +1,110 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.function.Predicate;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ReplacementPolicyTest extends SimpleDbTestBase {
+
+    private static final Predicate<PageId> ANY = pid -> true;
+
+    private static PageId pid(int pgNo) {
+        return new HeapPageId(1, pgNo);
+    }
+
+    /**
+     * CLOCK gives referenced pages a second chance.
+     */
+    @Test public void clockSecondChance() {
+        ReplacementPolicy p = new ClockReplacementPolicy(3);
+        p.pageLoaded(pid(0));
+        p.pageLoaded(pid(1));
+        p.pageLoaded(pid(2));
+        // the first sweep clears every bit, so the hand comes back to page 0
+        assertEquals(pid(0), p.chooseVictim(ANY));
+        p.pageAccessed(pid(1));
+        p.pageRemoved(pid(0));
+        assertEquals(pid(2), p.chooseVictim(ANY));
+    }
+
+    /**
+     * A page touched once is evicted before a page touched K times, even if
+     * the hot page was last used earlier.
+     */
+    @Test public void lruKPrefersOnceReferencedPages() {
+        ReplacementPolicy p = new LruKReplacementPolicy(3, 2);
+        p.pageLoaded(pid(0));
+        p.pageAccessed(pid(0));
+        p.pageLoaded(pid(1));
+        p.pageLoaded(pid(2));
+        assertEquals(pid(1), p.chooseVictim(ANY));
+        assertEquals(pid(2), p.chooseVictim(pid -> !pid.equals(pid(1))));
+        assertEquals(pid(0), p.chooseVictim(pid -> pid.equals(pid(0))));
+    }
+
+    /**
+     * 2Q promotes a page to Am when it is re-read after leaving A1in, and
+     * then keeps it over pages that only passed through once, as long as
+     * A1in is over its share of the pool.
+     */
+    @Test public void twoQScanResistance() {
+        ReplacementPolicy p = new TwoQReplacementPolicy(8);
+        p.pageLoaded(pid(0));
+        p.pageRemoved(pid(0));
+        p.pageLoaded(pid(0));
+        for (int i = 1; i <= 4; i++)
+            p.pageLoaded(pid(i));
+        for (int i = 1; i <= 2; i++) {
+            PageId victim = p.chooseVictim(ANY);
+            assertEquals(pid(i), victim);
+            p.pageRemoved(victim);
+        }
+    }
+
+    /**
+     * Every policy must honour the evictable predicate.
+     */
+    @Test public void noEvictableVictim() {
+        String[] names = { ReplacementPolicy.CLOCK, ReplacementPolicy.LRU_K, ReplacementPolicy.TWO_Q };
+        for (String name : names) {
+            ReplacementPolicy p = ReplacementPolicy.create(name, 2);
+            p.pageLoaded(pid(0));
+            p.pageLoaded(pid(1));
+            assertNull(p.chooseVictim(pid -> false));
+        }
+    }
+
+    /**
+     * The buffer pool counts hits and misses.
+     */
+    @Test public void hitAndMissCounters() throws Exception {
+        HeapFile hf = Utility.createEmptyHeapFile(
+                java.io.File.createTempFile("table", ".dat").getAbsolutePath(), 2);
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(1, 2));
+        Database.getBufferPool().transactionComplete(tid);
+
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES, ReplacementPolicy.TWO_Q);
+        tid = new TransactionId();
+        PageId p0 = new HeapPageId(hf.getId(), 0);
+        bp.getPage(tid, p0, Permissions.READ_ONLY);
+        bp.getPage(tid, p0, Permissions.READ_ONLY);
+        bp.getPage(tid, p0, Permissions.READ_ONLY);
+        assertEquals(1, bp.getMissCount());
+        assertEquals(2, bp.getHitCount());
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReplacementPolicyTest.class);
+    }
+}
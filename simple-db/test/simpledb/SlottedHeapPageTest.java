@@ -0,0 +1,158 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class SlottedHeapPageTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+
+    private HeapPageId pid;
+
+    @Before public void addTable() throws Exception {
+        this.pid = new HeapPageId(-1, 0);
+        Database.getCatalog().addTable(new SkeletonFile(-1, TD), SystemTestUtil.getUUID());
+    }
+
+    private static Tuple tuple(int i, String s) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField(s, Type.STRING_LEN));
+        return t;
+    }
+
+    /**
+     * Short strings take only their own length, so many more tuples fit
+     * than in the fixed-slot format.
+     */
+    @Test public void fillsWithShortStrings() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+        int n = 0;
+        while (page.getNumEmptySlots() > 0)
+            page.insertTuple(tuple(n, "name" + n++));
+        int fixed = new HeapPage(pid, HeapPage.createEmptyPageData()).getNumEmptySlots();
+        assertTrue(n > 3 * fixed);
+
+        // the page is still not full for a short tuple
+        Tuple x = tuple(-1, "x");
+        page.insertTuple(x);
+        assertEquals(new RecordId(pid, n), x.getRecordId());
+
+        SlottedHeapPage copy = new SlottedHeapPage(pid, page.getPageData());
+        Iterator<Tuple> it = copy.iterator();
+        for (int i = 0; i < n; i++) {
+            Tuple t = it.next();
+            assertEquals(new IntField(i), t.getField(0));
+            assertEquals(new StringField("name" + i, Type.STRING_LEN), t.getField(1));
+            assertEquals(new RecordId(pid, i), t.getRecordId());
+        }
+        assertEquals(new StringField("x", Type.STRING_LEN), it.next().getField(1));
+        assertFalse(it.hasNext());
+        assertEquals(17, copy.getInt(17, 0));
+        assertEquals("name17", copy.getString(17, 1));
+    }
+
+    /**
+     * Deleted space is reused after compaction, and slots keep their numbers.
+     */
+    @Test public void deleteAndCompact() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+        int n = 0;
+        while (page.getNumEmptySlots() > 0)
+            page.insertTuple(tuple(n, "name" + n++));
+        Tuple[] tuples = new Tuple[n];
+        Iterator<Tuple> it = page.iterator();
+        for (int i = 0; i < n; i++)
+            tuples[i] = it.next();
+
+        // free every other slot, then fill them with longer strings
+        for (int i = 0; i < n; i += 2)
+            page.deleteTuple(tuples[i]);
+        assertFalse(page.isSlotUsed(0));
+        assertTrue(page.isSlotUsed(1));
+        try {
+            page.deleteTuple(tuples[0]);
+            throw new Exception("slot should be empty; expected DbException");
+        } catch (DbException e) {
+            // explicitly ignored
+        }
+        Tuple longer = tuple(-2, "a somewhat longer name");
+        page.insertTuple(longer);
+        assertEquals(new RecordId(pid, 0), longer.getRecordId());
+        while (page.getNumEmptySlots() > 0)
+            page.insertTuple(tuple(-2, "a somewhat longer name"));
+
+        for (int i = 1; i < n; i += 2)
+            assertEquals("name" + i, page.getString(i, 1));
+        assertEquals("a somewhat longer name", page.getString(0, 1));
+    }
+
+    /**
+     * A slotted table converted from text is scanned, written and counted
+     * in fewer pages than the fixed format takes.
+     */
+    @Test public void slottedFile() throws Exception {
+        File txt = File.createTempFile("slotted", ".txt");
+        txt.deleteOnExit();
+        FileWriter w = new FileWriter(txt);
+        int rows = 5000;
+        for (int i = 0; i < rows; i++)
+            w.write(i + ",row " + i + "\n");
+        w.close();
+        Type[] types = new Type[] { Type.INT_TYPE, Type.STRING_TYPE };
+        File slottedDat = File.createTempFile("slotted", ".dat");
+        slottedDat.deleteOnExit();
+        HeapFileEncoder.convertSlotted(txt, slottedDat, BufferPool.getPageSize(), 2, types, ',');
+        File fixedDat = File.createTempFile("fixed", ".dat");
+        fixedDat.deleteOnExit();
+        HeapFileEncoder.convert(txt, fixedDat, BufferPool.getPageSize(), 2, types, ',');
+
+        HeapFile hf = new HeapFile(slottedDat, TD, true);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        new File(slottedDat.getPath() + ".fsm").deleteOnExit();
+        assertTrue(hf.numPages() * 4 < fixedDat.length() / BufferPool.getPageSize());
+
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, hf.getId(), tuple(rows, "row " + rows));
+        assertEquals(rows + 1, count(hf, tid));
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        Database.getBufferPool().deleteTuple(tid, it.next());
+        it.close();
+        assertEquals(rows, count(hf, tid));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private static int count(HeapFile hf, TransactionId tid) throws Exception {
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals("row " + ((IntField) t.getField(0)).getValue(), ((StringField) t.getField(1)).getValue());
+            count++;
+        }
+        it.close();
+        return count;
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapPageTest.class);
+    }
+}
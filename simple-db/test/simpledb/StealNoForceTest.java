@@ -0,0 +1,140 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class StealNoForceTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 2000; // about four heap pages
+
+    private File file;
+    private HeapFile hf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("steal", ".dat");
+        file.deleteOnExit();
+        hf = Utility.createEmptyHeapFile(file.getAbsolutePath(), 2);
+        hf.getFreeSpaceMap().getFile().deleteOnExit();
+    }
+
+    private void insert(TransactionId tid, int rows) throws Exception {
+        ArrayList<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            Tuple t = new Tuple(Utility.getTupleDesc(2));
+            t.setField(0, new IntField(i));
+            t.setField(1, new IntField(i));
+            tuples.add(t);
+        }
+        Insert insert = new Insert(tid, new TupleIterator(Utility.getTupleDesc(2), tuples), hf.getId());
+        insert.open();
+        assertEquals(rows, ((IntField) insert.next().getField(0)).getValue());
+        insert.close();
+    }
+
+    private int count() throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        SeqScan scan = new SeqScan(t.getId(), hf.getId(), "");
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            n++;
+        }
+        scan.close();
+        t.commit();
+        return n;
+    }
+
+    /**
+     * Without STEAL, a transaction cannot dirty more pages than the pool holds.
+     */
+    @Test public void noStealRunsOutOfPages() throws Exception {
+        Database.resetBufferPool(2);
+        Transaction t = new Transaction();
+        t.start();
+        try {
+            insert(t.getId(), ROWS);
+            fail("expected the pool to fill with dirty pages");
+        } catch (DbException e) {
+            // expected
+        }
+        t.transactionComplete(true);
+    }
+
+    /**
+     * With STEAL, dirty pages are evicted and the large insert commits.
+     */
+    @Test public void stealEvictsDirtyPages() throws Exception {
+        Database.resetBufferPool(2).setStealNoForce(true);
+        Transaction t = new Transaction();
+        t.start();
+        insert(t.getId(), ROWS);
+        t.commit();
+        assertEquals(ROWS, count());
+    }
+
+    /**
+     * With NO-FORCE, a commit leaves its pages in the pool; recovery
+     * redoes them after a crash.
+     */
+    @Test public void commitWritesNoPages() throws Exception {
+        Database.getBufferPool().setStealNoForce(true);
+        Transaction t = new Transaction();
+        t.start();
+        insert(t.getId(), 10);
+        t.commit();
+        assertEquals(0, countOnDisk());
+
+        Database.reset();
+        hf = Utility.openHeapFile(2, file);
+        Database.getLogFile().recover();
+        assertEquals(10, count());
+    }
+
+    private int countOnDisk() {
+        HeapPage p = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0));
+        int n = 0;
+        for (Iterator<Tuple> it = p.iterator(); it.hasNext(); it.next())
+            n++;
+        return n;
+    }
+
+    /**
+     * An aborted transaction whose pages were stolen leaves nothing behind,
+     * in the pool or on disk after recovery.
+     */
+    @Test public void abortAfterSteal() throws Exception {
+        Database.resetBufferPool(2).setStealNoForce(true);
+        Transaction t = new Transaction();
+        t.start();
+        insert(t.getId(), ROWS);
+        assertTrue(countOnDisk() > 0); // stolen before the abort
+        t.transactionComplete(true);
+        assertEquals(0, count());
+
+        Database.reset();
+        hf = Utility.openHeapFile(2, file);
+        Database.getLogFile().recover();
+        assertEquals(0, count());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(StealNoForceTest.class);
+    }
+}
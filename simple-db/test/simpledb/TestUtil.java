@@ -5,6 +5,8 @@ import java.util.*;
 
 import static org.junit.Assert.*;
 
+import simpledb.systemtest.SystemTestUtil;
+
 public class TestUtil {
     /**
      * @return an IntField with value n
@@ -38,6 +40,59 @@ public class TestUtil {
         return result;
     }
 
+    /**
+     * @return a OpIterator over the given tuples of ints, such as those
+     *   from {@link #randomTuples}. This iterator is already open.
+     * @param width the number of fields in each tuple
+     */
+    public static TupleIterator createTupleList(int width, List<ArrayList<Integer>> tuples) {
+        int[] data = new int[tuples.size() * width];
+        for (int i = 0; i < tuples.size(); i++)
+            for (int j = 0; j < width; j++)
+                data[i * width + j] = tuples.get(i).get(j);
+        return createTupleList(width, data);
+    }
+
+    /**
+     * @return rows tuples of three int fields: two random values in
+     *   [0, values), the same ones every time, and the tuple's number
+     */
+    public static ArrayList<ArrayList<Integer>> randomTuples(int rows, int values) {
+        Random r = new Random(1);
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < rows; i++)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(r.nextInt(values), r.nextInt(values), i)));
+        return tuples;
+    }
+
+    /**
+     * @return the remaining tuples of the open iterator, as lists of ints
+     */
+    public static ArrayList<ArrayList<Integer>> drain(OpIterator it)
+            throws DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> result = new ArrayList<ArrayList<Integer>>();
+        while (it.hasNext())
+            result.add(SystemTestUtil.tupleToList(it.next()));
+        return result;
+    }
+
+    /**
+     * @return the tuples of the remaining batches of the open iterator, as
+     *   lists of ints, checking that no batch is empty or over capacity
+     */
+    public static ArrayList<ArrayList<Integer>> drainBatches(BatchIterator it)
+            throws DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> result = new ArrayList<ArrayList<Integer>>();
+        TupleBatch batch;
+        while ((batch = it.nextBatch()) != null) {
+            assertTrue(batch.size() > 0 && batch.size() <= TupleBatch.CAPACITY);
+            for (int i = 0; i < batch.size(); i++)
+                result.add(SystemTestUtil.tupleToList(batch.getTuple(i)));
+        }
+        assertNull(it.nextBatch());
+        return result;
+    }
+
     /**
      * @return a OpIterator over a list of tuples constructed over the data
      *   provided in the constructor. This iterator is already open.
@@ -301,6 +356,53 @@ public class TestUtil {
 		}
     }
 
+    /**
+     * Mock child that returns the tuples of another, but aborts its
+     * transaction after the first n, as after a deadlock.
+     */
+    public static class AbortingScan extends Operator {
+        private static final long serialVersionUID = 1L;
+        private OpIterator child;
+        private int n;
+
+        public AbortingScan(OpIterator child, int n) {
+            this.child = child;
+            this.n = n;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            child.open();
+            super.open();
+        }
+
+        public void close() {
+            super.close();
+            child.close();
+        }
+
+        protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+            if (n-- == 0)
+                throw new TransactionAbortedException();
+            return child.hasNext() ? child.next() : null;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            child.rewind();
+        }
+
+        public TupleDesc getTupleDesc() {
+            return child.getTupleDesc();
+        }
+
+        public OpIterator[] getChildren() {
+            return new OpIterator[] { child };
+        }
+
+        public void setChildren(OpIterator[] children) {
+            child = children[0];
+        }
+    }
+
     /**
      * Helper class that attempts to acquire a lock on a given page in a new
      * thread.
@@ -0,0 +1,117 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class TopNTest extends SimpleDbTestBase {
+
+    /**
+     * Takes the first limit of rows tuples on column 0 ascending, then
+     * column 1 descending, and checks them against the start of a stable
+     * sort, before and after a rewind
+     */
+    private void checkTopN(int rows, int values, int limit) throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = TestUtil.randomTuples(rows, values);
+        TopN op = new TopN(new int[] { 0, 1 }, new boolean[] { true, false }, limit, TestUtil.createTupleList(3, tuples));
+        op.open();
+        Collections.sort(tuples, (a, b) -> a.get(0).equals(b.get(0))
+                ? b.get(1).compareTo(a.get(1)) : a.get(0).compareTo(b.get(0)));
+        ArrayList<ArrayList<Integer>> expected =
+                new ArrayList<>(tuples.subList(0, Math.min(rows, limit)));
+        assertEquals(expected, TestUtil.drain(op));
+        op.rewind();
+        assertEquals(expected, TestUtil.drain(op));
+        op.close();
+    }
+
+    /**
+     * Unit test for TopN keeping a few of many tuples
+     */
+    @Test public void fewOfMany() throws Exception {
+        checkTopN(5000, 1000, 20);
+    }
+
+    /**
+     * Unit test for TopN on tuples with many equal keys, which must come
+     * in the order they were read
+     */
+    @Test public void ties() throws Exception {
+        checkTopN(5000, 3, 100);
+    }
+
+    /**
+     * Unit test for TopN with a limit of no tuples, and one above the
+     * number of tuples
+     */
+    @Test public void limits() throws Exception {
+        checkTopN(100, 10, 0);
+        checkTopN(100, 10, 1);
+        checkTopN(100, 10, 5000);
+    }
+
+    private static OpIterator plan(String query) throws Exception {
+        Parser p = new Parser();
+        LogicalPlan lp = p.generateLogicalPlan(new TransactionId(), query);
+        return lp.physicalPlan(new TransactionId(), new HashMap<String, TableStats>(), false);
+    }
+
+    /**
+     * Unit test for planning ORDER BY ... LIMIT with a TopN, and LIMIT
+     * alone with a Limit
+     */
+    @Test public void planTopN() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 500, null, tuples, "c");
+        Database.getCatalog().addTable(f, "t");
+
+        OpIterator plan = plan("SELECT * FROM t ORDER BY t.c0 DESC LIMIT 7;");
+        assertTrue(((Operator) plan).getChildren()[0] instanceof TopN);
+        plan.open();
+        ArrayList<ArrayList<Integer>> top = TestUtil.drain(plan);
+        Collections.sort(tuples, (a, b) -> b.get(0).compareTo(a.get(0)));
+        assertEquals(tuples.subList(0, 7), top);
+
+        plan = plan("SELECT t.c1 FROM t limit 3;");
+        assertTrue(((Operator) plan).getChildren()[0] instanceof Limit);
+        plan.open();
+        assertEquals(3, TestUtil.drain(plan).size());
+    }
+
+    /**
+     * Unit test for planning ORDER BY ... LIMIT on the key of a B+ tree as
+     * an ordered scan of the tree, stopped by a Limit
+     */
+    @Test public void planIndexScan() throws Exception {
+        File empty = File.createTempFile("btree", ".dat");
+        empty.deleteOnExit();
+        BTreeFile f = new BTreeFile(empty, 1, Utility.getTupleDesc(2, "c"));
+        Database.getCatalog().addTable(f, "b");
+
+        OpIterator child = ((Operator) plan("SELECT * FROM b ORDER BY b.c1 LIMIT 5;")).getChildren()[0];
+        assertTrue(child instanceof Limit);
+        assertTrue(((Limit) child).getChildren()[0] instanceof BTreeScan);
+        // descending, or on another field, the tuples must still be sorted
+        child = ((Operator) plan("SELECT * FROM b ORDER BY b.c1 DESC LIMIT 5;")).getChildren()[0];
+        assertTrue(child instanceof TopN);
+        child = ((Operator) plan("SELECT * FROM b ORDER BY b.c0 LIMIT 5;")).getChildren()[0];
+        assertTrue(child instanceof TopN);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TopNTest.class);
+    }
+}
@@ -0,0 +1,197 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class TupleBatchTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 3000;
+
+    private ArrayList<ArrayList<Integer>> tuples;
+    private HeapFile hf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        tuples = new ArrayList<>();
+        hf = SystemTestUtil.createRandomHeapFile(3, ROWS, 50, null, tuples);
+    }
+
+    /** Returns the tuples of all of the batches of it, which is opened and closed */
+    private static ArrayList<ArrayList<Integer>> drain(BatchIterator it) throws Exception {
+        it.open();
+        ArrayList<ArrayList<Integer>> result = TestUtil.drainBatches(it);
+        it.close();
+        return result;
+    }
+
+    private static void assertSameTuples(ArrayList<ArrayList<Integer>> expected,
+            ArrayList<ArrayList<Integer>> actual) {
+        Comparator<ArrayList<Integer>> order = (a, b) -> a.toString().compareTo(b.toString());
+        Collections.sort(expected, order);
+        Collections.sort(actual, order);
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * Tuples go in and come out by column, selections narrow a batch, and
+     * projections share its columns.
+     */
+    @Test public void columns() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE }, new String[] { "a", "b" });
+        TupleBatch batch = new TupleBatch(td);
+        for (int i = 0; i < 10; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField("s" + i, Type.STRING_LEN));
+            t.setRecordId(new RecordId(new HeapPageId(7, 1), i));
+            batch.add(t);
+        }
+        assertEquals(10, batch.size());
+        assertEquals(4, batch.getInts(0)[4]);
+        assertEquals("s4", batch.getStrings(1)[4]);
+
+        int[] sel = batch.selection();
+        int n = 0;
+        for (int i = 0; i < batch.size(); i++)
+            if (batch.getInt(0, sel[i]) % 3 == 0)
+                sel[n++] = sel[i];
+        batch.setSize(n);
+        assertEquals(4, batch.size());
+        Tuple t = batch.getTuple(2);
+        assertEquals(new IntField(6), t.getField(0));
+        assertEquals(new StringField("s6", Type.STRING_LEN), t.getField(1));
+        assertEquals(new RecordId(new HeapPageId(7, 1), 6), t.getRecordId());
+
+        TupleBatch b = batch.project(new TupleDesc(new Type[] { Type.STRING_TYPE }), new int[] { 1 });
+        assertEquals(4, b.size());
+        assertEquals(new StringField("s9", Type.STRING_LEN), b.getTuple(3).getField(0));
+        batch.clear();
+        assertEquals(0, batch.size());
+    }
+
+    /**
+     * A SeqScan's batches hold the table's tuples, with their RecordIds,
+     * in full batches but for the last.
+     */
+    @Test public void seqScan() throws Exception {
+        SeqScan scan = new SeqScan(new TransactionId(), hf.getId());
+        scan.open();
+        ArrayList<RecordId> rids = new ArrayList<>();
+        while (scan.hasNext())
+            rids.add(scan.next().getRecordId());
+        scan.rewind();
+        ArrayList<RecordId> batchRids = new ArrayList<>();
+        TupleBatch batch;
+        while ((batch = scan.nextBatch()) != null) {
+            if (batchRids.size() + batch.size() < ROWS)
+                assertEquals(TupleBatch.CAPACITY, batch.size());
+            for (int i = 0; i < batch.size(); i++)
+                batchRids.add(batch.getTuple(i).getRecordId());
+        }
+        scan.close();
+        assertEquals(rids, batchRids);
+        assertSameTuples(tuples, drain(new SeqScan(new TransactionId(), hf.getId())));
+    }
+
+    /**
+     * Filter, Project and Aggregate give the same answers a batch at a
+     * time as a tuple at a time, and also take tuples from a child that
+     * doesn't run a batch at a time.
+     */
+    @Test public void filterProjectAggregate() throws Exception {
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<>();
+        HashMap<Integer, Integer> sums = new HashMap<>();
+        for (ArrayList<Integer> t : tuples) {
+            if (t.get(1) < 20) {
+                ArrayList<Integer> p = new ArrayList<>();
+                p.add(t.get(2));
+                p.add(t.get(0));
+                expected.add(p);
+                sums.merge(t.get(2), t.get(0), Integer::sum);
+            }
+        }
+        ArrayList<Integer> fields = new ArrayList<>();
+        fields.add(2);
+        fields.add(0);
+        Type[] types = { Type.INT_TYPE, Type.INT_TYPE };
+        Predicate pred = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(20));
+
+        Project project = new Project(fields, types,
+                new Filter(pred, new SeqScan(new TransactionId(), hf.getId())));
+        assertSameTuples(new ArrayList<>(expected), drain(project));
+        SystemTestUtil.matchTuples(project, expected);
+
+        // the same over a child that only runs a tuple at a time
+        OpIterator tuplesOnly = new TupleIterator(hf.getTupleDesc(), materialize());
+        project = new Project(fields, types, new Filter(pred, tuplesOnly));
+        assertSameTuples(new ArrayList<>(expected), drain(project));
+
+        ArrayList<ArrayList<Integer>> grouped = new ArrayList<>();
+        for (Integer g : sums.keySet()) {
+            ArrayList<Integer> r = new ArrayList<>();
+            r.add(g);
+            r.add(sums.get(g));
+            grouped.add(r);
+        }
+        Aggregate agg = new Aggregate(new Project(fields, types,
+                new Filter(pred, new SeqScan(new TransactionId(), hf.getId()))), 1, 0, Aggregator.Op.SUM);
+        assertSameTuples(new ArrayList<>(grouped), drain(agg));
+        SystemTestUtil.matchTuples(agg, grouped);
+    }
+
+    private ArrayList<Tuple> materialize() {
+        ArrayList<Tuple> result = new ArrayList<>();
+        for (ArrayList<Integer> t : tuples)
+            result.add(Utility.getHeapTuple(new int[] { t.get(0), t.get(1), t.get(2) }));
+        return result;
+    }
+
+    /**
+     * HashEquiJoin joins a batch at a time, and a tuple-at-a-time Join
+     * reads a batch operator's tuples, so mixed plans run.
+     */
+    @Test public void joins() throws Exception {
+        ArrayList<ArrayList<Integer>> small = new ArrayList<>();
+        HeapFile other = SystemTestUtil.createRandomHeapFile(2, 200, 50, null, small);
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<>();
+        for (ArrayList<Integer> s : small) {
+            for (ArrayList<Integer> t : tuples) {
+                if (s.get(0).equals(t.get(1)) && t.get(0) > 25) {
+                    ArrayList<Integer> j = new ArrayList<>(s);
+                    j.addAll(t);
+                    expected.add(j);
+                }
+            }
+        }
+        JoinPredicate jp = new JoinPredicate(0, Predicate.Op.EQUALS, 1);
+        Predicate pred = new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(25));
+        HashEquiJoin hash = new HashEquiJoin(jp, new SeqScan(new TransactionId(), other.getId()),
+                new Filter(pred, new SeqScan(new TransactionId(), hf.getId())));
+        assertSameTuples(new ArrayList<>(expected), drain(hash));
+        SystemTestUtil.matchTuples(hash, expected);
+
+        Join join = new Join(jp, new SeqScan(new TransactionId(), other.getId()),
+                new Filter(pred, new SeqScan(new TransactionId(), hf.getId())));
+        SystemTestUtil.matchTuples(join, expected);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TupleBatchTest.class);
+    }
+}
@@ -57,6 +57,47 @@ public class TupleTest extends SimpleDbTestBase {
 	}
     }
 
+    /**
+     * Unit test for a Tuple backed by its bytes, with a field set over them
+     */
+    @Test public void rowBacked() {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE });
+        byte[] row = new byte[td.getSize()];
+        Type.INT_TYPE.serialize(new IntField(7), row, td.getOffset(0));
+        Type.STRING_TYPE.serialize(new StringField("seven", Type.STRING_LEN), row, td.getOffset(1));
+        Type.INT_TYPE.serialize(new IntField(-7), row, td.getOffset(2));
+        assertEquals(4 + 4 + Type.STRING_LEN, td.getOffset(2));
+
+        Tuple tup = new Tuple(td, row);
+        assertEquals(7, tup.getInt(0));
+        assertEquals(new StringField("seven", Type.STRING_LEN), tup.getField(1));
+        assertEquals(new IntField(-7), tup.getField(2));
+
+        tup.setField(2, new IntField(3));
+        assertEquals(3, tup.getInt(2));
+        assertEquals(7, tup.getInt(0));
+    }
+
+    /**
+     * Unit test for JoinedTuple, which reads through to the joined tuples
+     */
+    @Test public void joinedView() {
+        Tuple left = Utility.getHeapTuple(new int[] { 1, 2 });
+        Tuple right = Utility.getHeapTuple(new int[] { 3, 4, 5 });
+        TupleDesc td = TupleDesc.merge(left.getTupleDesc(), right.getTupleDesc());
+        Tuple joined = new JoinedTuple(td, left, right);
+
+        assertEquals(td, joined.getTupleDesc());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(new IntField(i + 1), joined.getField(i));
+            assertEquals(i + 1, joined.getInt(i));
+        }
+
+        joined.setField(3, new IntField(-4));
+        assertEquals(new IntField(-4), joined.getField(3));
+        assertEquals(new IntField(4), right.getField(1));
+    }
+
     /**
      * JUnit suite target
      */
@@ -0,0 +1,85 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Batch-at-a-time execution benchmark.  Runs three plans over a table of
+ * two ints with every page in the BufferPool, once with each operator
+ * reading its child a tuple at a time and once a batch at a time, and
+ * reports input rows per second:
+ * <pre>
+ * SELECT SUM(b) FROM t WHERE a &lt; 500
+ * SELECT a, SUM(b) FROM g GROUP BY a           (g has 64 distinct values)
+ * SELECT COUNT(d.a) FROM d, t WHERE d.a = t.a  (a HashEquiJoin, d is small)
+ * </pre>
+ * Run with <tt>ant benchmark</tt>; results go to stdout.
+ */
+public class BatchBenchmark extends SimpleDbTestBase {
+
+    private static final int ROWS = 500000;
+    private static final int ROUNDS = 5;
+
+    private interface Plan {
+        OpIterator build(boolean batches);
+    }
+
+    private static OpIterator wrap(OpIterator it, boolean batches) {
+        return batches ? it : new TupleAtATime(it);
+    }
+
+    private static int result(OpIterator plan) throws Exception {
+        plan.open();
+        int value = 0;
+        while (plan.hasNext()) {
+            Tuple t = plan.next();
+            value += ((IntField) t.getField(t.getTupleDesc().numFields() - 1)).getValue();
+        }
+        plan.close();
+        return value;
+    }
+
+    private static void time(String name, Plan plan) throws Exception {
+        long[] best = { Long.MAX_VALUE, Long.MAX_VALUE };
+        int[] results = new int[2];
+        for (int r = 0; r < ROUNDS; r++) {
+            for (int b = 0; b < 2; b++) {
+                long start = System.nanoTime();
+                results[b] = result(plan.build(b == 1));
+                best[b] = Math.min(best[b], System.nanoTime() - start);
+            }
+        }
+        assertEquals(results[0], results[1]);
+        System.out.printf("  %-14s %10.0f rows/s tuples %10.0f rows/s batches (%.1fx)%n", name,
+                ROWS * 1e9 / best[0], ROWS * 1e9 / best[1], (double) best[0] / best[1]);
+    }
+
+    @Test public void scanFilterAggregate() throws Exception {
+        HeapFile t = SystemTestUtil.createRandomHeapFile(2, ROWS, 1000, null, null);
+        HeapFile d = SystemTestUtil.createRandomHeapFile(2, 1000, 1000, null, null);
+        Database.resetBufferPool(2 * t.numPages());
+        Predicate lt = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(500));
+
+        System.out.println("BatchBenchmark: " + ROWS + " rows, best of " + ROUNDS);
+        time("filter, sum", b -> new Aggregate(wrap(new Filter(lt,
+                wrap(new SeqScan(new TransactionId(), t.getId()), b)), b), 1, Aggregator.NO_GROUPING,
+                Aggregator.Op.SUM));
+        HeapFile g = SystemTestUtil.createRandomHeapFile(2, ROWS, 64, null, null);
+        Database.resetBufferPool(2 * (t.numPages() + g.numPages()));
+        time("group by, sum", b -> new Aggregate(wrap(new SeqScan(new TransactionId(), g.getId()), b),
+                1, 0, Aggregator.Op.SUM));
+        time("hash join", b -> new Aggregate(wrap(new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                new SeqScan(new TransactionId(), d.getId()), wrap(new SeqScan(new TransactionId(), t.getId()), b)),
+                b), 0, Aggregator.NO_GROUPING, Aggregator.Op.COUNT));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BatchBenchmark.class);
+    }
+}
@@ -0,0 +1,77 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Page checksum overhead benchmark.  Reads every page of a table through
+ * its PageChannel with checksums off and on, from the page cache, so the
+ * CRC32C is compared against the cheapest possible read; and times the
+ * CRC32C of a page on its own.  Run with <tt>ant benchmark</tt>; results
+ * go to stdout.
+ */
+public class ChecksumBenchmark extends SimpleDbTestBase {
+
+    private static final int ROWS = 400000; // about 800 pages of two ints
+    private static final int ROUNDS = 5;
+
+    // keeps the checksum loop from being optimized away
+    static long sink;
+
+    private static long timeReads(PageChannel ch, int pages) throws Exception {
+        byte[] data = new byte[BufferPool.getPageSize()];
+        long start = System.nanoTime();
+        for (int i = 0; i < pages; i++)
+            ch.readPage(i, (long) i * data.length, data);
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String name, long nanos, int pages) {
+        System.out.printf("  %-20s %8.2f us/page %8.0f MB/s%n", name, nanos / 1000.0 / pages,
+                (double) pages * BufferPool.getPageSize() * 1e3 / nanos);
+    }
+
+    @Test public void readOverhead() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null);
+        new File(hf.getFile().getPath() + ".crc").deleteOnExit();
+        int pages = hf.numPages();
+        assertTrue(pages > 500);
+
+        PageChannel plain = new PageChannel(hf.getFile());
+        PageChannel checked = new PageChannel(hf.getFile());
+        checked.setChecksums(true);
+        timeReads(checked, pages); // record the checksums
+
+        long off = Long.MAX_VALUE, on = Long.MAX_VALUE, crc = Long.MAX_VALUE;
+        byte[] page = new byte[BufferPool.getPageSize()];
+        plain.read(0, page);
+        for (int r = 0; r < ROUNDS; r++) {
+            off = Math.min(off, timeReads(plain, pages));
+            on = Math.min(on, timeReads(checked, pages));
+            long start = System.nanoTime();
+            int sum = 0;
+            for (int i = 0; i < pages; i++)
+                sum += PageChecksums.checksum(page);
+            crc = Math.min(crc, System.nanoTime() - start);
+            sink += sum;
+        }
+        System.out.println("ChecksumBenchmark: " + pages + " pages, best of " + ROUNDS);
+        report("read, no checksums", off, pages);
+        report("read, checksums", on, pages);
+        report("CRC32C alone", crc, pages);
+        plain.close();
+        checked.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ChecksumBenchmark.class);
+    }
+}
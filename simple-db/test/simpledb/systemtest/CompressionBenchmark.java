@@ -0,0 +1,86 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Page compression benchmark.  Builds a table of low-cardinality columns,
+ * which compresses well, and one of random ints, which hardly does, and
+ * reports for each the compressed file size against the raw one and the
+ * scan rate of the raw file, of the compressed file reading and inflating
+ * every page, and of the compressed file with its decompressed page cache
+ * holding the whole table.  Every scan starts from an empty BufferPool
+ * smaller than the table.  Run with <tt>ant benchmark</tt>; results go to
+ * stdout.
+ */
+public class CompressionBenchmark extends SimpleDbTestBase {
+
+    private static final int ROWS = 200000; // about 400 pages of two ints
+    private static final int ROUNDS = 5;
+
+    private static long scan(HeapFile hf) throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        long rows = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            rows++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return rows;
+    }
+
+    private static void time(String name, HeapFile hf) throws Exception {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            assertEquals(ROWS, scan(hf));
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("    %-18s %10.0f rows/s%n", name, ROWS * 1e9 / best);
+    }
+
+    private static HeapFile open(File f, boolean compressed) {
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2), false, compressed);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    private static void run(String name, int maxValue) throws Exception {
+        HeapFile raw = SystemTestUtil.createRandomHeapFile(2, ROWS, maxValue, null, null);
+        File f = File.createTempFile("compressionbench", ".dat");
+        f.deleteOnExit();
+        HeapFileEncoder.compress(raw.getFile(), f);
+        HeapFile compressed = open(f, true);
+
+        System.out.printf("  %s: %d pages, %d bytes raw, %d compressed (%.1fx)%n", name, raw.numPages(),
+                raw.getFile().length(), f.length(), (double) raw.getFile().length() / f.length());
+        time("raw", raw);
+        compressed.getCompressedStore().setCacheSize(0);
+        time("compressed", compressed);
+        compressed.getCompressedStore().setCacheSize(compressed.numPages());
+        scan(compressed); // fill the cache
+        time("compressed, cached", compressed);
+    }
+
+    @Test public void scanVersusRatio() throws Exception {
+        System.out.println("CompressionBenchmark: " + ROWS + " rows, best of " + ROUNDS);
+        run("16 distinct values", 16);
+        run("random ints", Integer.MAX_VALUE);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(CompressionBenchmark.class);
+    }
+}
@@ -0,0 +1,194 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Hash table benchmark.  Runs the inner loops of a grouped aggregate and a
+ * hash join, once over HashMaps of boxed Fields, as IntegerAggregator and
+ * HashEquiJoin used to, and once over IntHashTable and ByteKeyHashTable
+ * with int arrays, and reports keys per second:
+ * <pre>
+ * group by int     SUM of ROWS values into GROUPS int groups
+ * group by string  COUNT of ROWS rows into GROUPS string groups, keys in page format
+ * join             build BUILD int keys, probe with ROWS keys, count matches
+ * </pre>
+ * Run with <tt>ant benchmark</tt>; results go to stdout.
+ */
+public class HashTableBenchmark extends SimpleDbTestBase {
+
+    private static final int ROWS = 1000000;
+    private static final int GROUPS = 10000;
+    private static final int BUILD = 100000;
+    private static final int ROUNDS = 5;
+
+    private interface Run {
+        long run(boolean tables);
+    }
+
+    private static void time(String name, Run run) {
+        long[] best = { Long.MAX_VALUE, Long.MAX_VALUE };
+        long[] results = new long[2];
+        for (int r = 0; r < ROUNDS; r++) {
+            for (int t = 0; t < 2; t++) {
+                long start = System.nanoTime();
+                results[t] = run.run(t == 1);
+                best[t] = Math.min(best[t], System.nanoTime() - start);
+            }
+        }
+        assertEquals(results[0], results[1]);
+        System.out.printf("  %-16s %11.0f keys/s HashMap %11.0f keys/s tables (%.1fx)%n", name,
+                ROWS * 1e9 / best[0], ROWS * 1e9 / best[1], (double) best[0] / best[1]);
+    }
+
+    private static int[] keys(int n, int distinct) {
+        Random r = new Random(1);
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++)
+            keys[i] = r.nextInt(distinct) * 31;
+        return keys;
+    }
+
+    private static long groupByInt(int[] keys, boolean tables) {
+        long total = 0;
+        if (tables) {
+            IntHashTable groups = new IntHashTable();
+            int[] sums = new int[16];
+            for (int i = 0; i < keys.length; i++) {
+                int g = groups.put(keys[i]);
+                if (g == sums.length)
+                    sums = Arrays.copyOf(sums, g * 2);
+                sums[g] += i;
+            }
+            for (int g = 0; g < groups.size(); g++)
+                total += sums[g] ^ groups.key(g);
+        } else {
+            HashMap<Field, Integer> num = new HashMap<>();
+            HashMap<Field, Integer> val = new HashMap<>();
+            for (int i = 0; i < keys.length; i++) {
+                Field f = new IntField(keys[i]);
+                if (!num.containsKey(f)) {
+                    num.put(f, 1);
+                    val.put(f, i);
+                } else {
+                    num.put(f, num.get(f) + 1);
+                    val.put(f, val.get(f) + i);
+                }
+            }
+            for (Field f : val.keySet())
+                total += val.get(f) ^ ((IntField) f).getValue();
+        }
+        return total;
+    }
+
+    private static long groupByString(byte[] rows, int width, boolean tables) {
+        long total = 0;
+        int n = rows.length / width;
+        if (tables) {
+            ByteKeyHashTable groups = new ByteKeyHashTable(width);
+            int[] counts = new int[16];
+            ByteBuffer buf = ByteBuffer.wrap(rows);
+            for (int i = 0; i < n; i++) {
+                // hash the length and characters, not the padding
+                int len = buf.getInt(i * width);
+                int g = groups.put(rows, i * width, ByteKeyHashTable.hash(rows, i * width, 4 + len));
+                if (g == counts.length)
+                    counts = Arrays.copyOf(counts, g * 2);
+                counts[g]++;
+            }
+            for (int g = 0; g < groups.size(); g++)
+                total += (long) counts[g] * counts[g];
+        } else {
+            HashMap<Field, Integer> num = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                Field f = Type.STRING_TYPE.parse(rows, i * width);
+                Integer c = num.get(f);
+                num.put(f, c == null ? 1 : c + 1);
+            }
+            for (int c : num.values())
+                total += (long) c * c;
+        }
+        return total;
+    }
+
+    private static long join(int[] build, int[] probe, Object[] payload, boolean tables) {
+        long matches = 0;
+        if (tables) {
+            IntHashTable table = new IntHashTable(build.length);
+            int[] first = new int[build.length];
+            int[] next = new int[build.length];
+            for (int i = 0; i < build.length; i++) {
+                int n = table.size();
+                int k = table.put(build[i]);
+                // chain the tuples of a key, newest first
+                next[i] = k == n ? -1 : first[k];
+                first[k] = i;
+            }
+            for (int key : probe) {
+                int k = table.find(key);
+                if (k < 0)
+                    continue;
+                for (int i = first[k]; i >= 0; i = next[i])
+                    if (payload[i] != null)
+                        matches++;
+            }
+        } else {
+            HashMap<Object, ArrayList<Object>> map = new HashMap<>();
+            for (int i = 0; i < build.length; i++) {
+                Field f = new IntField(build[i]);
+                ArrayList<Object> list = map.get(f);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    map.put(f, list);
+                }
+                list.add(payload[i]);
+            }
+            for (int key : probe) {
+                ArrayList<Object> list = map.get(new IntField(key));
+                if (list == null)
+                    continue;
+                for (Object o : list)
+                    if (o != null)
+                        matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Test public void hashTables() throws Exception {
+        System.out.println("HashTableBenchmark: " + ROWS + " keys, best of " + ROUNDS);
+
+        int[] groupKeys = keys(ROWS, GROUPS);
+        time("group by int", t -> groupByInt(groupKeys, t));
+
+        int width = Type.STRING_TYPE.getLen();
+        byte[] rows = new byte[ROWS * width];
+        for (int i = 0; i < ROWS; i++)
+            Type.STRING_TYPE.serialize(new StringField("group " + groupKeys[i], Type.STRING_LEN), rows, i * width);
+        time("group by string", t -> groupByString(rows, width, t));
+
+        // every other build key is a duplicate, and half of the probes miss
+        int[] build = keys(BUILD, BUILD / 2);
+        int[] probe = keys(ROWS, BUILD);
+        Object[] payload = new Object[BUILD];
+        for (int i = 0; i < BUILD; i++)
+            payload[i] = new Object();
+        time("join", t -> join(build, probe, payload, t));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(HashTableBenchmark.class);
+    }
+}
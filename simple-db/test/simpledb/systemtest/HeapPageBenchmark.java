@@ -0,0 +1,73 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import simpledb.*;
+import simpledb.TestUtil.SkeletonFile;
+
+/**
+ * HeapPage decoding benchmark.  Builds full two-int-column pages from their
+ * bytes and sums the first column, once through materialized tuples and
+ * once through the typed accessor, and times merely opening the page, which
+ * is what a page read by an insert or a lookup costs.  Run with
+ * <tt>ant benchmark</tt>; results go to stdout.
+ */
+public class HeapPageBenchmark extends SimpleDbTestBase {
+
+    private static final int PAGES = 20000;
+    private static final int ROUNDS = 5;
+
+    private interface Scan {
+        long run(HeapPage p);
+    }
+
+    private static long time(String name, HeapPageId pid, byte[] data, Scan scan) throws Exception {
+        long best = Long.MAX_VALUE, sum = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            sum = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < PAGES; i++)
+                sum += scan.run(new HeapPage(pid, data));
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("  %-10s %8.2f us/page%n", name, best / 1e3 / PAGES);
+        return sum;
+    }
+
+    @Test public void decode() throws Exception {
+        Database.getCatalog().addTable(new SkeletonFile(-1, Utility.getTupleDesc(2)), SystemTestUtil.getUUID());
+        HeapPageId pid = new HeapPageId(-1, 0);
+        HeapPage full = new HeapPage(pid, HeapPage.createEmptyPageData());
+        for (int i = 0; full.getNumEmptySlots() > 0; i++)
+            full.insertTuple(Utility.getHeapTuple(new int[] { i, -i }));
+        byte[] data = full.getPageData();
+
+        System.out.println("HeapPageBenchmark: " + PAGES + " pages, best of " + ROUNDS);
+        time("open", pid, data, p -> p.getNumEmptySlots());
+        long tuples = time("tuples", pid, data, p -> {
+            long s = 0;
+            Iterator<Tuple> it = p.iterator();
+            while (it.hasNext())
+                s += ((IntField) it.next().getField(0)).getValue();
+            return s;
+        });
+        long ints = time("getInt", pid, data, p -> {
+            long s = 0;
+            for (int i = 0; i < 504; i++)
+                s += p.getInt(i, 0);
+            return s;
+        });
+        assertEquals(tuples, ints);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(HeapPageBenchmark.class);
+    }
+}
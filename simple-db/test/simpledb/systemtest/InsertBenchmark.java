@@ -0,0 +1,63 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Bulk insert benchmark.  Inserts a million rows into an empty heap file,
+ * committing every BATCH rows, and reports the insert rate for each
+ * tenth of the load.  With the free space map the rate should stay flat
+ * as the table grows, instead of falling with every page an insert has
+ * to walk past.  Run with <tt>ant runsystest -Dtest=InsertBenchmark</tt>;
+ * results go to stdout.
+ */
+public class InsertBenchmark extends SimpleDbTestBase {
+
+    private static final int ROWS = 1000000;
+    private static final int BATCH = 10000;
+    private static final int REPORTS = 10;
+
+    @Test public void bulkInsert() throws Exception {
+        File f = File.createTempFile("insertbench", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = Utility.createEmptyHeapFile(f.getAbsolutePath(), 2);
+        hf.getFreeSpaceMap().getFile().deleteOnExit();
+        BufferPool bp = Database.getBufferPool();
+
+        System.out.println("InsertBenchmark: " + ROWS + " rows, " + BATCH + " per transaction");
+        long chunkStart = System.nanoTime();
+        Transaction t = new Transaction();
+        t.start();
+        for (int i = 1; i <= ROWS; i++) {
+            Tuple tup = new Tuple(hf.getTupleDesc());
+            tup.setField(0, new IntField(i));
+            tup.setField(1, new IntField(-i));
+            bp.insertTuple(t.getId(), hf.getId(), tup);
+            if (i % BATCH == 0) {
+                t.commit();
+                t = new Transaction();
+                t.start();
+            }
+            if (i % (ROWS / REPORTS) == 0) {
+                long now = System.nanoTime();
+                System.out.printf("  rows %8d - %8d  %9.0f rows/s  (%d pages)%n", i - ROWS / REPORTS + 1, i,
+                        (ROWS / REPORTS) * 1e9 / (now - chunkStart), hf.numPages());
+                chunkStart = now;
+            }
+        }
+        t.commit();
+        assertEquals((ROWS + 503) / 504, hf.numPages());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(InsertBenchmark.class);
+    }
+}
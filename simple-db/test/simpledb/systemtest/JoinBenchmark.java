@@ -0,0 +1,116 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Join allocation benchmark.  Hash joins two heap tables on a key that
+ * matches every left row against OUT / LEFT_ROWS right rows, and reports
+ * the output rate and the bytes allocated per output row, which are mostly
+ * the output tuples themselves.  Run with <tt>ant benchmark</tt>; results
+ * go to stdout.
+ */
+public class JoinBenchmark extends SimpleDbTestBase {
+
+    private static final int LEFT_ROWS = 2000;
+    private static final int RIGHT_ROWS = 20000;
+    private static final int KEYS = 200;
+    private static final int ROUNDS = 5;
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static HeapFile table(int rows, int columns) throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < rows; i++) {
+            ArrayList<Integer> t = new ArrayList<Integer>();
+            t.add(i % KEYS);
+            for (int c = 1; c < columns; c++)
+                t.add(i * c);
+            tuples.add(t);
+        }
+        File f = File.createTempFile("joinbench", ".dat");
+        f.deleteOnExit();
+        HeapFileEncoder.convert(tuples, f, BufferPool.getPageSize(), columns);
+        return Utility.openHeapFile(columns, f);
+    }
+
+    @Test public void hashJoin() throws Exception {
+        HeapFile left = table(LEFT_ROWS, 3);
+        HeapFile right = table(RIGHT_ROWS, 3);
+        long expected = (long) LEFT_ROWS * RIGHT_ROWS / KEYS;
+
+        System.out.println("JoinBenchmark: " + LEFT_ROWS + " x " + RIGHT_ROWS + " rows, "
+                + expected + " output rows, best of " + ROUNDS);
+        long bestTime = Long.MAX_VALUE, bestBytes = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            TransactionId tid = new TransactionId();
+            HashEquiJoin join = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                    new SeqScan(tid, left.getId(), "l"), new SeqScan(tid, right.getId(), "r"));
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            join.open();
+            long rows = 0, sum = 0;
+            while (join.hasNext()) {
+                Tuple t = join.next();
+                sum += t.getInt(5);
+                rows++;
+            }
+            join.close();
+            bestTime = Math.min(bestTime, System.nanoTime() - start);
+            bestBytes = Math.min(bestBytes, allocatedBytes() - bytes);
+            Database.getBufferPool().transactionComplete(tid);
+            assertEquals(expected, rows);
+        }
+        System.out.printf("  %9.0f rows/s  %6.1f bytes/row%n", expected * 1e9 / bestTime,
+                (double) bestBytes / expected);
+    }
+
+    /**
+     * A join whose left side is ten times the default memory budget, so
+     * that it spills most of both inputs and joins them a partition at a
+     * time.
+     */
+    @Test public void spillingHashJoin() throws Exception {
+        int rows = HashEquiJoin.MAP_SIZE * 10;
+        HeapFile left = table(rows, 3);
+        HeapFile right = table(rows, 3);
+        // join on column 1, which is unique, so there are rows output rows
+
+        System.out.println("JoinBenchmark: spilling, " + rows + " x " + rows + " rows, best of " + ROUNDS);
+        long bestTime = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            TransactionId tid = new TransactionId();
+            HashEquiJoin join = new HashEquiJoin(new JoinPredicate(1, Predicate.Op.EQUALS, 1),
+                    new SeqScan(tid, left.getId(), "l"), new SeqScan(tid, right.getId(), "r"));
+            long start = System.nanoTime();
+            join.open();
+            long out = 0;
+            while (join.hasNext()) {
+                join.next();
+                out++;
+            }
+            join.close();
+            bestTime = Math.min(bestTime, System.nanoTime() - start);
+            Database.getBufferPool().transactionComplete(tid);
+            assertEquals(rows, out);
+        }
+        System.out.printf("  %9.0f input rows/s%n", 2.0 * rows * 1e9 / bestTime);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(JoinBenchmark.class);
+    }
+}
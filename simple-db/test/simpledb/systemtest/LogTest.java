@@ -427,6 +427,53 @@ public class LogTest extends SimpleDbTestBase {
         t.commit();
     }
 
+    @Test public void TestRecoveryTime()
+            throws IOException, DbException, TransactionAbortedException {
+        setup();
+        doInsert(hf1, 1, 2);
+
+        // *** Benchmark:
+        // many committed transactions, each flushing several times, and an
+        // open transaction with flushed updates; time the restart
+        final int XACTIONS = 40;
+        final int ROWS = 50;
+        final int FLUSH_EVERY = 10;
+        int next = 1000;
+        for (int i = 0; i < XACTIONS; i++) {
+            Transaction t = new Transaction();
+            t.start();
+            for (int j = 0; j < ROWS; j++) {
+                insertRow(hf1, t, next++, 0);
+                if (j % FLUSH_EVERY == 0)
+                    Database.getBufferPool().flushAllPages();
+            }
+            t.commit();
+        }
+        Transaction open = new Transaction();
+        open.start();
+        for (int j = 0; j < ROWS; j++) {
+            insertRow(hf2, open, -1 - j, 0);
+            if (j % FLUSH_EVERY == 0)
+                Database.getBufferPool().flushAllPages();
+        }
+
+        long logBytes = new File("log").length();
+        long start = System.nanoTime();
+        crash();
+        long elapsed = System.nanoTime() - start;
+        System.out.println("LogTest: recovered " + logBytes + " log bytes in "
+                           + (elapsed / 1000000.0) + " ms");
+
+        Transaction t = new Transaction();
+        t.start();
+        look(hf1, t, 1, true);
+        look(hf1, t, 1000, true);
+        look(hf1, t, next - 1, true);
+        look(hf2, t, -1, false);
+        look(hf2, t, -ROWS, false);
+        t.commit();
+    }
+
     /** Make test compatible with older version of ant. */
     public static junit.framework.Test suite() {
         return new junit.framework.JUnit4TestAdapter(LogTest.class);
@@ -0,0 +1,101 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Scan benchmark for the memory mapped read path.  Reads every page of a
+ * HeapFile in page order, and every leaf of a BTreeFile along the sibling
+ * chain, once through the FileChannel and once through the mapping.  The
+ * times include building the pages, as a scan would.  Run with
+ * <tt>ant runsystest -Dtest=MappedScanBenchmark</tt>; results go to stdout.
+ */
+public class MappedScanBenchmark extends SimpleDbTestBase {
+
+    private static final int ROWS = 400000; // about 800 heap pages of two ints
+    private static final int ROUNDS = 5;
+
+    private static int scanHeap(HeapFile hf) {
+        int tuples = 0;
+        for (int i = 0; i < hf.numPages(); i++) {
+            HeapPage p = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), i));
+            for (Iterator<Tuple> it = p.iterator(); it.hasNext(); it.next())
+                tuples++;
+        }
+        return tuples;
+    }
+
+    private static int scanLeaves(BTreeFile bf) {
+        BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) bf.readPage(BTreeRootPtrPage.getId(bf.getId()));
+        BTreePageId pid = rootPtr.getRootId();
+        while (pid.pgcateg() == BTreePageId.INTERNAL)
+            pid = ((BTreeInternalPage) bf.readPage(pid)).iterator().next().getLeftChild();
+        int tuples = 0;
+        while (pid != null) {
+            BTreeLeafPage leaf = (BTreeLeafPage) bf.readPage(pid);
+            tuples += leaf.getMaxTuples() - leaf.getNumEmptySlots();
+            pid = leaf.getRightSiblingId();
+        }
+        return tuples;
+    }
+
+    private static long timeHeap(HeapFile hf, boolean mapped) {
+        hf.setMapped(mapped);
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            assertEquals(ROWS, scanHeap(hf));
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static long timeLeaves(BTreeFile bf, boolean mapped) {
+        bf.setMapped(mapped);
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            assertEquals(ROWS, scanLeaves(bf));
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static void report(String name, long nanos, int pages) {
+        System.out.printf("  %-20s %8.1f us/page %8.1f ms/scan%n", name,
+                nanos / 1000.0 / pages, nanos / 1e6);
+    }
+
+    @Test public void scan() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null);
+        BTreeFile bf = BTreeUtility.createRandomBTreeFile(2, ROWS, null, null, 0);
+        assertTrue(hf.numPages() > 500);
+
+        // warm up both paths and the page cache
+        timeHeap(hf, false);
+        timeHeap(hf, true);
+        long heapChannel = timeHeap(hf, false), heapMapped = timeHeap(hf, true);
+        timeLeaves(bf, false);
+        timeLeaves(bf, true);
+        long leafChannel = timeLeaves(bf, false), leafMapped = timeLeaves(bf, true);
+
+        System.out.println("MappedScanBenchmark: " + ROWS + " rows, best of " + ROUNDS + " rounds");
+        report("heap, channel", heapChannel, hf.numPages());
+        report("heap, mapped", heapMapped, hf.numPages());
+        report("btree, channel", leafChannel, bf.numPages());
+        report("btree, mapped", leafMapped, bf.numPages());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(MappedScanBenchmark.class);
+    }
+}
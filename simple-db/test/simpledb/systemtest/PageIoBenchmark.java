@@ -0,0 +1,113 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Microbenchmark for reading heap pages straight from disk.  Compares the
+ * old open/seek/read/close per page against the shared PageChannel that
+ * HeapFile and BTreeFile now use, single-threaded and with several readers.
+ * Only the I/O is timed, not building HeapPages.  Run with
+ * <tt>ant runsystest -Dtest=PageIoBenchmark</tt>; results go to stdout.
+ */
+public class PageIoBenchmark extends SimpleDbTestBase {
+
+    private static final int ROWS = 200000; // about 400 pages of two ints
+    private static final int ROUNDS = 5;
+    private static final int READERS = 4;
+
+    /** Reads a page the way HeapFile used to: one RandomAccessFile per page */
+    private static byte[] readPerOpen(File f, int pgNo) throws IOException {
+        byte[] data = new byte[BufferPool.getPageSize()];
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        raf.seek((long) pgNo * BufferPool.getPageSize());
+        raf.read(data);
+        raf.close();
+        return data;
+    }
+
+    private static long timeOpenPerPage(File f, int pages) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < pages; i++)
+            readPerOpen(f, i);
+        return System.nanoTime() - start;
+    }
+
+    private static long timeChannel(PageChannel ch, int pages) throws IOException {
+        byte[] data = new byte[BufferPool.getPageSize()];
+        long start = System.nanoTime();
+        for (int i = 0; i < pages; i++)
+            ch.read((long) i * data.length, data);
+        return System.nanoTime() - start;
+    }
+
+    private static long timeConcurrent(final PageChannel ch, final int pages) throws Exception {
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            final int first = r;
+            threads.add(new Thread() {
+                public void run() {
+                    byte[] data = new byte[BufferPool.getPageSize()];
+                    try {
+                        for (int i = first; i < pages; i += READERS)
+                            ch.read((long) i * data.length, data);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            t.join();
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String name, long nanos, int pages) {
+        System.out.printf("  %-28s %8.1f us/page %10.0f pages/s%n", name,
+                nanos / 1000.0 / pages, pages * 1e9 / nanos);
+    }
+
+    @Test public void readPages() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null);
+        File f = hf.getFile();
+        int pages = hf.numPages();
+        assertTrue(pages > 100);
+
+        // both paths read the same bytes
+        for (int i = 0; i < pages; i += 37)
+            assertArrayEquals(readPerOpen(f, i),
+                    hf.readPage(new HeapPageId(hf.getId(), i)).getPageData());
+
+        PageChannel ch = new PageChannel(f);
+        long open = Long.MAX_VALUE, channel = Long.MAX_VALUE, concurrent = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            open = Math.min(open, timeOpenPerPage(f, pages));
+            channel = Math.min(channel, timeChannel(ch, pages));
+            concurrent = Math.min(concurrent, timeConcurrent(ch, pages));
+        }
+        System.out.println("PageIoBenchmark: " + pages + " pages, best of " + ROUNDS + " rounds");
+        report("open per page", open, pages);
+        report("shared channel", channel, pages);
+        report("shared channel, " + READERS + " readers", concurrent, pages);
+        ch.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(PageIoBenchmark.class);
+    }
+}
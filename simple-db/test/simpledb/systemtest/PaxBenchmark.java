@@ -0,0 +1,85 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Columnar scan benchmark.  Runs SELECT SUM(c5) FROM t WHERE c2 &gt;= 500
+ * over a 16-column table of ints, stored row-major and as a PaxHeapFile,
+ * tuple at a time and a batch at a time, and reports rows scanned per
+ * second.  Run with <tt>ant benchmark</tt>; results go to stdout.
+ */
+public class PaxBenchmark extends SimpleDbTestBase {
+
+    private static final int COLUMNS = 16;
+    private static final int ROWS = 200000;
+    private static final int ROUNDS = 5;
+
+    private interface Plan {
+        OpIterator scan(HeapFile f);
+    }
+
+    private static int run(HeapFile f, boolean batches, Plan plan) throws Exception {
+        OpIterator scan = plan.scan(f);
+        OpIterator filter = new Filter(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(500)),
+                batches ? scan : new TupleAtATime(scan));
+        Aggregate agg = new Aggregate(batches ? filter : new TupleAtATime(filter), 1, Aggregator.NO_GROUPING,
+                Aggregator.Op.SUM);
+        agg.open();
+        int sum = ((IntField) agg.next().getField(0)).getValue();
+        agg.close();
+        return sum;
+    }
+
+    private static int time(String name, HeapFile f, boolean batches, Plan plan) throws Exception {
+        long best = Long.MAX_VALUE;
+        int sum = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            sum = run(f, batches, plan);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("  %-34s %10.0f rows/s%n", name, ROWS * 1e9 / best);
+        return sum;
+    }
+
+    @Test public void sumOfFilteredColumn() throws Exception {
+        HeapFile rows = SystemTestUtil.createRandomHeapFile(COLUMNS, ROWS, 1000, null, null);
+        File f = File.createTempFile("paxbench", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        Type[] types = new Type[COLUMNS];
+        for (int i = 0; i < COLUMNS; i++)
+            types[i] = Type.INT_TYPE;
+        HeapFileEncoder.pax(rows.getFile(), f, types);
+        PaxHeapFile pax = new PaxHeapFile(f, Utility.getTupleDesc(COLUMNS));
+        Database.getCatalog().addTable(pax, SystemTestUtil.getUUID());
+        Database.resetBufferPool(2 * rows.numPages());
+
+        Plan all = t -> new SeqScan(new TransactionId(), t.getId(), "t", new int[] { 2, 5,
+                0, 1, 3, 4, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15 });
+        Plan two = t -> new SeqScan(new TransactionId(), t.getId(), "t", new int[] { 2, 5 });
+        System.out.println("PaxBenchmark: " + ROWS + " rows of " + COLUMNS + " ints, "
+                + rows.numPages() + " pages, best of " + ROUNDS);
+        int expected = time("row file, tuples", rows, false, all);
+        assertEquals(expected, time("row file, 2 columns, tuples", rows, false, two));
+        assertEquals(expected, time("row file, batches", rows, true, all));
+        assertEquals(expected, time("row file, 2 columns, batches", rows, true, two));
+        assertEquals(expected, time("pax file, tuples", pax, false, all));
+        assertEquals(expected, time("pax file, 2 columns, tuples", pax, false, two));
+        assertEquals(expected, time("pax file, batches", pax, true, all));
+        assertEquals(expected, time("pax file, 2 columns, batches", pax, true, two));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(PaxBenchmark.class);
+    }
+}
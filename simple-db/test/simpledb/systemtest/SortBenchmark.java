@@ -0,0 +1,118 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.*;
+
+/**
+ * Sort benchmark.  Runs SELECT * FROM t ORDER BY a, b DESC over a table of
+ * two random ints with every page in the BufferPool, sorted in memory and
+ * sorted externally with a tenth of the table in memory, and the same query
+ * with LIMIT 20, as a full sort cut short and as a TopN, and reports rows
+ * per second.  Run with <tt>ant benchmark</tt>; results go to stdout.
+ */
+public class SortBenchmark extends SimpleDbTestBase {
+
+    private static final int ROWS = 500000;
+    private static final int ROUNDS = 5;
+    private static final int LIMIT = 20;
+
+    private static long sort(HeapFile table, int budget) throws Exception {
+        TransactionId tid = new TransactionId();
+        OrderBy sort = new OrderBy(new int[] { 0, 1 }, new boolean[] { true, false },
+                new SeqScan(tid, table.getId(), "t"));
+        sort.setMemoryBudget(budget);
+        long start = System.nanoTime();
+        sort.open();
+        int rows = 0, a = Integer.MIN_VALUE;
+        while (sort.hasNext()) {
+            int v = sort.next().getInt(0);
+            assertTrue(v >= a);
+            a = v;
+            rows++;
+        }
+        sort.close();
+        long time = System.nanoTime() - start;
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(ROWS, rows);
+        return time;
+    }
+
+    private static long top(HeapFile table, boolean topN) throws Exception {
+        TransactionId tid = new TransactionId();
+        int[] fields = new int[] { 0, 1 };
+        boolean[] asc = new boolean[] { true, false };
+        SeqScan scan = new SeqScan(tid, table.getId(), "t");
+        OpIterator top = topN ? new TopN(fields, asc, LIMIT, scan)
+                : new Limit(LIMIT, new OrderBy(fields, asc, scan));
+        long start = System.nanoTime();
+        top.open();
+        int rows = 0, a = Integer.MIN_VALUE;
+        while (top.hasNext()) {
+            int v = top.next().getInt(0);
+            assertTrue(v >= a);
+            a = v;
+            rows++;
+        }
+        top.close();
+        long time = System.nanoTime() - start;
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(LIMIT, rows);
+        return time;
+    }
+
+    private static HeapFile table() throws Exception {
+        Random r = new Random(1);
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < ROWS; i++) {
+            ArrayList<Integer> t = new ArrayList<Integer>();
+            t.add(r.nextInt(1000));
+            t.add(r.nextInt());
+            tuples.add(t);
+        }
+        File f = File.createTempFile("sortbench", ".dat");
+        f.deleteOnExit();
+        HeapFileEncoder.convert(tuples, f, BufferPool.getPageSize(), 2);
+        HeapFile table = Utility.openHeapFile(2, f);
+        Database.resetBufferPool(2 * table.numPages());
+        return table;
+    }
+
+    @Test public void orderBy() throws Exception {
+        HeapFile table = table();
+        System.out.println("SortBenchmark: " + ROWS + " rows, best of " + ROUNDS);
+        long memory = Long.MAX_VALUE, external = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            memory = Math.min(memory, sort(table, ROWS));
+            external = Math.min(external, sort(table, ROWS / 10));
+        }
+        System.out.printf("  in memory  %10.0f rows/s%n", ROWS * 1e9 / memory);
+        System.out.printf("  external   %10.0f rows/s  (%d tuples in memory)%n", ROWS * 1e9 / external, ROWS / 10);
+    }
+
+    @Test public void limit() throws Exception {
+        HeapFile table = table();
+        System.out.println("SortBenchmark: " + ROWS + " rows, LIMIT " + LIMIT + ", best of " + ROUNDS);
+        long sort = Long.MAX_VALUE, topN = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            sort = Math.min(sort, top(table, false));
+            topN = Math.min(topN, top(table, true));
+        }
+        System.out.printf("  OrderBy    %10.0f rows/s%n", ROWS * 1e9 / sort);
+        System.out.printf("  TopN       %10.0f rows/s  (%.1fx)%n", ROWS * 1e9 / topN, (double) sort / topN);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(SortBenchmark.class);
+    }
+}
@@ -0,0 +1,43 @@
+package simpledb.systemtest;
+
+import java.util.NoSuchElementException;
+
+import simpledb.*;
+
+/**
+ * Passes its child's tuples through one at a time.  Benchmarks put it
+ * between operators to keep the one above from running a batch at a time.
+ */
+public class TupleAtATime implements OpIterator {
+
+    private static final long serialVersionUID = 1L;
+    private final OpIterator child;
+
+    public TupleAtATime(OpIterator child) {
+        this.child = child;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+    }
+
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        return child.hasNext();
+    }
+
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+        return child.next();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void close() {
+        child.close();
+    }
+}